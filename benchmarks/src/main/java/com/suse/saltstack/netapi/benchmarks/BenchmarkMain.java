@@ -0,0 +1,36 @@
+package com.suse.saltstack.netapi.benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar. Runs the benchmarks like the JMH main class, but
+ * with the GC profiler enabled so the allocation per operation is always reported,
+ * unless other profilers are given with {@code -prof}.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    /**
+     * Run the benchmarks selected by the given JMH command line options.
+     *
+     * @param args the command line options
+     * @throws Exception if running the benchmarks fails
+     */
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp() || options.shouldList() ||
+                options.shouldListWithParams() || options.shouldListProfilers() ||
+                options.shouldListResultFormats() || !options.getProfilers().isEmpty()) {
+            Main.main(args);
+            return;
+        }
+        new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,111 @@
+package com.suse.saltstack.netapi.benchmarks;
+
+import com.suse.saltstack.netapi.calls.modules.Test;
+import com.suse.saltstack.netapi.client.Connection;
+import com.suse.saltstack.netapi.client.ConnectionFactory;
+import com.suse.saltstack.netapi.client.SaltStackClient;
+import com.suse.saltstack.netapi.config.ClientConfig;
+import com.suse.saltstack.netapi.datatypes.target.MinionList;
+import com.suse.saltstack.netapi.exception.SaltStackException;
+import com.suse.saltstack.netapi.parser.JsonParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of the client for a call without any network I/O: building and
+ * serializing the payload for a list of the given number of minions. The connection
+ * only keeps the length of the payload and returns a small fixed result.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallPayloadBenchmark {
+
+    private static final String RESULT = "{\"return\": [{\"minion-0\": true}]}";
+
+    /** Number of targeted minions */
+    @Param({"1", "10000"})
+    public int minions;
+
+    private SaltStackClient client;
+    private MinionList target;
+
+    /** The length of the last payload, so serializing it cannot be eliminated */
+    private int payloadLength;
+
+    /**
+     * Create the client and the target.
+     */
+    @Setup
+    public void setup() {
+        client = new SaltStackClient(URI.create("http://localhost:8000"),
+                new NullConnectionFactory());
+        client.getConfig().put(ClientConfig.TOKEN, "f248284b655724ca8a86bcab4b8df608");
+        target = new MinionList(Fixtures.ids(minions));
+    }
+
+    /**
+     * Call test.ping on the target.
+     *
+     * @return the result
+     * @throws SaltStackException never
+     */
+    @Benchmark
+    public Map<String, Boolean> callSync() throws SaltStackException {
+        return client.callSync(Test.ping(), target);
+    }
+
+    /**
+     * Creates connections that do not send anything.
+     */
+    private class NullConnectionFactory implements ConnectionFactory {
+
+        @Override
+        public <T> Connection<T> create(String endpoint, JsonParser<T> parser,
+                ClientConfig config) {
+            return new NullConnection<>(parser);
+        }
+    }
+
+    /**
+     * Connection parsing a fixed result instead of sending the request.
+     *
+     * @param <T> the type of the result
+     */
+    private class NullConnection<T> implements Connection<T> {
+
+        private final JsonParser<T> parser;
+
+        NullConnection(JsonParser<T> parserIn) {
+            parser = parserIn;
+        }
+
+        @Override
+        public T getResult() {
+            return parser.parse(RESULT);
+        }
+
+        @Override
+        public T getResult(String data) {
+            payloadLength = data.length();
+            return parser.parse(RESULT);
+        }
+    }
+}
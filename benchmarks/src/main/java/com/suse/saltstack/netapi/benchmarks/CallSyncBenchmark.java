@@ -0,0 +1,130 @@
+package com.suse.saltstack.netapi.benchmarks;
+
+import com.suse.saltstack.netapi.calls.modules.Test;
+import com.suse.saltstack.netapi.client.ConnectionFactory;
+import com.suse.saltstack.netapi.client.SaltStackClient;
+import com.suse.saltstack.netapi.client.impl.HttpClientConnectionFactory;
+import com.suse.saltstack.netapi.client.impl.JDKConnectionFactory;
+import com.suse.saltstack.netapi.config.ClientConfig;
+import com.suse.saltstack.netapi.datatypes.target.Glob;
+import com.suse.saltstack.netapi.exception.SaltStackException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a synchronous call end to end, including the HTTP round trip to an
+ * in-process stub server on the loopback interface, which returns the result of the
+ * given number of minions. Compares the connection factories of the client.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallSyncBenchmark {
+
+    /** The connection factory of the client */
+    @Param({"httpclient", "jdk"})
+    public String connectionFactory;
+
+    /** Number of minions in the result */
+    @Param({"1", "10000"})
+    public int minions;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private SaltStackClient client;
+    private byte[] response;
+
+    /**
+     * Start the server and create the client.
+     *
+     * @throws IOException if the server cannot be started
+     */
+    @Setup
+    public void setup() throws IOException {
+        StringBuilder result = new StringBuilder("{\"return\": [{");
+        for (String id : Fixtures.ids(minions)) {
+            result.append('"').append(id).append("\": true, ");
+        }
+        result.setLength(result.length() - 2);
+        response = result.append("}]}").toString().getBytes(StandardCharsets.UTF_8);
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::respond);
+        serverExecutor = Executors.newFixedThreadPool(2);
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        ConnectionFactory factory = connectionFactory.equals("jdk") ?
+                new JDKConnectionFactory() : new HttpClientConnectionFactory();
+        client = new SaltStackClient(URI.create("http://localhost:" +
+                server.getAddress().getPort()), factory);
+        client.getConfig().put(ClientConfig.TOKEN, "f248284b655724ca8a86bcab4b8df608");
+    }
+
+    /**
+     * Stop the server.
+     */
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    /**
+     * Call test.ping on all minions.
+     *
+     * @return the result
+     * @throws SaltStackException if the call fails
+     */
+    @Benchmark
+    public Map<String, Boolean> callSync() throws SaltStackException {
+        return client.callSync(Test.ping(), Glob.ALL);
+    }
+
+    /**
+     * Consume the request and send the result.
+     *
+     * @param exchange the exchange
+     * @throws IOException if the connection fails
+     */
+    private void respond(HttpExchange exchange) throws IOException {
+        byte[] buffer = new byte[8192];
+        try (InputStream in = exchange.getRequestBody()) {
+            while (in.read(buffer) >= 0) {
+                // Discard the request
+            }
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.suse.saltstack.netapi.benchmarks;
+
+import com.suse.saltstack.netapi.datatypes.Event;
+import com.suse.saltstack.netapi.event.MessageAssembler;
+import com.suse.saltstack.netapi.exception.MessageTooBigException;
+import com.suse.saltstack.netapi.parser.JsonParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares assembling and parsing events received in several WebSocket frames using
+ * the {@link MessageAssembler} with the previous implementation based on a
+ * {@link StringBuilder}. Run with {@code -prof gc} to see the allocation per event
+ * ({@code gc.alloc.rate.norm}). The {@link MessageAssembler} decodes the event data
+ * lazily, {@link #messageAssemblerWithData()} includes the cost of decoding it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventAssemblyBenchmark {
+
+    /** Size of the event data in characters */
+    @Param({"512", "8192"})
+    public int eventSize;
+
+    /** Size of the frames the event is split into in characters */
+    @Param({"1024"})
+    public int frameSize;
+
+    private String[] frames;
+    private MessageAssembler assembler;
+    private StringBuilderAssembler stringBuilderAssembler;
+
+    /**
+     * Build a job return event of the configured size and split it into frames.
+     */
+    @Setup
+    public void setup() {
+        StringBuilder data = new StringBuilder();
+        while (data.length() < eventSize) {
+            data.append("line ").append(data.length()).append(" of the output\\n");
+        }
+        String message = "data: {\"tag\": \"salt/job/20160101000000000001/ret/minion1\", " +
+                "\"data\": {\"jid\": \"20160101000000000001\", \"id\": \"minion1\", " +
+                "\"return\": \"" + data + "\", \"retcode\": 0, \"success\": true, " +
+                "\"fun\": \"cmd.run\", \"_stamp\": \"2016-01-01T00:00:00.000000\"}}";
+
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < message.length(); i += frameSize) {
+            parts.add(message.substring(i, Math.min(message.length(), i + frameSize)));
+        }
+        frames = parts.toArray(new String[parts.size()]);
+        assembler = new MessageAssembler(Integer.MAX_VALUE);
+        stringBuilderAssembler = new StringBuilderAssembler();
+    }
+
+    /**
+     * Assemble and parse the event using the {@link MessageAssembler}.
+     *
+     * @return the event
+     * @throws MessageTooBigException never
+     */
+    @Benchmark
+    public Event messageAssembler() throws MessageTooBigException {
+        Event event = null;
+        for (int i = 0; i < frames.length; i++) {
+            event = assembler.append(frames[i], i == frames.length - 1);
+        }
+        return event;
+    }
+
+    /**
+     * Assemble and parse the event using the {@link MessageAssembler} and decode its
+     * data, as a listener interested in the event would.
+     *
+     * @return the event data
+     * @throws MessageTooBigException never
+     */
+    @Benchmark
+    public Map<String, Object> messageAssemblerWithData() throws MessageTooBigException {
+        return messageAssembler().getData();
+    }
+
+    /**
+     * Assemble and parse the event using a {@link StringBuilder}.
+     *
+     * @return the event
+     */
+    @Benchmark
+    public Event stringBuilder() {
+        Event event = null;
+        for (int i = 0; i < frames.length; i++) {
+            event = stringBuilderAssembler.append(frames[i], i == frames.length - 1);
+        }
+        return event;
+    }
+
+    /**
+     * The message assembly as it was done by the event stream before the
+     * {@link MessageAssembler} was introduced, kept as a baseline.
+     */
+    private static class StringBuilderAssembler {
+
+        private final int defaultBufferSize = 0x400;
+        private final StringBuilder messageBuffer = new StringBuilder(defaultBufferSize);
+
+        Event append(String partialMessage, boolean last) {
+            if (!last) {
+                messageBuffer.append(partialMessage);
+                return null;
+            }
+
+            String message;
+            if (messageBuffer.length() == 0) {
+                message = partialMessage;
+            } else {
+                messageBuffer.append(partialMessage);
+                message = messageBuffer.toString();
+
+                // Reset the size to the defaultBufferSize and empty the buffer
+                messageBuffer.setLength(defaultBufferSize);
+                messageBuffer.trimToSize();
+                messageBuffer.setLength(0);
+            }
+
+            if (message.equals("server received message")) {
+                return null;
+            }
+            return JsonParser.EVENTS.parse(message.substring(6));
+        }
+    }
+}
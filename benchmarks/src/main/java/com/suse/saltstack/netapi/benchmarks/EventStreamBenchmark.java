@@ -0,0 +1,161 @@
+package com.suse.saltstack.netapi.benchmarks;
+
+import com.suse.saltstack.netapi.config.ClientConfig;
+import com.suse.saltstack.netapi.datatypes.Event;
+import com.suse.saltstack.netapi.event.EventListener;
+import com.suse.saltstack.netapi.event.EventStream;
+import com.suse.saltstack.netapi.event.TagFilter;
+import com.suse.saltstack.netapi.exception.MessageTooBigException;
+import com.suse.saltstack.netapi.exception.SaltStackException;
+
+import org.glassfish.tyrus.server.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.websocket.CloseReason;
+import javax.websocket.DeploymentException;
+import javax.websocket.OnMessage;
+import javax.websocket.server.ServerEndpoint;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures handling an event received on the WebSocket by
+ * {@link EventStream#onMessage(String, boolean)}: assembling the frames, parsing the
+ * event and dispatching it to listeners subscribed with tag filters, only one of which
+ * matches. The stream is connected to an idle in-process WebSocket server, the frames
+ * are passed to the stream directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventStreamBenchmark {
+
+    /** Number of minions targeted by the event, determining its size */
+    @Param({"10", "1000"})
+    public int minions;
+
+    /** Number of listeners subscribed to distinct tags */
+    @Param({"1", "100"})
+    public int listeners;
+
+    /** Size of the frames the event is split into in characters */
+    @Param({"1024"})
+    public int frameSize;
+
+    private Server server;
+    private EventStream eventStream;
+    private String[] frames;
+    private Blackhole blackhole;
+
+    /**
+     * Start the server, connect the stream and subscribe the listeners.
+     *
+     * @param blackholeIn consumes the events received by the listeners
+     * @throws IOException if no port is available
+     * @throws DeploymentException if the server cannot be started
+     * @throws SaltStackException if the stream cannot be connected
+     */
+    @Setup
+    public void setup(Blackhole blackholeIn) throws IOException, DeploymentException,
+            SaltStackException {
+        blackhole = blackholeIn;
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new Server("localhost", port, "/ws", null, IdleEndpoint.class);
+        server.start();
+
+        ClientConfig config = new ClientConfig();
+        config.put(ClientConfig.URL, URI.create("http://localhost:" + port));
+        config.put(ClientConfig.TOKEN, "token");
+        eventStream = new EventStream(config);
+        for (int i = 0; i < listeners - 1; i++) {
+            eventStream.addEventListener(new ConsumingListener(),
+                    TagFilter.glob("salt/job/*/ret/minion-" + i));
+        }
+        eventStream.addEventListener(new ConsumingListener(),
+                TagFilter.glob("salt/job/*/new"));
+
+        String message = "data: " + Fixtures.newJobEvent(minions);
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < message.length(); i += frameSize) {
+            parts.add(message.substring(i, Math.min(message.length(), i + frameSize)));
+        }
+        frames = parts.toArray(new String[parts.size()]);
+    }
+
+    /**
+     * Close the stream and stop the server.
+     *
+     * @throws IOException if closing the stream fails
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        eventStream.close();
+        server.stop();
+    }
+
+    /**
+     * Pass the frames of the event to the stream.
+     *
+     * @throws MessageTooBigException never
+     */
+    @Benchmark
+    public void onMessage() throws MessageTooBigException {
+        for (int i = 0; i < frames.length; i++) {
+            eventStream.onMessage(frames[i], i == frames.length - 1);
+        }
+    }
+
+    /**
+     * Listener decoding the data of the events it receives.
+     */
+    private class ConsumingListener implements EventListener {
+
+        @Override
+        public void notify(Event event) {
+            blackhole.consume(event.getData());
+        }
+
+        @Override
+        public void eventStreamClosed(CloseReason closeReason) {
+        }
+    }
+
+    /**
+     * WebSocket endpoint accepting the stream without sending anything.
+     */
+    @ServerEndpoint("/{token}")
+    public static class IdleEndpoint {
+
+        /**
+         * Ignore the messages of the client.
+         *
+         * @param message the message
+         */
+        @OnMessage
+        public void onMessage(String message) {
+        }
+    }
+}
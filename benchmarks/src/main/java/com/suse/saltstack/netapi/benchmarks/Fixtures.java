@@ -0,0 +1,153 @@
+package com.suse.saltstack.netapi.benchmarks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Responses of the unit test fixtures scaled up to a given number of minions, so the
+ * benchmarks measure the parsing of realistic, large responses.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * Return the login response.
+     *
+     * @return the response
+     */
+    static String token() {
+        return load("/login_response.json").toString();
+    }
+
+    /**
+     * Return a response of /jobs listing the given number of jobs.
+     *
+     * @param jobs the number of jobs
+     * @return the response
+     */
+    static String jobs(int jobs) {
+        JsonObject response = load("/jobs_response.json");
+        replicate(firstReturn(response), jobs);
+        return response.toString();
+    }
+
+    /**
+     * Return a response of /jobs/&lt;jid&gt; containing the results of the given number
+     * of minions.
+     *
+     * @param minions the number of minions
+     * @return the response
+     */
+    static String jobResults(int minions) {
+        JsonObject response = load("/run_response.json");
+        replicate(firstReturn(response), minions);
+        JsonObject info = response.getAsJsonArray("info").get(0).getAsJsonObject();
+        replicate(info.getAsJsonObject("Result"), minions);
+        JsonArray ids = new JsonArray();
+        for (Map.Entry<String, JsonElement> minion :
+                info.getAsJsonObject("Result").entrySet()) {
+            ids.add(new JsonPrimitive(minion.getKey()));
+        }
+        info.add("Minions", ids);
+        return response.toString();
+    }
+
+    /**
+     * Return a response of /minions containing the grains of the given number of
+     * minions.
+     *
+     * @param minions the number of minions
+     * @return the response
+     */
+    static String minions(int minions) {
+        JsonObject response = load("/get_minions_response.json");
+        replicate(firstReturn(response), minions);
+        return response.toString();
+    }
+
+    /**
+     * Return the data of a new job event targeting the given number of minions, as
+     * received on the event stream without the {@code data: } prefix.
+     *
+     * @param minions the number of minions
+     * @return the event
+     */
+    static String newJobEvent(int minions) {
+        JsonObject event = new JsonParser().parse("{\"tag\": \"salt/job/" +
+                "20150505113307407682/new\", \"data\": {\"tgt_type\": \"glob\", " +
+                "\"jid\": \"20150505113307407682\", \"tgt\": \"*\", \"_stamp\": " +
+                "\"2015-05-05T18:33:07.408428\", \"user\": \"gaisford\", \"arg\": " +
+                "[\"i3\"], \"fun\": \"pkg.install\"}}").getAsJsonObject();
+        event.getAsJsonObject("data").add("minions", minionIds(minions));
+        return event.toString();
+    }
+
+    /**
+     * Return the ids of the given number of minions.
+     *
+     * @param minions the number of minions
+     * @return the ids
+     */
+    static List<String> ids(int minions) {
+        List<String> ids = new ArrayList<>(minions);
+        for (int i = 0; i < minions; i++) {
+            ids.add("minion-" + i);
+        }
+        return ids;
+    }
+
+    private static JsonArray minionIds(int minions) {
+        JsonArray array = new JsonArray();
+        for (String id : ids(minions)) {
+            array.add(new JsonPrimitive(id));
+        }
+        return array;
+    }
+
+    private static JsonObject firstReturn(JsonObject response) {
+        return response.getAsJsonArray("return").get(0).getAsJsonObject();
+    }
+
+    /**
+     * Replace the entries of the given object with copies of its first entry, keyed by
+     * the key of the first entry followed by a number.
+     *
+     * @param object the object
+     * @param size the number of entries
+     */
+    private static void replicate(JsonObject object, int size) {
+        Map.Entry<String, JsonElement> first = object.entrySet().iterator().next();
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+            keys.add(entry.getKey());
+        }
+        keys.forEach(object::remove);
+        for (int i = 0; i < size; i++) {
+            object.add(first.getKey() + "-" + i, first.getValue());
+        }
+    }
+
+    private static JsonObject load(String name) {
+        try (InputStream in = Fixtures.class.getResourceAsStream(name);
+                Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return new JsonParser().parse(reader).getAsJsonObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.suse.saltstack.netapi.benchmarks;
+
+import com.suse.saltstack.netapi.datatypes.target.GlobMatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Compares matching a glob target against the ids of all accepted minions using the
+ * {@link GlobMatcher} with a translation of the glob to a {@link Pattern}. Compiling
+ * the pattern is included, as a target is matched once per request. The
+ * {@link GlobMatcher} is measured both scanning all ids and on a sorted array, where
+ * only the ids starting with the literal prefix of the glob are matched.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GlobMatchBenchmark {
+
+    /** Number of minion ids */
+    @Param({"50000"})
+    public int minions;
+
+    /** The glob to match, with and without a literal prefix */
+    @Param({"web-ams-1*", "*-ams-[1-3]?.example.com", "*"})
+    public String glob;
+
+    private String[] ids;
+    private String[] sortedIds;
+
+    /**
+     * Create ids like {@code web-ams-123.example.com} in random order.
+     */
+    @Setup
+    public void setup() {
+        String[] roles = {"web", "db", "cache", "worker"};
+        String[] sites = {"ams", "fra", "nue", "prg", "slc"};
+        List<String> list = new ArrayList<>(minions);
+        for (int i = 0; list.size() < minions; i++) {
+            list.add(roles[i % roles.length] + "-" + sites[i / roles.length %
+                    sites.length] + "-" + i / (roles.length * sites.length) +
+                    ".example.com");
+        }
+        Collections.shuffle(list, new Random(42));
+        ids = list.toArray(new String[list.size()]);
+        sortedIds = ids.clone();
+        Arrays.sort(sortedIds);
+    }
+
+    /**
+     * Translate the glob to a regular expression and match all ids.
+     *
+     * @return the matched ids
+     */
+    @Benchmark
+    public List<String> regex() {
+        Pattern pattern = Pattern.compile(toRegex(glob));
+        List<String> matched = new ArrayList<>();
+        for (String id : ids) {
+            if (pattern.matcher(id).matches()) {
+                matched.add(id);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Compile the glob and match all ids.
+     *
+     * @return the matched ids
+     */
+    @Benchmark
+    public List<String> globMatcher() {
+        GlobMatcher matcher = GlobMatcher.compile(glob);
+        List<String> matched = new ArrayList<>();
+        for (String id : ids) {
+            if (matcher.matches(id)) {
+                matched.add(id);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Compile the glob and match the sorted ids starting with its prefix.
+     *
+     * @return the matched ids
+     */
+    @Benchmark
+    public List<String> globMatcherSorted() {
+        return GlobMatcher.compile(glob).filter(sortedIds);
+    }
+
+    /**
+     * Translate a glob to a regular expression, quoting everything but wildcards and
+     * sets.
+     *
+     * @param glob the glob
+     * @return the regular expression
+     */
+    private static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        boolean inSet = false;
+        for (char c : glob.toCharArray()) {
+            if (inSet) {
+                regex.append(c == '!' && regex.charAt(regex.length() - 1) == '[' ?
+                        '^' : c);
+                inSet = c != ']';
+            } else if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else if (c == '[') {
+                regex.append(c);
+                inSet = true;
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return regex.toString();
+    }
+}
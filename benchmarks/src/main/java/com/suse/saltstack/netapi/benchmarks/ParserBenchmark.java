@@ -0,0 +1,88 @@
+package com.suse.saltstack.netapi.benchmarks;
+
+import com.suse.saltstack.netapi.parser.JsonParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing responses with the {@link JsonParser}s of the client, reading them
+ * from a stream like the connections do. The responses are the fixtures of the unit
+ * tests scaled up to the given number of minions (or jobs); the login response does not
+ * depend on it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    /** The parser */
+    @Param({"TOKEN", "JOBS", "JOB_RESULTS", "RETMAPS", "EVENTS"})
+    public String parser;
+
+    /** Number of minions in the response */
+    @Param({"10", "10000"})
+    public int minions;
+
+    private JsonParser<?> jsonParser;
+    private byte[] response;
+
+    /**
+     * Create the response for the parser.
+     */
+    @Setup
+    public void setup() {
+        String json;
+        switch (parser) {
+            case "TOKEN":
+                jsonParser = JsonParser.TOKEN;
+                json = Fixtures.token();
+                break;
+            case "JOBS":
+                jsonParser = JsonParser.JOBS;
+                json = Fixtures.jobs(minions);
+                break;
+            case "JOB_RESULTS":
+                jsonParser = JsonParser.JOB_RESULTS;
+                json = Fixtures.jobResults(minions);
+                break;
+            case "RETMAPS":
+                jsonParser = JsonParser.RETMAPS;
+                json = Fixtures.minions(minions);
+                break;
+            case "EVENTS":
+                jsonParser = JsonParser.EVENTS;
+                json = Fixtures.newJobEvent(minions);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown parser: " + parser);
+        }
+        response = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parse the response.
+     *
+     * @return the result
+     */
+    @Benchmark
+    public Object parse() {
+        return jsonParser.parse(new ByteArrayInputStream(response));
+    }
+}
@@ -0,0 +1,104 @@
+package com.suse.saltstack.netapi.benchmarks;
+
+import com.suse.saltstack.netapi.config.ClientConfig;
+import com.suse.saltstack.netapi.config.ConfigSnapshot;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares preparing a request with the endpoint resolved against the configured URL on
+ * every request to using the endpoints cached by the {@link ConfigSnapshot}, for a fixed
+ * endpoint and an endpoint with a parameter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestPreparationBenchmark {
+
+    /** The endpoint of the request */
+    @Param({"/minions", "/minions/minion1"})
+    public String endpoint;
+
+    private ClientConfig config;
+
+    /**
+     * Configure the URL and token.
+     */
+    @Setup
+    public void setup() {
+        config = new ClientConfig();
+        config.put(ClientConfig.URL, URI.create("https://salt.example.com:8000"));
+        config.put(ClientConfig.TOKEN, "f248284b655724ca8a86bcab4b8df608ebf5b08b");
+    }
+
+    /**
+     * Resolve the endpoint as the connections did before the endpoints were cached.
+     *
+     * @return the URI
+     */
+    @Benchmark
+    public URI resolve() {
+        return config.get(ClientConfig.URL).resolve(endpoint);
+    }
+
+    /**
+     * Resolve the endpoint using the cache of the snapshot.
+     *
+     * @return the URI
+     */
+    @Benchmark
+    public URI resolveCached() {
+        return config.snapshot().resolve(endpoint);
+    }
+
+    /**
+     * Prepare a request with the endpoint resolved on every request.
+     *
+     * @return the request
+     */
+    @Benchmark
+    public HttpUriRequest prepareRequest() {
+        return prepare(config.get(ClientConfig.URL).resolve(endpoint),
+                config.get(ClientConfig.TOKEN));
+    }
+
+    /**
+     * Prepare a request with the endpoint resolved using the cache of the snapshot.
+     *
+     * @return the request
+     */
+    @Benchmark
+    public HttpUriRequest prepareRequestCached() {
+        ConfigSnapshot snapshot = config.snapshot();
+        return prepare(snapshot.resolve(endpoint), snapshot.get(ClientConfig.TOKEN));
+    }
+
+    /**
+     * Build a request the way the HttpClient connection does.
+     */
+    private static HttpUriRequest prepare(URI uri, String token) {
+        HttpUriRequest httpRequest = new HttpGet(uri);
+        httpRequest.addHeader(HttpHeaders.ACCEPT, "application/json");
+        httpRequest.addHeader("X-Auth-Token", token);
+        return httpRequest;
+    }
+}
@@ -0,0 +1,128 @@
+package com.suse.saltstack.netapi.loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the thread count and heap usage of the JVM while measuring and counts the
+ * garbage collections in between.
+ */
+class JvmSampler {
+
+    private static final long INTERVAL_MILLIS = 100;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final ScheduledExecutorService sampler =
+            Executors.newSingleThreadScheduledExecutor(JvmSampler::daemon);
+
+    private long startGcCount;
+    private long startGcMillis;
+    private volatile long maxHeapUsed;
+    private int peakThreads;
+    private long gcCount;
+    private long gcMillis;
+
+    /**
+     * Create a daemon thread for sampling.
+     *
+     * @param runnable the sampling task
+     * @return the thread
+     */
+    private static Thread daemon(Runnable runnable) {
+        Thread thread = new Thread(runnable, "jvm-sampler");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Start sampling.
+     */
+    void start() {
+        startGcCount = gcCount();
+        startGcMillis = gcMillis();
+        threads.resetPeakThreadCount();
+        sampler.scheduleAtFixedRate(this::sample, 0, INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop sampling.
+     */
+    void stop() {
+        sampler.shutdownNow();
+        sample();
+        peakThreads = threads.getPeakThreadCount();
+        gcCount = gcCount() - startGcCount;
+        gcMillis = gcMillis() - startGcMillis;
+    }
+
+    /**
+     * Record the current heap usage.
+     */
+    private void sample() {
+        maxHeapUsed = Math.max(maxHeapUsed, memory.getHeapMemoryUsage().getUsed());
+    }
+
+    /**
+     * @return the total number of collections of all collectors
+     */
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(gc.getCollectionCount(), 0);
+        }
+        return count;
+    }
+
+    /**
+     * @return the total collection time of all collectors in milliseconds
+     */
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(gc.getCollectionTime(), 0);
+        }
+        return millis;
+    }
+
+    /**
+     * @return the current number of live threads
+     */
+    int getThreadCount() {
+        return threads.getThreadCount();
+    }
+
+    /**
+     * @return the peak number of live threads while sampling
+     */
+    int getPeakThreads() {
+        return peakThreads;
+    }
+
+    /**
+     * @return the largest heap usage sampled in bytes
+     */
+    long getMaxHeapUsed() {
+        return maxHeapUsed;
+    }
+
+    /**
+     * @return the number of garbage collections while sampling
+     */
+    long getGcCount() {
+        return gcCount;
+    }
+
+    /**
+     * @return the time spent in garbage collections while sampling in milliseconds
+     */
+    long getGcMillis() {
+        return gcMillis;
+    }
+}
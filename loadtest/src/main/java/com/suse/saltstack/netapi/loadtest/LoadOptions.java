@@ -0,0 +1,228 @@
+package com.suse.saltstack.netapi.loadtest;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Options of a load test, parsed from {@code --name value} command line arguments.
+ */
+final class LoadOptions {
+
+    /** The workloads: blocking calls, or asynchronous calls awaiting the return events */
+    static final List<String> WORKLOADS = Arrays.asList("sync", "async");
+
+    /** The connection factories to compare */
+    static final List<String> FACTORIES = Arrays.asList("httpclient", "jdk", "httpasync");
+
+    private int minions = 50;
+    private String target = "*";
+    private int concurrency = 500;
+    private int connections;
+    private int streams = 4;
+    private int listeners = 250;
+    private int warmup = 5;
+    private int duration = 30;
+    private int latency = 2;
+    private int minJobDuration;
+    private int maxJobDuration = 50;
+    private int returnSize = 64;
+    private List<String> workloads = WORKLOADS;
+    private List<String> factories = Arrays.asList("httpclient", "jdk");
+
+    private LoadOptions() {
+    }
+
+    /**
+     * Parse the given command line arguments.
+     *
+     * @param args the arguments
+     * @return the options
+     * @throws IllegalArgumentException if an argument is unknown or invalid
+     */
+    static LoadOptions parse(String[] args) {
+        LoadOptions options = new LoadOptions();
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value of " + args[i]);
+            }
+            options.set(args[i], args[i + 1]);
+        }
+        if (options.connections == 0) {
+            options.connections = options.concurrency;
+        }
+        if (options.streams < 0 || options.warmup < 0 || options.latency < 0) {
+            throw new IllegalArgumentException("Negative stream count or time");
+        }
+        if (options.workloads.contains("async") && options.streams < 1) {
+            throw new IllegalArgumentException("The async workload needs an event stream");
+        }
+        return options;
+    }
+
+    /**
+     * Set an option.
+     *
+     * @param name the option name including the leading dashes
+     * @param value the value
+     */
+    private void set(String name, String value) {
+        switch (name) {
+            case "--minions":
+                minions = positive(name, value);
+                break;
+            case "--target":
+                target = value;
+                break;
+            case "--concurrency":
+                concurrency = positive(name, value);
+                break;
+            case "--connections":
+                connections = positive(name, value);
+                break;
+            case "--streams":
+                streams = Integer.parseInt(value);
+                break;
+            case "--listeners":
+                listeners = positive(name, value);
+                break;
+            case "--warmup":
+                warmup = Integer.parseInt(value);
+                break;
+            case "--duration":
+                duration = positive(name, value);
+                break;
+            case "--latency":
+                latency = Integer.parseInt(value);
+                break;
+            case "--job-duration":
+                String[] range = value.split("-", 2);
+                minJobDuration = Integer.parseInt(range[0]);
+                maxJobDuration = range.length > 1 ?
+                        Integer.parseInt(range[1]) : minJobDuration;
+                break;
+            case "--return-size":
+                returnSize = Integer.parseInt(value);
+                break;
+            case "--workloads":
+                workloads = subset(name, value, WORKLOADS);
+                break;
+            case "--factories":
+                factories = subset(name, value, FACTORIES);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option: " + name);
+        }
+    }
+
+    /**
+     * Parse a positive number.
+     *
+     * @param name the option name
+     * @param value the value
+     * @return the number
+     */
+    private static int positive(String name, String value) {
+        int number = Integer.parseInt(value);
+        if (number < 1) {
+            throw new IllegalArgumentException(name + " must be positive: " + value);
+        }
+        return number;
+    }
+
+    /**
+     * Parse a comma separated list of names out of the given ones.
+     *
+     * @param name the option name
+     * @param value the value
+     * @param allowed the allowed names
+     * @return the names
+     */
+    private static List<String> subset(String name, String value, List<String> allowed) {
+        List<String> names = Arrays.asList(value.split(","));
+        for (String n : names) {
+            if (!allowed.contains(n)) {
+                throw new IllegalArgumentException(name + " must be out of " + allowed +
+                        ": " + n);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Return the usage of the command line options.
+     *
+     * @return the usage
+     */
+    static String usage() {
+        return "Options:\n" +
+                "  --minions N           synthetic minions of the fake salt-api (50)\n" +
+                "  --target GLOB         target of the calls (*)\n" +
+                "  --concurrency N       calls in flight, one thread each (500)\n" +
+                "  --connections N       connection pool size (concurrency)\n" +
+                "  --streams N           event streams (4)\n" +
+                "  --listeners N         salt/job/ listeners per stream (250)\n" +
+                "  --warmup SECONDS      time before measuring (5)\n" +
+                "  --duration SECONDS    measured time (30)\n" +
+                "  --latency MS          delay of every response (2)\n" +
+                "  --job-duration MS-MS  time until a minion returns (0-50)\n" +
+                "  --return-size CHARS   size of results of unknown functions (64)\n" +
+                "  --workloads LIST      out of " + WORKLOADS + " (all)\n" +
+                "  --factories LIST      out of " + FACTORIES + " (httpclient,jdk)";
+    }
+
+    int getMinions() {
+        return minions;
+    }
+
+    String getTarget() {
+        return target;
+    }
+
+    int getConcurrency() {
+        return concurrency;
+    }
+
+    int getConnections() {
+        return connections;
+    }
+
+    int getStreams() {
+        return streams;
+    }
+
+    int getListeners() {
+        return listeners;
+    }
+
+    int getWarmup() {
+        return warmup;
+    }
+
+    int getDuration() {
+        return duration;
+    }
+
+    int getLatency() {
+        return latency;
+    }
+
+    int getMinJobDuration() {
+        return minJobDuration;
+    }
+
+    int getMaxJobDuration() {
+        return maxJobDuration;
+    }
+
+    int getReturnSize() {
+        return returnSize;
+    }
+
+    List<String> getWorkloads() {
+        return workloads;
+    }
+
+    List<String> getFactories() {
+        return factories;
+    }
+}
@@ -0,0 +1,107 @@
+package com.suse.saltstack.netapi.loadtest;
+
+import com.suse.saltstack.netapi.metrics.Histogram;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The results of measuring one workload with one connection factory.
+ */
+class LoadReport {
+
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final double BYTES_PER_MB = 1024 * 1024;
+
+    private final String name;
+    private final double seconds;
+    private final Histogram latency;
+    private final long errors;
+    private final long events;
+    private final int idleThreads;
+    private final JvmSampler jvm;
+
+    /**
+     * Create a report.
+     *
+     * @param nameIn the name of the run, e.g. {@code httpclient/sync}
+     * @param secondsIn the measured time in seconds
+     * @param latencyIn the latencies of the successful calls in nanoseconds
+     * @param errorsIn the number of failed calls
+     * @param eventsIn the number of events notified to listeners
+     * @param idleThreadsIn the number of threads before the load started
+     * @param jvmIn the JVM samples of the measured time
+     */
+    LoadReport(String nameIn, double secondsIn, Histogram latencyIn, long errorsIn,
+            long eventsIn, int idleThreadsIn, JvmSampler jvmIn) {
+        name = nameIn;
+        seconds = secondsIn;
+        latency = latencyIn;
+        errors = errorsIn;
+        events = eventsIn;
+        idleThreads = idleThreadsIn;
+        jvm = jvmIn;
+    }
+
+    /**
+     * Format the given reports as a table with one column per report.
+     *
+     * @param reports the reports
+     * @return the table
+     */
+    static String table(List<LoadReport> reports) {
+        StringBuilder table = new StringBuilder();
+        row(table, "", reports, r -> r.name);
+        row(table, "calls/s", reports, r -> format(r.latency.getCount() / r.seconds));
+        row(table, "errors", reports, r -> String.valueOf(r.errors));
+        row(table, "latency p50 (ms)", reports, r -> millis(r.latency, 50));
+        row(table, "latency p99 (ms)", reports, r -> millis(r.latency, 99));
+        row(table, "latency p99.9 (ms)", reports, r -> millis(r.latency, 99.9));
+        row(table, "latency max (ms)", reports,
+                r -> format(r.latency.getMax() / NANOS_PER_MILLI));
+        row(table, "events/s", reports, r -> format(r.events / r.seconds));
+        row(table, "threads idle", reports, r -> String.valueOf(r.idleThreads));
+        row(table, "threads peak", reports, r -> String.valueOf(r.jvm.getPeakThreads()));
+        row(table, "heap used max (MB)", reports,
+                r -> format(r.jvm.getMaxHeapUsed() / BYTES_PER_MB));
+        row(table, "GC count", reports, r -> String.valueOf(r.jvm.getGcCount()));
+        row(table, "GC time (ms)", reports, r -> String.valueOf(r.jvm.getGcMillis()));
+        return table.toString();
+    }
+
+    /**
+     * Append a row to the table.
+     *
+     * @param table the table
+     * @param label the label of the row
+     * @param reports the reports
+     * @param value returns the value of the row for a report
+     */
+    private static void row(StringBuilder table, String label, List<LoadReport> reports,
+            Function<LoadReport, String> value) {
+        table.append(String.format("%-20s", label));
+        reports.forEach(r -> table.append(String.format("%18s", value.apply(r))));
+        table.append('\n');
+    }
+
+    /**
+     * Format a percentile of the given latencies in milliseconds.
+     *
+     * @param histogram the latencies in nanoseconds
+     * @param percentile the percentile
+     * @return the formatted value
+     */
+    private static String millis(Histogram histogram, double percentile) {
+        return format(histogram.getValueAtPercentile(percentile) / NANOS_PER_MILLI);
+    }
+
+    /**
+     * Format a number with one decimal.
+     *
+     * @param value the number
+     * @return the formatted number
+     */
+    private static String format(double value) {
+        return String.format("%.1f", value);
+    }
+}
@@ -0,0 +1,245 @@
+package com.suse.saltstack.netapi.loadtest;
+
+import com.suse.saltstack.netapi.AuthModule;
+import com.suse.saltstack.netapi.calls.LocalAsyncResult;
+import com.suse.saltstack.netapi.calls.modules.Test;
+import com.suse.saltstack.netapi.client.ConnectionFactory;
+import com.suse.saltstack.netapi.client.SaltStackClient;
+import com.suse.saltstack.netapi.client.impl.HttpAsyncClientConnectionFactory;
+import com.suse.saltstack.netapi.client.impl.HttpClientConnectionFactory;
+import com.suse.saltstack.netapi.client.impl.JDKConnectionFactory;
+import com.suse.saltstack.netapi.config.ClientConfig;
+import com.suse.saltstack.netapi.datatypes.Event;
+import com.suse.saltstack.netapi.datatypes.target.Glob;
+import com.suse.saltstack.netapi.event.EventListener;
+import com.suse.saltstack.netapi.event.EventStream;
+import com.suse.saltstack.netapi.event.JobTracker;
+import com.suse.saltstack.netapi.event.TagFilter;
+import com.suse.saltstack.netapi.fake.FakeSaltApi;
+import com.suse.saltstack.netapi.metrics.Histogram;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.websocket.CloseReason;
+
+/**
+ * One run of a workload with one connection factory against a fresh fake salt-api.
+ * <p>
+ * Every in-flight call gets its own thread since the calls of the client block, the
+ * async workload blocks until the return events of all targeted minions have been
+ * received via a {@link JobTracker}.
+ */
+class LoadRun {
+
+    private static final long HIGHEST_NANOS = TimeUnit.MINUTES.toNanos(2);
+    private static final long JOB_TIMEOUT_SECONDS = 60;
+    private static final long STREAM_TIMEOUT_MILLIS = 10000;
+
+    private final LoadOptions options;
+    private final String factoryName;
+    private final String workload;
+    private final Glob target;
+    private final LongAdder events = new LongAdder();
+
+    private volatile boolean running = true;
+    private volatile Phase phase = new Phase();
+
+    /**
+     * The latencies and errors of the calls completed in a phase of the run.
+     */
+    private static class Phase {
+
+        private final Histogram latency = new Histogram(HIGHEST_NANOS);
+        private final LongAdder errors = new LongAdder();
+    }
+
+    /**
+     * Counts the events it is notified of.
+     */
+    private class CountingListener implements EventListener {
+
+        /** {@inheritDoc} */
+        @Override
+        public void notify(Event event) {
+            events.increment();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void eventStreamClosed(CloseReason closeReason) {
+        }
+    }
+
+    /**
+     * Create a run.
+     *
+     * @param optionsIn the options
+     * @param factoryNameIn the connection factory, out of {@link LoadOptions#FACTORIES}
+     * @param workloadIn the workload, out of {@link LoadOptions#WORKLOADS}
+     */
+    LoadRun(LoadOptions optionsIn, String factoryNameIn, String workloadIn) {
+        options = optionsIn;
+        factoryName = factoryNameIn;
+        workload = workloadIn;
+        target = new Glob(optionsIn.getTarget());
+    }
+
+    /**
+     * Run the load and measure it.
+     *
+     * @return the report
+     * @throws Exception if the fake salt-api or the event streams cannot be started
+     */
+    LoadReport run() throws Exception {
+        System.gc();
+        FakeSaltApi api = new FakeSaltApi(0, options.getMinions());
+        api.setLatency(options.getLatency());
+        api.setJobDuration(options.getMinJobDuration(), options.getMaxJobDuration());
+        api.setReturnSize(options.getReturnSize());
+        api.start();
+        ConnectionFactory factory = createFactory();
+        List<EventStream> streams = new ArrayList<>();
+        JobTracker tracker = null;
+        List<Thread> workers = new ArrayList<>();
+        try {
+            SaltStackClient client = new SaltStackClient(api.getUrl(), factory);
+            ClientConfig config = client.getConfig();
+            config.put(ClientConfig.MAX_TOTAL_CONNECTIONS, options.getConnections());
+            config.put(ClientConfig.MAX_CONNECTIONS_PER_ROUTE, options.getConnections());
+            client.login("user", "pass", AuthModule.AUTO);
+
+            for (int i = 0; i < options.getStreams(); i++) {
+                EventStream stream = client.events();
+                streams.add(stream);
+                for (int j = 0; j < options.getListeners(); j++) {
+                    stream.addEventListener(new CountingListener(),
+                            TagFilter.prefix("salt/job/"));
+                }
+            }
+            awaitStreams(api);
+            if ("async".equals(workload)) {
+                tracker = new JobTracker(client, streams.get(0));
+            }
+
+            JvmSampler jvm = new JvmSampler();
+            int idleThreads = jvm.getThreadCount();
+            for (int i = 0; i < options.getConcurrency(); i++) {
+                Thread worker = new Thread(worker(client, tracker), "load-" + i);
+                worker.setDaemon(true);
+                worker.start();
+                workers.add(worker);
+            }
+            Thread.sleep(TimeUnit.SECONDS.toMillis(options.getWarmup()));
+
+            Phase measured = new Phase();
+            phase = measured;
+            events.reset();
+            jvm.start();
+            long start = System.nanoTime();
+            Thread.sleep(TimeUnit.SECONDS.toMillis(options.getDuration()));
+            phase = new Phase();
+            long eventCount = events.sum();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            jvm.stop();
+
+            return new LoadReport(factoryName + "/" + workload, seconds, measured.latency,
+                    measured.errors.sum(), eventCount, idleThreads, jvm);
+        } finally {
+            running = false;
+            for (Thread worker : workers) {
+                worker.join(TimeUnit.SECONDS.toMillis(JOB_TIMEOUT_SECONDS));
+            }
+            if (tracker != null) {
+                tracker.close();
+            }
+            for (EventStream stream : streams) {
+                stream.close();
+            }
+            if (factory instanceof Closeable) {
+                ((Closeable) factory).close();
+            }
+            api.close();
+        }
+    }
+
+    /**
+     * Create the connection factory of this run.
+     *
+     * @return the connection factory
+     */
+    private ConnectionFactory createFactory() {
+        switch (factoryName) {
+            case "httpclient":
+                return new HttpClientConnectionFactory();
+            case "jdk":
+                return new JDKConnectionFactory();
+            case "httpasync":
+                return new HttpAsyncClientConnectionFactory();
+            default:
+                throw new IllegalArgumentException("Unknown factory: " + factoryName);
+        }
+    }
+
+    /**
+     * Wait until the fake salt-api has accepted all event streams.
+     *
+     * @param api the fake salt-api
+     * @throws InterruptedException if interrupted while waiting
+     * @throws TimeoutException if the event streams are not connected in time
+     */
+    private void awaitStreams(FakeSaltApi api)
+            throws InterruptedException, TimeoutException {
+        long deadline = System.currentTimeMillis() + STREAM_TIMEOUT_MILLIS;
+        while (api.getEventStreamCount() < options.getStreams()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new TimeoutException("Event streams not connected");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Return the loop of a worker thread, making one call after the other until the
+     * run ends.
+     *
+     * @param client the client
+     * @param tracker the job tracker of the async workload, or null
+     * @return the loop
+     */
+    private Runnable worker(SaltStackClient client, JobTracker tracker) {
+        return () -> {
+            while (running) {
+                Phase current = phase;
+                long start = System.nanoTime();
+                try {
+                    call(client, tracker);
+                    current.latency.record(System.nanoTime() - start);
+                } catch (Exception e) {
+                    current.errors.increment();
+                }
+            }
+        };
+    }
+
+    /**
+     * Make a single call of the workload.
+     *
+     * @param client the client
+     * @param tracker the job tracker of the async workload, or null
+     * @throws Exception if the call fails
+     */
+    private void call(SaltStackClient client, JobTracker tracker) throws Exception {
+        if (tracker == null) {
+            client.callSync(Test.ping(), target);
+        } else {
+            LocalAsyncResult<Boolean> job = client.callAsync(Test.ping(), target);
+            tracker.track(job, JOB_TIMEOUT_SECONDS, TimeUnit.SECONDS).getResult()
+                    .get(JOB_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+}
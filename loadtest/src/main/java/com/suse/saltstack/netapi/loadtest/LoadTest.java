@@ -0,0 +1,51 @@
+package com.suse.saltstack.netapi.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of the load test jar. Runs every selected workload with every selected
+ * connection factory against an in-process fake salt-api and prints the results side
+ * by side.
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    /**
+     * Run the load test configured by the given command line options.
+     *
+     * @param args the command line options, see {@link LoadOptions#usage()}
+     * @throws Exception if a run fails
+     */
+    public static void main(String[] args) throws Exception {
+        if (Arrays.asList(args).contains("--help")) {
+            System.out.println(LoadOptions.usage());
+            return;
+        }
+        LoadOptions options;
+        try {
+            options = LoadOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadOptions.usage());
+            System.exit(2);
+            return;
+        }
+        // Pool size of the JDK keep-alive cache, the default of 5 would close most
+        // connections of the jdk factory after every call
+        System.setProperty("http.maxConnections", String.valueOf(options.getConnections()));
+
+        List<LoadReport> reports = new ArrayList<>();
+        for (String workload : options.getWorkloads()) {
+            for (String factory : options.getFactories()) {
+                System.out.println("Running " + factory + "/" + workload + "...");
+                reports.add(new LoadRun(options, factory, workload).run());
+            }
+        }
+        System.out.println();
+        System.out.print(LoadReport.table(reports));
+    }
+}
@@ -0,0 +1,107 @@
+package com.suse.saltstack.netapi.calls;
+
+import com.suse.saltstack.netapi.datatypes.target.Target;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A list of execution module calls with their targets that are sent to the API in a
+ * single request, as one lowstate chunk each. Every call added returns an
+ * {@link Entry} that is used to get the typed result of that call from the
+ * {@link com.suse.saltstack.netapi.results.BatchResult}.
+ */
+public class LocalCallBatch {
+
+    private final List<Entry<?>> entries = new ArrayList<>();
+
+    /**
+     * Add a call on the given target to the batch.
+     *
+     * @param call the execution module function to call on the target
+     * @param target the target for the function
+     * @param <R> the result type of the function
+     * @return the entry of the call in this batch
+     */
+    public <R> Entry<R> add(LocalCall<R> call, Target<?> target) {
+        Entry<R> entry = new Entry<>(this, entries.size(), call, target);
+        entries.add(entry);
+        return entry;
+    }
+
+    /**
+     * Return the entries of this batch in the order they were added.
+     *
+     * @return unmodifiable list of entries
+     */
+    public List<Entry<?>> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Return the number of calls in this batch.
+     *
+     * @return the number of calls
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * A call with its target within a batch.
+     *
+     * @param <R> the result type of the function
+     */
+    public static final class Entry<R> {
+
+        private final LocalCallBatch batch;
+        private final int index;
+        private final LocalCall<R> call;
+        private final Target<?> target;
+
+        private Entry(LocalCallBatch batchIn, int indexIn, LocalCall<R> callIn,
+                Target<?> targetIn) {
+            batch = batchIn;
+            index = indexIn;
+            call = callIn;
+            target = targetIn;
+        }
+
+        /**
+         * Return the batch this entry belongs to.
+         *
+         * @return the batch
+         */
+        public LocalCallBatch getBatch() {
+            return batch;
+        }
+
+        /**
+         * Return the position of the call in the batch and its result in the response.
+         *
+         * @return the index
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Return the call.
+         *
+         * @return the call
+         */
+        public LocalCall<R> getCall() {
+            return call;
+        }
+
+        /**
+         * Return the target of the call.
+         *
+         * @return the target
+         */
+        public Target<?> getTarget() {
+            return target;
+        }
+    }
+}
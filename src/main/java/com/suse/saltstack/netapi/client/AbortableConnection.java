@@ -0,0 +1,18 @@
+package com.suse.saltstack.netapi.client;
+
+/**
+ * Connection with a blocking request that can be aborted from another thread, e.g. to
+ * release a pooled connection as soon as an asynchronous request is cancelled, since
+ * blocking socket reads ignore interrupts.
+ *
+ * @param <T> type of result retrieved using this connection
+ */
+public interface AbortableConnection<T> extends Connection<T> {
+
+    /**
+     * Abort the request of this connection. A request in flight fails with a
+     * {@link com.suse.saltstack.netapi.exception.SaltStackException}, a request that
+     * is not yet started fails as soon as it starts.
+     */
+    void abort();
+}
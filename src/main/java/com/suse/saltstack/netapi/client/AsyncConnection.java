@@ -0,0 +1,35 @@
+package com.suse.saltstack.netapi.client;
+
+import com.suse.saltstack.netapi.exception.SaltStackException;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Describes an interface for HTTP connection implementations that do not block the
+ * calling thread while waiting for the response.
+ * @param <T> type of result retrieved using this HTTP connection
+ */
+public interface AsyncConnection<T> extends Connection<T> {
+
+    /**
+     * Send a GET request and parse the result into object of given {@link Type}.
+     * Cancelling the returned future aborts the request.
+     *
+     * @return future completed with the object of type given by resultType, or
+     * completed exceptionally with a {@link SaltStackException} if the request was not
+     * successful
+     */
+    CompletableFuture<T> getResultAsync();
+
+    /**
+     * Send a POST request and parse the result into object of given {@link Type}.
+     * Cancelling the returned future aborts the request.
+     *
+     * @param data the data to send (in JSON format)
+     * @return future completed with the object of type given by resultType, or
+     * completed exceptionally with a {@link SaltStackException} if the request was not
+     * successful
+     */
+    CompletableFuture<T> getResultAsync(String data);
+}
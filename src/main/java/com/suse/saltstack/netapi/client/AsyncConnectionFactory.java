@@ -0,0 +1,22 @@
+package com.suse.saltstack.netapi.client;
+
+import com.suse.saltstack.netapi.config.ClientConfig;
+import com.suse.saltstack.netapi.parser.JsonParser;
+
+/**
+ * Describes an interface for creating instances of a non-blocking HTTP connection
+ * implementation.
+ */
+public interface AsyncConnectionFactory extends ConnectionFactory {
+
+    /**
+     * Create a new {@link AsyncConnection} for a given endpoint and configuration.
+     *
+     * @param endpoint the API endpoint
+     * @param config the configuration
+     * @return object representing a connection to the API
+     */
+    @Override
+    <T> AsyncConnection<T> create(String endpoint, JsonParser<T> parser,
+            ClientConfig config);
+}
@@ -0,0 +1,215 @@
+package com.suse.saltstack.netapi.client;
+
+import com.suse.saltstack.netapi.calls.Call;
+import com.suse.saltstack.netapi.calls.Client;
+import com.suse.saltstack.netapi.exception.SaltStackException;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Collapses identical requests that are in flight at the same time into a single
+ * request, the parsed result is handed to all callers. Requests are identical if they
+ * go to the same endpoint with the same payload, token and parser.
+ * <p>
+ * Only requests without side effects may be coalesced, i.e. GET requests and
+ * synchronous calls of the functions in {@link #READ_ONLY_FUNCTIONS}.
+ */
+class RequestCoalescer {
+
+    /** Functions without side effects, identical calls of these can be coalesced */
+    private static final Set<String> READ_ONLY_FUNCTIONS = new HashSet<>(Arrays.asList(
+            "beacons.list",
+            "grains.has_value", "grains.item", "grains.items", "grains.ls",
+            "jobs.lookup_jid",
+            "key.finger", "key.list_all",
+            "manage.down", "manage.present", "manage.status", "manage.up",
+            "match.compound", "match.glob", "match.grain", "match.list",
+            "minions.connected",
+            "network.interfaces",
+            "pkg.file_dict", "pkg.info_available", "pkg.info_installed",
+            "pkg.list_pkgs", "pkg.search",
+            "status.all_status", "status.cpuinfo", "status.cpustats",
+            "status.diskstats", "status.diskusage", "status.loadavg",
+            "status.meminfo", "status.netdev", "status.netstats",
+            "status.nproc", "status.pid", "status.procs", "status.uptime",
+            "status.version", "status.vmstats", "status.w",
+            "test.module_report", "test.ping", "test.provider",
+            "test.providers", "test.versions_information"));
+
+    /** The requests in flight keyed by endpoint, payload, token and parser */
+    private final Map<List<Object>, CompletableFuture<?>> inFlight =
+            new ConcurrentHashMap<>();
+
+    /** Number of requests that were served by a request already in flight */
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * A request that can be performed synchronously.
+     *
+     * @param <T> the type of the parsed result
+     */
+    @FunctionalInterface
+    interface Request<T> {
+
+        /**
+         * Perform the request.
+         *
+         * @return the parsed result
+         * @throws SaltStackException if anything goes wrong
+         */
+        T execute() throws SaltStackException;
+    }
+
+    /**
+     * Check if the given call has no side effects, so identical calls can be coalesced.
+     * Asynchronous calls start a job each time and are never coalesced.
+     *
+     * @param call the call
+     * @param client the client the call is made with
+     * @return true if the call is read-only
+     */
+    static boolean isReadOnly(Call<?> call, Client client) {
+        return (client == Client.LOCAL || client == Client.RUNNER ||
+                client == Client.WHEEL) &&
+                READ_ONLY_FUNCTIONS.contains(call.getPayload().get("fun"));
+    }
+
+    /**
+     * Return the key identifying a request.
+     *
+     * @param endpoint the endpoint
+     * @param data the payload, may be null
+     * @param token the token, may be null
+     * @param parser the parser for the result
+     * @return the key
+     */
+    static List<Object> key(String endpoint, String data, String token, Object parser) {
+        return Arrays.asList(endpoint, data, token, parser);
+    }
+
+    /**
+     * Perform the given request unless an identical one is in flight, in which case its
+     * result is awaited instead.
+     *
+     * @param key the key identifying the request
+     * @param request the request
+     * @param <T> the type of the parsed result
+     * @return the parsed result
+     * @throws SaltStackException if anything goes wrong
+     */
+    @SuppressWarnings("unchecked")
+    <T> T execute(List<Object> key, Request<T> request) throws SaltStackException {
+        CompletableFuture<T> shared = new CompletableFuture<>();
+        CompletableFuture<?> existing = inFlight.putIfAbsent(key, shared);
+        if (existing != null) {
+            coalesced.increment();
+            return await((CompletableFuture<T>) existing);
+        }
+
+        try {
+            T result = request.execute();
+            shared.complete(result);
+            return result;
+        } catch (SaltStackException | RuntimeException | Error e) {
+            shared.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, shared);
+        }
+    }
+
+    /**
+     * Start the given request unless an identical one is in flight, in which case its
+     * result is used instead. Cancelling the returned future does not abort the request
+     * since other callers might be waiting for it.
+     *
+     * @param key the key identifying the request
+     * @param request starts the request and returns a future for its result
+     * @param <T> the type of the parsed result
+     * @return future containing the parsed result
+     */
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> executeAsync(List<Object> key,
+            Supplier<CompletableFuture<T>> request) {
+        CompletableFuture<T> shared = new CompletableFuture<>();
+        CompletableFuture<?> existing = inFlight.putIfAbsent(key, shared);
+        if (existing != null) {
+            coalesced.increment();
+            return copy((CompletableFuture<T>) existing);
+        }
+
+        CompletableFuture<T> started;
+        try {
+            started = request.get();
+        } catch (RuntimeException e) {
+            inFlight.remove(key, shared);
+            shared.completeExceptionally(e);
+            throw e;
+        }
+        started.whenComplete((result, e) -> complete(key, shared, result, e));
+        return copy(shared);
+    }
+
+    /**
+     * Complete the shared future of a request and stop tracking it as in flight.
+     */
+    private <T> void complete(List<Object> key, CompletableFuture<T> shared, T result,
+            Throwable throwable) {
+        inFlight.remove(key, shared);
+        if (throwable != null) {
+            shared.completeExceptionally(throwable);
+        } else {
+            shared.complete(result);
+        }
+    }
+
+    /**
+     * Return the number of requests that were served by a request already in flight.
+     *
+     * @return the number of coalesced requests
+     */
+    long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Return a future completed like the given one, so that a caller cancelling it does
+     * not affect the other callers.
+     */
+    private static <T> CompletableFuture<T> copy(CompletableFuture<T> shared) {
+        return shared.thenApply(result -> result);
+    }
+
+    /**
+     * Wait for the result of a request performed by another caller.
+     */
+    private static <T> T await(CompletableFuture<T> shared) throws SaltStackException {
+        try {
+            return shared.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SaltStackException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SaltStackException) {
+                throw (SaltStackException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new SaltStackException(cause);
+        }
+    }
+}
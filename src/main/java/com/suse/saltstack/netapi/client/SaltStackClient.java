@@ -8,6 +8,7 @@ import com.suse.saltstack.netapi.calls.Call;
 import com.suse.saltstack.netapi.calls.Client;
 import com.suse.saltstack.netapi.calls.LocalAsyncResult;
 import com.suse.saltstack.netapi.calls.LocalCall;
+import com.suse.saltstack.netapi.calls.LocalCallBatch;
 import com.suse.saltstack.netapi.calls.RunnerAsyncResult;
 import com.suse.saltstack.netapi.calls.RunnerCall;
 import com.suse.saltstack.netapi.calls.WheelAsyncResult;
@@ -22,31 +23,45 @@ import com.suse.saltstack.netapi.datatypes.ScheduledJob;
 import com.suse.saltstack.netapi.datatypes.Token;
 import com.suse.saltstack.netapi.datatypes.cherrypy.Stats;
 import com.suse.saltstack.netapi.datatypes.target.Target;
+import com.suse.saltstack.netapi.event.EventListener;
 import com.suse.saltstack.netapi.event.EventStream;
+import com.suse.saltstack.netapi.event.TokenProvider;
 import com.suse.saltstack.netapi.exception.SaltStackException;
+import com.suse.saltstack.netapi.parser.BatchResultParser;
 import com.suse.saltstack.netapi.parser.JsonParser;
+import com.suse.saltstack.netapi.parser.StreamingResultParser;
+import com.suse.saltstack.netapi.results.BatchResult;
 import com.suse.saltstack.netapi.results.Result;
 import com.suse.saltstack.netapi.results.ResultInfo;
 import com.suse.saltstack.netapi.results.ResultInfoSet;
+import com.suse.saltstack.netapi.utils.ClientUtils;
 
+import java.io.Closeable;
 import java.lang.reflect.Type;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import static com.suse.saltstack.netapi.utils.ClientUtils.parameterizedType;
 
 /**
  * SaltStack API client.
+ * <p>
+ * Closing the client releases the pooled connections of the connection factory it
+ * created itself, a factory passed to the constructor is left open.
  */
-public class SaltStackClient {
+public class SaltStackClient implements Closeable {
 
     /** The configuration object */
     private final ClientConfig config = new ClientConfig();
@@ -54,18 +69,29 @@ public class SaltStackClient {
     /** The connection factory object */
     private final ConnectionFactory connectionFactory;
 
+    /** True if the connection factory has been created by this client */
+    private final boolean ownConnectionFactory;
+
     /** The executor for async operations */
     private final ExecutorService executor;
 
     private final Gson gson = new GsonBuilder().create();
 
+    /** Collapses identical requests in flight if enabled */
+    private final RequestCoalescer coalescer = new RequestCoalescer();
+
     /**
-     * Constructor for connecting to a given URL.
+     * Constructor for connecting to a given URL using an
+     * {@link HttpClientConnectionFactory}. Its requests block, so the {@code *Async}
+     * methods occupy a thread of the executor until the response has been received, see
+     * {@link com.suse.saltstack.netapi.client.impl.HttpAsyncClientConnectionFactory}
+     * for non-blocking requests.
      *
      * @param url the SaltStack URL
      */
     public SaltStackClient(URI url) {
-        this(url, new HttpClientConnectionFactory());
+        this(url, new HttpClientConnectionFactory(), Executors.newCachedThreadPool(),
+                true);
     }
 
     /**
@@ -85,7 +111,7 @@ public class SaltStackClient {
      * @param executor ExecutorService to be used for async operations
      */
     public SaltStackClient(URI url, ExecutorService executor) {
-        this(url, new HttpClientConnectionFactory(), executor);
+        this(url, new HttpClientConnectionFactory(), executor, true);
     }
 
     /**
@@ -97,10 +123,36 @@ public class SaltStackClient {
      */
     public SaltStackClient(URI url, ConnectionFactory connectionFactory,
             ExecutorService executor) {
+        this(url, connectionFactory, executor, false);
+    }
+
+    /**
+     * Constructor for connecting to a given URL using a specific connection factory.
+     *
+     * @param url the SaltStack URL
+     * @param connectionFactory ConnectionFactory implementation
+     * @param executor ExecutorService to be used for async operations
+     * @param ownFactory true if the factory has been created by this client
+     */
+    private SaltStackClient(URI url, ConnectionFactory connectionFactory,
+            ExecutorService executor, boolean ownFactory) {
         // Put the URL in the config
         config.put(ClientConfig.URL, url);
         this.connectionFactory = connectionFactory;
         this.executor = executor;
+        this.ownConnectionFactory = ownFactory;
+    }
+
+    /**
+     * Close the connection factory in case it has been created by this client, requests
+     * fail with an {@link IllegalStateException} afterwards. A connection factory or an
+     * executor passed to the constructor is not closed.
+     */
+    @Override
+    public void close() {
+        if (ownConnectionFactory) {
+            ((HttpClientConnectionFactory) connectionFactory).close();
+        }
     }
 
     /**
@@ -143,21 +195,9 @@ public class SaltStackClient {
      */
     public Token login(final String username, final String password, final AuthModule eauth)
             throws SaltStackException {
-        Map<String, String> props = new LinkedHashMap<>();
-        props.put("username", username);
-        props.put("password", password);
-        props.put("eauth", eauth.getValue());
-
-        String payload = gson.toJson(props);
-
-        Result<List<Token>> result = connectionFactory
-                .create("/login", JsonParser.TOKEN, config)
-                .getResult(payload);
-
-        // For whatever reason they return a list of tokens here, take the first
-        Token token = result.getResult().get(0);
-        config.put(ClientConfig.TOKEN, token.getToken());
-        return token;
+        Result<List<Token>> result = request("/login", JsonParser.TOKEN,
+                loginPayload(username, password, eauth));
+        return storeToken(result);
     }
 
     /**
@@ -170,9 +210,39 @@ public class SaltStackClient {
      * @param eauth the eauth type
      * @return Future containing the authentication token
      */
-    public Future<Token> loginAsync(final String username, final String password,
+    public CompletableFuture<Token> loginAsync(final String username, final String password,
             final AuthModule eauth) {
-        return executor.submit(() -> login(username, password, eauth));
+        return requestAsync("/login", JsonParser.TOKEN,
+                loginPayload(username, password, eauth), this::storeToken);
+    }
+
+    /**
+     * Create the payload for a login request.
+     *
+     * @param username the username
+     * @param password the password
+     * @param eauth the eauth type
+     * @return the login payload
+     */
+    private String loginPayload(String username, String password, AuthModule eauth) {
+        Map<String, String> props = new LinkedHashMap<>();
+        props.put("username", username);
+        props.put("password", password);
+        props.put("eauth", eauth.getValue());
+        return gson.toJson(props);
+    }
+
+    /**
+     * Take the token from the result of a login request and put it in the config.
+     *
+     * @param result the result of a login request
+     * @return the authentication token
+     */
+    private Token storeToken(Result<List<Token>> result) {
+        // For whatever reason they return a list of tokens here, take the first
+        Token token = result.getResult().get(0);
+        config.put(ClientConfig.TOKEN, token.getToken());
+        return token;
     }
 
     /**
@@ -184,14 +254,7 @@ public class SaltStackClient {
      * @throws SaltStackException if anything goes wrong
      */
     public boolean logout() throws SaltStackException {
-        Result<String> stringResult = connectionFactory
-                .create("/logout", JsonParser.STRING, config).getResult("");
-        String logoutMessage = "Your token has been cleared";
-        boolean result = logoutMessage.equals((stringResult.getResult()));
-        if (result) {
-            config.remove(ClientConfig.TOKEN);
-        }
-        return result;
+        return clearToken(request("/logout", JsonParser.STRING, ""));
     }
 
     /**
@@ -201,8 +264,24 @@ public class SaltStackClient {
      *
      * @return Future containing a boolean result, true if logout was successful
      */
-    public Future<Boolean> logoutAsync() {
-        return executor.submit(() -> (Boolean) this.logout());
+    public CompletableFuture<Boolean> logoutAsync() {
+        return requestAsync("/logout", JsonParser.STRING, "", this::clearToken);
+    }
+
+    /**
+     * Remove the token from the config in case the result of a logout request
+     * indicates success.
+     *
+     * @param stringResult the result of a logout request
+     * @return true if the logout was successful, otherwise false
+     */
+    private boolean clearToken(Result<String> stringResult) {
+        String logoutMessage = "Your token has been cleared";
+        boolean result = logoutMessage.equals((stringResult.getResult()));
+        if (result) {
+            config.remove(ClientConfig.TOKEN);
+        }
+        return result;
     }
 
     /**
@@ -216,8 +295,7 @@ public class SaltStackClient {
      *     Grains</a>
      */
     public Map<String, Map<String, Object>> getMinions() throws SaltStackException {
-        return connectionFactory.create("/minions", JsonParser.RETMAPS, config)
-                .getResult().getResult().get(0);
+        return request("/minions", JsonParser.RETMAPS, null).getResult().get(0);
     }
 
     /**
@@ -230,9 +308,10 @@ public class SaltStackClient {
      * @see <a href="http://docs.saltstack.com/en/latest/topics/targeting/grains.html">
      *     Grains</a>
      */
-    public Future<Map<String, Map<String, Object>>> getMinionsAsync()
+    public CompletableFuture<Map<String, Map<String, Object>>> getMinionsAsync()
             throws SaltStackException {
-        return executor.submit(this::getMinions);
+        return requestAsync("/minions", JsonParser.RETMAPS, null,
+                result -> result.getResult().get(0));
     }
 
     /**
@@ -246,8 +325,8 @@ public class SaltStackClient {
      *     Grains</a>
      */
     public Map<String, Object> getMinionDetails(String minionId) throws SaltStackException {
-        return connectionFactory.create("/minions/" + minionId, JsonParser.RETMAPS, config)
-                .getResult().getResult().get(0).get(minionId);
+        return request("/minions/" + minionId, JsonParser.RETMAPS, null)
+                .getResult().get(0).get(minionId);
     }
 
     /**
@@ -260,9 +339,10 @@ public class SaltStackClient {
      * @see <a href="http://docs.saltstack.com/en/latest/topics/targeting/grains.html">
      *     Grains</a>
      */
-    public Future<Map<String, Object>> getMinionDetailsAsync(final String minionId)
-            throws SaltStackException {
-        return executor.submit(() -> getMinionDetails(minionId));
+    public CompletableFuture<Map<String, Object>> getMinionDetailsAsync(
+            final String minionId) throws SaltStackException {
+        return requestAsync("/minions/" + minionId, JsonParser.RETMAPS, null,
+                result -> result.getResult().get(0).get(minionId));
     }
 
     /**
@@ -280,19 +360,9 @@ public class SaltStackClient {
      */
     public <T> ScheduledJob startCommand(final Target<T> target, final String function,
             List<Object> args, Map<String, Object> kwargs) throws SaltStackException {
-        Map<String, Object> props = new LinkedHashMap<>();
-        props.put("tgt", target.getTarget());
-        props.put("expr_form", target.getType());
-        props.put("fun", function);
-        props.put("arg", args);
-        props.put("kwarg", kwargs);
-
-        String payload = gson.toJson(Collections.singleton(props));
-
-        // Connect to the minions endpoint and send the above lowstate data
-        Result<List<ScheduledJob>> result = connectionFactory
-                .create("/minions", JsonParser.SCHEDULED_JOB,  config)
-                .getResult(payload);
+        // Connect to the minions endpoint and send the lowstate data
+        Result<List<ScheduledJob>> result = request("/minions", JsonParser.SCHEDULED_JOB,
+                startCommandPayload(target, function, args, kwargs));
 
         // They return a list of tokens here, we take the first
         return result.getResult().get(0);
@@ -310,10 +380,32 @@ public class SaltStackClient {
      * @param kwargs map containing keyword arguments
      * @return Future containing the scheduled job
      */
-    public <T> Future<ScheduledJob> startCommandAsync(final Target<T> target,
+    public <T> CompletableFuture<ScheduledJob> startCommandAsync(final Target<T> target,
             final String function, final List<Object> args,
             final Map<String, Object> kwargs) {
-        return executor.submit(() -> startCommand(target, function, args, kwargs));
+        return requestAsync("/minions", JsonParser.SCHEDULED_JOB,
+                startCommandPayload(target, function, args, kwargs),
+                result -> result.getResult().get(0));
+    }
+
+    /**
+     * Create the lowstate payload for starting an execution command.
+     *
+     * @param target the target
+     * @param function the function to execute
+     * @param args list of non-keyword arguments
+     * @param kwargs map containing keyword arguments
+     * @return the lowstate payload
+     */
+    private <T> String startCommandPayload(Target<T> target, String function,
+            List<Object> args, Map<String, Object> kwargs) {
+        Map<String, Object> props = new LinkedHashMap<>();
+        props.put("tgt", target.getTarget());
+        props.put("expr_form", target.getType());
+        props.put("fun", function);
+        props.put("arg", args);
+        props.put("kwarg", kwargs);
+        return gson.toJson(Collections.singleton(props));
     }
 
     /**
@@ -339,9 +431,7 @@ public class SaltStackClient {
      * @throws SaltStackException if anything goes wrong
      */
     public ResultInfoSet getJobResult(final String job) throws SaltStackException {
-        return connectionFactory
-                .create("/jobs/" + job, JsonParser.JOB_RESULTS, config)
-                .getResult();
+        return request("/jobs/" + job, JsonParser.JOB_RESULTS, null);
     }
 
     /**
@@ -353,9 +443,7 @@ public class SaltStackClient {
      * @throws SaltStackException if anything goes wrong
      */
     public Map<String, Job> getJobs() throws SaltStackException {
-        Result<List<Map<String, Job>>> result = connectionFactory
-                .create("/jobs", JsonParser.JOBS, config)
-                .getResult();
+        Result<List<Map<String, Job>>> result = request("/jobs", JsonParser.JOBS, null);
         return result.getResult().get(0);
     }
 
@@ -366,8 +454,9 @@ public class SaltStackClient {
      *
      * @return Future with a map containing run jobs keyed by job id
      */
-    public Future<Map<String, Job>> getJobsAsync() {
-        return executor.submit(this::getJobs);
+    public CompletableFuture<Map<String, Job>> getJobsAsync() {
+        return requestAsync("/jobs", JsonParser.JOBS, null,
+                result -> result.getResult().get(0));
     }
 
     /**
@@ -390,24 +479,9 @@ public class SaltStackClient {
             final AuthModule eauth, final String client, final Target<T> target,
             final String function, List<Object> args, Map<String, Object> kwargs)
             throws SaltStackException {
-        Map<String, Object> props = new HashMap<>();
-        props.put("username", username);
-        props.put("password", password);
-        props.put("eauth", eauth.getValue());
-        props.put("client", client);
-        props.put("tgt", target.getTarget());
-        props.put("expr_form", target.getType());
-        props.put("fun", function);
-        props.put("arg", args);
-        props.put("kwarg", kwargs);
-
-        List<Map<String, Object>> list =  Collections.singletonList(props);
-
-        String payload = gson.toJson(list);
-
-        ResultInfoSet result = connectionFactory
-                .create("/run", JsonParser.JOB_RESULTS, config)
-                .getResult(payload);
+        ResultInfoSet result = request("/run", JsonParser.JOB_RESULTS,
+                runPayload(username, password, eauth, client, target, function, args,
+                kwargs));
 
         // A list with one element is returned, we take the first
         return result.get(0);
@@ -428,12 +502,44 @@ public class SaltStackClient {
      * @param kwargs map containing keyword arguments
      * @return Future containing Map key: minion id, value: command result from that minion
      */
-    public <T> Future<ResultInfo> runAsync(final String username,
+    public <T> CompletableFuture<ResultInfo> runAsync(final String username,
             final String password, final AuthModule eauth, final String client,
             final Target<T> target, final String function, final List<Object> args,
             final Map<String, Object> kwargs) {
-        return executor.submit(() ->
-                run(username, password, eauth, client, target, function, args, kwargs));
+        return requestAsync("/run", JsonParser.JOB_RESULTS,
+                runPayload(username, password, eauth, client, target, function, args,
+                kwargs), result -> result.get(0));
+    }
+
+    /**
+     * Create the lowstate payload for running a command bypassing session handling.
+     *
+     * @param username the username
+     * @param password the password
+     * @param eauth the eauth type
+     * @param client the client
+     * @param target the target
+     * @param function the function to execute
+     * @param args list of non-keyword arguments
+     * @param kwargs map containing keyword arguments
+     * @return the lowstate payload
+     */
+    private <T> String runPayload(String username, String password, AuthModule eauth,
+            String client, Target<T> target, String function, List<Object> args,
+            Map<String, Object> kwargs) {
+        Map<String, Object> props = new HashMap<>();
+        props.put("username", username);
+        props.put("password", password);
+        props.put("eauth", eauth.getValue());
+        props.put("client", client);
+        props.put("tgt", target.getTarget());
+        props.put("expr_form", target.getType());
+        props.put("fun", function);
+        props.put("arg", args);
+        props.put("kwarg", kwargs);
+
+        List<Map<String, Object>> list =  Collections.singletonList(props);
+        return gson.toJson(list);
     }
 
     /**
@@ -445,7 +551,7 @@ public class SaltStackClient {
      * @throws SaltStackException if anything goes wrong
      */
     public Stats stats() throws SaltStackException {
-        return connectionFactory.create("/stats", JsonParser.STATS, config).getResult();
+        return request("/stats", JsonParser.STATS, null);
     }
 
     /**
@@ -455,8 +561,8 @@ public class SaltStackClient {
      *
      * @return Future containing the stats
      */
-    public Future<Stats> statsAsync() {
-        return executor.submit(this::stats);
+    public CompletableFuture<Stats> statsAsync() {
+        return requestAsync("/stats", JsonParser.STATS, null);
     }
 
     /**
@@ -470,8 +576,7 @@ public class SaltStackClient {
      * @throws SaltStackException if anything goes wrong
      */
     public Key.Names keys() throws SaltStackException {
-        return connectionFactory.create("/keys", JsonParser.KEYS, config).getResult()
-                .getResult();
+        return request("/keys", JsonParser.KEYS, null).getResult();
     }
 
     /**
@@ -483,8 +588,8 @@ public class SaltStackClient {
      *
      * @return Future containing the keys
      */
-    public Future<Key.Names> keysAsync() {
-        return executor.submit(this::keys);
+    public CompletableFuture<Key.Names> keysAsync() {
+        return requestAsync("/keys", JsonParser.KEYS, null, Result::getResult);
     }
 
     /**
@@ -501,11 +606,29 @@ public class SaltStackClient {
      * <p>
      * {@code GET /events}
      *
+     * @param listeners listeners to register before the stream is opened
+     * @return the event stream
+     * @throws SaltStackException in case of an error during websocket stream initialization
+     */
+    public EventStream events(EventListener... listeners) throws SaltStackException {
+        return new EventStream(config, listeners);
+    }
+
+    /**
+     * Returns a WebSocket @ClientEndpoint annotated object connected to the /ws
+     * ServerEndpoint that logs in again via the given {@link TokenProvider} when
+     * reconnecting with an expired token, see {@link ClientConfig#EVENT_STREAM_RECONNECT}.
+     * <p>
+     * {@code GET /events}
+     *
+     * @param tokenProvider provides a new token, e.g. {@code () -> client.login(...)}
+     * @param listeners listeners to register before the stream is opened
      * @return the event stream
      * @throws SaltStackException in case of an error during websocket stream initialization
      */
-    public EventStream events() throws SaltStackException {
-        return new EventStream(config);
+    public EventStream events(TokenProvider tokenProvider, EventListener... listeners)
+            throws SaltStackException {
+        return new EventStream(config, tokenProvider, listeners);
     }
 
     /**
@@ -523,9 +646,7 @@ public class SaltStackClient {
      */
     public boolean sendEvent(String eventTag, String eventData) throws SaltStackException {
         String tag = eventTag != null ? eventTag : "";
-        Map<String, Object> result = connectionFactory
-                .create("/hook/" + tag, JsonParser.MAP, config)
-                .getResult(eventData);
+        Map<String, Object> result = request("/hook/" + tag, JsonParser.MAP, eventData);
         return Boolean.TRUE.equals(result.get("success"));
     }
 
@@ -539,8 +660,11 @@ public class SaltStackClient {
      * @return Future containing a boolean value indicating the success or failure of
      * triggering the event.
      */
-    public Future<Boolean> sendEventAsync(final String eventTag, final String eventData) {
-        return executor.submit(() -> { return sendEvent(eventTag, eventData); });
+    public CompletableFuture<Boolean> sendEventAsync(final String eventTag,
+            final String eventData) {
+        String tag = eventTag != null ? eventTag : "";
+        return requestAsync("/hook/" + tag, JsonParser.MAP, eventData,
+                result -> Boolean.TRUE.equals(result.get("success")));
     }
 
     /**
@@ -556,20 +680,62 @@ public class SaltStackClient {
      */
     public <R> Map<String, R> callSync(final LocalCall<R> call, Target<?> target)
             throws SaltStackException {
-        Map<String, Object> customArgs = new HashMap<>();
-        customArgs.put("tgt", target.getTarget());
-        customArgs.put("expr_form", target.getType());
+        return call(call, Client.LOCAL, "/", Optional.of(targetArgs(target)),
+                localResultType(call)).getResult().get(0);
+    }
 
-        Type type = parameterizedType(null, Map.class, String.class,
-                call.getReturnType().getType());
-        Type listType = parameterizedType(null, List.class, type);
-        Type wrapperType = parameterizedType(null, Result.class, listType);
+    /**
+     * Calls a execution module function on the given target without blocking and
+     * returns a future for the result. Authentication is done with the token therefore
+     * you have to login prior to using this function. Cancelling the future aborts the
+     * underlying HTTP request.
+     *
+     * @param call the execution module function to call on the target
+     * @param target the target for the function
+     * @param <R> the result type of the function
+     * @return future containing a map with the results with the minion name as key
+     */
+    public <R> CompletableFuture<Map<String, R>> callSyncAsync(final LocalCall<R> call,
+            Target<?> target) {
+        return callRequestAsync(call, Client.LOCAL, "/", Optional.of(targetArgs(target)),
+                localResultType(call), result -> result.getResult().get(0));
+    }
 
-        @SuppressWarnings("unchecked")
-        Result<List<Map<String, R>>> wrapper = call(call, Client.LOCAL, "/",
-                Optional.of(customArgs),
-                (TypeToken<Result<List<Map<String, R>>>>) TypeToken.get(wrapperType));
-        return wrapper.getResult().get(0);
+    /**
+     * Calls several execution module functions on their targets in a single request and
+     * synchronously waits for the results. Authentication is done with the token
+     * therefore you have to login prior to using this function.
+     * <p>
+     * The results of each call are retrieved from the returned {@link BatchResult}
+     * using the entry returned when the call was added to the batch.
+     *
+     * @param batch the calls with their targets
+     * @return the results of all calls
+     * @throws SaltStackException if anything goes wrong
+     */
+    public BatchResult callSync(LocalCallBatch batch) throws SaltStackException {
+        if (batch.size() == 0) {
+            return new BatchResult(batch, Collections.emptyList());
+        }
+        return new BatchResult(batch, request("/", batchParser(batch),
+                batchPayload(batch)));
+    }
+
+    /**
+     * Calls several execution module functions on their targets in a single request
+     * without blocking and returns a future for the results. Authentication is done
+     * with the token therefore you have to login prior to using this function.
+     *
+     * @param batch the calls with their targets
+     * @return future containing the results of all calls
+     */
+    public CompletableFuture<BatchResult> callSyncAsync(LocalCallBatch batch) {
+        if (batch.size() == 0) {
+            return CompletableFuture.completedFuture(
+                    new BatchResult(batch, Collections.emptyList()));
+        }
+        return requestAsync("/", batchParser(batch), batchPayload(batch),
+                results -> new BatchResult(batch, results));
     }
 
     /**
@@ -583,15 +749,22 @@ public class SaltStackClient {
      * @throws SaltStackException if anything goes wrong
      */
     public <R> WheelResult<R> callSync(final WheelCall<R> call) throws SaltStackException {
-        Type wheelResult = parameterizedType(null, WheelResult.class,
-                call.getReturnType().getType());
-        Type listType = parameterizedType(null, List.class, wheelResult);
-        Type wrapperType = parameterizedType(null, Result.class, listType);
+        return call(call, Client.WHEEL, "/", wheelResultType(call)).getResult().get(0);
+    }
 
-        @SuppressWarnings("unchecked")
-        Result<List<WheelResult<R>>> wrapper = call(call, Client.WHEEL, "/",
-                (TypeToken<Result<List<WheelResult<R>>>>) TypeToken.get(wrapperType));
-        return wrapper.getResult().get(0);
+    /**
+     * Calls a wheel module function on the master without blocking and returns a future
+     * for the result. Authentication is done with the token therefore you have to login
+     * prior to using this function. Cancelling the future aborts the underlying HTTP
+     * request.
+     *
+     * @param call the wheel module function to call
+     * @param <R> the result type of the function
+     * @return future containing the result of the called function
+     */
+    public <R> CompletableFuture<WheelResult<R>> callSyncAsync(final WheelCall<R> call) {
+        return callRequestAsync(call, Client.WHEEL, "/", Optional.empty(),
+                wheelResultType(call), result -> result.getResult().get(0));
     }
 
     /**
@@ -605,13 +778,22 @@ public class SaltStackClient {
      * @throws SaltStackException if anything goes wrong
      */
     public <R> R callSync(final RunnerCall<R> call) throws SaltStackException {
-        Type listType = parameterizedType(null, List.class, call.getReturnType().getType());
-        Type wrapperType = parameterizedType(null, Result.class, listType);
+        return call(call, Client.RUNNER, "/", runnerResultType(call)).getResult().get(0);
+    }
 
-        @SuppressWarnings("unchecked")
-        Result<List<R>> wrapper = call(call, Client.RUNNER, "/",
-                (TypeToken<Result<List<R>>>) TypeToken.get(wrapperType));
-        return wrapper.getResult().get(0);
+    /**
+     * Calls a runner module function on the master without blocking and returns a future
+     * for the result. Authentication is done with the token therefore you have to login
+     * prior to using this function. Cancelling the future aborts the underlying HTTP
+     * request.
+     *
+     * @param call the runner module function to call
+     * @param <R> the result type of the function
+     * @return future containing the result of the called function
+     */
+    public <R> CompletableFuture<R> callSyncAsync(final RunnerCall<R> call) {
+        return callRequestAsync(call, Client.RUNNER, "/", Optional.empty(),
+                runnerResultType(call), result -> result.getResult().get(0));
     }
 
     /**
@@ -631,24 +813,83 @@ public class SaltStackClient {
     public <R> Map<String, R> callSync(final LocalCall<R> call, Target<?> target,
             String username, String password, AuthModule authModule)
             throws SaltStackException {
-        Map<String, Object> customArgs = new HashMap<>();
-        customArgs.putAll(call.getPayload());
-        customArgs.put("username", username);
-        customArgs.put("password", password);
-        customArgs.put("eauth", authModule.getValue());
-        customArgs.put("tgt", target.getTarget());
-        customArgs.put("expr_form", target.getType());
+        Map<String, Object> customArgs = credentialArgs(username, password, authModule);
+        customArgs.putAll(targetArgs(target));
+        return call(call, Client.LOCAL, "/run", Optional.of(customArgs),
+                localResultType(call)).getResult().get(0);
+    }
 
-        Type mapType = parameterizedType(null, Map.class, String.class,
-                call.getReturnType().getType());
-        Type listType = parameterizedType(null, List.class, mapType);
-        Type wrapperType = parameterizedType(null, Result.class, listType);
+    /**
+     * Calls a execution module function on the given target without blocking and
+     * returns a future for the result. Authentication is done with the given credentials
+     * no session token is created. Cancelling the future aborts the underlying HTTP
+     * request.
+     *
+     * @param call the execution module function to call on the target
+     * @param target the target for the function
+     * @param username username for authentication
+     * @param password password for authentication
+     * @param authModule authentication module to use
+     * @param <R> the result type of the function
+     * @return future containing a map with the results with the minion name as key
+     */
+    public <R> CompletableFuture<Map<String, R>> callSyncAsync(final LocalCall<R> call,
+            Target<?> target, String username, String password, AuthModule authModule) {
+        Map<String, Object> customArgs = credentialArgs(username, password, authModule);
+        customArgs.putAll(targetArgs(target));
+        return callRequestAsync(call, Client.LOCAL, "/run", Optional.of(customArgs),
+                localResultType(call), result -> result.getResult().get(0));
+    }
 
-        @SuppressWarnings("unchecked")
-        Result<List<Map<String, R>>> wrapper = call(call, Client.LOCAL, "/run",
-                Optional.of(customArgs),
-                (TypeToken<Result<List<Map<String, R>>>>) TypeToken.get(wrapperType));
-        return wrapper.getResult().get(0);
+    /**
+     * Calls a execution module function on the given target and synchronously
+     * waits for the result. The response is parsed incrementally and the result of each
+     * minion is handed to the given consumer as soon as it has been read, the results
+     * are not collected in a map. Authentication is done with the token therefore you
+     * have to login prior to using this function.
+     * <p>
+     * Memory usage is proportional to the result of a single minion as long as the
+     * connection factory streams the response, like {@link HttpClientConnectionFactory}
+     * does. Non-blocking connections receive the complete response before parsing.
+     *
+     * @param call the execution module function to call on the target
+     * @param target the target for the function
+     * @param consumer called with the minion id and the result of each minion
+     * @param <R> the result type of the function
+     * @return the number of minions that returned a result
+     * @throws SaltStackException if anything goes wrong
+     */
+    public <R> int callSync(final LocalCall<R> call, Target<?> target,
+            BiConsumer<String, R> consumer) throws SaltStackException {
+        return request("/", new StreamingResultParser<>(call.getReturnType(), consumer),
+                callPayload(call, Client.LOCAL, Optional.of(targetArgs(target))));
+    }
+
+    /**
+     * Calls a execution module function on the given target and synchronously
+     * waits for the result. The response is parsed incrementally and the result of each
+     * minion is handed to the given consumer as soon as it has been read, the results
+     * are not collected in a map. Authentication is done with the given credentials
+     * no session token is created.
+     *
+     * @param call the execution module function to call on the target
+     * @param target the target for the function
+     * @param username username for authentication
+     * @param password password for authentication
+     * @param authModule authentication module to use
+     * @param consumer called with the minion id and the result of each minion
+     * @param <R> the result type of the function
+     * @return the number of minions that returned a result
+     * @throws SaltStackException if anything goes wrong
+     * @see #callSync(LocalCall, Target, BiConsumer)
+     */
+    public <R> int callSync(final LocalCall<R> call, Target<?> target, String username,
+            String password, AuthModule authModule, BiConsumer<String, R> consumer)
+            throws SaltStackException {
+        Map<String, Object> customArgs = credentialArgs(username, password, authModule);
+        customArgs.putAll(targetArgs(target));
+        return request("/run", new StreamingResultParser<>(call.getReturnType(), consumer),
+                callPayload(call, Client.LOCAL, Optional.of(customArgs)));
     }
 
     /**
@@ -666,22 +907,28 @@ public class SaltStackClient {
      */
     public <R> WheelResult<R> callSync(WheelCall<R> call, String username, String password,
             AuthModule authModule) throws SaltStackException {
-        Map<String, Object> customArgs = new HashMap<>();
-        customArgs.putAll(call.getPayload());
-        customArgs.put("username", username);
-        customArgs.put("password", password);
-        customArgs.put("eauth", authModule.getValue());
-
-        Type wheelResult = parameterizedType(null, WheelResult.class,
-                call.getReturnType().getType());
-        Type listType = parameterizedType(null, List.class, wheelResult);
-        Type wrapperType = parameterizedType(null, Result.class, listType);
+        return call(call, Client.WHEEL, "/run",
+                Optional.of(credentialArgs(username, password, authModule)),
+                wheelResultType(call)).getResult().get(0);
+    }
 
-        @SuppressWarnings("unchecked")
-        Result<List<WheelResult<R>>> wrapper = call(call, Client.WHEEL, "/run",
-                Optional.of(customArgs),
-                (TypeToken<Result<List<WheelResult<R>>>>) TypeToken.get(wrapperType));
-        return wrapper.getResult().get(0);
+    /**
+     * Calls a wheel module function on the master without blocking and returns a future
+     * for the result. Authentication is done with the given credentials no session token
+     * is created. Cancelling the future aborts the underlying HTTP request.
+     *
+     * @param call the wheel module function to call
+     * @param username username for authentication
+     * @param password password for authentication
+     * @param authModule authentication module to use
+     * @param <R> the result type of the function
+     * @return future containing the result of the called function
+     */
+    public <R> CompletableFuture<WheelResult<R>> callSyncAsync(WheelCall<R> call,
+            String username, String password, AuthModule authModule) {
+        return callRequestAsync(call, Client.WHEEL, "/run",
+                Optional.of(credentialArgs(username, password, authModule)),
+                wheelResultType(call), result -> result.getResult().get(0));
     }
 
     /**
@@ -699,19 +946,28 @@ public class SaltStackClient {
      */
     public <R> R callSync(final RunnerCall<R> call, String username, String password,
             AuthModule authModule) throws SaltStackException {
-        Map<String, Object> customArgs = new HashMap<>();
-        customArgs.putAll(call.getPayload());
-        customArgs.put("username", username);
-        customArgs.put("password", password);
-        customArgs.put("eauth", authModule.getValue());
-
-        Type listType = parameterizedType(null, List.class, call.getReturnType().getType());
-        Type wrapperType = parameterizedType(null, Result.class, listType);
+        return call(call, Client.RUNNER, "/run",
+                Optional.of(credentialArgs(username, password, authModule)),
+                runnerResultType(call)).getResult().get(0);
+    }
 
-        @SuppressWarnings("unchecked")
-        Result<List<R>> wrapper = call(call, Client.RUNNER, "/run", Optional.of(customArgs),
-                (TypeToken<Result<List<R>>>) TypeToken.get(wrapperType));
-        return wrapper.getResult().get(0);
+    /**
+     * Calls a runner module function on the master without blocking and returns a future
+     * for the result. Authentication is done with the given credentials no session token
+     * is created. Cancelling the future aborts the underlying HTTP request.
+     *
+     * @param call the runner module function to call
+     * @param username username for authentication
+     * @param password password for authentication
+     * @param authModule authentication module to use
+     * @param <R> the result type of the function
+     * @return future containing the result of the called function
+     */
+    public <R> CompletableFuture<R> callSyncAsync(final RunnerCall<R> call,
+            String username, String password, AuthModule authModule) {
+        return callRequestAsync(call, Client.RUNNER, "/run",
+                Optional.of(credentialArgs(username, password, authModule)),
+                runnerResultType(call), result -> result.getResult().get(0));
     }
 
     /**
@@ -885,17 +1141,82 @@ public class SaltStackClient {
      */
     private <R> R call(Call<?> call, Client client, String endpoint, Optional<Map<String,
             Object>> custom, TypeToken<R> type) throws SaltStackException {
+        return request(endpoint, JsonParser.forType(type),
+                callPayload(call, client, custom),
+                RequestCoalescer.isReadOnly(call, client));
+    }
+
+    /**
+     * Generic interface to make a {@link Call} to an endpoint using a given {@link Client}
+     * without blocking.
+     *
+     * @param call the call
+     * @param client the client to use
+     * @param endpoint the endpoint
+     * @param custom map of arguments
+     * @param type type of the response
+     * @param mapper function to extract the result from the response
+     * @return future containing the result of the call
+     */
+    private <T, R> CompletableFuture<R> callRequestAsync(Call<?> call, Client client,
+            String endpoint, Optional<Map<String, Object>> custom, TypeToken<T> type,
+            Function<T, R> mapper) {
+        return map(requestAsync(endpoint, JsonParser.forType(type),
+                callPayload(call, client, custom),
+                RequestCoalescer.isReadOnly(call, client)), mapper);
+    }
+
+    /**
+     * Create the lowstate payload for a {@link Call} using a given {@link Client}.
+     *
+     * @param call the call
+     * @param client the client to use
+     * @param custom map of arguments
+     * @return the lowstate payload
+     */
+    private String callPayload(Call<?> call, Client client,
+            Optional<Map<String, Object>> custom) {
         Map<String, Object> props = new HashMap<>();
         props.putAll(call.getPayload());
         props.put("client", client.getValue());
         custom.ifPresent(props::putAll);
 
         List<Map<String, Object>> list = Collections.singletonList(props);
-        String payload = gson.toJson(list);
+        return gson.toJson(list);
+    }
 
-        return connectionFactory
-                .create(endpoint, new JsonParser<>(type), config)
-                .getResult(payload);
+    /**
+     * Create the lowstate payload containing one chunk per call of the given batch.
+     *
+     * @param batch the calls with their targets
+     * @return the lowstate payload
+     */
+    private String batchPayload(LocalCallBatch batch) {
+        List<Map<String, Object>> list = new ArrayList<>(batch.size());
+        for (LocalCallBatch.Entry<?> entry : batch.getEntries()) {
+            Map<String, Object> props = new HashMap<>();
+            props.putAll(entry.getCall().getPayload());
+            props.put("client", Client.LOCAL.getValue());
+            props.putAll(targetArgs(entry.getTarget()));
+            list.add(props);
+        }
+        return gson.toJson(list);
+    }
+
+    /**
+     * Create the parser for the response to the given batch, reading the results of
+     * each call into a map of the call's result type.
+     *
+     * @param batch the calls with their targets
+     * @return the parser
+     */
+    private static BatchResultParser batchParser(LocalCallBatch batch) {
+        List<Type> types = new ArrayList<>(batch.size());
+        for (LocalCallBatch.Entry<?> entry : batch.getEntries()) {
+            types.add(parameterizedType(null, Map.class, String.class,
+                    entry.getCall().getReturnType().getType()));
+        }
+        return new BatchResultParser(types);
     }
 
     /**
@@ -912,4 +1233,289 @@ public class SaltStackClient {
             throws SaltStackException {
         return call(call, client, endpoint, Optional.empty(), type);
     }
+
+    /**
+     * Perform a request to an endpoint and parse the result. Only GET requests are
+     * coalesced.
+     *
+     * @param endpoint the endpoint
+     * @param parser the parser for the result
+     * @param data the data to send (in JSON format), a GET request is done if null
+     * @return the parsed result
+     * @throws SaltStackException if anything goes wrong
+     */
+    private <T> T request(String endpoint, JsonParser<T> parser, String data)
+            throws SaltStackException {
+        return request(endpoint, parser, data, data == null);
+    }
+
+    /**
+     * Perform a request to an endpoint and parse the result.
+     *
+     * @param endpoint the endpoint
+     * @param parser the parser for the result
+     * @param data the data to send (in JSON format), a GET request is done if null
+     * @param readOnly true if the request has no side effects and may be coalesced
+     * @return the parsed result
+     * @throws SaltStackException if anything goes wrong
+     */
+    private <T> T request(String endpoint, JsonParser<T> parser, String data,
+            boolean readOnly) throws SaltStackException {
+        if (readOnly && isCoalescing(parser)) {
+            return coalescer.execute(requestKey(endpoint, parser, data),
+                    () -> doRequest(endpoint, parser, data));
+        }
+        return doRequest(endpoint, parser, data);
+    }
+
+    /**
+     * Perform a request to an endpoint and parse the result, without coalescing.
+     *
+     * @param endpoint the endpoint
+     * @param parser the parser for the result
+     * @param data the data to send (in JSON format), a GET request is done if null
+     * @return the parsed result
+     * @throws SaltStackException if anything goes wrong
+     */
+    private <T> T doRequest(String endpoint, JsonParser<T> parser, String data)
+            throws SaltStackException {
+        return getResult(connectionFactory.create(endpoint, parser, config), data);
+    }
+
+    /**
+     * Perform the request of a connection and parse the result.
+     *
+     * @param connection the connection
+     * @param data the data to send (in JSON format), a GET request is done if null
+     * @return the parsed result
+     * @throws SaltStackException if anything goes wrong
+     */
+    private static <T> T getResult(Connection<T> connection, String data)
+            throws SaltStackException {
+        return data == null ? connection.getResult() : connection.getResult(data);
+    }
+
+    /**
+     * Check if requests with the given parser are coalesced, see
+     * {@link ClientConfig#REQUEST_COALESCING}.
+     *
+     * @param parser the parser for the result
+     * @return true if identical requests in flight are coalesced
+     */
+    private boolean isCoalescing(JsonParser<?> parser) {
+        // Streaming parsers hand the results to a consumer instead of returning them
+        return config.get(ClientConfig.REQUEST_COALESCING) &&
+                !(parser instanceof StreamingResultParser);
+    }
+
+    /**
+     * Return the key identifying a request for coalescing.
+     *
+     * @param endpoint the endpoint
+     * @param parser the parser for the result
+     * @param data the data to send (in JSON format), may be null
+     * @return the key
+     */
+    private List<Object> requestKey(String endpoint, JsonParser<?> parser, String data) {
+        return RequestCoalescer.key(endpoint, data, config.get(ClientConfig.TOKEN), parser);
+    }
+
+    /**
+     * Return the number of requests that were not sent since an identical request was
+     * already in flight, see {@link ClientConfig#REQUEST_COALESCING}.
+     *
+     * @return the number of coalesced requests
+     */
+    public long getCoalescedRequestCount() {
+        return coalescer.getCoalescedCount();
+    }
+
+    /**
+     * Perform a request to an endpoint asynchronously. In case the connection factory
+     * is an {@link AsyncConnectionFactory} no thread is blocked while the request is in
+     * flight, otherwise the request is executed on the executor. Only GET requests are
+     * coalesced.
+     *
+     * @param endpoint the endpoint
+     * @param parser the parser for the result
+     * @param data the data to send (in JSON format), a GET request is done if null
+     * @return future containing the parsed result
+     */
+    private <T> CompletableFuture<T> requestAsync(String endpoint, JsonParser<T> parser,
+            String data) {
+        return requestAsync(endpoint, parser, data, data == null);
+    }
+
+    /**
+     * Perform a request to an endpoint asynchronously.
+     *
+     * @param endpoint the endpoint
+     * @param parser the parser for the result
+     * @param data the data to send (in JSON format), a GET request is done if null
+     * @param readOnly true if the request has no side effects and may be coalesced
+     * @return future containing the parsed result
+     */
+    private <T> CompletableFuture<T> requestAsync(String endpoint, JsonParser<T> parser,
+            String data, boolean readOnly) {
+        if (readOnly && isCoalescing(parser)) {
+            return coalescer.executeAsync(requestKey(endpoint, parser, data),
+                    () -> doRequestAsync(endpoint, parser, data));
+        }
+        return doRequestAsync(endpoint, parser, data);
+    }
+
+    /**
+     * Perform a request to an endpoint asynchronously, without coalescing.
+     *
+     * @param endpoint the endpoint
+     * @param parser the parser for the result
+     * @param data the data to send (in JSON format), a GET request is done if null
+     * @return future containing the parsed result
+     */
+    private <T> CompletableFuture<T> doRequestAsync(String endpoint, JsonParser<T> parser,
+            String data) {
+        if (connectionFactory instanceof AsyncConnectionFactory) {
+            AsyncConnection<T> connection = ((AsyncConnectionFactory) connectionFactory)
+                    .create(endpoint, parser, config);
+            return data == null ?
+                    connection.getResultAsync() : connection.getResultAsync(data);
+        }
+
+        Connection<T> connection = connectionFactory.create(endpoint, parser, config);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> complete(result, connection, data));
+
+        // Interrupt the request in case the caller cancels the result, and abort it
+        // since blocking socket reads ignore the interrupt
+        ClientUtils.propagateCancellation(result, task);
+        if (connection instanceof AbortableConnection) {
+            ClientUtils.propagateCancellation(result, (AbortableConnection<T>) connection);
+        }
+        return result;
+    }
+
+    /**
+     * Perform a request to an endpoint asynchronously and map the parsed result.
+     * Cancelling the returned future cancels the request as well.
+     *
+     * @param endpoint the endpoint
+     * @param parser the parser for the result
+     * @param data the data to send (in JSON format), a GET request is done if null
+     * @param mapper function to apply to the parsed result
+     * @return future containing the mapped result
+     */
+    private <T, R> CompletableFuture<R> requestAsync(String endpoint, JsonParser<T> parser,
+            String data, Function<? super T, ? extends R> mapper) {
+        return map(requestAsync(endpoint, parser, data), mapper);
+    }
+
+    /**
+     * Map the result of an asynchronous request. Cancelling the returned future cancels
+     * the request as well.
+     *
+     * @param request future containing the parsed result
+     * @param mapper function to apply to the parsed result
+     * @return future containing the mapped result
+     */
+    private static <T, R> CompletableFuture<R> map(CompletableFuture<T> request,
+            Function<? super T, ? extends R> mapper) {
+        CompletableFuture<R> result = request.thenApply(mapper);
+        ClientUtils.propagateCancellation(result, request);
+        return result;
+    }
+
+    /**
+     * Arguments for calls on a given target.
+     *
+     * @param target the target
+     * @return map of arguments
+     */
+    private static Map<String, Object> targetArgs(Target<?> target) {
+        Map<String, Object> args = new HashMap<>();
+        args.put("tgt", target.getTarget());
+        args.put("expr_form", target.getType());
+        return args;
+    }
+
+    /**
+     * Arguments for calls authenticated with the given credentials.
+     *
+     * @param username username for authentication
+     * @param password password for authentication
+     * @param authModule authentication module to use
+     * @return map of arguments
+     */
+    private static Map<String, Object> credentialArgs(String username, String password,
+            AuthModule authModule) {
+        Map<String, Object> args = new HashMap<>();
+        args.put("username", username);
+        args.put("password", password);
+        args.put("eauth", authModule.getValue());
+        return args;
+    }
+
+    /**
+     * Type of the response to a synchronous execution module call.
+     *
+     * @param call the call
+     * @param <R> the result type of the function
+     * @return the response type
+     */
+    @SuppressWarnings("unchecked")
+    private static <R> TypeToken<Result<List<Map<String, R>>>> localResultType(
+            LocalCall<R> call) {
+        Type mapType = parameterizedType(null, Map.class, String.class,
+                call.getReturnType().getType());
+        Type listType = parameterizedType(null, List.class, mapType);
+        Type wrapperType = parameterizedType(null, Result.class, listType);
+        return (TypeToken<Result<List<Map<String, R>>>>) TypeToken.get(wrapperType);
+    }
+
+    /**
+     * Type of the response to a synchronous wheel module call.
+     *
+     * @param call the call
+     * @param <R> the result type of the function
+     * @return the response type
+     */
+    @SuppressWarnings("unchecked")
+    private static <R> TypeToken<Result<List<WheelResult<R>>>> wheelResultType(
+            WheelCall<R> call) {
+        Type wheelResult = parameterizedType(null, WheelResult.class,
+                call.getReturnType().getType());
+        Type listType = parameterizedType(null, List.class, wheelResult);
+        Type wrapperType = parameterizedType(null, Result.class, listType);
+        return (TypeToken<Result<List<WheelResult<R>>>>) TypeToken.get(wrapperType);
+    }
+
+    /**
+     * Type of the response to a synchronous runner module call.
+     *
+     * @param call the call
+     * @param <R> the result type of the function
+     * @return the response type
+     */
+    @SuppressWarnings("unchecked")
+    private static <R> TypeToken<Result<List<R>>> runnerResultType(RunnerCall<R> call) {
+        Type listType = parameterizedType(null, List.class, call.getReturnType().getType());
+        Type wrapperType = parameterizedType(null, Result.class, listType);
+        return (TypeToken<Result<List<R>>>) TypeToken.get(wrapperType);
+    }
+
+    /**
+     * Perform the request of a connection and complete the given future with the
+     * result.
+     *
+     * @param result the future to complete
+     * @param connection the connection
+     * @param data the data to send (in JSON format), a GET request is done if null
+     */
+    private static <T> void complete(CompletableFuture<T> result, Connection<T> connection,
+            String data) {
+        try {
+            result.complete(getResult(connection, data));
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+        }
+    }
 }
@@ -0,0 +1,103 @@
+package com.suse.saltstack.netapi.client.impl;
+
+import org.apache.http.ContentTooLongException;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ContentBufferEntity;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.nio.util.SimpleInputBuffer;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+
+/**
+ * Response consumer buffering the entity in memory like the default consumer of
+ * HttpAsyncClient, but failing the request as soon as the entity exceeds a maximum
+ * length.
+ */
+class BoundedResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+    /** Initial buffer size for entities of unknown length */
+    private static final int DEFAULT_BUFFER_SIZE = 4096;
+
+    /** The maximum entity length in bytes, unlimited if less than or equal to 0 */
+    private final int maxLength;
+
+    private volatile HttpResponse response;
+    private volatile SimpleInputBuffer buffer;
+
+    /**
+     * Create a consumer.
+     *
+     * @param maxLengthIn the maximum entity length in bytes, unlimited if less than or
+     * equal to 0
+     */
+    BoundedResponseConsumer(int maxLengthIn) {
+        maxLength = maxLengthIn;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onResponseReceived(HttpResponse responseIn) {
+        response = responseIn;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onEntityEnclosed(HttpEntity entity, ContentType contentType)
+            throws IOException {
+        long length = entity.getContentLength();
+        checkLength(length);
+        buffer = new SimpleInputBuffer(length < 0 ? DEFAULT_BUFFER_SIZE : (int) length,
+                HeapByteBufferAllocator.INSTANCE);
+        response.setEntity(new ContentBufferEntity(entity, buffer));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onContentReceived(ContentDecoder decoder, IOControl ioControl)
+            throws IOException {
+        buffer.consumeContent(decoder);
+        checkLength(buffer.length());
+    }
+
+    /**
+     * Check the length of the entity against the maximum.
+     *
+     * @param length the (announced) length of the entity
+     * @throws ContentTooLongException if the length exceeds the maximum
+     */
+    private void checkLength(long length) throws ContentTooLongException {
+        if (maxLength > 0 && length > maxLength) {
+            throw new ContentTooLongException("Response entity exceeds " + maxLength +
+                    " bytes");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected HttpResponse buildResult(HttpContext context) {
+        return response;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void releaseResources() {
+        response = null;
+        buffer = null;
+    }
+}
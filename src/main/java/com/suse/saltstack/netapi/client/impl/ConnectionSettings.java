@@ -0,0 +1,70 @@
+package com.suse.saltstack.netapi.client.impl;
+
+import com.suse.saltstack.netapi.config.ClientConfig;
+import com.suse.saltstack.netapi.config.ConfigSnapshot;
+
+import java.util.Objects;
+
+/**
+ * The subset of the configuration that HTTP clients and request configurations are
+ * derived from, used to detect when these need to be rebuilt.
+ */
+class ConnectionSettings {
+
+    final int connectTimeout;
+    final int socketTimeout;
+    final int keepAlive;
+    final int idleTimeout;
+    final String proxyHostname;
+    final int proxyPort;
+    final String proxyUsername;
+    final String proxyPassword;
+
+    /**
+     * Read the relevant settings from a given configuration.
+     *
+     * @param config the snapshot of the config
+     */
+    ConnectionSettings(ConfigSnapshot config) {
+        connectTimeout = config.get(ClientConfig.CONNECT_TIMEOUT);
+        socketTimeout = config.get(ClientConfig.SOCKET_TIMEOUT);
+        keepAlive = config.get(ClientConfig.CONNECTION_KEEP_ALIVE);
+        idleTimeout = config.get(ClientConfig.CONNECTION_IDLE_TIMEOUT);
+        proxyHostname = config.get(ClientConfig.PROXY_HOSTNAME);
+        proxyPort = config.get(ClientConfig.PROXY_PORT);
+        proxyUsername = config.get(ClientConfig.PROXY_USERNAME);
+        proxyPassword = config.get(ClientConfig.PROXY_PASSWORD);
+    }
+
+    /**
+     * @return true if proxy authentication is configured
+     */
+    boolean hasProxyCredentials() {
+        return proxyHostname != null && proxyUsername != null && proxyPassword != null;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ConnectionSettings)) {
+            return false;
+        }
+        ConnectionSettings other = (ConnectionSettings) obj;
+        return connectTimeout == other.connectTimeout &&
+                socketTimeout == other.socketTimeout &&
+                keepAlive == other.keepAlive &&
+                idleTimeout == other.idleTimeout &&
+                proxyPort == other.proxyPort &&
+                Objects.equals(proxyHostname, other.proxyHostname) &&
+                Objects.equals(proxyUsername, other.proxyUsername) &&
+                Objects.equals(proxyPassword, other.proxyPassword);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(connectTimeout, socketTimeout, keepAlive, idleTimeout,
+                proxyHostname, proxyPort, proxyUsername, proxyPassword);
+    }
+}
@@ -0,0 +1,258 @@
+package com.suse.saltstack.netapi.client.impl;
+
+import com.suse.saltstack.netapi.client.AsyncConnection;
+import com.suse.saltstack.netapi.config.ClientConfig;
+import com.suse.saltstack.netapi.config.ConfigSnapshot;
+import com.suse.saltstack.netapi.exception.SaltStackException;
+import com.suse.saltstack.netapi.metrics.RequestTiming;
+import com.suse.saltstack.netapi.parser.JsonParser;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Class representation of a connection to SaltStack for issuing API requests
+ * using Apache's non-blocking HttpAsyncClient. No thread is blocked while a request is
+ * in flight. The response is buffered up to {@link ClientConfig#MAX_RESPONSE_LENGTH} and
+ * parsed on the given executor once it has been received completely, so neither the
+ * parser nor the stages callers add to the returned future run on an I/O dispatcher
+ * thread.
+ * @param <T> type of result retrieved using this HTTP connection
+ */
+public class HttpAsyncClientConnection<T> implements AsyncConnection<T> {
+
+    /** The endpoint. */
+    private final String endpoint;
+
+    /** The snapshot of the config taken when the connection was created */
+    private final ConfigSnapshot config;
+
+    /** The parser to parse the returned Result */
+    private final JsonParser<T> parser;
+
+    /** The (shared) client used to execute the request */
+    private final CloseableHttpAsyncClient httpClient;
+
+    /** Timeout and proxy settings of the request */
+    private final RequestConfig requestConfig;
+
+    /** Proxy credentials, may be null */
+    private final CredentialsProvider credentialsProvider;
+
+    /** The executor parsing the response and completing the future of the result */
+    private final Executor executor;
+
+    /**
+     * Init a connection to a given SaltStack API endpoint.
+     *
+     * @param endpointIn the endpoint
+     * @param parserIn the parser
+     * @param configIn the snapshot of the config
+     * @param httpClientIn the started client to execute the request with
+     * @param requestConfigIn timeout and proxy settings for the request
+     * @param credentialsProviderIn proxy credentials, may be null
+     * @param executorIn the executor to parse the response and complete the result on
+     */
+    public HttpAsyncClientConnection(String endpointIn, JsonParser<T> parserIn,
+            ConfigSnapshot configIn, CloseableHttpAsyncClient httpClientIn,
+            RequestConfig requestConfigIn, CredentialsProvider credentialsProviderIn,
+            Executor executorIn) {
+        endpoint = endpointIn;
+        config = configIn;
+        parser = parserIn;
+        httpClient = httpClientIn;
+        requestConfig = requestConfigIn;
+        credentialsProvider = credentialsProviderIn;
+        executor = executorIn;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public T getResult(String data) throws SaltStackException {
+        return join(request(data));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public T getResult() throws SaltStackException {
+        return join(request(null));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<T> getResultAsync(String data) {
+        return request(data);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<T> getResultAsync() {
+        return request(null);
+    }
+
+    /**
+     * Start the HTTP request and return a future for the parsed result.
+     *
+     * @param data the data to send with the request, will use GET if null
+     * @return future completed with the object of type T
+     */
+    private CompletableFuture<T> request(String data) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        RequestTiming timing = RequestTiming.start(config, endpoint, data);
+        result.whenComplete((value, throwable) -> timing.finish());
+
+        HttpUriRequest httpRequest;
+        try {
+            URI uri = config.resolve(endpoint);
+            httpRequest = HttpClientConnection.prepareRequest(uri,
+                    config.get(ClientConfig.TOKEN), data);
+        } catch (UnsupportedEncodingException e) {
+            result.completeExceptionally(new SaltStackException(e));
+            return result;
+        }
+
+        HttpClientContext context = HttpClientContext.create();
+        context.setAttribute(HttpClientConnection.TIMING_ATTRIBUTE, timing);
+        context.setRequestConfig(requestConfig);
+        if (credentialsProvider != null) {
+            context.setCredentialsProvider(credentialsProvider);
+        }
+
+        httpClient.execute(HttpAsyncMethods.create(httpRequest),
+                new BoundedResponseConsumer(config.get(ClientConfig.MAX_RESPONSE_LENGTH)),
+                context, new FutureCallback<HttpResponse>() {
+
+                    @Override
+                    public void completed(HttpResponse httpResponse) {
+                        // Leave the I/O dispatcher thread for parsing and completion
+                        try {
+                            executor.execute(() ->
+                                    complete(result, httpResponse, timing));
+                        } catch (RejectedExecutionException e) {
+                            result.completeExceptionally(new SaltStackException(e));
+                        }
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        result.completeExceptionally(new SaltStackException(e));
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        result.cancel(false);
+                    }
+                });
+
+        // Abort the request in case the caller cancels the result, cancelling the future
+        // returned by the client does not abort the exchange.
+        result.whenComplete((value, throwable) -> abortIfCancelled(result, httpRequest));
+        return result;
+    }
+
+    /**
+     * Abort the given request in case the future of its result has been cancelled. The
+     * connection of an aborted request is closed and released to the pool.
+     *
+     * @param result the future of the result
+     * @param request the request
+     */
+    private static void abortIfCancelled(CompletableFuture<?> result,
+            HttpUriRequest request) {
+        if (result.isCancelled()) {
+            request.abort();
+        }
+    }
+
+    /**
+     * Complete the given future with the parsed content of a received response.
+     *
+     * @param result the future of the result
+     * @param response the response
+     * @param timing the timing to record the request with
+     */
+    private void complete(CompletableFuture<T> result, HttpResponse response,
+            RequestTiming timing) {
+        try {
+            result.complete(handleResponse(response, timing));
+        } catch (SaltStackException | RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Check the status code of a received response and parse its content.
+     *
+     * @param response the response
+     * @param timing the timing to record the request with
+     * @return the parsed result
+     * @throws SaltStackException if HTTP status code is not as expected (200 or 202) or
+     * the content cannot be read
+     */
+    private T handleResponse(HttpResponse response, RequestTiming timing)
+            throws SaltStackException {
+        int statusCode = response.getStatusLine().getStatusCode();
+        if (statusCode == HttpStatus.SC_OK || statusCode == HttpStatus.SC_ACCEPTED) {
+            try {
+                // Parse result type from the returned JSON
+                T result = parser.parse(
+                        timing.countResponse(response.getEntity().getContent()));
+                timing.parsed();
+                return result;
+            } catch (IOException e) {
+                throw new SaltStackException(e);
+            }
+        } else {
+            throw HttpClientConnection.createSaltStackException(statusCode);
+        }
+    }
+
+    /**
+     * Block until the given future is completed and return its value, unwrapping the
+     * cause of a failure.
+     *
+     * @param future the future to wait for
+     * @return the result
+     * @throws SaltStackException if the request was not successful or interrupted
+     */
+    private T join(CompletableFuture<T> future) throws SaltStackException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new SaltStackException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SaltStackException) {
+                throw (SaltStackException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SaltStackException(cause);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.suse.saltstack.netapi.client.impl;
+
+import com.suse.saltstack.netapi.client.AsyncConnectionFactory;
+import com.suse.saltstack.netapi.config.ClientConfig;
+import com.suse.saltstack.netapi.config.ConfigSnapshot;
+import com.suse.saltstack.netapi.parser.JsonParser;
+import com.suse.saltstack.netapi.utils.DaemonThreadFactory;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implementation of a factory for non-blocking connections using Apache's
+ * HttpAsyncClient.
+ * <p>
+ * All connections created by one factory share a single client with a pool of persistent
+ * connections that is driven by a small, fixed number of I/O dispatcher threads, no
+ * matter how many requests are in flight. Timeouts and proxy settings are applied per
+ * request so the client never needs to be rebuilt. Responses are parsed and the futures
+ * of their results completed on an executor, the common fork join pool by default, so
+ * the I/O threads are never busy with parsing or with stages added by callers. Call
+ * {@link #close()} to stop the I/O threads when the factory is no longer used.
+ * <p>
+ * This factory is not the default of {@code SaltStackClient}, pass it to the
+ * constructor to make the {@code *Async} methods non-blocking. With the default
+ * {@link HttpClientConnectionFactory} every asynchronous request occupies a thread of
+ * the client's executor until the response has been received.
+ *
+ * @see HttpAsyncClientConnection
+ */
+public class HttpAsyncClientConnectionFactory implements AsyncConnectionFactory,
+        Closeable {
+
+    /** The connection pool */
+    private final PoolingNHttpClientConnectionManager connectionManager;
+
+    /** The client shared by all connections */
+    private final CloseableHttpAsyncClient httpClient;
+
+    /** The executor parsing responses and completing the futures of their results */
+    private final Executor executor;
+
+    /** The settings the current request configuration has been built with */
+    private ConnectionSettings settings;
+
+    /** Version of the config snapshot the settings have last been checked against */
+    private long settingsVersion;
+
+    /** Timeout and proxy settings passed to each request */
+    private RequestConfig requestConfig;
+
+    /** Proxy credentials passed to each request, may be null */
+    private CredentialsProvider credentialsProvider;
+
+    /** Keep-alive duration in milliseconds for responses without Keep-Alive header */
+    private volatile long keepAlive;
+
+    /** Time of the last eviction of idle connections */
+    private long lastEviction = System.currentTimeMillis();
+
+    /**
+     * Default constructor, using as many I/O dispatcher threads as there are available
+     * processors.
+     */
+    public HttpAsyncClientConnectionFactory() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor specifying the number of I/O dispatcher threads.
+     *
+     * @param ioThreadCount the number of I/O dispatcher threads
+     */
+    public HttpAsyncClientConnectionFactory(int ioThreadCount) {
+        this(ioThreadCount, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor specifying the number of I/O dispatcher threads and the executor to
+     * parse responses and complete the futures of their results on.
+     *
+     * @param ioThreadCount the number of I/O dispatcher threads
+     * @param executorIn the executor, it is not shut down by {@link #close()}
+     */
+    public HttpAsyncClientConnectionFactory(int ioThreadCount, Executor executorIn) {
+        executor = executorIn;
+        ThreadFactory threadFactory = new DaemonThreadFactory("saltstack-async-io-");
+        IOReactorConfig reactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(ioThreadCount)
+                .build();
+        try {
+            connectionManager = new PoolingNHttpClientConnectionManager(
+                    new DefaultConnectingIOReactor(reactorConfig, threadFactory));
+        } catch (IOReactorException e) {
+            throw new IllegalStateException("Unable to create the I/O reactor", e);
+        }
+        TimingInterceptor timingInterceptor = new TimingInterceptor();
+        httpClient = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(this::keepAliveDuration)
+                .setThreadFactory(threadFactory)
+                .addInterceptorLast((HttpRequestInterceptor) timingInterceptor)
+                .addInterceptorLast((HttpResponseInterceptor) timingInterceptor)
+                .build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized <T> HttpAsyncClientConnection<T> create(String endpoint,
+            JsonParser<T> parser, ClientConfig config) {
+        if (!httpClient.isRunning()) {
+            httpClient.start();
+        }
+        ConfigSnapshot snapshot = config.snapshot();
+        if (settings == null || snapshot.getVersion() != settingsVersion) {
+            configurePool(snapshot);
+            ConnectionSettings current = new ConnectionSettings(snapshot);
+            if (!current.equals(settings)) {
+                requestConfig = initializeRequestConfig(current);
+                credentialsProvider = initializeCredentialsProvider(current);
+                keepAlive = current.keepAlive;
+                settings = current;
+            }
+            settingsVersion = snapshot.getVersion();
+        }
+        evictIdleConnections(settings.idleTimeout);
+
+        return new HttpAsyncClientConnection<>(endpoint, parser, snapshot, httpClient,
+                requestConfig, credentialsProvider, executor);
+    }
+
+    /**
+     * Stop the I/O threads and close all pooled connections.
+     *
+     * @throws IOException in case of an error when shutting down the client
+     */
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    /**
+     * Apply the pool limits from the given config snapshot.
+     *
+     * @param config the snapshot of the config
+     */
+    private void configurePool(ConfigSnapshot config) {
+        int maxTotal = config.get(ClientConfig.MAX_TOTAL_CONNECTIONS);
+        if (connectionManager.getMaxTotal() != maxTotal) {
+            connectionManager.setMaxTotal(maxTotal);
+        }
+        int maxPerRoute = config.get(ClientConfig.MAX_CONNECTIONS_PER_ROUTE);
+        if (connectionManager.getDefaultMaxPerRoute() != maxPerRoute) {
+            connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        }
+    }
+
+    /**
+     * Close expired connections and connections idle for longer than the given timeout.
+     * This is done at most once within the timeout, there is no separate eviction thread.
+     *
+     * @param idleTimeout the idle timeout in milliseconds, eviction is disabled if less
+     * than or equal to 0
+     */
+    private void evictIdleConnections(int idleTimeout) {
+        long now = System.currentTimeMillis();
+        if (idleTimeout > 0 && now - lastEviction >= idleTimeout) {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+            lastEviction = now;
+        }
+    }
+
+    /**
+     * Build the request configuration containing timeout and proxy settings.
+     *
+     * @param connectionSettings the settings
+     * @return the request configuration
+     */
+    private RequestConfig initializeRequestConfig(ConnectionSettings connectionSettings) {
+        RequestConfig.Builder builder = RequestConfig.custom()
+                .setConnectTimeout(connectionSettings.connectTimeout)
+                .setSocketTimeout(connectionSettings.socketTimeout);
+        if (connectionSettings.proxyHostname != null) {
+            builder.setProxy(new HttpHost(connectionSettings.proxyHostname,
+                    connectionSettings.proxyPort));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Build the credentials provider for proxy authentication if specified.
+     *
+     * @param connectionSettings the settings
+     * @return the credentials provider or null if there is no proxy authentication
+     */
+    private CredentialsProvider initializeCredentialsProvider(
+            ConnectionSettings connectionSettings) {
+        if (!connectionSettings.hasProxyCredentials()) {
+            return null;
+        }
+        AuthScope authScope = new AuthScope(connectionSettings.proxyHostname,
+                connectionSettings.proxyPort);
+        CredentialsProvider credentials = new BasicCredentialsProvider();
+        credentials.setCredentials(authScope, new UsernamePasswordCredentials(
+                connectionSettings.proxyUsername, connectionSettings.proxyPassword));
+        return credentials;
+    }
+
+    /**
+     * Keep-alive strategy using the configured duration as a default.
+     *
+     * @param response the response
+     * @param context the context of the request
+     * @return the keep-alive duration in milliseconds
+     */
+    private long keepAliveDuration(HttpResponse response, HttpContext context) {
+        long defaultDuration = keepAlive > 0 ? keepAlive : -1;
+        return HttpClientConnectionFactory.keepAliveDuration(response, context,
+                defaultDuration);
+    }
+}
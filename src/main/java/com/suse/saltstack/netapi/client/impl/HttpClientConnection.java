@@ -1,27 +1,25 @@
 package com.suse.saltstack.netapi.client.impl;
 
-import com.suse.saltstack.netapi.client.Connection;
+import com.suse.saltstack.netapi.client.AbortableConnection;
 import com.suse.saltstack.netapi.config.ClientConfig;
+import com.suse.saltstack.netapi.config.ConfigSnapshot;
 import com.suse.saltstack.netapi.exception.SaltStackException;
 import com.suse.saltstack.netapi.exception.SaltUserUnauthorizedException;
+import com.suse.saltstack.netapi.metrics.RequestTiming;
 import com.suse.saltstack.netapi.parser.JsonParser;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpHeaders;
-import org.apache.http.HttpHost;
 import org.apache.http.HttpStatus;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.HttpClients;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
@@ -32,29 +30,43 @@ import java.net.URI;
  * using Apache's HttpClient.
  * @param <T> type of result retrieved using this HTTP connection
  */
-public class HttpClientConnection<T> implements Connection<T> {
+public class HttpClientConnection<T> implements AbortableConnection<T> {
+
+    /** The attribute of the HTTP context holding the {@link RequestTiming} */
+    static final String TIMING_ATTRIBUTE = RequestTiming.class.getName();
 
     /** The endpoint. */
     private final String endpoint;
 
-    /** The config object. */
-    private final ClientConfig config;
+    /** The snapshot of the config taken when the connection was created */
+    private final ConfigSnapshot config;
 
     /** The parser to parse the returned Result */
     private final JsonParser<T> parser;
 
+    /** The (shared) client used to execute the request */
+    private final CloseableHttpClient httpClient;
+
+    /** The request in flight, kept to abort it from another thread */
+    private volatile HttpUriRequest httpRequest;
+
+    /** Whether this connection has been aborted */
+    private volatile boolean aborted;
+
     /**
      * Init a connection to a given SaltStack API endpoint.
      *
      * @param endpointIn the endpoint
      * @param parserIn the parser
-     * @param configIn the config
+     * @param configIn the snapshot of the config
+     * @param httpClientIn the client to execute the request with
      */
     public HttpClientConnection(String endpointIn, JsonParser<T> parserIn,
-            ClientConfig configIn) {
+            ConfigSnapshot configIn, CloseableHttpClient httpClientIn) {
         endpoint = endpointIn;
         config = configIn;
         parser = parserIn;
+        httpClient = httpClientIn;
     }
 
     /**
@@ -73,6 +85,18 @@ public class HttpClientConnection<T> implements Connection<T> {
         return request(null);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void abort() {
+        aborted = true;
+        HttpUriRequest request = httpRequest;
+        if (request != null) {
+            request.abort();
+        }
+    }
+
     /**
      * Perform HTTP request and parse the result into a given result type.
      *
@@ -81,64 +105,21 @@ public class HttpClientConnection<T> implements Connection<T> {
      * @throws SaltStackException in case of a problem when executing the request
      */
     private T request(String data) throws SaltStackException {
-        try (CloseableHttpClient httpClient = initializeHttpClient().build()) {
-            return executeRequest(httpClient, prepareRequest(data));
+        RequestTiming timing = RequestTiming.start(config, endpoint, data);
+        try {
+            URI uri = config.resolve(endpoint);
+            HttpUriRequest request = prepareRequest(uri,
+                    config.get(ClientConfig.TOKEN), data);
+            httpRequest = request;
+            if (aborted) {
+                // Aborted before the request was reachable, execute fails right away
+                request.abort();
+            }
+            return executeRequest(httpClient, request, timing);
         } catch (IOException e) {
             throw new SaltStackException(e);
-        }
-    }
-
-    /**
-     * Initialize a HttpClientBuilder based on the current ClientConfig object.
-     */
-    private HttpClientBuilder initializeHttpClient() {
-        HttpClientBuilder httpClientBuilder = HttpClients.custom();
-        configureTimeouts(httpClientBuilder);
-        configureProxyIfSpecified(httpClientBuilder);
-        return httpClientBuilder;
-    }
-
-    /**
-     * Configure the supplied HttpClientBuilder with timeout settings from the current
-     * ClientConfig object.
-     *
-     * @param httpClientBuilder the {@link HttpClientBuilder} to be configured
-     */
-    private void configureTimeouts(HttpClientBuilder httpClientBuilder) {
-        // Timeouts may be specified on configuration
-        RequestConfig requestConfig = RequestConfig.custom()
-                .setConnectTimeout(config.get(ClientConfig.CONNECT_TIMEOUT))
-                .setSocketTimeout(config.get(ClientConfig.SOCKET_TIMEOUT))
-                .build();
-
-        httpClientBuilder.setDefaultRequestConfig(requestConfig);
-    }
-
-    /**
-     * Configure the HttpClientBuilder with the proxy settings if specified in the
-     * ClientConfig object.
-     *
-     * @param httpClientBuilder the {@link HttpClientBuilder} to be configured
-     */
-    private void configureProxyIfSpecified(HttpClientBuilder httpClientBuilder) {
-        String proxyHost = config.get(ClientConfig.PROXY_HOSTNAME);
-        if (proxyHost != null) {
-            int proxyPort = config.get(ClientConfig.PROXY_PORT);
-
-            HttpHost proxy = new HttpHost(proxyHost, proxyPort);
-            httpClientBuilder.setProxy(proxy);
-
-            String proxyUsername = config.get(ClientConfig.PROXY_USERNAME);
-            String proxyPassword = config.get(ClientConfig.PROXY_PASSWORD);
-
-            // Proxy authentication
-            if (proxyUsername != null && proxyPassword != null) {
-                CredentialsProvider credentials = new BasicCredentialsProvider();
-                credentials.setCredentials(
-                        new AuthScope(proxyHost, proxyPort),
-                        new UsernamePasswordCredentials(proxyUsername, proxyPassword));
-                httpClientBuilder.setDefaultCredentialsProvider(credentials);
-            }
+        } finally {
+            timing.finish();
         }
     }
 
@@ -146,13 +127,14 @@ public class HttpClientConnection<T> implements Connection<T> {
      * Prepares the HTTP request object creating a POST or GET request depending on if data
      * is supplied or not.
      *
+     * @param uri the URI to send the request to
+     * @param token the authentication token, may be null
      * @param jsonData json POST data, will use GET if null
      * @return HttpUriRequest object the prepared request
      * @throws UnsupportedEncodingException when charset is not available
      */
-    private HttpUriRequest prepareRequest(String jsonData)
+    static HttpUriRequest prepareRequest(URI uri, String token, String jsonData)
             throws UnsupportedEncodingException {
-        URI uri = config.get(ClientConfig.URL).resolve(endpoint);
         HttpUriRequest httpRequest;
         if (jsonData != null) {
             // POST data
@@ -167,7 +149,6 @@ public class HttpClientConnection<T> implements Connection<T> {
         httpRequest.addHeader(HttpHeaders.ACCEPT, "application/json");
 
         // Token authentication
-        String token = config.get(ClientConfig.TOKEN);
         if (token != null) {
             httpRequest.addHeader("X-Auth-Token", token);
         }
@@ -180,30 +161,54 @@ public class HttpClientConnection<T> implements Connection<T> {
      *
      * @param httpClient the client to use for the request
      * @param httpRequest the prepared request to perform
+     * @param timing the timing to record the request with
      * @throws SaltStackException if HTTP status code is not as expected (200 or 202)
      * @throws IOException in case of problems executing the request
      */
-    private T executeRequest(CloseableHttpClient httpClient, HttpUriRequest httpRequest)
-            throws SaltStackException, IOException {
-        try (CloseableHttpResponse response = httpClient.execute(httpRequest)) {
-            int statusCode = response.getStatusLine().getStatusCode();
-            if (statusCode == HttpStatus.SC_OK ||
-                    statusCode == HttpStatus.SC_ACCEPTED) {
-                // Parse result type from the returned JSON
-                return parser.parse(response.getEntity().getContent());
-            } else {
-                throw createSaltStackException(statusCode);
+    private T executeRequest(CloseableHttpClient httpClient, HttpUriRequest httpRequest,
+            RequestTiming timing) throws SaltStackException, IOException {
+        HttpClientContext context = HttpClientContext.create();
+        context.setAttribute(TIMING_ATTRIBUTE, timing);
+        try (CloseableHttpResponse response = httpClient.execute(httpRequest, context)) {
+            HttpEntity entity = response.getEntity();
+            try {
+                int statusCode = response.getStatusLine().getStatusCode();
+                timing.responseReceived(statusCode);
+                if (statusCode == HttpStatus.SC_OK ||
+                        statusCode == HttpStatus.SC_ACCEPTED) {
+                    // Parse result type from the returned JSON
+                    T result = parser.parse(timing.countResponse(entity.getContent()));
+                    timing.parsed();
+                    return result;
+                } else {
+                    throw createSaltStackException(statusCode);
+                }
+            } finally {
+                // Read the entity to the end so the connection can be reused
+                EntityUtils.consume(entity);
             }
         }
     }
 
+    /**
+     * Return the timing of the request executed with the given context.
+     *
+     * @param context the HTTP context
+     * @return the timing, {@link RequestTiming#DISABLED} if there is none
+     */
+    static RequestTiming timing(HttpContext context) {
+        Object timing = context.getAttribute(TIMING_ATTRIBUTE);
+        return timing instanceof RequestTiming ?
+                (RequestTiming) timing : RequestTiming.DISABLED;
+    }
+
     /**
      * Create the appropriate exception for the given HTTP status code.
      *
      * @param statusCode HTTP status code
      * @return {@link SaltStackException} instance
      */
-    private SaltStackException createSaltStackException(int statusCode) {
+    static SaltStackException createSaltStackException(int statusCode) {
         if (statusCode == HttpStatus.SC_UNAUTHORIZED) {
             return new SaltUserUnauthorizedException(
                     "Salt user does not have sufficient permissions");
@@ -2,14 +2,59 @@ package com.suse.saltstack.netapi.client.impl;
 
 import com.suse.saltstack.netapi.client.ConnectionFactory;
 import com.suse.saltstack.netapi.config.ClientConfig;
+import com.suse.saltstack.netapi.config.ConfigSnapshot;
 import com.suse.saltstack.netapi.parser.JsonParser;
 
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Implementation of a factory for connections using Apache's HttpClient.
+ * <p>
+ * All connections created by one factory share a pool of persistent HTTP connections
+ * and a single {@link CloseableHttpClient} instance. The client is rebuilt only when the
+ * timeout, keep-alive or proxy settings of the given {@link ClientConfig} change, the
+ * pool limits are applied on the fly. Call {@link #close()} to release the pooled
+ * connections when the factory is no longer used.
  *
  * @see HttpClientConnection
  */
-public class HttpClientConnectionFactory implements ConnectionFactory {
+public class HttpClientConnectionFactory implements ConnectionFactory, Closeable {
+
+    /** The connection pool shared by all clients built by this factory */
+    private final PoolingHttpClientConnectionManager connectionManager =
+            new PoolingHttpClientConnectionManager();
+
+    /** The settings the current client has been built with */
+    private ConnectionSettings settings;
+
+    /** Version of the config snapshot the settings have last been checked against */
+    private long settingsVersion;
+
+    /** The current client */
+    private CloseableHttpClient httpClient;
+
+    /** True once the factory has been closed */
+    private boolean closed;
+
+    /** Time of the last eviction of idle connections */
+    private long lastEviction = System.currentTimeMillis();
 
     /**
      * {@inheritDoc}
@@ -17,6 +62,206 @@ public class HttpClientConnectionFactory implements ConnectionFactory {
     @Override
     public <T> HttpClientConnection<T> create(String endpoint,
             JsonParser<T> parser, ClientConfig config) {
-        return new HttpClientConnection<>(endpoint, parser, config);
+        ConfigSnapshot snapshot = config.snapshot();
+        return new HttpClientConnection<>(endpoint, parser, snapshot,
+                getHttpClient(snapshot));
+    }
+
+    /**
+     * Return the shared client for the given configuration, the client is (re)built in
+     * case there is none yet or the relevant settings have changed. The settings are
+     * only compared if the version of the snapshot differs from the last one. Idle
+     * connections are evicted from the pool when a client is handed out, since
+     * HttpClient does not evict connections of a shared pool by itself.
+     *
+     * @param config the snapshot of the config
+     * @return the HTTP client to use for requests with the given configuration
+     * @throws IllegalStateException if the factory has been closed
+     */
+    synchronized CloseableHttpClient getHttpClient(ConfigSnapshot config) {
+        if (closed) {
+            throw new IllegalStateException("Connection factory is closed");
+        }
+        if (httpClient == null || config.getVersion() != settingsVersion) {
+            configurePool(config);
+
+            ConnectionSettings current = new ConnectionSettings(config);
+            if (httpClient == null || !current.equals(settings)) {
+                CloseableHttpClient previous = httpClient;
+                httpClient = initializeHttpClient(current).build();
+                settings = current;
+
+                // Connections are owned by the pool, requests still running on the
+                // previous client are therefore not affected by closing it.
+                closeQuietly(previous);
+            }
+            settingsVersion = config.getVersion();
+        }
+        evictIdleConnections(settings.idleTimeout);
+        return httpClient;
+    }
+
+    /**
+     * Close the current client and shut down the connection pool. Connections cannot
+     * be created anymore afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        closeQuietly(httpClient);
+        httpClient = null;
+        settings = null;
+        connectionManager.shutdown();
+    }
+
+    /**
+     * Return the connection pool shared by all clients of this factory.
+     *
+     * @return the connection pool
+     */
+    PoolingHttpClientConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    /**
+     * Apply the pool limits from the given config snapshot.
+     *
+     * @param config the snapshot of the config
+     */
+    private void configurePool(ConfigSnapshot config) {
+        int maxTotal = config.get(ClientConfig.MAX_TOTAL_CONNECTIONS);
+        if (connectionManager.getMaxTotal() != maxTotal) {
+            connectionManager.setMaxTotal(maxTotal);
+        }
+        int maxPerRoute = config.get(ClientConfig.MAX_CONNECTIONS_PER_ROUTE);
+        if (connectionManager.getDefaultMaxPerRoute() != maxPerRoute) {
+            connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        }
+    }
+
+    /**
+     * Initialize a HttpClientBuilder based on the given settings.
+     *
+     * @param clientSettings the settings
+     * @return the configured {@link HttpClientBuilder}
+     */
+    private HttpClientBuilder initializeHttpClient(ConnectionSettings clientSettings) {
+        HttpClientBuilder httpClientBuilder = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setConnectionManagerShared(true)
+                .setRequestExecutor(new TimingRequestExecutor());
+        configureTimeouts(httpClientBuilder, clientSettings);
+        configureKeepAlive(httpClientBuilder, clientSettings);
+        configureProxyIfSpecified(httpClientBuilder, clientSettings);
+        return httpClientBuilder;
+    }
+
+    /**
+     * Configure the supplied HttpClientBuilder with timeout settings.
+     *
+     * @param httpClientBuilder the {@link HttpClientBuilder} to be configured
+     * @param clientSettings the settings
+     */
+    private void configureTimeouts(HttpClientBuilder httpClientBuilder,
+            ConnectionSettings clientSettings) {
+        // Timeouts may be specified on configuration
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(clientSettings.connectTimeout)
+                .setSocketTimeout(clientSettings.socketTimeout)
+                .build();
+
+        httpClientBuilder.setDefaultRequestConfig(requestConfig);
+    }
+
+    /**
+     * Close expired connections and connections idle for longer than the given timeout.
+     * This is done at most once within the timeout, there is no separate eviction thread.
+     *
+     * @param idleTimeout the idle timeout in milliseconds, eviction is disabled if less
+     * than or equal to 0
+     */
+    private void evictIdleConnections(int idleTimeout) {
+        long now = System.currentTimeMillis();
+        if (idleTimeout > 0 && now - lastEviction >= idleTimeout) {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+            lastEviction = now;
+        }
+    }
+
+    /**
+     * Configure the supplied HttpClientBuilder with keep-alive settings.
+     *
+     * @param httpClientBuilder the {@link HttpClientBuilder} to be configured
+     * @param clientSettings the settings
+     */
+    private void configureKeepAlive(HttpClientBuilder httpClientBuilder,
+            ConnectionSettings clientSettings) {
+        int keepAlive = clientSettings.keepAlive;
+        if (keepAlive > 0) {
+            ConnectionKeepAliveStrategy strategy = (response, context) ->
+                    keepAliveDuration(response, context, keepAlive);
+            httpClientBuilder.setKeepAliveStrategy(strategy);
+        }
+    }
+
+    /**
+     * Return the keep-alive duration announced by the server in the Keep-Alive header,
+     * or the given default duration if there is none.
+     *
+     * @param response the response
+     * @param context the context of the request
+     * @param defaultDuration the default duration in milliseconds
+     * @return the keep-alive duration in milliseconds
+     */
+    static long keepAliveDuration(HttpResponse response, HttpContext context,
+            long defaultDuration) {
+        long duration = DefaultConnectionKeepAliveStrategy.INSTANCE
+                .getKeepAliveDuration(response, context);
+        return duration > 0 ? duration : defaultDuration;
+    }
+
+    /**
+     * Configure the HttpClientBuilder with the proxy settings if specified.
+     *
+     * @param httpClientBuilder the {@link HttpClientBuilder} to be configured
+     * @param clientSettings the settings
+     */
+    private void configureProxyIfSpecified(HttpClientBuilder httpClientBuilder,
+            ConnectionSettings clientSettings) {
+        String proxyHost = clientSettings.proxyHostname;
+        if (proxyHost != null) {
+            int proxyPort = clientSettings.proxyPort;
+
+            HttpHost proxy = new HttpHost(proxyHost, proxyPort);
+            httpClientBuilder.setProxy(proxy);
+
+            String proxyUsername = clientSettings.proxyUsername;
+            String proxyPassword = clientSettings.proxyPassword;
+
+            // Proxy authentication
+            if (proxyUsername != null && proxyPassword != null) {
+                CredentialsProvider credentials = new BasicCredentialsProvider();
+                credentials.setCredentials(
+                        new AuthScope(proxyHost, proxyPort),
+                        new UsernamePasswordCredentials(proxyUsername, proxyPassword));
+                httpClientBuilder.setDefaultCredentialsProvider(credentials);
+            }
+        }
+    }
+
+    /**
+     * Quietly close a given client, suppressing exceptions.
+     *
+     * @param client the client to close, may be null
+     */
+    private static void closeQuietly(CloseableHttpClient client) {
+        if (client == null) {
+            return;
+        }
+        try {
+            client.close();
+        } catch (IOException e) {
+        }
     }
 }
@@ -2,8 +2,9 @@ package com.suse.saltstack.netapi.client.impl;
 
 import com.suse.saltstack.netapi.client.Connection;
 import com.suse.saltstack.netapi.config.ClientConfig;
-
+import com.suse.saltstack.netapi.config.ConfigSnapshot;
 import com.suse.saltstack.netapi.exception.SaltStackException;
+import com.suse.saltstack.netapi.metrics.RequestTiming;
 import com.suse.saltstack.netapi.parser.JsonParser;
 
 import java.io.DataOutputStream;
@@ -20,8 +21,8 @@ public class JDKConnection<T> implements Connection<T> {
     /** The endpoint. */
     private final String endpoint;
 
-    /** The config object. */
-    private final ClientConfig config;
+    /** The snapshot of the config taken when the connection was created */
+    private final ConfigSnapshot config;
 
     /** The parser to parse the returned Result */
     private final JsonParser<T> parser;
@@ -30,9 +31,10 @@ public class JDKConnection<T> implements Connection<T> {
      * Init a connection to a given SaltStack API endpoint.
      *
      * @param endpointIn the endpoint
-     * @param configIn the config
+     * @param configIn the snapshot of the config
      */
-    public JDKConnection(String endpointIn, JsonParser<T> parserIn, ClientConfig configIn) {
+    public JDKConnection(String endpointIn, JsonParser<T> parserIn,
+            ConfigSnapshot configIn) {
         endpoint = endpointIn;
         config = configIn;
         parser = parserIn;
@@ -63,6 +65,7 @@ public class JDKConnection<T> implements Connection<T> {
      */
     private T request(String method, String data)
             throws SaltStackException {
+        RequestTiming timing = RequestTiming.start(config, endpoint, data);
         HttpURLConnection connection = null;
         try {
             // Setup and configure the connection
@@ -85,10 +88,14 @@ public class JDKConnection<T> implements Connection<T> {
 
             // Send data in case we have some
             if (data != null) {
+                int length = data.getBytes().length;
                 connection.setRequestProperty("Content-Type", "application/json");
-                connection.setRequestProperty("Content-Length",
-                        Integer.toString(data.getBytes().length));
-
+                connection.setRequestProperty("Content-Length", Integer.toString(length));
+                timing.setRequestBytes(length);
+            }
+            connection.connect();
+            timing.connected();
+            if (data != null) {
                 // Actually write the bytes
                 DataOutputStream outputStream = new DataOutputStream(
                         connection.getOutputStream());
@@ -96,12 +103,16 @@ public class JDKConnection<T> implements Connection<T> {
                 outputStream.flush();
                 outputStream.close();
             }
+            timing.sent();
 
             // React depending on the result of the request
             int responseCode = connection.getResponseCode();
+            timing.responseReceived(responseCode);
             if (responseCode == HttpURLConnection.HTTP_OK ||
                     responseCode == HttpURLConnection.HTTP_ACCEPTED) {
-                return parser.parse(connection.getInputStream());
+                T result = parser.parse(timing.countResponse(connection.getInputStream()));
+                timing.parsed();
+                return result;
             } else {
                 // Request was not successful
                 throw new SaltStackException("Response code: " + responseCode);
@@ -109,6 +120,7 @@ public class JDKConnection<T> implements Connection<T> {
         } catch (IOException e) {
             throw new SaltStackException(e);
         } finally {
+            timing.finish();
             // Clean up connection and streams
             if (connection != null) {
                 connection.disconnect();
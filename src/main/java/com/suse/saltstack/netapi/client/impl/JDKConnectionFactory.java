@@ -17,6 +17,6 @@ public class JDKConnectionFactory implements ConnectionFactory {
     @Override
     public <T> JDKConnection<T> create(String endpoint, JsonParser<T> parser,
             ClientConfig config) {
-        return new JDKConnection<>(endpoint, parser, config);
+        return new JDKConnection<>(endpoint, parser, config.snapshot());
     }
 }
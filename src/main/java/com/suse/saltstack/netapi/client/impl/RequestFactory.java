@@ -1,6 +1,7 @@
 package com.suse.saltstack.netapi.client.impl;
 
 import com.suse.saltstack.netapi.config.ClientConfig;
+import com.suse.saltstack.netapi.config.ConfigSnapshot;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
@@ -18,6 +19,9 @@ public class RequestFactory {
     /** Singleton instance. */
     private static final RequestFactory INSTANCE = new RequestFactory();
 
+    /** The proxy settings derived from the last config snapshot */
+    private volatile ProxyConfig proxyConfig;
+
     /**
      * Instantiates a new SaltStack request factory.
      */
@@ -37,31 +41,25 @@ public class RequestFactory {
      *
      * @param method the method
      * @param endpoint the endpoint
-     * @param config the config
+     * @param config the snapshot of the config
      * @return connection
      * @throws IOException Signals that an I/O exception has occurred.
      */
     public HttpURLConnection initConnection(String method, String endpoint,
-            ClientConfig config) throws IOException {
+            ConfigSnapshot config) throws IOException {
         // Init the connection
-        URL url = config.get(ClientConfig.URL).resolve(endpoint).toURL();
+        URL url = config.resolve(endpoint).toURL();
         HttpURLConnection connection;
 
         // Optionally connect via a given proxy
-        String proxyHost = config.get(ClientConfig.PROXY_HOSTNAME);
-        if (proxyHost != null) {
-            int proxyPort = config.get(ClientConfig.PROXY_PORT);
-            Proxy proxy = new Proxy(Proxy.Type.HTTP,
-                    new InetSocketAddress(proxyHost, proxyPort));
-            connection = (HttpURLConnection) url.openConnection(proxy);
+        ProxyConfig proxyConfig = getProxyConfig(config);
+        if (proxyConfig.proxy != null) {
+            connection = (HttpURLConnection) url.openConnection(proxyConfig.proxy);
 
             // Proxy authentication
-            String proxyUsername = config.get(ClientConfig.PROXY_USERNAME);
-            String proxyPassword = config.get(ClientConfig.PROXY_PASSWORD);
-            if (proxyUsername != null && proxyPassword != null) {
-                final String encoded = DatatypeConverter.printBase64Binary(
-                        (proxyUsername + ':' + proxyPassword).getBytes());
-                connection.addRequestProperty("Proxy-Authorization", encoded);
+            if (proxyConfig.authorization != null) {
+                connection.addRequestProperty("Proxy-Authorization",
+                        proxyConfig.authorization);
             }
         } else {
             connection = (HttpURLConnection) url.openConnection();
@@ -79,4 +77,49 @@ public class RequestFactory {
 
         return connection;
     }
+
+    /**
+     * Return the proxy settings derived from the given snapshot, they are derived again
+     * only if the version of the snapshot differs from the last one.
+     *
+     * @param config the snapshot of the config
+     * @return the proxy settings
+     */
+    private ProxyConfig getProxyConfig(ConfigSnapshot config) {
+        ProxyConfig cached = proxyConfig;
+        if (cached == null || cached.version != config.getVersion()) {
+            cached = new ProxyConfig(config);
+            proxyConfig = cached;
+        }
+        return cached;
+    }
+
+    /**
+     * The proxy and proxy authorization header derived from a config snapshot.
+     */
+    private static final class ProxyConfig {
+
+        final long version;
+        final Proxy proxy;
+        final String authorization;
+
+        ProxyConfig(ConfigSnapshot config) {
+            version = config.getVersion();
+            String proxyHost = config.get(ClientConfig.PROXY_HOSTNAME);
+            if (proxyHost != null) {
+                int proxyPort = config.get(ClientConfig.PROXY_PORT);
+                proxy = new Proxy(Proxy.Type.HTTP,
+                        new InetSocketAddress(proxyHost, proxyPort));
+
+                String proxyUsername = config.get(ClientConfig.PROXY_USERNAME);
+                String proxyPassword = config.get(ClientConfig.PROXY_PASSWORD);
+                authorization = proxyUsername != null && proxyPassword != null ?
+                        DatatypeConverter.printBase64Binary(
+                                (proxyUsername + ':' + proxyPassword).getBytes()) : null;
+            } else {
+                proxy = null;
+                authorization = null;
+            }
+        }
+    }
 }
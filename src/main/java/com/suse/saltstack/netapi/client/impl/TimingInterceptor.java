@@ -0,0 +1,38 @@
+package com.suse.saltstack.netapi.client.impl;
+
+import com.suse.saltstack.netapi.metrics.RequestTiming;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Interceptor recording the progress of non-blocking requests in their
+ * {@link RequestTiming}, see {@link HttpClientConnection#TIMING_ATTRIBUTE}. Request
+ * interceptors of the non-blocking client run once the connection is established,
+ * response interceptors as soon as the status line and headers are received. When the
+ * request has been written is not observable this way.
+ */
+class TimingInterceptor implements HttpRequestInterceptor, HttpResponseInterceptor {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void process(HttpRequest request, HttpContext context) {
+        RequestTiming timing = HttpClientConnection.timing(context);
+        timing.connected();
+        TimingRequestExecutor.recordRequestBytes(request, timing);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void process(HttpResponse response, HttpContext context) {
+        HttpClientConnection.timing(context).responseReceived(
+                response.getStatusLine().getStatusCode());
+    }
+}
@@ -0,0 +1,51 @@
+package com.suse.saltstack.netapi.client.impl;
+
+import com.suse.saltstack.netapi.metrics.RequestTiming;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+import java.io.IOException;
+
+/**
+ * Request executor recording when a request is sent over the established connection in
+ * the {@link RequestTiming} of the request, see
+ * {@link HttpClientConnection#TIMING_ATTRIBUTE}.
+ * The client connects before the request is handed to the executor.
+ */
+class TimingRequestExecutor extends HttpRequestExecutor {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected HttpResponse doSendRequest(HttpRequest request,
+            org.apache.http.HttpClientConnection conn, HttpContext context)
+            throws IOException, HttpException {
+        RequestTiming timing = HttpClientConnection.timing(context);
+        timing.connected();
+        recordRequestBytes(request, timing);
+        HttpResponse response = super.doSendRequest(request, conn, context);
+        timing.sent();
+        return response;
+    }
+
+    /**
+     * Record the size of the body of the given request, if it has one.
+     *
+     * @param request the request
+     * @param timing the timing of the request
+     */
+    static void recordRequestBytes(HttpRequest request, RequestTiming timing) {
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntityEnclosingRequest enclosing = (HttpEntityEnclosingRequest) request;
+            if (enclosing.getEntity() != null) {
+                timing.setRequestBytes(enclosing.getEntity().getContentLength());
+            }
+        }
+    }
+}
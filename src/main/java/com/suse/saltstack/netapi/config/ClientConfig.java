@@ -1,11 +1,17 @@
 package com.suse.saltstack.netapi.config;
 
+import com.suse.saltstack.netapi.event.OverflowPolicy;
+import com.suse.saltstack.netapi.metrics.EventStreamMetrics;
+import com.suse.saltstack.netapi.metrics.RequestMetrics;
+
 import java.net.URI;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * A statically typed key/value store for the Saltstack client configuration.
+ * <p>
+ * The configuration may be modified and read concurrently. Every modification replaces
+ * the immutable {@link ConfigSnapshot} that is returned by {@link #snapshot()}.
  */
 public class ClientConfig {
 
@@ -28,6 +34,40 @@ public class ClientConfig {
      */
     public static final Key<Integer> SOCKET_TIMEOUT = new Key<>(10000);
 
+    /**
+     * Maximum number of pooled HTTP connections in total.
+     * Default value is 20
+     */
+    public static final Key<Integer> MAX_TOTAL_CONNECTIONS = new Key<>(20);
+
+    /**
+     * Maximum number of pooled HTTP connections per route (target host).
+     * Default value is 20
+     */
+    public static final Key<Integer> MAX_CONNECTIONS_PER_ROUTE = new Key<>(20);
+
+    /**
+     * Time in milliseconds a pooled connection is kept alive in case the server does not
+     * send a Keep-Alive header. A value less than or equal to 0 keeps connections alive
+     * indefinitely. Default value is 5000ms (5s), below the CherryPy socket timeout.
+     */
+    public static final Key<Integer> CONNECTION_KEEP_ALIVE = new Key<>(5000);
+
+    /**
+     * Time in milliseconds after which idle pooled connections are evicted.
+     * A value less than or equal to 0 disables the eviction.
+     * Default value is 30000ms (30s)
+     */
+    public static final Key<Integer> CONNECTION_IDLE_TIMEOUT = new Key<>(30000);
+
+    /**
+     * Maximum length in bytes of a response buffered by the
+     * {@code HttpAsyncClientConnectionFactory} before it is parsed, longer responses
+     * fail the request. A value less than or equal to 0 disables the limit.
+     * Default value is 0x4000000 (64 MiB)
+     */
+    public static final Key<Integer> MAX_RESPONSE_LENGTH = new Key<>(0x4000000);
+
     // Proxy settings
     public static final Key<String> PROXY_HOSTNAME = new Key<>();
     public static final Key<Integer> PROXY_PORT = new Key<>(3128);
@@ -41,6 +81,117 @@ public class ClientConfig {
      */
     public static final Key<Integer> WEBSOCKET_MAX_MESSAGE_LENGTH = new Key<>(0x500000);
 
+    /**
+     * Capacity of the queue buffering the events of each listener of an event stream.
+     * With a value greater than 0 listeners are notified on the
+     * {@link #EVENT_DISPATCH_EXECUTOR}, so a slow listener does not stall the websocket.
+     * A value less than or equal to 0 notifies listeners on the websocket thread.
+     * Default value is 0
+     */
+    public static final Key<Integer> EVENT_QUEUE_CAPACITY = new Key<>(0);
+
+    /**
+     * What to do with new events in case the queue of a listener is full.
+     * Default value is {@link OverflowPolicy#BLOCK}
+     */
+    public static final Key<OverflowPolicy> EVENT_QUEUE_OVERFLOW_POLICY =
+            new Key<>(OverflowPolicy.BLOCK);
+
+    /**
+     * Executor notifying the listeners of an event stream about queued events. By
+     * default the event stream uses its own pool of daemon threads.
+     */
+    public static final Key<Executor> EVENT_DISPATCH_EXECUTOR = new Key<>();
+
+    /**
+     * Metrics an event stream reports the received frames and events and the time
+     * taken by its listeners to, e.g. a
+     * {@link com.suse.saltstack.netapi.metrics.HistogramEventStreamMetrics}. Event
+     * streams skip all measurements with the default.
+     * Default value is {@link EventStreamMetrics#NOOP}
+     */
+    public static final Key<EventStreamMetrics> EVENT_STREAM_METRICS =
+            new Key<>(EventStreamMetrics.NOOP);
+
+    /**
+     * Reconnect an event stream that was closed by anything but the client itself,
+     * keeping its listeners. Listeners are notified of the gap once the stream is
+     * connected again instead of being notified that the stream was closed.
+     * Default value is false
+     */
+    public static final Key<Boolean> EVENT_STREAM_RECONNECT = new Key<>(false);
+
+    /**
+     * Delay in milliseconds before the first attempt to reconnect an event stream. The
+     * delay doubles with every failed attempt and is randomized by up to 50%.
+     * Default value is 500ms
+     */
+    public static final Key<Integer> EVENT_STREAM_RECONNECT_MIN_DELAY = new Key<>(500);
+
+    /**
+     * Maximum delay in milliseconds between attempts to reconnect an event stream.
+     * Default value is 30000ms (30s)
+     */
+    public static final Key<Integer> EVENT_STREAM_RECONNECT_MAX_DELAY = new Key<>(30000);
+
+    /**
+     * Maximum number of consecutive failed attempts to reconnect an event stream before
+     * it is closed for good. A value less than or equal to 0 retries indefinitely.
+     * Default value is 0
+     */
+    public static final Key<Integer> EVENT_STREAM_RECONNECT_MAX_ATTEMPTS = new Key<>(0);
+
+    /**
+     * Collapse identical requests (same endpoint, payload and token) that are in flight
+     * at the same time into a single HTTP request, handing the parsed result to all
+     * callers. The callers then share the result objects, which must not be modified.
+     * Cancelling a future of a coalesced request does not abort the HTTP request.
+     * Only requests without side effects are coalesced: GET requests like /minions,
+     * /keys or /stats and synchronous calls of read-only functions like grains.items.
+     * Default value is false
+     */
+    public static final Key<Boolean> REQUEST_COALESCING = new Key<>(false);
+
+    /**
+     * Time in milliseconds an {@link com.suse.saltstack.netapi.event.InventoryCache}
+     * keeps the results of /minions and /minions/&lt;id&gt;. A value less than or equal
+     * to 0 disables caching them.
+     * Default value is 30000ms (30s)
+     */
+    public static final Key<Integer> INVENTORY_CACHE_MINIONS_TTL = new Key<>(30000);
+
+    /**
+     * Time in milliseconds an {@link com.suse.saltstack.netapi.event.InventoryCache}
+     * keeps the result of /keys. A value less than or equal to 0 disables caching it.
+     * Default value is 30000ms (30s)
+     */
+    public static final Key<Integer> INVENTORY_CACHE_KEYS_TTL = new Key<>(30000);
+
+    /**
+     * Time in milliseconds an {@link com.suse.saltstack.netapi.event.InventoryCache}
+     * keeps the results of grains.items and grains.item calls. A value less than or
+     * equal to 0 disables caching them.
+     * Default value is 300000ms (5min)
+     */
+    public static final Key<Integer> INVENTORY_CACHE_GRAINS_TTL = new Key<>(300000);
+
+    /**
+     * Maximum number of minion details and of grains results an
+     * {@link com.suse.saltstack.netapi.event.InventoryCache} keeps each, the least
+     * recently used are evicted first.
+     * Default value is 1024
+     */
+    public static final Key<Integer> INVENTORY_CACHE_MAX_ENTRIES = new Key<>(1024);
+
+    /**
+     * Metrics every connection reports the timing and sizes of its requests to, e.g. a
+     * {@link com.suse.saltstack.netapi.metrics.HistogramRequestMetrics}. Connections
+     * skip all measurements with the default.
+     * Default value is {@link RequestMetrics#NOOP}
+     */
+    public static final Key<RequestMetrics> REQUEST_METRICS =
+            new Key<>(RequestMetrics.NOOP);
+
     /**
      * A key to use with {@link ClientConfig}.
      * @param <T> The type of the value associated with this key.
@@ -68,7 +219,8 @@ public class ClientConfig {
 
     }
 
-    private final Map<Key<?>, Object> store = new HashMap<>();
+    /** The current values, replaced on every modification */
+    private volatile ConfigSnapshot snapshot = ConfigSnapshot.EMPTY;
 
     /**
      *  Sets the config for a key to the specified value.
@@ -81,7 +233,9 @@ public class ClientConfig {
         if (value == null || value.equals(key.defaultValue)) {
             remove(key);
         } else {
-            store.put(key, value);
+            synchronized (this) {
+                snapshot = snapshot.with(key, value);
+            }
         }
     }
 
@@ -93,7 +247,11 @@ public class ClientConfig {
      * @param <T> The type of the value associated with the key.
      */
     public <T> void remove(Key<T> key) {
-        store.remove(key);
+        synchronized (this) {
+            if (snapshot.contains(key)) {
+                snapshot = snapshot.with(key, null);
+            }
+        }
     }
 
     /**
@@ -105,9 +263,18 @@ public class ClientConfig {
      * @return The current configured value for the key or the default value if not
      * configured.
      */
-    @SuppressWarnings("unchecked")
     public <T> T get(Key<T> key) {
-        Object value = store.get(key);
-        return value != null ? (T) value : key.defaultValue;
+        return snapshot.get(key);
+    }
+
+    /**
+     * Returns an immutable snapshot of the current configuration. Modifications of this
+     * configuration are not reflected in the snapshot, read several values from a
+     * snapshot to see them consistently.
+     *
+     * @return the snapshot
+     */
+    public ConfigSnapshot snapshot() {
+        return snapshot;
     }
 }
@@ -0,0 +1,113 @@
+package com.suse.saltstack.netapi.config;
+
+import com.suse.saltstack.netapi.config.ClientConfig.Key;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An immutable snapshot of a {@link ClientConfig}, safe to be shared between threads.
+ * <p>
+ * Every snapshot carries a version that is unique across all configurations, so two
+ * snapshots with the same version always contain the same values. Objects derived from
+ * a snapshot (request configurations, proxies, credentials) can therefore be cached and
+ * reused as long as the version does not change.
+ */
+public final class ConfigSnapshot {
+
+    /** Source of the snapshot versions, shared by all configurations */
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    /** The snapshot of a configuration without any values set */
+    static final ConfigSnapshot EMPTY = new ConfigSnapshot(Collections.emptyMap(), null);
+
+    private final Map<Key<?>, Object> store;
+    private final long version;
+
+    /** Endpoints resolved against the URL, created lazily and kept while it is the same */
+    private volatile EndpointCache endpoints;
+
+    /**
+     * Create a snapshot of the given values.
+     *
+     * @param storeIn the values, must not be modified afterwards
+     * @param endpointsIn endpoints resolved against the URL, may be null
+     */
+    private ConfigSnapshot(Map<Key<?>, Object> storeIn, EndpointCache endpointsIn) {
+        store = storeIn;
+        endpoints = endpointsIn;
+        version = VERSIONS.incrementAndGet();
+    }
+
+    /**
+     * Return a new snapshot with the given key set to the given value.
+     *
+     * @param key the configuration key
+     * @param value the value, null to remove the key
+     * @return the new snapshot
+     */
+    ConfigSnapshot with(Key<?> key, Object value) {
+        Map<Key<?>, Object> copy = new HashMap<>(store);
+        if (value == null) {
+            copy.remove(key);
+        } else {
+            copy.put(key, value);
+        }
+        EndpointCache cache = endpoints;
+        return new ConfigSnapshot(Collections.unmodifiableMap(copy),
+                key == ClientConfig.URL ? null : cache);
+    }
+
+    /**
+     * Check if a value is set for the given key.
+     *
+     * @param key the configuration key
+     * @return true if the key is set
+     */
+    boolean contains(Key<?> key) {
+        return store.containsKey(key);
+    }
+
+    /**
+     * Returns the value for the given key or the default value of the key if it was not
+     * set when the snapshot was taken.
+     *
+     * @param key The configuration key.
+     * @param <T> The type of the value associated with the key.
+     * @return The configured value for the key or the default value if not configured.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Key<T> key) {
+        Object value = store.get(key);
+        return value != null ? (T) value : key.defaultValue;
+    }
+
+    /**
+     * Resolve an endpoint of the API against {@link ClientConfig#URL}. Resolved
+     * endpoints are cached per URL, for endpoints with a parameter (like
+     * {@code /minions/<id>}) the cache is bounded.
+     *
+     * @param endpoint the endpoint
+     * @return the URI of the endpoint
+     */
+    public URI resolve(String endpoint) {
+        EndpointCache cache = endpoints;
+        if (cache == null) {
+            cache = new EndpointCache(get(ClientConfig.URL));
+            endpoints = cache;
+        }
+        return cache.resolve(endpoint);
+    }
+
+    /**
+     * Return the version of this snapshot.
+     *
+     * @return the version, unique across all configurations
+     */
+    public long getVersion() {
+        return version;
+    }
+}
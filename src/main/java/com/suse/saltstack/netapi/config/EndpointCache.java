@@ -0,0 +1,79 @@
+package com.suse.saltstack.netapi.config;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The endpoints of the API resolved against a base URL. Fixed endpoints are resolved
+ * once up front. Endpoints with a parameter appended to a fixed prefix (like
+ * {@code /minions/<id>}) are resolved on first use and kept in a bounded cache, since
+ * the same minions and jobs tend to be requested repeatedly.
+ */
+class EndpointCache {
+
+    /** Maximum number of cached endpoints with a parameter */
+    static final int MAX_PARAMETERIZED = 1024;
+
+    /** Endpoints without parameters */
+    private static final String[] FIXED = {"/", "/login", "/logout", "/minions", "/jobs",
+            "/run", "/keys", "/stats", "/hook", "/events"};
+
+    /** Prefixes of the endpoints with a parameter */
+    private static final String[] TEMPLATES = {"/minions/", "/jobs/", "/hook/"};
+
+    private final URI baseUrl;
+    private final Map<String, URI> fixed = new HashMap<>();
+    private final Map<String, URI> parameterized = new ConcurrentHashMap<>();
+
+    /**
+     * Resolve the fixed endpoints against the given base URL.
+     *
+     * @param baseUrlIn the base URL
+     */
+    EndpointCache(URI baseUrlIn) {
+        baseUrl = baseUrlIn;
+        for (String endpoint : FIXED) {
+            fixed.put(endpoint, baseUrl.resolve(endpoint));
+        }
+    }
+
+    /**
+     * Resolve the given endpoint against the base URL.
+     *
+     * @param endpoint the endpoint
+     * @return the resolved URI
+     */
+    URI resolve(String endpoint) {
+        URI uri = fixed.get(endpoint);
+        if (uri == null) {
+            uri = parameterized.get(endpoint);
+        }
+        if (uri == null) {
+            uri = baseUrl.resolve(endpoint);
+            if (isTemplate(endpoint)) {
+                if (parameterized.size() >= MAX_PARAMETERIZED) {
+                    parameterized.clear();
+                }
+                parameterized.put(endpoint, uri);
+            }
+        }
+        return uri;
+    }
+
+    /**
+     * Check if the given endpoint consists of a fixed prefix and a parameter.
+     *
+     * @param endpoint the endpoint
+     * @return true if the endpoint starts with one of the prefixes
+     */
+    private static boolean isTemplate(String endpoint) {
+        for (String prefix : TEMPLATES) {
+            if (endpoint.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
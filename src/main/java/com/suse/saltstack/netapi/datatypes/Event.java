@@ -1,15 +1,42 @@
 package com.suse.saltstack.netapi.datatypes;
 
+import com.google.gson.reflect.TypeToken;
+import com.suse.saltstack.netapi.parser.JsonParser;
+
 import java.util.Map;
 
 /**
  * Parse events into objects.
+ * <p>
+ * Events received on an event stream are parsed lazily: only the tag is extracted when
+ * the event arrives, the data is kept as JSON and decoded once it is accessed.
  */
 public class Event {
 
     private String tag;
     private Map<String, Object> data;
 
+    /** The undecoded JSON of the data in case the event was parsed lazily */
+    private final transient String rawData;
+
+    /**
+     * Create an empty event, the fields are set when it is parsed from JSON.
+     */
+    public Event() {
+        this(null, null);
+    }
+
+    /**
+     * Create an event whose data is decoded on first access.
+     *
+     * @param tagIn the tag
+     * @param rawDataIn the JSON of the data
+     */
+    public Event(String tagIn, String rawDataIn) {
+        tag = tagIn;
+        rawData = rawDataIn;
+    }
+
     /**
      * Return this event's tag.
      * @return the tag
@@ -22,7 +49,35 @@ public class Event {
      * Return this event's data.
      * @return the data
      */
-    public Map<String, Object> getData() {
+    public synchronized Map<String, Object> getData() {
+        if (data == null && rawData != null) {
+            data = JsonParser.MAP.parse(rawData);
+        }
         return data;
     }
+
+    /**
+     * Return this event's data decoded into the given type.
+     *
+     * @param type the type of the data
+     * @param <T> the type of the data
+     * @return the data
+     */
+    public <T> T getData(Class<T> type) {
+        return getData(TypeToken.get(type));
+    }
+
+    /**
+     * Return this event's data decoded into the given type. The data is decoded from
+     * JSON each time, without creating the generic representation returned by
+     * {@link #getData()}.
+     *
+     * @param type a TypeToken describing the type of the data
+     * @param <T> the type of the data
+     * @return the data
+     */
+    public <T> T getData(TypeToken<T> type) {
+        JsonParser<T> parser = JsonParser.forType(type);
+        return rawData != null ? parser.parse(rawData) : parser.convert(getData());
+    }
 }
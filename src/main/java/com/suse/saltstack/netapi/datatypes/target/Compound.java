@@ -0,0 +1,39 @@
+package com.suse.saltstack.netapi.datatypes.target;
+
+/**
+ * Target for specifying minions by a compound expression combining other matchers with
+ * {@code and}, {@code or}, {@code not} and parentheses, e.g.
+ * {@code G@os:SUSE and web* or E@db[0-9]+}. Terms without prefix are globs on the minion
+ * id, prefixed terms use the matcher of the prefix: {@code G@} grain, {@code P@} grain
+ * PCRE, {@code E@} id PCRE, {@code L@} list, {@code I@} pillar, {@code J@} pillar PCRE,
+ * {@code S@} subnet, {@code R@} range and {@code N@} nodegroup.
+ */
+public class Compound implements Target<String> {
+
+    private final String expression;
+
+    /**
+     * Constructor expecting a compound expression as string.
+     *
+     * @param expression the compound expression
+     */
+    public Compound(String expression) {
+        this.expression = expression;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getTarget() {
+        return expression;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getType() {
+        return "compound";
+    }
+}
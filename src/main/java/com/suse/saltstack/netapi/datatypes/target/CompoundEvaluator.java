@@ -0,0 +1,186 @@
+package com.suse.saltstack.netapi.datatypes.target;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Evaluates a {@link Compound} expression against the minions of a
+ * {@link TargetResolver} with the precedence used by the master: {@code not} binds
+ * stronger than {@code and}, which binds stronger than {@code or}. Adjacent terms
+ * without operator are combined with {@code and}.
+ * <p>
+ * Globs, lists, id PCREs and, if the resolver has a {@link GrainsLookup}, grain globs
+ * and grain PCREs are evaluated. Other matchers depend on data only the master has, an
+ * expression containing them is not resolvable.
+ */
+class CompoundEvaluator {
+
+    private static final String AND = "and";
+    private static final String OR = "or";
+    private static final String NOT = "not";
+    private static final String OPEN = "(";
+    private static final String CLOSE = ")";
+    private static final List<String> OPERATORS = Arrays.asList(AND, OR, NOT, OPEN, CLOSE);
+
+    private final TargetResolver resolver;
+    private final List<String> tokens;
+    private int position;
+    private boolean resolvable = true;
+
+    /**
+     * Create an evaluator for the given expression.
+     *
+     * @param resolverIn the resolver providing the minions and matchers
+     * @param expression the compound expression
+     */
+    CompoundEvaluator(TargetResolver resolverIn, String expression) {
+        resolver = resolverIn;
+        tokens = tokenize(expression);
+    }
+
+    /**
+     * Evaluate the expression.
+     *
+     * @return the ids of the matched minions, or null if the expression contains
+     * matchers that cannot be evaluated on the client
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    Set<String> evaluate() {
+        if (tokens.isEmpty()) {
+            throw new IllegalArgumentException("Empty compound expression");
+        }
+        Set<String> result = or();
+        if (position < tokens.size()) {
+            throw new IllegalArgumentException("Unexpected '" + tokens.get(position) +
+                    "' in compound expression");
+        }
+        return resolvable ? result : null;
+    }
+
+    private Set<String> or() {
+        Set<String> result = and();
+        while (peek(OR)) {
+            position++;
+            result.addAll(and());
+        }
+        return result;
+    }
+
+    private Set<String> and() {
+        Set<String> result = not();
+        while (position < tokens.size() && !peek(OR) && !peek(CLOSE)) {
+            if (peek(AND)) {
+                position++;
+            }
+            result.retainAll(not());
+        }
+        return result;
+    }
+
+    private Set<String> not() {
+        if (peek(NOT)) {
+            position++;
+            Set<String> result = new HashSet<>(resolver.getMinions());
+            result.removeAll(not());
+            return result;
+        }
+        return primary();
+    }
+
+    private Set<String> primary() {
+        if (position == tokens.size()) {
+            throw new IllegalArgumentException("Unexpected end of compound expression");
+        }
+        String token = tokens.get(position++);
+        if (token.equals(OPEN)) {
+            Set<String> result = or();
+            if (!peek(CLOSE)) {
+                throw new IllegalArgumentException("Missing ')' in compound expression");
+            }
+            position++;
+            return result;
+        }
+        if (OPERATORS.contains(token)) {
+            throw new IllegalArgumentException("Unexpected '" + token +
+                    "' in compound expression");
+        }
+        return term(token);
+    }
+
+    /**
+     * Evaluate a single matcher.
+     *
+     * @param token the matcher, optionally prefixed with its type
+     * @return the matched minions
+     */
+    private Set<String> term(String token) {
+        if (token.length() < 2 || token.charAt(1) != '@') {
+            return new HashSet<>(resolver.resolve(new Glob(token)));
+        }
+        String expression = token.substring(2);
+        switch (token.charAt(0)) {
+            case 'L':
+                return new HashSet<>(resolver.resolve(
+                        new MinionList(Arrays.asList(expression.split(",")))));
+            case 'E':
+                return new HashSet<>(resolver.resolve(new PCRE(expression)));
+            case 'G':
+            case 'P':
+                if (resolver.getGrainsLookup() != null) {
+                    return new HashSet<>(resolver.resolveGrain(expression,
+                            token.charAt(0) == 'P'));
+                }
+                break;
+            default:
+                break;
+        }
+        resolvable = false;
+        return new HashSet<>();
+    }
+
+    private boolean peek(String token) {
+        return position < tokens.size() && tokens.get(position).equals(token);
+    }
+
+    /**
+     * Split an expression into words, separating parentheses at the beginning and
+     * unbalanced parentheses at the end of words.
+     *
+     * @param expression the compound expression
+     * @return the tokens
+     */
+    private static List<String> tokenize(String expression) {
+        List<String> tokens = new ArrayList<>();
+        for (String word : expression.trim().split("\\s+")) {
+            while (word.startsWith(OPEN)) {
+                tokens.add(OPEN);
+                word = word.substring(1);
+            }
+            int closing = 0;
+            while (word.endsWith(CLOSE) && count(word, ')') > count(word, '(')) {
+                closing++;
+                word = word.substring(0, word.length() - 1);
+            }
+            if (!word.isEmpty()) {
+                tokens.add(word);
+            }
+            for (; closing > 0; closing--) {
+                tokens.add(CLOSE);
+            }
+        }
+        return tokens;
+    }
+
+    private static int count(String word, char c) {
+        int count = 0;
+        for (int i = 0; i < word.length(); i++) {
+            if (word.charAt(i) == c) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
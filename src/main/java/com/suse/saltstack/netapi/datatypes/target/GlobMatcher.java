@@ -0,0 +1,302 @@
+package com.suse.saltstack.netapi.datatypes.target;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compiled glob pattern matching minion ids the way the master does: {@code *}
+ * matches any characters, {@code ?} matches a single character and {@code [...]}
+ * matches a single character of a set of characters and ranges like {@code [a-f0-9]},
+ * negated by a leading {@code !}. A {@code [} without closing {@code ]} matches itself.
+ * <p>
+ * Unlike a translation to a regular expression, matching never backtracks further than
+ * the last {@code *}, so it takes at most time proportional to the product of the
+ * lengths of the pattern and the id. The literal prefix and the elements after the
+ * last {@code *} are compared first, so most ids are rejected without backtracking.
+ * Matching a sorted array of ids with {@link #filter(String[])} only looks at the ids
+ * starting with the literal prefix of the pattern. Instances are immutable and can be
+ * shared between threads.
+ */
+public final class GlobMatcher {
+
+    private static final byte LITERAL = 0;
+    private static final byte ANY_CHARACTER = 1;
+    private static final byte ANY_SEQUENCE = 2;
+    private static final byte SET = 3;
+
+    private final String glob;
+
+    /** The kind of each element of the pattern */
+    private final byte[] kinds;
+
+    /** The character of each literal element */
+    private final char[] literals;
+
+    /** The inclusive ranges of each set element as pairs of first and last character */
+    private final char[][] sets;
+
+    /** Whether each set element is negated */
+    private final boolean[] negated;
+
+    /** The literal part of the pattern before the first wildcard */
+    private final String prefix;
+
+    /**
+     * The index of the first element after the last {@code *}, or after the prefix if
+     * there is none
+     */
+    private final int tailStart;
+
+    /** The minimum length of a matching id */
+    private final int minLength;
+
+    private GlobMatcher(String globIn, byte[] kindsIn, char[] literalsIn, char[][] setsIn,
+            boolean[] negatedIn, String prefixIn) {
+        glob = globIn;
+        kinds = kindsIn;
+        literals = literalsIn;
+        sets = setsIn;
+        negated = negatedIn;
+        prefix = prefixIn;
+
+        int lastStar = -1;
+        int stars = 0;
+        for (int e = 0; e < kinds.length; e++) {
+            if (kinds[e] == ANY_SEQUENCE) {
+                lastStar = e;
+                stars++;
+            }
+        }
+        tailStart = lastStar < 0 ? prefix.length() : lastStar + 1;
+        minLength = kinds.length - stars;
+    }
+
+    /**
+     * Compile the given glob pattern.
+     *
+     * @param glob the pattern
+     * @return the matcher
+     */
+    public static GlobMatcher compile(String glob) {
+        int length = glob.length();
+        byte[] kinds = new byte[length];
+        char[] literals = new char[length];
+        char[][] sets = new char[length][];
+        boolean[] negated = new boolean[length];
+        int prefixLength = -1;
+
+        int n = 0;
+        int i = 0;
+        while (i < length) {
+            char c = glob.charAt(i++);
+            int end = c == '[' ? setEnd(glob, i) : -1;
+            if (c == '*') {
+                if (n > 0 && kinds[n - 1] == ANY_SEQUENCE) {
+                    // Consecutive stars are equivalent to a single one
+                    continue;
+                }
+                kinds[n] = ANY_SEQUENCE;
+            } else if (c == '?') {
+                kinds[n] = ANY_CHARACTER;
+            } else if (end >= 0) {
+                kinds[n] = SET;
+                negated[n] = glob.charAt(i) == '!';
+                sets[n] = ranges(glob, negated[n] ? i + 1 : i, end);
+                i = end + 1;
+            } else {
+                kinds[n] = LITERAL;
+                literals[n] = c;
+            }
+            if (kinds[n] != LITERAL && prefixLength < 0) {
+                prefixLength = n;
+            }
+            n++;
+        }
+
+        StringBuilder prefix = new StringBuilder();
+        for (int e = 0; e < (prefixLength < 0 ? n : prefixLength); e++) {
+            prefix.append(literals[e]);
+        }
+        return new GlobMatcher(glob, Arrays.copyOf(kinds, n), Arrays.copyOf(literals, n),
+                Arrays.copyOf(sets, n), Arrays.copyOf(negated, n), prefix.toString());
+    }
+
+    /**
+     * Return the pattern this matcher was compiled from.
+     *
+     * @return the pattern
+     */
+    public String getGlob() {
+        return glob;
+    }
+
+    /**
+     * Return the literal part of the pattern that all matching ids start with.
+     *
+     * @return the prefix
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Return whether the pattern contains no wildcards, i.e. it only matches the id
+     * equal to its prefix.
+     *
+     * @return true if the pattern is literal
+     */
+    public boolean isLiteral() {
+        return prefix.length() == kinds.length;
+    }
+
+    /**
+     * Check if the given id is matched by the pattern.
+     *
+     * @param id the minion id
+     * @return true if the id is matched
+     */
+    public boolean matches(String id) {
+        int length = id.length();
+        if (length < minLength || !id.startsWith(prefix)) {
+            return false;
+        }
+        // The elements after the last * match the end of the id without backtracking
+        int tailLength = kinds.length - tailStart;
+        if (minLength == kinds.length && length != minLength) {
+            // Without * only ids of the same length match
+            return false;
+        }
+        for (int e = tailStart, t = length - tailLength; e < kinds.length; e++, t++) {
+            if (!matches(e, id.charAt(t))) {
+                return false;
+            }
+        }
+
+        int p = prefix.length();
+        int t = prefix.length();
+        int end = length - tailLength;
+        int star = -1;
+        int starMatch = 0;
+        while (t < end) {
+            if (p < tailStart && kinds[p] != ANY_SEQUENCE && matches(p, id.charAt(t))) {
+                p++;
+                t++;
+            } else if (p < tailStart && kinds[p] == ANY_SEQUENCE) {
+                star = p++;
+                starMatch = t;
+            } else if (star >= 0) {
+                p = star + 1;
+                t = ++starMatch;
+            } else {
+                return false;
+            }
+        }
+        while (p < tailStart && kinds[p] == ANY_SEQUENCE) {
+            p++;
+        }
+        return p == tailStart;
+    }
+
+    /**
+     * Return the ids of the given sorted array that are matched by the pattern. Only
+     * the ids starting with the prefix of the pattern are matched, which are found by
+     * binary search.
+     *
+     * @param sortedIds the minion ids in natural order
+     * @return the matched ids in natural order
+     */
+    public List<String> filter(String[] sortedIds) {
+        int first = Arrays.binarySearch(sortedIds, prefix);
+        if (isLiteral()) {
+            return first >= 0 ? Arrays.asList(sortedIds[first]) : new ArrayList<>();
+        }
+        List<String> matched = new ArrayList<>();
+        for (int i = first >= 0 ? first : -first - 1; i < sortedIds.length &&
+                sortedIds[i].startsWith(prefix); i++) {
+            if (matches(sortedIds[i])) {
+                matched.add(sortedIds[i]);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Check if the given element of the pattern matches the given character.
+     *
+     * @param element the index of an element other than {@code *}
+     * @param c the character
+     * @return true if the character is matched
+     */
+    private boolean matches(int element, char c) {
+        switch (kinds[element]) {
+            case LITERAL:
+                return literals[element] == c;
+            case ANY_CHARACTER:
+                return true;
+            default:
+                char[] ranges = sets[element];
+                for (int r = 0; r < ranges.length; r += 2) {
+                    if (c >= ranges[r] && c <= ranges[r + 1]) {
+                        return !negated[element];
+                    }
+                }
+                return negated[element];
+        }
+    }
+
+    /**
+     * Return the index of the {@code ]} closing a set starting at the given index.
+     *
+     * @param glob the pattern
+     * @param start the index after the opening {@code [}
+     * @return the index of the closing bracket or -1 if there is none
+     */
+    private static int setEnd(String glob, int start) {
+        int i = start;
+        if (i < glob.length() && glob.charAt(i) == '!') {
+            i++;
+        }
+        if (i < glob.length() && glob.charAt(i) == ']') {
+            i++;
+        }
+        return glob.indexOf(']', i);
+    }
+
+    /**
+     * Parse the characters and ranges of a set.
+     *
+     * @param glob the pattern
+     * @param start the index of the first character of the set
+     * @param end the index of the closing bracket
+     * @return the inclusive ranges as pairs of first and last character
+     */
+    private static char[] ranges(String glob, int start, int end) {
+        char[] ranges = new char[2 * (end - start)];
+        int n = 0;
+        int i = start;
+        while (i < end) {
+            char first = glob.charAt(i);
+            char last = first;
+            if (i + 2 < end && glob.charAt(i + 1) == '-') {
+                last = glob.charAt(i + 2);
+                i += 3;
+            } else {
+                i++;
+            }
+            if (first <= last) {
+                ranges[n++] = first;
+                ranges[n++] = last;
+            }
+        }
+        return Arrays.copyOf(ranges, n);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "GlobMatcher[" + glob + "]";
+    }
+}
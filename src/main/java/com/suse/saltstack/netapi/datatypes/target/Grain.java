@@ -0,0 +1,60 @@
+package com.suse.saltstack.netapi.datatypes.target;
+
+/**
+ * Target for specifying minions by the value of a grain. The value is a glob pattern,
+ * nested grains are separated by {@link #DELIMITER}, e.g. {@code os:SUSE} or
+ * {@code ip_interfaces:eth0:10.0.*}.
+ */
+public class Grain implements Target<String> {
+
+    /** Separator of the grain and the value */
+    public static final String DELIMITER = ":";
+
+    private final String grain;
+    private final String value;
+
+    /**
+     * Constructor expecting the grain and a glob pattern for its value.
+     *
+     * @param grain the grain, nested grains separated by {@link #DELIMITER}
+     * @param value glob pattern for the value
+     */
+    public Grain(String grain, String value) {
+        this.grain = grain;
+        this.value = value;
+    }
+
+    /**
+     * Return the grain.
+     *
+     * @return the grain
+     */
+    public String getGrain() {
+        return grain;
+    }
+
+    /**
+     * Return the glob pattern for the value.
+     *
+     * @return the value pattern
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getTarget() {
+        return grain + DELIMITER + value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getType() {
+        return "grain";
+    }
+}
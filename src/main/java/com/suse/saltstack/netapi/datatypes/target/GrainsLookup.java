@@ -0,0 +1,28 @@
+package com.suse.saltstack.netapi.datatypes.target;
+
+import java.util.Set;
+
+/**
+ * Looks up minions by their grains for resolving {@link Grain} targets on the client,
+ * e.g. {@link com.suse.saltstack.netapi.event.GrainsIndex}. Nested grains are
+ * separated by {@link Grain#DELIMITER}, values are compared as strings.
+ */
+public interface GrainsLookup {
+
+    /**
+     * Return the values of the given grain among all minions.
+     *
+     * @param grain the grain
+     * @return the values
+     */
+    Set<String> getValues(String grain);
+
+    /**
+     * Return the minions having the given value of the given grain.
+     *
+     * @param grain the grain
+     * @param value the value
+     * @return the ids of the matching minions
+     */
+    Set<String> getMinions(String grain, String value);
+}
@@ -0,0 +1,35 @@
+package com.suse.saltstack.netapi.datatypes.target;
+
+/**
+ * Target for specifying minions by a perl compatible regular expression matched against
+ * the beginning of their ids.
+ */
+public class PCRE implements Target<String> {
+
+    private final String pcre;
+
+    /**
+     * Constructor expecting a regular expression as string.
+     *
+     * @param pcre the regular expression
+     */
+    public PCRE(String pcre) {
+        this.pcre = pcre;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getTarget() {
+        return pcre;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getType() {
+        return "pcre";
+    }
+}
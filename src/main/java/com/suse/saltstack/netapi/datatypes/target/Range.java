@@ -0,0 +1,35 @@
+package com.suse.saltstack.netapi.datatypes.target;
+
+/**
+ * Target for specifying minions by a range expression, which is resolved by the range
+ * server configured on the master.
+ */
+public class Range implements Target<String> {
+
+    private final String range;
+
+    /**
+     * Constructor expecting a range expression as string.
+     *
+     * @param range the range expression, e.g. {@code %cluster}
+     */
+    public Range(String range) {
+        this.range = range;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getTarget() {
+        return range;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getType() {
+        return "range";
+    }
+}
@@ -0,0 +1,323 @@
+package com.suse.saltstack.netapi.datatypes.target;
+
+import com.suse.saltstack.netapi.calls.wheel.Key;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Resolves targets to the set of minions they match on the client, using a list of
+ * accepted minion keys, e.g. as returned by {@link Key#listAll()}, and optionally a
+ * {@link GrainsLookup}. Callers can skip calls whose target matches no minion, know how
+ * many returns to wait for before publishing a job and split large targets into
+ * batches with {@link #partition(Target, int)}.
+ * <p>
+ * {@link Glob}, {@link MinionList} and {@link PCRE} targets can be resolved, as well as
+ * {@link Grain} targets if grains are available, and {@link Compound} targets consisting
+ * of those. Other targets like {@link NodeGroup} or {@link Range} depend on data only the
+ * master has. A resolver is immutable, create a new one when the accepted keys change.
+ */
+public class TargetResolver {
+
+    private final Set<String> minions;
+
+    /** The grains of the minions, or null */
+    private final GrainsLookup grains;
+
+    /** The minions in natural order for matching globs by prefix */
+    private final String[] sortedMinions;
+
+    /**
+     * Create a resolver for the given accepted minions.
+     *
+     * @param minionsIn the ids of the minions whose keys are accepted
+     */
+    public TargetResolver(Collection<String> minionsIn) {
+        this(minionsIn, null);
+    }
+
+    /**
+     * Create a resolver for the given accepted minions and their grains.
+     *
+     * @param minionsIn the ids of the minions whose keys are accepted
+     * @param grainsIn the grains of the minions, or null
+     */
+    public TargetResolver(Collection<String> minionsIn, GrainsLookup grainsIn) {
+        grains = grainsIn;
+        minions = Collections.unmodifiableSet(new LinkedHashSet<>(minionsIn));
+        sortedMinions = minions.toArray(new String[minions.size()]);
+        Arrays.sort(sortedMinions);
+    }
+
+    /**
+     * Create a resolver for the accepted minions of the given keys.
+     *
+     * @param keys the keys
+     */
+    public TargetResolver(Key.Names keys) {
+        this(keys.getMinions());
+    }
+
+    /**
+     * Return the accepted minions targets are resolved against.
+     *
+     * @return the minion ids
+     */
+    public Set<String> getMinions() {
+        return minions;
+    }
+
+    /**
+     * Return the grains the resolver uses for {@link Grain} targets.
+     *
+     * @return the grains, or null
+     */
+    public GrainsLookup getGrainsLookup() {
+        return grains;
+    }
+
+    /**
+     * Return whether the given target can be resolved on the client.
+     *
+     * @param target the target
+     * @return true for {@link Glob}, {@link MinionList} and {@link PCRE} targets,
+     * {@link Grain} targets if grains are available and {@link Compound} targets
+     * consisting of those
+     * @throws IllegalArgumentException if the target is a compound expression that is
+     * not valid
+     */
+    public boolean isResolvable(Target<?> target) {
+        if (target instanceof Compound) {
+            return resolve((Compound) target).isPresent();
+        }
+        return target instanceof Glob || target instanceof MinionList ||
+                target instanceof PCRE || target instanceof Grain && grains != null;
+    }
+
+    /**
+     * Return the accepted minions matched by the given target.
+     *
+     * @param target the target
+     * @return the ids of the matched minions, or empty if the target cannot be resolved
+     * on the client
+     * @throws IllegalArgumentException if the target is empty
+     */
+    public Optional<Set<String>> resolve(Target<?> target) {
+        if (target instanceof Glob) {
+            return Optional.of(resolve((Glob) target));
+        } else if (target instanceof MinionList) {
+            return Optional.of(resolve((MinionList) target));
+        } else if (target instanceof PCRE) {
+            return Optional.of(resolve((PCRE) target));
+        } else if (target instanceof Grain && grains != null) {
+            return Optional.of(resolve((Grain) target));
+        } else if (target instanceof Compound) {
+            return resolve((Compound) target);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Resolve the given target and split the matched minions into lists of at most the
+     * given size, to call them in batches.
+     *
+     * @param target the target
+     * @param batchSize the maximum number of minions per batch
+     * @return the batches, or empty if the target cannot be resolved on the client
+     * @throws IllegalArgumentException if the target is empty or not valid
+     */
+    public Optional<List<MinionList>> partition(Target<?> target, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        return resolve(target).map(matched -> partition(matched, batchSize));
+    }
+
+    /**
+     * Return the accepted minions matched by the given glob.
+     *
+     * @param glob the glob
+     * @return the ids of the matched minions in natural order
+     * @throws IllegalArgumentException if the glob is empty
+     */
+    public Set<String> resolve(Glob glob) {
+        String pattern = glob.getTarget();
+        if (pattern == null || pattern.isEmpty()) {
+            throw new IllegalArgumentException("Empty glob");
+        }
+        return new LinkedHashSet<>(GlobMatcher.compile(pattern).filter(sortedMinions));
+    }
+
+    /**
+     * Return the accepted minions whose ids are matched by the given regular
+     * expression. Like on the master, the expression has to match the beginning of the
+     * id only.
+     *
+     * @param pcre the regular expression
+     * @return the ids of the matched minions in natural order
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    public Set<String> resolve(PCRE pcre) {
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(pcre.getTarget());
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid regular expression", e);
+        }
+        Set<String> matched = new LinkedHashSet<>();
+        for (String minion : sortedMinions) {
+            if (pattern.matcher(minion).lookingAt()) {
+                matched.add(minion);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Return the accepted minions having a value of the grain matched by the glob of the
+     * given target. Like on the master, values are matched ignoring case.
+     *
+     * @param grain the grain target
+     * @return the ids of the matched minions in natural order
+     * @throws IllegalStateException if the resolver has no grains
+     */
+    public Set<String> resolve(Grain grain) {
+        if (grains == null) {
+            throw new IllegalStateException("No grains to resolve grain targets");
+        }
+        return resolveGrain(grain.getTarget(), false);
+    }
+
+    /**
+     * Evaluate the given compound expression.
+     *
+     * @param compound the compound target
+     * @return the ids of the matched minions in natural order, or empty if the
+     * expression contains matchers that cannot be evaluated on the client
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    public Optional<Set<String>> resolve(Compound compound) {
+        Set<String> matched = new CompoundEvaluator(this, compound.getTarget()).evaluate();
+        return Optional.ofNullable(matched).map(this::ordered);
+    }
+
+    /**
+     * Return the accepted minions of the given list.
+     *
+     * @param list the list
+     * @return the ids of the listed minions whose keys are accepted
+     * @throws IllegalArgumentException if the list is empty
+     */
+    public Set<String> resolve(MinionList list) {
+        if (list.getTarget() == null || list.getTarget().isEmpty()) {
+            throw new IllegalArgumentException("Empty minion list");
+        }
+        Set<String> matched = new LinkedHashSet<>();
+        for (String minion : list.getTarget()) {
+            if (minions.contains(minion)) {
+                matched.add(minion);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Return the accepted minions having a value of a grain matched by the given
+     * expression. As the grain and the value are separated by the same delimiter as
+     * nested grains, every possible split of the expression is tried.
+     *
+     * @param expression the grain and the value pattern separated by
+     * {@link Grain#DELIMITER}
+     * @param regex true if the value pattern is a regular expression, false for a glob
+     * @return the ids of the matched minions in natural order
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    Set<String> resolveGrain(String expression, boolean regex) {
+        Set<String> matched = new HashSet<>();
+        int delimiter = expression.indexOf(Grain.DELIMITER);
+        if (delimiter < 0) {
+            throw new IllegalArgumentException("Missing value in grain expression: " +
+                    expression);
+        }
+        while (delimiter >= 0) {
+            String grain = expression.substring(0, delimiter);
+            Predicate<String> value = valueMatcher(
+                    expression.substring(delimiter + Grain.DELIMITER.length()), regex);
+            for (String candidate : grains.getValues(grain)) {
+                if (value.test(candidate.toLowerCase())) {
+                    matched.addAll(grains.getMinions(grain, candidate));
+                }
+            }
+            delimiter = expression.indexOf(Grain.DELIMITER, delimiter + 1);
+        }
+        return ordered(matched);
+    }
+
+    /**
+     * Return the accepted minions among the given ones in natural order.
+     *
+     * @param matched the matched minions
+     * @return the accepted minions
+     */
+    private Set<String> ordered(Set<String> matched) {
+        Set<String> ordered = new LinkedHashSet<>();
+        for (String minion : sortedMinions) {
+            if (matched.contains(minion)) {
+                ordered.add(minion);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Compile a pattern matching lower case grain values, ignoring case.
+     *
+     * @param pattern the pattern
+     * @param regex true if the pattern is a regular expression, false for a glob
+     * @return the predicate
+     */
+    private static Predicate<String> valueMatcher(String pattern, boolean regex) {
+        if (!regex) {
+            return GlobMatcher.compile(pattern.toLowerCase())::matches;
+        }
+        try {
+            Pattern compiled = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
+            return value -> compiled.matcher(value).lookingAt();
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid regular expression", e);
+        }
+    }
+
+    /**
+     * Split the given minions into lists of at most the given size.
+     *
+     * @param matched the minions
+     * @param batchSize the maximum size of a list
+     * @return the lists
+     */
+    private static List<MinionList> partition(Set<String> matched, int batchSize) {
+        List<MinionList> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>(batchSize);
+        for (String minion : matched) {
+            batch.add(minion);
+            if (batch.size() == batchSize) {
+                batches.add(new MinionList(batch));
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(new MinionList(batch));
+        }
+        return batches;
+    }
+}
@@ -21,4 +21,14 @@ public interface EventListener {
      * @param closeReason the close reason
      */
     void eventStreamClosed(CloseReason closeReason);
+
+    /**
+     * Notify the listener that a reconnecting event stream has been connected again
+     * after it was closed, see
+     * {@link com.suse.saltstack.netapi.config.ClientConfig#EVENT_STREAM_RECONNECT}.
+     * Events published during the gap were not received; the listener stays registered.
+     * @param gap the interval the stream was disconnected
+     */
+    default void eventStreamReconnected(EventStreamGap gap) {
+    }
 }
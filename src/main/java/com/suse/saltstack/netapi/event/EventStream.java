@@ -2,9 +2,12 @@ package com.suse.saltstack.netapi.event;
 
 import com.suse.saltstack.netapi.config.ClientConfig;
 import com.suse.saltstack.netapi.datatypes.Event;
+import com.suse.saltstack.netapi.datatypes.Token;
 import com.suse.saltstack.netapi.exception.MessageTooBigException;
 import com.suse.saltstack.netapi.exception.SaltStackException;
-import com.suse.saltstack.netapi.parser.JsonParser;
+import com.suse.saltstack.netapi.metrics.EventStreamMetrics;
+import com.suse.saltstack.netapi.utils.DaemonThreadFactory;
+import com.suse.saltstack.netapi.utils.ExponentialBackoff;
 
 import javax.websocket.ClientEndpoint;
 import javax.websocket.CloseReason;
@@ -23,37 +26,94 @@ import javax.websocket.server.ServerEndpoint;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Event stream implementation based on a {@link ClientEndpoint} WebSocket.
  * It is used to connect the WebSocket to a {@link ServerEndpoint}
  * and receive messages from it; for each message a bunch of {@link EventListener}
  * will be recalled and notified with it.
+ * <p>
+ * By default listeners are notified on the websocket thread. If
+ * {@link ClientConfig#EVENT_QUEUE_CAPACITY} is set, each listener gets a bounded queue
+ * of events that is delivered on {@link ClientConfig#EVENT_DISPATCH_EXECUTOR}.
+ * <p>
+ * If {@link ClientConfig#EVENT_STREAM_RECONNECT} is set, the stream reconnects with a
+ * jittered exponential backoff whenever it is closed by anything but {@link #close()}.
+ * Listeners stay registered and are notified of the gap via
+ * {@link EventListener#eventStreamReconnected(EventStreamGap)}. An expired token is
+ * replaced using the {@link TokenProvider} given to the constructor, if any.
  */
 @ClientEndpoint
 public class EventStream implements AutoCloseable {
 
     /**
-     * Listeners that are notified of a new events.
+     * Dispatchers notifying the listeners of new events. Events are dispatched without
+     * holding a lock, so listeners can be added and removed while they are notified.
      */
-    private final List<EventListener> listeners = new ArrayList<>();
+    private final List<ListenerDispatcher> dispatchers = new CopyOnWriteArrayList<>();
 
     /**
-     * Default message buffer size in characters.
+     * Dispatchers of the listeners that are notified of all events.
      */
-    private final int defaultBufferSize = 0x400;
+    private final List<ListenerDispatcher> unfilteredDispatchers =
+            new CopyOnWriteArrayList<>();
 
     /**
-     * Maximum message length in characters, configurable via {@link ClientConfig}.
+     * Dispatchers of the listeners that are notified of events matching a
+     * {@link TagFilter}, indexed by the prefix of the filters.
      */
-    private final int maxMessageLength;
+    private final TagIndex<ListenerDispatcher> subscriptions = new TagIndex<>();
 
     /**
-     * Buffer for partial messages.
+     * Capacity of the event queue of each listener, configurable via {@link ClientConfig}.
      */
-    private final StringBuilder messageBuffer = new StringBuilder(defaultBufferSize);
+    private final int queueCapacity;
+
+    /**
+     * What to do with new events if the queue of a listener is full, configurable via
+     * {@link ClientConfig}.
+     */
+    private final OverflowPolicy overflowPolicy;
+
+    /**
+     * Executor notifying the listeners of queued events, configurable via
+     * {@link ClientConfig}.
+     */
+    private final Executor dispatchExecutor;
+
+    /**
+     * Executor created by this stream in case none is configured, shut down on close.
+     */
+    private final ExecutorService ownDispatchExecutor;
+
+    /**
+     * Number of events dropped because the queue of a listener was full.
+     */
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    /**
+     * Metrics to report received frames and events to, configurable via
+     * {@link ClientConfig}.
+     */
+    private final EventStreamMetrics metrics;
+
+    /**
+     * Assembles partial messages and parses the events, the maximum message length is
+     * configurable via {@link ClientConfig}.
+     */
+    private final MessageAssembler messageAssembler;
 
     /**
      * The {@link WebSocketContainer} object for a @ClientEndpoint implementation.
@@ -64,20 +124,144 @@ public class EventStream implements AutoCloseable {
     /**
      * The WebSocket {@link Session}.
      */
-    private Session session;
+    private volatile Session session;
+
+    /**
+     * Idle timeout of the session in milliseconds, configurable via {@link ClientConfig}.
+     */
+    private long sessionIdleTimeout;
+
+    /**
+     * The client configuration, used again when reconnecting.
+     */
+    private final ClientConfig config;
+
+    /**
+     * The token used to connect, replaced via the {@link TokenProvider} once it expired.
+     */
+    private volatile String token;
+
+    /**
+     * Expiration date of the token if known, null otherwise.
+     */
+    private volatile Date tokenExpire;
+
+    /**
+     * Provides a new token when reconnecting with an expired one, may be null.
+     */
+    private final TokenProvider tokenProvider;
+
+    /**
+     * Whether to reconnect the stream when it is closed, configurable via
+     * {@link ClientConfig}.
+     */
+    private final boolean reconnect;
+
+    /**
+     * Maximum number of consecutive failed attempts to reconnect, configurable via
+     * {@link ClientConfig}.
+     */
+    private final int maxReconnectAttempts;
+
+    /**
+     * Delays between the attempts to reconnect, configurable via {@link ClientConfig}.
+     */
+    private final ExponentialBackoff reconnectBackoff;
+
+    /**
+     * Scheduler for the attempts to reconnect, null if reconnecting is disabled.
+     */
+    private final ScheduledExecutorService reconnectScheduler;
+
+    /**
+     * Guards the state of the current gap.
+     */
+    private final Object reconnectLock = new Object();
+
+    /**
+     * Set once the stream is closed for good, it is not reconnected anymore.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Start of the current gap, null while the stream is connected.
+     */
+    private Instant gapStart;
+
+    /**
+     * The reason the stream was closed at the start of the current gap.
+     */
+    private CloseReason gapCloseReason;
+
+    /**
+     * Number of attempts to reconnect during the current gap.
+     */
+    private int reconnectAttempts;
+
+    /**
+     * Set if the last attempt to reconnect failed during the handshake, the token might
+     * have expired. Only accessed by the reconnect scheduler thread.
+     */
+    private boolean refreshToken;
 
     /**
      * Constructor used to create this object.
      * Automatically open a WebSocket and start event processing.
+     * <p>
+     * The given listeners are registered before the WebSocket is opened, so they are
+     * notified of all events, including those sent right after the handshake.
      *
      * @param config Contains the necessary details such as EndPoint URL and
      * authentication token required to create the WebSocket.
+     * @param listenersIn listeners to register before opening the WebSocket
+     * @throws SaltStackException in case of an error during stream initialization
+     */
+    public EventStream(ClientConfig config, EventListener... listenersIn)
+            throws SaltStackException {
+        this(config, (TokenProvider) null, listenersIn);
+    }
+
+    /**
+     * Constructor used to create a stream that authenticates again when reconnecting
+     * with an expired token, see {@link ClientConfig#EVENT_STREAM_RECONNECT}.
+     * Automatically open a WebSocket and start event processing.
+     *
+     * @param configIn Contains the necessary details such as EndPoint URL and
+     * authentication token required to create the WebSocket.
+     * @param tokenProviderIn provides a new token when reconnecting, may be null
+     * @param listenersIn listeners to register before opening the WebSocket
      * @throws SaltStackException in case of an error during stream initialization
      */
-    public EventStream(ClientConfig config) throws SaltStackException {
-        maxMessageLength = config.get(ClientConfig.WEBSOCKET_MAX_MESSAGE_LENGTH) > 0 ?
-                config.get(ClientConfig.WEBSOCKET_MAX_MESSAGE_LENGTH) : Integer.MAX_VALUE;
-        initializeStream(config);
+    public EventStream(ClientConfig configIn, TokenProvider tokenProviderIn,
+            EventListener... listenersIn) throws SaltStackException {
+        config = configIn;
+        token = config.get(ClientConfig.TOKEN);
+        tokenProvider = tokenProviderIn;
+        reconnect = config.get(ClientConfig.EVENT_STREAM_RECONNECT);
+        maxReconnectAttempts = config.get(ClientConfig.EVENT_STREAM_RECONNECT_MAX_ATTEMPTS);
+        reconnectBackoff = new ExponentialBackoff(
+                config.get(ClientConfig.EVENT_STREAM_RECONNECT_MIN_DELAY),
+                config.get(ClientConfig.EVENT_STREAM_RECONNECT_MAX_DELAY));
+        reconnectScheduler = reconnect ? Executors.newSingleThreadScheduledExecutor(
+                new DaemonThreadFactory("saltstack-events-reconnect-")) : null;
+        metrics = config.get(ClientConfig.EVENT_STREAM_METRICS);
+        queueCapacity = config.get(ClientConfig.EVENT_QUEUE_CAPACITY);
+        overflowPolicy = config.get(ClientConfig.EVENT_QUEUE_OVERFLOW_POLICY);
+        if (queueCapacity > 0 && config.get(ClientConfig.EVENT_DISPATCH_EXECUTOR) == null) {
+            ownDispatchExecutor = Executors.newCachedThreadPool(
+                    new DaemonThreadFactory("saltstack-events-"));
+            dispatchExecutor = ownDispatchExecutor;
+        } else {
+            ownDispatchExecutor = null;
+            dispatchExecutor = config.get(ClientConfig.EVENT_DISPATCH_EXECUTOR);
+        }
+        for (EventListener listener : listenersIn) {
+            addEventListener(listener);
+        }
+        messageAssembler = new MessageAssembler(
+                config.get(ClientConfig.WEBSOCKET_MAX_MESSAGE_LENGTH) > 0 ?
+                config.get(ClientConfig.WEBSOCKET_MAX_MESSAGE_LENGTH) : Integer.MAX_VALUE);
+        initializeStream();
     }
 
     /**
@@ -92,40 +276,87 @@ public class EventStream implements AutoCloseable {
     public void processEvents(URI uri, ClientConfig config)
             throws DeploymentException, IOException {
         synchronized (websocketContainer) {
+            // The timeout is applied in onOpen(), the session might be closed already
+            // once connectToServer() returns.
+            this.sessionIdleTimeout = config.get(ClientConfig.SOCKET_TIMEOUT);
             this.session = websocketContainer.connectToServer(this, uri);
-            this.session.setMaxIdleTimeout(
-                    (long) config.get(ClientConfig.SOCKET_TIMEOUT));
         }
     }
 
     /**
      * Connect the WebSocket to the server pointing to /ws/{token} to receive events.
      *
-     * @param config the client configuration
      * @throws SaltStackException in case of an error during stream initialization
      */
-    private void initializeStream (ClientConfig config) throws SaltStackException {
+    private void initializeStream() throws SaltStackException {
         try {
-            URI uri = config.get(ClientConfig.URL);
-            uri = new URI(uri.getScheme() == "https" ? "wss" : "ws",
-                    uri.getSchemeSpecificPart(), uri.getFragment())
-                    .resolve("/ws/" + config.get(ClientConfig.TOKEN));
             websocketContainer.setDefaultMaxSessionIdleTimeout(
                     (long) config.get(ClientConfig.SOCKET_TIMEOUT));
-            processEvents(uri, config);
+            processEvents(streamUri(), config);
         } catch (URISyntaxException | DeploymentException | IOException e) {
             throw new SaltStackException(e);
         }
     }
 
+    /**
+     * Return the WebSocket URI pointing to /ws/{token}.
+     *
+     * @return the URI
+     * @throws URISyntaxException in case the configured URL is invalid
+     */
+    private URI streamUri() throws URISyntaxException {
+        URI uri = config.get(ClientConfig.URL);
+        return new URI("https".equals(uri.getScheme()) ? "wss" : "ws",
+                uri.getSchemeSpecificPart(), uri.getFragment())
+                .resolve("/ws/" + token);
+    }
+
     /**
      * Implementation of {@link EventStream#addEventListener(EventListener)}
+     * <p>
+     * A listener is registered at most once and notified once per event. Adding a
+     * listener that was subscribed with a {@link TagFilter} before replaces its filters,
+     * adding it again has no effect.
      *
      * @param listener Reference to the class that implements {@link EventListener}.
      */
     public void addEventListener(EventListener listener) {
-        synchronized (listeners) {
-            listeners.add(listener);
+        synchronized (dispatchers) {
+            ListenerDispatcher dispatcher = getDispatcher(listener);
+            if (dispatcher == null) {
+                dispatcher = newDispatcher(listener);
+                dispatchers.add(dispatcher);
+            } else if (unfilteredDispatchers.contains(dispatcher)) {
+                return;
+            }
+            // Notified of all events from now on, the filters are obsolete
+            unfilteredDispatchers.add(dispatcher);
+            subscriptions.remove(dispatcher);
+        }
+    }
+
+    /**
+     * Add a listener that is notified only of events with a tag matched by the given
+     * filter. Subscriptions are indexed by tag prefix, so dispatching an event costs
+     * time proportional to the number of matching listeners rather than to all of them.
+     * Calling this method again for the same listener adds another filter; listeners
+     * are notified once per event, even if several of their filters match. Listeners
+     * that are notified of all events already are not affected.
+     *
+     * @param listener Reference to the class that implements {@link EventListener}.
+     * @param filter the filter for the tags of the events to be notified of
+     */
+    public void addEventListener(EventListener listener, TagFilter filter) {
+        synchronized (dispatchers) {
+            ListenerDispatcher dispatcher = getDispatcher(listener);
+            if (dispatcher == null) {
+                dispatcher = newDispatcher(listener);
+                dispatchers.add(dispatcher);
+            } else if (unfilteredDispatchers.contains(dispatcher)) {
+                // Notified of all events already
+                return;
+            }
+            subscriptions.add(filter, dispatcher);
         }
     }
 
@@ -135,8 +366,13 @@ public class EventStream implements AutoCloseable {
      * @param listener Reference to the class that implements {@link EventListener}.
      */
     public void removeEventListener(EventListener listener) {
-        synchronized (listeners) {
-            listeners.remove(listener);
+        synchronized (dispatchers) {
+            ListenerDispatcher dispatcher = getDispatcher(listener);
+            if (dispatcher != null) {
+                dispatchers.remove(dispatcher);
+                unfilteredDispatchers.remove(dispatcher);
+                subscriptions.remove(dispatcher);
+            }
         }
     }
 
@@ -146,9 +382,81 @@ public class EventStream implements AutoCloseable {
      * @return The current number listeners.
      */
     public int getListenerCount() {
-        synchronized (listeners) {
-            return listeners.size();
+        return dispatchers.size();
+    }
+
+    /**
+     * Return the number of events that were dropped because the queue of a listener was
+     * full, see {@link ClientConfig#EVENT_QUEUE_OVERFLOW_POLICY}.
+     *
+     * @return the number of dropped events of all listeners
+     */
+    public long getDroppedEventCount() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * Return the number of events that were dropped because the queue of the given
+     * listener was full, see {@link ClientConfig#EVENT_QUEUE_OVERFLOW_POLICY}.
+     *
+     * @param listener the listener
+     * @return the number of dropped events or 0 if the listener is not registered
+     */
+    public long getDroppedEventCount(EventListener listener) {
+        ListenerDispatcher dispatcher = getDispatcher(listener);
+        return dispatcher != null ? dispatcher.getDroppedEventCount() : 0;
+    }
+
+    /**
+     * Return the number of events waiting in the queues of the listeners to be
+     * delivered, see {@link ClientConfig#EVENT_QUEUE_CAPACITY}.
+     *
+     * @return the number of queued events of all listeners
+     */
+    public int getQueuedEventCount() {
+        int count = 0;
+        for (ListenerDispatcher dispatcher : dispatchers) {
+            count += dispatcher.getQueueSize();
+        }
+        return count;
+    }
+
+    /**
+     * Return the number of events waiting in the queue of the given listener to be
+     * delivered, see {@link ClientConfig#EVENT_QUEUE_CAPACITY}.
+     *
+     * @param listener the listener
+     * @return the number of queued events or 0 if the listener is not registered
+     */
+    public int getQueuedEventCount(EventListener listener) {
+        ListenerDispatcher dispatcher = getDispatcher(listener);
+        return dispatcher != null ? dispatcher.getQueueSize() : 0;
+    }
+
+    /**
+     * Create a dispatcher for the given listener according to the configuration.
+     *
+     * @param listener the listener
+     * @return the dispatcher
+     */
+    private ListenerDispatcher newDispatcher(EventListener listener) {
+        return new ListenerDispatcher(listener, queueCapacity, overflowPolicy,
+                dispatchExecutor, droppedEvents, metrics);
+    }
+
+    /**
+     * Return the dispatcher of the given listener, listeners are compared by identity.
+     *
+     * @param listener the listener
+     * @return the dispatcher or null if the listener is not registered
+     */
+    private ListenerDispatcher getDispatcher(EventListener listener) {
+        for (ListenerDispatcher dispatcher : dispatchers) {
+            if (dispatcher.getListener() == listener) {
+                return dispatcher;
+            }
         }
+        return null;
     }
 
     /**
@@ -173,14 +481,29 @@ public class EventStream implements AutoCloseable {
     }
 
     /**
-     * Close the WebSocket {@link Session} with a given close reason.
+     * Close the WebSocket {@link Session} with a given close reason. The stream is not
+     * reconnected afterwards, a pending reconnection is cancelled.
      *
      * @param closeReason the reason for the websocket closure
      * @throws IOException in case of an error when closing the session
      */
     public void close(CloseReason closeReason) throws IOException {
+        closed = true;
         if (!isEventStreamClosed()) {
             session.close(closeReason);
+        } else if (isReconnecting()) {
+            closeListeners(closeReason);
+        }
+    }
+
+    /**
+     * Check if the stream is waiting to be reconnected.
+     *
+     * @return true if the stream was closed and is about to be reconnected
+     */
+    public boolean isReconnecting() {
+        synchronized (reconnectLock) {
+            return gapStart != null;
         }
     }
 
@@ -196,6 +519,15 @@ public class EventStream implements AutoCloseable {
     @OnOpen
     public void onOpen(Session session, EndpointConfig config) throws IOException {
         this.session = session;
+        session.setMaxIdleTimeout(sessionIdleTimeout);
+
+        // Report the gap before any new event is received
+        EventStreamGap gap = endGap();
+        if (gap != null) {
+            for (ListenerDispatcher dispatcher : dispatchers) {
+                dispatcher.reconnected(gap);
+            }
+        }
         session.getBasicRemote().sendText("websocket client ready");
     }
 
@@ -209,37 +541,48 @@ public class EventStream implements AutoCloseable {
     @OnMessage
     public void onMessage(String partialMessage, boolean last)
             throws MessageTooBigException {
-        if (partialMessage.length() > maxMessageLength - messageBuffer.length()) {
-            throw new MessageTooBigException(maxMessageLength);
-        }
+        Event event = metrics == EventStreamMetrics.NOOP ?
+                messageAssembler.append(partialMessage, last) :
+                appendMeasured(partialMessage, last);
 
-        if (last) {
-            String message;
-            if (messageBuffer.length() == 0) {
-                message = partialMessage;
-            } else {
-                messageBuffer.append(partialMessage);
-                message = messageBuffer.toString();
-
-                // Reset the size to the defaultBufferSize and empty the buffer
-                messageBuffer.setLength(defaultBufferSize);
-                messageBuffer.trimToSize();
-                messageBuffer.setLength(0);
+        // Notify all registered listeners
+        if (event != null) {
+            for (ListenerDispatcher dispatcher : unfilteredDispatchers) {
+                dispatcher.dispatch(event);
             }
-
-            // Notify all registered listeners
-            if (!message.equals("server received message")) {
-                // Salt API adds a "data: " prefix that we need to ignore
-                Event event = JsonParser.EVENTS.parse(message.substring(6));
-                synchronized (listeners) {
-                    listeners.stream().forEach(listener -> listener.notify(event));
-                }
+            for (ListenerDispatcher dispatcher : subscriptions.match(event.getTag())) {
+                dispatcher.dispatch(event);
             }
-        } else {
-            messageBuffer.append(partialMessage);
         }
     }
 
+    /**
+     * Append a partial message to the current message and report it, as well as the
+     * parsed event, to the metrics.
+     *
+     * @param partialMessage partial message received on this websocket
+     * @param last indicate the last part of a message
+     * @return the event or null in case the message is not complete yet or it is not
+     * an event
+     * @throws MessageTooBigException in case the message is longer than maxMessageLength
+     */
+    private Event appendMeasured(String partialMessage, boolean last)
+            throws MessageTooBigException {
+        long start = System.nanoTime();
+        metrics.frameReceived(partialMessage.length(), last);
+        Event event;
+        try {
+            event = messageAssembler.append(partialMessage, last);
+        } catch (MessageTooBigException e) {
+            metrics.messageRejected(e);
+            throw e;
+        }
+        if (event != null) {
+            metrics.eventParsed(event, System.nanoTime() - start);
+        }
+        return event;
+    }
+
     /**
      * On error, convert {@link Throwable} into {@link CloseReason} and close the session.
      *
@@ -248,13 +591,16 @@ public class EventStream implements AutoCloseable {
      */
     @OnError
     public void onError(Throwable throwable) throws IOException {
-        close(new CloseReason(throwable instanceof MessageTooBigException ?
+        closeSession(new CloseReason(throwable instanceof MessageTooBigException ?
                 CloseCodes.TOO_BIG : CloseCodes.CLOSED_ABNORMALLY, throwable.getMessage()));
     }
 
     /**
      * On closing the websocket, refresh the session and notify all subscribed listeners.
      * Upon exit from this method, all subscribed listeners will be removed.
+     * <p>
+     * In case the stream reconnects, the listeners are kept and the first attempt to
+     * reconnect is scheduled instead.
      *
      * @param session the websocket {@link Session}
      * @param closeReason the {@link CloseReason} for the websocket closure
@@ -262,13 +608,159 @@ public class EventStream implements AutoCloseable {
     @OnClose
     public void onClose(Session session, CloseReason closeReason) {
         this.session = session;
+        if (reconnect && !closed) {
+            synchronized (reconnectLock) {
+                if (gapStart == null) {
+                    gapStart = Instant.now();
+                    gapCloseReason = closeReason;
+                    reconnectAttempts = 0;
+                }
+                scheduleReconnect();
+            }
+        } else {
+            closeListeners(closeReason);
+        }
+    }
+
+    /**
+     * Close the session, if it is open, without preventing the stream from being
+     * reconnected.
+     *
+     * @param closeReason the reason for the websocket closure
+     * @throws IOException in case of an error when closing the session
+     */
+    private void closeSession(CloseReason closeReason) throws IOException {
+        if (!isEventStreamClosed()) {
+            session.close(closeReason);
+        }
+    }
+
+    /**
+     * Schedule the next attempt to reconnect, must be called holding the reconnect lock.
+     */
+    private void scheduleReconnect() {
+        try {
+            long delay = reconnectBackoff.getDelay(reconnectAttempts + 1);
+            reconnectScheduler.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The stream has been closed
+        }
+    }
 
-        // Notify all the listeners and cleanup
-        synchronized (listeners) {
-            listeners.stream().forEach(listener -> listener.eventStreamClosed(closeReason));
+    /**
+     * Attempt to connect again, requesting a new token first in case the current one
+     * has or might have expired.
+     */
+    private void reconnect() {
+        synchronized (reconnectLock) {
+            if (closed || gapStart == null) {
+                return;
+            }
+            reconnectAttempts++;
+        }
+        try {
+            if (tokenProvider != null && (refreshToken || isTokenExpired())) {
+                Token newToken = tokenProvider.getToken();
+                token = newToken.getToken();
+                tokenExpire = newToken.getExpire();
+            }
+            refreshToken = false;
+            processEvents(streamUri(), config);
+        } catch (DeploymentException e) {
+            // The handshake might have been rejected because the token expired
+            refreshToken = true;
+            reconnectFailed();
+            return;
+        } catch (SaltStackException | URISyntaxException | IOException |
+                RuntimeException e) {
+            reconnectFailed();
+            return;
+        }
+
+        if (closed) {
+            // Closed by the client while connecting
+            try {
+                closeSession(new CloseReason(CloseCodes.GOING_AWAY,
+                        "The listener has closed the event stream"));
+            } catch (IOException e) {
+                // The session is gone already
+            }
+        }
+    }
 
-            // Clear out the listeners
-            listeners.clear();
+    /**
+     * Schedule the next attempt to reconnect or, if the maximum number of attempts has
+     * been reached, close the stream for good.
+     */
+    private void reconnectFailed() {
+        CloseReason closeReason;
+        synchronized (reconnectLock) {
+            if (closed) {
+                return;
+            }
+            if (maxReconnectAttempts <= 0 || reconnectAttempts < maxReconnectAttempts) {
+                scheduleReconnect();
+                return;
+            }
+            closed = true;
+            closeReason = new CloseReason(gapCloseReason.getCloseCode(),
+                    "Reconnecting failed " + reconnectAttempts + " times");
+            gapStart = null;
+        }
+        closeListeners(closeReason);
+    }
+
+    /**
+     * End the current gap, if any.
+     *
+     * @return the gap or null if the stream was not reconnected
+     */
+    private EventStreamGap endGap() {
+        synchronized (reconnectLock) {
+            if (gapStart == null) {
+                return null;
+            }
+            EventStreamGap gap = new EventStreamGap(gapStart, Instant.now(), gapCloseReason,
+                    reconnectAttempts);
+            gapStart = null;
+            gapCloseReason = null;
+            reconnectAttempts = 0;
+            return gap;
+        }
+    }
+
+    /**
+     * Check if the token is known to have expired.
+     *
+     * @return true if the token has expired
+     */
+    private boolean isTokenExpired() {
+        Date expire = tokenExpire;
+        return expire != null && !expire.after(new Date());
+    }
+
+    /**
+     * Notify all listeners that the stream was closed and remove them.
+     *
+     * @param closeReason the {@link CloseReason} for the websocket closure
+     */
+    private void closeListeners(CloseReason closeReason) {
+        // Notify all the listeners and cleanup, queued events are delivered first
+        List<ListenerDispatcher> closed;
+        synchronized (dispatchers) {
+            closed = new ArrayList<>(dispatchers);
+            dispatchers.clear();
+            unfilteredDispatchers.clear();
+            closed.forEach(subscriptions::remove);
+        }
+        for (ListenerDispatcher dispatcher : closed) {
+            dispatcher.close(closeReason);
+        }
+        if (ownDispatchExecutor != null) {
+            ownDispatchExecutor.shutdown();
+        }
+        if (reconnectScheduler != null) {
+            reconnectScheduler.shutdown();
         }
     }
 }
@@ -0,0 +1,90 @@
+package com.suse.saltstack.netapi.event;
+
+import javax.websocket.CloseReason;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * An interval during which a reconnecting {@link EventStream} was disconnected, so
+ * events published on the master in that interval were not received. Consumers can
+ * reconcile their state for this interval, e.g. by looking up the jobs they are waiting
+ * for with {@link com.suse.saltstack.netapi.calls.runner.Jobs#lookupJid(String)}.
+ */
+public class EventStreamGap {
+
+    private final Instant start;
+    private final Instant end;
+    private final CloseReason closeReason;
+    private final int attempts;
+
+    /**
+     * Create a gap.
+     *
+     * @param startIn the time the stream was closed
+     * @param endIn the time the stream was connected again
+     * @param closeReasonIn the reason the stream was closed
+     * @param attemptsIn the number of attempts it took to reconnect
+     */
+    public EventStreamGap(Instant startIn, Instant endIn, CloseReason closeReasonIn,
+            int attemptsIn) {
+        start = startIn;
+        end = endIn;
+        closeReason = closeReasonIn;
+        attempts = attemptsIn;
+    }
+
+    /**
+     * Return the time the stream was closed.
+     *
+     * @return the start of the gap
+     */
+    public Instant getStart() {
+        return start;
+    }
+
+    /**
+     * Return the time the stream was connected again.
+     *
+     * @return the end of the gap
+     */
+    public Instant getEnd() {
+        return end;
+    }
+
+    /**
+     * Return the length of the gap.
+     *
+     * @return the duration between start and end
+     */
+    public Duration getDuration() {
+        return Duration.between(start, end);
+    }
+
+    /**
+     * Return the reason the stream was closed.
+     *
+     * @return the close reason
+     */
+    public CloseReason getCloseReason() {
+        return closeReason;
+    }
+
+    /**
+     * Return the number of attempts it took to reconnect.
+     *
+     * @return the number of attempts
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "EventStreamGap[" + start + " - " + end + ", " + attempts + " attempts, " +
+                closeReason + "]";
+    }
+}
@@ -0,0 +1,575 @@
+package com.suse.saltstack.netapi.event;
+
+import com.suse.saltstack.netapi.calls.LocalCall;
+import com.suse.saltstack.netapi.calls.modules.Grains;
+import com.suse.saltstack.netapi.client.SaltStackClient;
+import com.suse.saltstack.netapi.datatypes.Event;
+import com.suse.saltstack.netapi.datatypes.target.Glob;
+import com.suse.saltstack.netapi.datatypes.target.Grain;
+import com.suse.saltstack.netapi.datatypes.target.GrainsLookup;
+import com.suse.saltstack.netapi.datatypes.target.MinionList;
+import com.suse.saltstack.netapi.exception.SaltStackException;
+import com.suse.saltstack.netapi.utils.DaemonThreadFactory;
+
+import javax.websocket.CloseReason;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of the grains of all minions, mapping each grain and value to the set
+ * of minions having it, so minions can be looked up by grains in time proportional to
+ * the number of matching minions instead of calling {@code grains.items} on all minions.
+ * <p>
+ * The index is populated by {@link #rebuild()}, which streams the grains of all minions,
+ * and kept current by listening to an {@link EventStream}: the grains of a minion are
+ * looked up again when it starts ({@code minion_start}) or returns from a function that
+ * changes grains (e.g. {@code saltutil.refresh_grains} or {@code grains.setval}),
+ * minions are removed when their key is deleted or rejected, and the index is rebuilt
+ * in the background after a reconnecting stream missed events. Minions whose grains
+ * could not be looked up after an event are reported by {@link #getStaleMinions()}
+ * until they are updated again, e.g. by the next rebuild. Changes made by events while
+ * a rebuild is running take precedence over the grains returned by the rebuild.
+ * <p>
+ * Nested grains are indexed by their path joined with {@code :}, e.g.
+ * {@code ip_interfaces:eth0}; lists are indexed by each of their elements. Values are
+ * compared as strings, integral numbers are written without a fraction. Lookups can
+ * run concurrently, updates are exclusive.
+ */
+public class GrainsIndex implements EventListener, GrainsLookup, AutoCloseable {
+
+    /** Separator of the keys of nested grains */
+    public static final String DELIMITER = Grain.DELIMITER;
+
+    private static final String TAG_KEY = "salt/key";
+    private static final String TAG_START = "minion_start";
+    private static final String TAG_MINION_PREFIX = "salt/minion/";
+    private static final String TAG_MINION_START = "/start";
+    private static final String TAG_RETURN = "salt/job/*/ret/*";
+    private static final List<String> REMOVED_KEY_ACTIONS = Arrays.asList("delete",
+            "reject");
+    private static final List<String> GRAINS_FUNCTIONS = Arrays.asList(
+            "saltutil.refresh_grains", "saltutil.sync_grains", "saltutil.sync_all",
+            "grains.setval", "grains.setvals", "grains.append", "grains.remove",
+            "grains.delval", "grains.delkey");
+
+    private static final LocalCall<Map<String, Object>> GRAINS_ITEMS = Grains.items(false);
+
+    /** The client used to look up the grains */
+    private final SaltStackClient client;
+
+    /** The event stream this index is listening to */
+    private final EventStream eventStream;
+
+    /** Executor for rebuilding the index after a reconnect */
+    private final ExecutorService executor = Executors
+            .newSingleThreadExecutor(new DaemonThreadFactory("saltstack-grains-"));
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Bits of the minions having each value of each grain, keyed by grain and value */
+    private final Map<String, Map<String, BitSet>> index = new HashMap<>();
+
+    /** Minion ids by their bit, null for free bits */
+    private final List<String> minionIds = new ArrayList<>();
+
+    /** Bits by minion id */
+    private final Map<String, Integer> bits = new HashMap<>();
+
+    /** Indexed values by bit, to remove a minion from the index */
+    private final List<Map<String, Set<String>>> values = new ArrayList<>();
+
+    /** Bits of removed minions to be reused */
+    private final BitSet free = new BitSet();
+
+    /** Minions whose grains could not be looked up after an event */
+    private final Set<String> stale = new HashSet<>();
+
+    /** Sequence number of the latest change, incremented with every change */
+    private long sequence;
+
+    /** Number of rebuilds in progress */
+    private int rebuilding;
+
+    /** Sequence numbers of the latest change of each minion while rebuilding */
+    private final Map<String, Long> changed = new HashMap<>();
+
+    /**
+     * Create an index kept current by the events of the given stream. The index is
+     * empty until {@link #rebuild()} is called.
+     *
+     * @param clientIn the client used to look up the grains
+     * @param eventStreamIn the event stream to listen to
+     */
+    public GrainsIndex(SaltStackClient clientIn, EventStream eventStreamIn) {
+        client = clientIn;
+        eventStream = eventStreamIn;
+        eventStream.addEventListener(this, TagFilter.prefix(TAG_KEY));
+        eventStream.addEventListener(this, TagFilter.prefix(TAG_START));
+        eventStream.addEventListener(this, TagFilter.glob(TAG_MINION_PREFIX + "*" +
+                TAG_MINION_START));
+        eventStream.addEventListener(this, TagFilter.glob(TAG_RETURN));
+    }
+
+    /**
+     * Replace the contents of the index with the grains of all minions. The response is
+     * parsed incrementally, so only the grains of one minion are held in memory besides
+     * the index. Minions updated or removed after the rebuild started are left as they
+     * are, their changes are newer than the grains returned by the rebuild.
+     *
+     * @return the number of indexed minions
+     * @throws SaltStackException if looking up the grains fails
+     */
+    public int rebuild() throws SaltStackException {
+        long start;
+        lock.writeLock().lock();
+        try {
+            rebuilding++;
+            start = sequence;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        try {
+            Set<String> returned = new HashSet<>();
+            client.callSync(GRAINS_ITEMS, new Glob("*"),
+                    (minionId, grains) -> update(minionId, grains, returned, start));
+
+            lock.writeLock().lock();
+            try {
+                new ArrayList<>(bits.keySet()).stream()
+                        .filter(minionId -> !returned.contains(minionId) &&
+                                !changedSince(minionId, start))
+                        .forEach(this::removeLocked);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return returned.size();
+        } finally {
+            lock.writeLock().lock();
+            try {
+                if (--rebuilding == 0) {
+                    changed.clear();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Replace the grains of the given minion in the index.
+     *
+     * @param minionId the minion id
+     * @param grains the grains of the minion
+     */
+    public void update(String minionId, Map<String, Object> grains) {
+        Map<String, Set<String>> flat = new HashMap<>();
+        flatten("", grains, flat);
+
+        lock.writeLock().lock();
+        try {
+            markChanged(minionId);
+            updateLocked(minionId, flat);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the given minion from the index.
+     *
+     * @param minionId the minion id
+     */
+    public void remove(String minionId) {
+        lock.writeLock().lock();
+        try {
+            markChanged(minionId);
+            removeLocked(minionId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Return the minions having the given value of the given grain.
+     *
+     * @param grain the grain, nested grains joined with {@link #DELIMITER}
+     * @param value the value
+     * @return the ids of the matching minions
+     */
+    @Override
+    public Set<String> getMinions(String grain, String value) {
+        return getMinions(Collections.singletonMap(grain, value));
+    }
+
+    /**
+     * Return the minions having all of the given grain values.
+     *
+     * @param grains the values keyed by grain, nested grains joined with
+     * {@link #DELIMITER}
+     * @return the ids of the matching minions
+     */
+    public Set<String> getMinions(Map<String, String> grains) {
+        lock.readLock().lock();
+        try {
+            BitSet matches = null;
+            for (Map.Entry<String, String> grain : grains.entrySet()) {
+                BitSet minions = index.getOrDefault(grain.getKey(), Collections.emptyMap())
+                        .get(grain.getValue());
+                if (minions == null) {
+                    return Collections.emptySet();
+                }
+                if (matches == null) {
+                    matches = (BitSet) minions.clone();
+                } else {
+                    matches.and(minions);
+                }
+            }
+            return matches == null ? getMinions() : toMinionIds(matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return all indexed minions.
+     *
+     * @return the minion ids
+     */
+    public Set<String> getMinions() {
+        lock.readLock().lock();
+        try {
+            return new HashSet<>(bits.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the values of the given grain among all indexed minions.
+     *
+     * @param grain the grain, nested grains joined with {@link #DELIMITER}
+     * @return the values
+     */
+    @Override
+    public Set<String> getValues(String grain) {
+        lock.readLock().lock();
+        try {
+            return new HashSet<>(index.getOrDefault(grain, Collections.emptyMap())
+                    .keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the minions whose grains could not be looked up after an event, so their
+     * indexed grains might be outdated. Minions are no longer stale once they are
+     * updated or removed.
+     *
+     * @return the ids of the stale minions
+     */
+    public Set<String> getStaleMinions() {
+        lock.readLock().lock();
+        try {
+            return new HashSet<>(stale);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the number of indexed minions.
+     *
+     * @return the number of minions
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return bits.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void notify(Event event) {
+        String tag = event.getTag();
+        if (tag.startsWith(TAG_KEY)) {
+            if (REMOVED_KEY_ACTIONS.contains(event.getData().get("act"))) {
+                remove(String.valueOf(event.getData().get("id")));
+            }
+        } else if (tag.startsWith(TAG_START)) {
+            refresh(String.valueOf(event.getData().get("id")));
+        } else if (tag.startsWith(TAG_MINION_PREFIX) && tag.endsWith(TAG_MINION_START)) {
+            refresh(tag.substring(TAG_MINION_PREFIX.length(),
+                    tag.length() - TAG_MINION_START.length()));
+        } else if (JobTracker.returnJid(tag) != null &&
+                GRAINS_FUNCTIONS.contains(event.getData().get("fun"))) {
+            refresh(String.valueOf(event.getData().get("id")));
+        }
+    }
+
+    /**
+     * The index is not updated anymore once the event stream is closed.
+     *
+     * @param closeReason the close reason
+     */
+    @Override
+    public void eventStreamClosed(CloseReason closeReason) {
+    }
+
+    /**
+     * Rebuild the index in the background, changes might have been missed while the
+     * event stream was disconnected.
+     *
+     * @param gap the interval during which the stream was disconnected
+     */
+    @Override
+    public void eventStreamReconnected(EventStreamGap gap) {
+        executor.execute(this::rebuildQuietly);
+    }
+
+    /**
+     * Stop listening to the event stream.
+     */
+    @Override
+    public void close() {
+        eventStream.removeEventListener(this);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Update the grains of a minion returned while rebuilding the index, unless the
+     * minion was changed after the rebuild started.
+     *
+     * @param minionId the minion id
+     * @param grains the grains of the minion
+     * @param returned the minions returned so far
+     * @param start the sequence number when the rebuild started
+     */
+    private void update(String minionId, Map<String, Object> grains,
+            Set<String> returned, long start) {
+        returned.add(minionId);
+        Map<String, Set<String>> flat = new HashMap<>();
+        flatten("", grains, flat);
+
+        lock.writeLock().lock();
+        try {
+            if (!changedSince(minionId, start)) {
+                updateLocked(minionId, flat);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Look up the grains of the given minion and update the index, marking the minion
+     * stale in case that fails.
+     *
+     * @param minionId the minion id
+     */
+    private void refresh(String minionId) {
+        client.callSyncAsync(GRAINS_ITEMS, new MinionList(minionId))
+                .whenComplete((result, e) -> refreshed(minionId, result));
+    }
+
+    /**
+     * Update the grains of a minion after looking them up, or mark the minion stale if
+     * the lookup failed or the minion did not return.
+     *
+     * @param minionId the minion id
+     * @param result the grains keyed by minion id, null if the lookup failed
+     */
+    private void refreshed(String minionId, Map<String, Map<String, Object>> result) {
+        if (result != null && result.containsKey(minionId)) {
+            update(minionId, result.get(minionId));
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            markChanged(minionId);
+            stale.add(minionId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Record a change of the given minion while holding the write lock, so that running
+     * rebuilds do not overwrite it.
+     *
+     * @param minionId the minion id
+     */
+    private void markChanged(String minionId) {
+        sequence++;
+        if (rebuilding > 0) {
+            changed.put(minionId, sequence);
+        }
+    }
+
+    /**
+     * Check whether the given minion was changed after a rebuild started, while holding
+     * the write lock.
+     *
+     * @param minionId the minion id
+     * @param start the sequence number when the rebuild started
+     * @return true if the minion was changed after the rebuild started
+     */
+    private boolean changedSince(String minionId, long start) {
+        Long change = changed.get(minionId);
+        return change != null && change > start;
+    }
+
+    /**
+     * Replace the grains of the given minion while holding the write lock.
+     *
+     * @param minionId the minion id
+     * @param flat the flattened grains of the minion
+     */
+    private void updateLocked(String minionId, Map<String, Set<String>> flat) {
+        removeLocked(minionId);
+        int bit = free.isEmpty() ? minionIds.size() : free.nextSetBit(0);
+        if (bit == minionIds.size()) {
+            minionIds.add(minionId);
+            values.add(flat);
+        } else {
+            free.clear(bit);
+            minionIds.set(bit, minionId);
+            values.set(bit, flat);
+        }
+        bits.put(minionId, bit);
+        for (Map.Entry<String, Set<String>> grain : flat.entrySet()) {
+            Map<String, BitSet> byValue = index.computeIfAbsent(grain.getKey(),
+                    g -> new HashMap<>());
+            for (String value : grain.getValue()) {
+                byValue.computeIfAbsent(value, v -> new BitSet()).set(bit);
+            }
+        }
+    }
+
+    /**
+     * Rebuild the index, leaving it as it is in case that fails.
+     */
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (SaltStackException e) {
+            // The index is rebuilt after the next reconnect
+        }
+    }
+
+    /**
+     * Remove the given minion from the index while holding the write lock.
+     *
+     * @param minionId the minion id
+     */
+    private void removeLocked(String minionId) {
+        stale.remove(minionId);
+        Integer bit = bits.remove(minionId);
+        if (bit == null) {
+            return;
+        }
+        for (Map.Entry<String, Set<String>> grain : values.get(bit).entrySet()) {
+            Map<String, BitSet> byValue = index.get(grain.getKey());
+            for (String value : grain.getValue()) {
+                clear(byValue, value, bit);
+            }
+            if (byValue.isEmpty()) {
+                index.remove(grain.getKey());
+            }
+        }
+        minionIds.set(bit, null);
+        values.set(bit, null);
+        free.set(bit);
+    }
+
+    /**
+     * Clear the bit of a minion for the given value, dropping the value if no minion
+     * has it anymore.
+     *
+     * @param byValue the bits of the values of a grain
+     * @param value the value
+     * @param bit the bit of the minion
+     */
+    private static void clear(Map<String, BitSet> byValue, String value, int bit) {
+        BitSet minions = byValue.get(value);
+        minions.clear(bit);
+        if (minions.isEmpty()) {
+            byValue.remove(value);
+        }
+    }
+
+    /**
+     * Return the ids of the minions whose bits are set, while holding the read lock.
+     *
+     * @param minions the bits
+     * @return the minion ids
+     */
+    private Set<String> toMinionIds(BitSet minions) {
+        Set<String> result = new HashSet<>(minions.cardinality() * 2);
+        for (int bit = minions.nextSetBit(0); bit >= 0; bit = minions.nextSetBit(bit + 1)) {
+            result.add(minionIds.get(bit));
+        }
+        return result;
+    }
+
+    /**
+     * Add the values of the given grain to the given map, keyed by the path of nested
+     * grains.
+     *
+     * @param path the path of the grain
+     * @param value the value of the grain
+     * @param flat the values keyed by path
+     */
+    static void flatten(String path, Object value, Map<String, Set<String>> flat) {
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                String key = String.valueOf(entry.getKey());
+                flatten(path.isEmpty() ? key : path + DELIMITER + key, entry.getValue(),
+                        flat);
+            }
+        } else if (value instanceof Iterable) {
+            Iterator<?> iterator = ((Iterable<?>) value).iterator();
+            while (iterator.hasNext()) {
+                flatten(path, iterator.next(), flat);
+            }
+        } else if (value != null && !path.isEmpty()) {
+            flat.computeIfAbsent(path, p -> new HashSet<>()).add(valueOf(value));
+        }
+    }
+
+    /**
+     * Return the string a value is indexed by.
+     *
+     * @param value the value
+     * @return the value as string, integral numbers without a fraction
+     */
+    static String valueOf(Object value) {
+        if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            if (number == Math.rint(number) && !Double.isInfinite(number) &&
+                    Math.abs(number) < Long.MAX_VALUE) {
+                return Long.toString((long) number);
+            }
+        }
+        return String.valueOf(value);
+    }
+}
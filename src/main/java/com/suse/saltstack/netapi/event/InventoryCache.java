@@ -0,0 +1,344 @@
+package com.suse.saltstack.netapi.event;
+
+import com.suse.saltstack.netapi.calls.LocalCall;
+import com.suse.saltstack.netapi.calls.wheel.Key;
+import com.suse.saltstack.netapi.client.SaltStackClient;
+import com.suse.saltstack.netapi.config.ClientConfig;
+import com.suse.saltstack.netapi.config.ConfigSnapshot;
+import com.suse.saltstack.netapi.datatypes.Event;
+import com.suse.saltstack.netapi.datatypes.target.Target;
+import com.suse.saltstack.netapi.datatypes.target.TargetResolver;
+import com.suse.saltstack.netapi.exception.SaltStackException;
+import com.suse.saltstack.netapi.utils.ExpiringCache;
+
+import javax.websocket.CloseReason;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read-through cache for the inventory of a master: the minion list and details
+ * (/minions), the keys (/keys) and the grains returned by {@code grains.items} and
+ * {@code grains.item} calls. Entries expire after the times configured with
+ * {@link ClientConfig#INVENTORY_CACHE_MINIONS_TTL},
+ * {@link ClientConfig#INVENTORY_CACHE_KEYS_TTL} and
+ * {@link ClientConfig#INVENTORY_CACHE_GRAINS_TTL} of the client's configuration.
+ * <p>
+ * If an {@link EventStream} is given, entries are invalidated as soon as the master
+ * reports a change: {@code salt/key} events drop the keys, the minion list and the
+ * entries of the affected minion, {@code salt/auth} events of pending keys drop the
+ * keys, and {@code minion_start} events drop the entries of the starting minion.
+ * Everything is dropped when the stream is closed or reconnected, since events might
+ * have been missed. Grains results of targets other than explicit lists are dropped on
+ * every key or start event, as the set of targeted minions might have changed.
+ * <p>
+ * Cached results are shared between callers and must not be modified.
+ */
+public class InventoryCache implements EventListener, AutoCloseable {
+
+    private static final String TAG_KEY = "salt/key";
+    private static final String TAG_AUTH = "salt/auth";
+    private static final String TAG_START = "minion_start";
+    private static final String TAG_MINION_PREFIX = "salt/minion/";
+    private static final String TAG_MINION_START = "/start";
+    private static final String TARGET_TYPE_LIST = "list";
+    private static final List<String> GRAINS_FUNCTIONS =
+            Arrays.asList("grains.items", "grains.item");
+
+    /** The single key of the caches holding one result */
+    private static final String ALL = "";
+
+    /** The client used to load the entries */
+    private final SaltStackClient client;
+
+    /** The event stream this cache is listening to, or null */
+    private final EventStream eventStream;
+
+    private final ExpiringCache<String, Map<String, Map<String, Object>>> minions;
+    private final ExpiringCache<String, Map<String, Object>> minionDetails;
+    private final ExpiringCache<String, Key.Names> keys;
+    private final ExpiringCache<List<Object>, Map<String, ?>> grains;
+
+    /** The resolver for the keys it was created from, guarded by this */
+    private TargetResolver resolver;
+    private Key.Names resolverKeys;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Create a cache whose entries are only invalidated when they expire.
+     *
+     * @param clientIn the client used to load the entries
+     */
+    public InventoryCache(SaltStackClient clientIn) {
+        this(clientIn, null);
+    }
+
+    /**
+     * Create a cache whose entries are invalidated by the events of the given stream.
+     *
+     * @param clientIn the client used to load the entries
+     * @param eventStreamIn the event stream to listen to, or null
+     */
+    public InventoryCache(SaltStackClient clientIn, EventStream eventStreamIn) {
+        client = clientIn;
+        eventStream = eventStreamIn;
+
+        ConfigSnapshot config = client.getConfig().snapshot();
+        int maxEntries = config.get(ClientConfig.INVENTORY_CACHE_MAX_ENTRIES);
+        int minionsTtl = config.get(ClientConfig.INVENTORY_CACHE_MINIONS_TTL);
+        minions = new ExpiringCache<>(minionsTtl, 1);
+        minionDetails = new ExpiringCache<>(minionsTtl, maxEntries);
+        keys = new ExpiringCache<>(config.get(ClientConfig.INVENTORY_CACHE_KEYS_TTL), 1);
+        grains = new ExpiringCache<>(config.get(ClientConfig.INVENTORY_CACHE_GRAINS_TTL),
+                maxEntries);
+
+        if (eventStream != null) {
+            eventStream.addEventListener(this, TagFilter.prefix(TAG_KEY));
+            eventStream.addEventListener(this, TagFilter.prefix(TAG_AUTH));
+            eventStream.addEventListener(this, TagFilter.prefix(TAG_START));
+            eventStream.addEventListener(this, TagFilter.glob(TAG_MINION_PREFIX + "*" +
+                    TAG_MINION_START));
+        }
+    }
+
+    /**
+     * Return the minions, see {@link SaltStackClient#getMinions()}.
+     *
+     * @return the grains of all minions keyed by minion id
+     * @throws SaltStackException if loading them fails
+     */
+    public Map<String, Map<String, Object>> getMinions() throws SaltStackException {
+        Map<String, Map<String, Object>> result = minions.get(ALL);
+        if (result != null) {
+            hits.increment();
+            return result;
+        }
+        misses.increment();
+        long generation = minions.getGeneration();
+        result = client.getMinions();
+        minions.put(ALL, result, generation);
+        return result;
+    }
+
+    /**
+     * Return the details of a minion, see
+     * {@link SaltStackClient#getMinionDetails(String)}.
+     *
+     * @param minionId the minion id
+     * @return the grains of the minion
+     * @throws SaltStackException if loading them fails
+     */
+    public Map<String, Object> getMinionDetails(String minionId)
+            throws SaltStackException {
+        Map<String, Object> result = minionDetails.get(minionId);
+        if (result != null) {
+            hits.increment();
+            return result;
+        }
+        misses.increment();
+        long generation = minionDetails.getGeneration();
+        result = client.getMinionDetails(minionId);
+        if (result != null) {
+            minionDetails.put(minionId, result, generation);
+        }
+        return result;
+    }
+
+    /**
+     * Return the keys, see {@link SaltStackClient#keys()}.
+     *
+     * @return the minion ids by key state
+     * @throws SaltStackException if loading them fails
+     */
+    public Key.Names keys() throws SaltStackException {
+        Key.Names result = keys.get(ALL);
+        if (result != null) {
+            hits.increment();
+            return result;
+        }
+        misses.increment();
+        long generation = keys.getGeneration();
+        result = client.keys();
+        keys.put(ALL, result, generation);
+        return result;
+    }
+
+    /**
+     * Return a resolver for the accepted minions of the cached keys, see
+     * {@link #keys()}. The resolver is created again only when the keys are reloaded.
+     *
+     * @return the resolver
+     * @throws SaltStackException if loading the keys fails
+     */
+    public TargetResolver getTargetResolver() throws SaltStackException {
+        Key.Names names = keys();
+        synchronized (this) {
+            if (names != resolverKeys) {
+                resolver = new TargetResolver(names);
+                resolverKeys = names;
+            }
+            return resolver;
+        }
+    }
+
+    /**
+     * Run the given call, see {@link SaltStackClient#callSync(LocalCall, Target)}. The
+     * results of {@code grains.items} and {@code grains.item} are cached per call
+     * arguments and target, other calls are always run.
+     *
+     * @param call the call
+     * @param target the target
+     * @param <R> the return type of the called function
+     * @return the results keyed by minion id
+     * @throws SaltStackException if running the call fails
+     */
+    @SuppressWarnings("unchecked")
+    public <R> Map<String, R> callSync(LocalCall<R> call, Target<?> target)
+            throws SaltStackException {
+        Map<String, Object> payload = call.getPayload();
+        if (!GRAINS_FUNCTIONS.contains(payload.get("fun"))) {
+            return client.callSync(call, target);
+        }
+        List<Object> key = Arrays.asList(payload, target.getTarget(), target.getType());
+        Map<String, R> result = (Map<String, R>) grains.get(key);
+        if (result != null) {
+            hits.increment();
+            return result;
+        }
+        misses.increment();
+        long generation = grains.getGeneration();
+        result = client.callSync(call, target);
+        grains.put(key, result, generation);
+        return result;
+    }
+
+    /**
+     * Drop all entries.
+     */
+    public void invalidateAll() {
+        minions.invalidateAll();
+        minionDetails.invalidateAll();
+        keys.invalidateAll();
+        grains.invalidateAll();
+    }
+
+    /**
+     * Drop the entries of the given minion, including the minion list and the grains
+     * results that contain the minion or might target it.
+     *
+     * @param minionId the minion id
+     */
+    public void invalidateMinion(String minionId) {
+        minions.invalidateAll();
+        minionDetails.invalidate(minionId);
+        grains.invalidateIf((key, value) -> mightTarget(key, value, minionId));
+    }
+
+    /**
+     * Return the number of results returned from the cache.
+     *
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Return the number of results that had to be loaded.
+     *
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void notify(Event event) {
+        String tag = event.getTag();
+        if (tag.startsWith(TAG_KEY)) {
+            keys.invalidateAll();
+            invalidateMinion(minionId(event));
+        } else if (tag.startsWith(TAG_AUTH)) {
+            if ("pend".equals(event.getData().get("act"))) {
+                keys.invalidateAll();
+            }
+        } else if (tag.startsWith(TAG_START) || tag.startsWith(TAG_MINION_PREFIX) &&
+                tag.endsWith(TAG_MINION_START)) {
+            invalidateMinion(minionId(event));
+        }
+    }
+
+    /**
+     * Drop all entries, changes will not be noticed anymore.
+     *
+     * @param closeReason the close reason
+     */
+    @Override
+    public void eventStreamClosed(CloseReason closeReason) {
+        invalidateAll();
+    }
+
+    /**
+     * Drop all entries, changes might have been missed while the event stream was
+     * disconnected.
+     *
+     * @param gap the interval during which the stream was disconnected
+     */
+    @Override
+    public void eventStreamReconnected(EventStreamGap gap) {
+        invalidateAll();
+    }
+
+    /**
+     * Stop listening to the event stream and drop all entries.
+     */
+    @Override
+    public void close() {
+        if (eventStream != null) {
+            eventStream.removeEventListener(this);
+        }
+        invalidateAll();
+    }
+
+    /**
+     * Return the minion id of a key or start event.
+     *
+     * @param event the event
+     * @return the minion id
+     */
+    private static String minionId(Event event) {
+        Object id = event.getData().get("id");
+        if (id == null && event.getTag().startsWith(TAG_MINION_PREFIX)) {
+            String tag = event.getTag();
+            id = tag.substring(TAG_MINION_PREFIX.length(),
+                    tag.length() - TAG_MINION_START.length());
+        }
+        return String.valueOf(id);
+    }
+
+    /**
+     * Return whether a grains result might contain the given minion.
+     *
+     * @param key the call arguments and the target of the result
+     * @param value the result
+     * @param minionId the minion id
+     * @return true unless the result was targeted at a list not containing the minion
+     */
+    private static boolean mightTarget(List<Object> key, Map<String, ?> value,
+            String minionId) {
+        if (value.containsKey(minionId) || !TARGET_TYPE_LIST.equals(key.get(2))) {
+            return true;
+        }
+        Object target = key.get(1);
+        return target instanceof String ?
+                Arrays.asList(((String) target).split(",")).contains(minionId) :
+                target instanceof List && ((List<?>) target).contains(minionId);
+    }
+}
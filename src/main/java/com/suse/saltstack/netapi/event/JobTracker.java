@@ -0,0 +1,313 @@
+package com.suse.saltstack.netapi.event;
+
+import com.suse.saltstack.netapi.calls.LocalAsyncResult;
+import com.suse.saltstack.netapi.calls.runner.Jobs;
+import com.suse.saltstack.netapi.client.SaltStackClient;
+import com.suse.saltstack.netapi.datatypes.Event;
+import com.suse.saltstack.netapi.parser.JsonParser;
+import com.suse.saltstack.netapi.utils.DaemonThreadFactory;
+import com.suse.saltstack.netapi.utils.LruMap;
+
+import javax.websocket.CloseReason;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the completion of jobs started with
+ * {@link SaltStackClient#callAsync(com.suse.saltstack.netapi.calls.LocalCall,
+ * com.suse.saltstack.netapi.datatypes.target.Target)} by listening to the
+ * {@code salt/job/<jid>/ret/<minion-id>} events on an {@link EventStream}, instead of
+ * polling the job cache of the master.
+ * <p>
+ * Each tracked job is completed as soon as all targeted minions have returned. Only if
+ * that does not happen within the given timeout, or if the event stream is closed, the
+ * results are looked up once using {@link Jobs#lookupJid(LocalAsyncResult)}. Returns
+ * missed while a reconnecting stream was disconnected are looked up as well.
+ * <p>
+ * Returns of jobs that are not tracked (yet) are buffered for a limited number of jobs,
+ * so minions returning before {@link #track(LocalAsyncResult, long, TimeUnit)} is called
+ * are not missed. Only a limited number of returns is buffered per job, if more minions
+ * returned the results are looked up as soon as the job is tracked.
+ */
+public class JobTracker implements EventListener, AutoCloseable {
+
+    /** Maximum number of untracked jobs whose returns are buffered */
+    public static final int MAX_BUFFERED_JOBS = 256;
+
+    /** Maximum number of returns that are buffered per untracked job */
+    public static final int MAX_BUFFERED_RETURNS = 64;
+
+    private static final String TAG_PREFIX = "salt/job/";
+    private static final String TAG_RETURN = "/ret/";
+
+    /** The client used to look up the results on timeout */
+    private final SaltStackClient client;
+
+    /** The event stream this tracker is listening to */
+    private final EventStream eventStream;
+
+    /** Scheduler for the timeouts */
+    private final ScheduledExecutorService scheduler = Executors
+            .newSingleThreadScheduledExecutor(new DaemonThreadFactory("saltstack-jobs-"));
+
+    /** The tracked jobs keyed by job id */
+    private final Map<String, TrackedJob<?>> jobs = new HashMap<>();
+
+    /** Return events of jobs that are not tracked, least recently returned are dropped */
+    private final Map<String, List<Event>> untrackedReturns =
+            new LruMap<>(MAX_BUFFERED_JOBS);
+
+    /**
+     * Create a tracker listening to the given event stream.
+     *
+     * @param clientIn the client used to look up the results on timeout
+     * @param eventStreamIn the event stream to listen to
+     */
+    public JobTracker(SaltStackClient clientIn, EventStream eventStreamIn) {
+        client = clientIn;
+        eventStream = eventStreamIn;
+        eventStream.addEventListener(this);
+    }
+
+    /**
+     * Start tracking the given job. The returned job is completed once all targeted
+     * minions have returned or, after the given timeout, with the results that the
+     * master knows about.
+     *
+     * @param job the job as returned by the API when it was scheduled
+     * @param timeout time to wait for the returns of all minions
+     * @param unit the unit of the timeout
+     * @param <R> the return type of the called function
+     * @return the tracked job
+     */
+    public <R> TrackedJob<R> track(LocalAsyncResult<R> job, long timeout, TimeUnit unit) {
+        TrackedJob<R> trackedJob = new TrackedJob<>(job);
+        List<Event> earlyReturns;
+        synchronized (jobs) {
+            jobs.put(job.getJid(), trackedJob);
+            earlyReturns = untrackedReturns.remove(job.getJid());
+        }
+
+        ScheduledFuture<?> timer = scheduler.schedule(() -> lookup(trackedJob),
+                timeout, unit);
+        trackedJob.getResult().whenComplete((result, e) -> untrack(trackedJob, timer));
+
+        if (earlyReturns != null) {
+            earlyReturns.forEach(event -> addReturn(trackedJob, event));
+            if (earlyReturns.size() >= MAX_BUFFERED_RETURNS) {
+                // Returns might have been dropped from the buffer
+                reconcile(trackedJob);
+            }
+        }
+        if (job.getMinions() != null && job.getMinions().isEmpty()) {
+            // No minion was targeted, there is nothing to wait for
+            trackedJob.complete(null);
+        }
+        return trackedJob;
+    }
+
+    /**
+     * Return the number of jobs that are currently tracked.
+     *
+     * @return the number of tracked jobs
+     */
+    public int getTrackedJobCount() {
+        synchronized (jobs) {
+            return jobs.size();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void notify(Event event) {
+        String jid = returnJid(event.getTag());
+        if (jid == null) {
+            return;
+        }
+
+        TrackedJob<?> trackedJob;
+        synchronized (jobs) {
+            trackedJob = jobs.get(jid);
+            if (trackedJob == null) {
+                List<Event> returns =
+                        untrackedReturns.computeIfAbsent(jid, key -> new ArrayList<>());
+                if (returns.size() < MAX_BUFFERED_RETURNS) {
+                    returns.add(event);
+                }
+                return;
+            }
+        }
+        addReturn(trackedJob, event);
+    }
+
+    /**
+     * Look up the results of all pending jobs, no more returns will be received.
+     *
+     * @param closeReason the close reason
+     */
+    @Override
+    public void eventStreamClosed(CloseReason closeReason) {
+        List<TrackedJob<?>> pending;
+        synchronized (jobs) {
+            pending = new ArrayList<>(jobs.values());
+        }
+        pending.forEach(this::lookup);
+    }
+
+    /**
+     * Look up the results of all pending jobs, returns might have been missed while the
+     * event stream was disconnected. Jobs are only completed if no minion is pending
+     * afterwards, otherwise tracking continues.
+     *
+     * @param gap the interval during which the stream was disconnected
+     */
+    @Override
+    public void eventStreamReconnected(EventStreamGap gap) {
+        List<TrackedJob<?>> pending;
+        synchronized (jobs) {
+            pending = new ArrayList<>(jobs.values());
+        }
+        pending.forEach(this::reconcile);
+    }
+
+    /**
+     * Stop listening to the event stream and stop tracking all jobs. The futures of the
+     * jobs that are still pending are cancelled.
+     */
+    @Override
+    public void close() {
+        eventStream.removeEventListener(this);
+        List<TrackedJob<?>> pending;
+        synchronized (jobs) {
+            pending = new ArrayList<>(jobs.values());
+            untrackedReturns.clear();
+        }
+        pending.forEach(trackedJob -> trackedJob.getResult().cancel(false));
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Return the job id in case the given tag is the tag of a minion's return event.
+     *
+     * @param tag the event tag
+     * @return the job id or null if it is not a return event
+     */
+    static String returnJid(String tag) {
+        if (tag == null || !tag.startsWith(TAG_PREFIX)) {
+            return null;
+        }
+        int end = tag.indexOf(TAG_RETURN, TAG_PREFIX.length());
+        return end > TAG_PREFIX.length() ? tag.substring(TAG_PREFIX.length(), end) : null;
+    }
+
+    /**
+     * Add the return contained in the given event to the given job. A return that
+     * cannot be converted is recorded as a failure of the minion, the job goes on.
+     *
+     * @param trackedJob the job
+     * @param event the return event
+     * @param <R> the return type of the called function
+     */
+    private <R> void addReturn(TrackedJob<R> trackedJob, Event event) {
+        Map<String, Object> data = event.getData();
+        String minionId = (String) data.get("id");
+        if (minionId == null) {
+            minionId = event.getTag().substring(event.getTag().indexOf(TAG_RETURN) +
+                    TAG_RETURN.length());
+        }
+        try {
+            R value = JsonParser.forType(trackedJob.getJob().getType())
+                    .convert(data.get("return"));
+            trackedJob.addResult(minionId, value);
+        } catch (RuntimeException e) {
+            trackedJob.addFailure(minionId, e);
+        }
+    }
+
+    /**
+     * Look up the results of the given job and complete it, unless it has been completed
+     * or looked up already. The timeout and a closed event stream may race for it.
+     *
+     * @param trackedJob the job
+     * @param <R> the return type of the called function
+     */
+    private <R> void lookup(TrackedJob<R> trackedJob) {
+        if (trackedJob.getResult().isDone() || !trackedJob.startLookup()) {
+            return;
+        }
+        client.callSyncAsync(Jobs.lookupJid(trackedJob.getJob()))
+                .whenComplete((lookup, e) -> completeLookup(trackedJob, lookup, e));
+    }
+
+    /**
+     * Look up the results of the given job and add them, the job is completed only if
+     * all minions have returned. In case the lookup fails the job keeps waiting, the
+     * lookup on timeout still completes it.
+     *
+     * @param trackedJob the job
+     * @param <R> the return type of the called function
+     */
+    private <R> void reconcile(TrackedJob<R> trackedJob) {
+        if (trackedJob.getResult().isDone()) {
+            return;
+        }
+        client.callSyncAsync(Jobs.lookupJid(trackedJob.getJob()))
+                .whenComplete((lookup, e) -> addLookup(trackedJob, lookup, e));
+    }
+
+    /**
+     * Add the results of a lookup to the given job unless the lookup failed.
+     *
+     * @param trackedJob the job
+     * @param lookup the results of the lookup
+     * @param throwable the cause in case the lookup failed, otherwise null
+     * @param <R> the return type of the called function
+     */
+    private <R> void addLookup(TrackedJob<R> trackedJob, Map<String, R> lookup,
+            Throwable throwable) {
+        if (throwable == null) {
+            trackedJob.addResults(lookup);
+        } else {
+            trackedJob.addLookupFailure(throwable);
+        }
+    }
+
+    /**
+     * Complete the given job with the results of a lookup.
+     *
+     * @param trackedJob the job
+     * @param lookup the results of the lookup
+     * @param throwable the cause in case the lookup failed, otherwise null
+     * @param <R> the return type of the called function
+     */
+    private <R> void completeLookup(TrackedJob<R> trackedJob, Map<String, R> lookup,
+            Throwable throwable) {
+        if (throwable != null) {
+            trackedJob.getResult().completeExceptionally(throwable);
+        } else {
+            trackedJob.complete(lookup);
+        }
+    }
+
+    /**
+     * Stop tracking the given job.
+     *
+     * @param trackedJob the job
+     * @param timer the timer to cancel
+     */
+    private void untrack(TrackedJob<?> trackedJob, ScheduledFuture<?> timer) {
+        timer.cancel(false);
+        synchronized (jobs) {
+            jobs.remove(trackedJob.getJid(), trackedJob);
+        }
+    }
+}
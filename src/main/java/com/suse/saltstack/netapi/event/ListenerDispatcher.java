@@ -0,0 +1,308 @@
+package com.suse.saltstack.netapi.event;
+
+import com.suse.saltstack.netapi.datatypes.Event;
+import com.suse.saltstack.netapi.metrics.EventStreamMetrics;
+
+import javax.websocket.CloseReason;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers the events of an {@link EventStream} to a single {@link EventListener}.
+ * <p>
+ * Without a queue the listener is notified directly on the thread receiving the event.
+ * Otherwise events are put into a bounded queue and delivered in order on an executor,
+ * with at most one task per listener running at a time. Events that do not fit into the
+ * queue are handled according to the {@link OverflowPolicy} and counted. Gaps are queued
+ * in order with the events but never dropped.
+ */
+class ListenerDispatcher implements Runnable {
+
+    /** The listener to notify */
+    private final EventListener listener;
+
+    /** Queued events and gaps, null for synchronous delivery */
+    private final BlockingQueue<Object> queue;
+
+    /** What to do if the queue is full */
+    private final OverflowPolicy overflowPolicy;
+
+    /** Executor delivering the queued events */
+    private final Executor executor;
+
+    /** Counter of the events dropped by this dispatcher */
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    /** Counter of the events dropped by all dispatchers of the stream */
+    private final AtomicLong totalDroppedEvents;
+
+    /** Set while a task delivering the queued events is submitted or running */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /** The metrics to report queued, dropped and dispatched events to */
+    private final EventStreamMetrics metrics;
+
+    /** The reason the stream was closed, delivered after all queued events */
+    private volatile CloseReason closeReason;
+
+    /**
+     * Create a dispatcher queueing events for the given listener.
+     *
+     * @param listenerIn the listener to notify
+     * @param capacityIn capacity of the queue, less than or equal to 0 for synchronous
+     * delivery
+     * @param overflowPolicyIn what to do if the queue is full
+     * @param executorIn executor delivering the queued events
+     * @param totalDroppedEventsIn counter of dropped events shared with other dispatchers
+     */
+    ListenerDispatcher(EventListener listenerIn, int capacityIn,
+            OverflowPolicy overflowPolicyIn, Executor executorIn,
+            AtomicLong totalDroppedEventsIn) {
+        this(listenerIn, capacityIn, overflowPolicyIn, executorIn, totalDroppedEventsIn,
+                EventStreamMetrics.NOOP);
+    }
+
+    /**
+     * Create a dispatcher queueing events for the given listener and reporting to the
+     * given metrics.
+     *
+     * @param listenerIn the listener to notify
+     * @param capacityIn capacity of the queue, less than or equal to 0 for synchronous
+     * delivery
+     * @param overflowPolicyIn what to do if the queue is full
+     * @param executorIn executor delivering the queued events
+     * @param totalDroppedEventsIn counter of dropped events shared with other dispatchers
+     * @param metricsIn the metrics
+     */
+    ListenerDispatcher(EventListener listenerIn, int capacityIn,
+            OverflowPolicy overflowPolicyIn, Executor executorIn,
+            AtomicLong totalDroppedEventsIn, EventStreamMetrics metricsIn) {
+        listener = listenerIn;
+        queue = capacityIn > 0 ? new ArrayBlockingQueue<>(capacityIn) : null;
+        overflowPolicy = overflowPolicyIn;
+        executor = executorIn;
+        totalDroppedEvents = totalDroppedEventsIn;
+        metrics = metricsIn;
+    }
+
+    /**
+     * Return the listener this dispatcher delivers to.
+     *
+     * @return the listener
+     */
+    EventListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Return the number of events that were dropped because the queue was full.
+     *
+     * @return the number of dropped events
+     */
+    long getDroppedEventCount() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * Return the number of events and gaps waiting to be delivered.
+     *
+     * @return the size of the queue, 0 for synchronous delivery
+     */
+    int getQueueSize() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    /**
+     * Deliver the given event to the listener or queue it for delivery.
+     *
+     * @param event the event
+     */
+    void dispatch(Event event) {
+        if (queue == null) {
+            notifyListener(event);
+            return;
+        }
+
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                while (!queue.offer(event)) {
+                    if (!dropOldestEvent()) {
+                        // Only gaps are queued, wait for the listener to catch up
+                        put(event);
+                        break;
+                    }
+                }
+                break;
+            case DROP_NEWEST:
+                if (!queue.offer(event)) {
+                    dropped();
+                }
+                break;
+            default:
+                put(event);
+                break;
+        }
+        if (metrics != EventStreamMetrics.NOOP) {
+            metrics.eventQueued(listener, queue.size());
+        }
+        schedule();
+    }
+
+    /**
+     * Queue the given event, waiting for space if necessary.
+     *
+     * @param event the event
+     */
+    private void put(Event event) {
+        try {
+            queue.put(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped();
+        }
+    }
+
+    /**
+     * Remove the oldest queued event to make space for a new one, skipping gaps so the
+     * listener always learns about them.
+     *
+     * @return false if there are only gaps in the queue
+     */
+    private boolean dropOldestEvent() {
+        for (Object item : queue) {
+            if (!(item instanceof EventStreamGap)) {
+                // The event may have been delivered in the meantime
+                if (queue.remove(item)) {
+                    dropped();
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Notify the listener that the stream was reconnected, after all queued events have
+     * been delivered. Gaps are never dropped, if the queue is full this blocks.
+     *
+     * @param gap the interval the stream was disconnected
+     */
+    void reconnected(EventStreamGap gap) {
+        if (queue == null) {
+            listener.eventStreamReconnected(gap);
+            return;
+        }
+        try {
+            queue.put(gap);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        schedule();
+    }
+
+    /**
+     * Notify the listener that the stream was closed, after all queued events have been
+     * delivered.
+     *
+     * @param closeReasonIn the close reason
+     */
+    void close(CloseReason closeReasonIn) {
+        if (queue == null) {
+            listener.eventStreamClosed(closeReasonIn);
+        } else {
+            closeReason = closeReasonIn;
+            schedule();
+        }
+    }
+
+    /**
+     * Deliver the queued events and gaps and, once the stream was closed, the close
+     * reason.
+     * Exceptions thrown by the listener are ignored so that the following events are
+     * still delivered.
+     */
+    @Override
+    public void run() {
+        do {
+            Object item;
+            while ((item = queue.poll()) != null) {
+                try {
+                    if (item instanceof EventStreamGap) {
+                        listener.eventStreamReconnected((EventStreamGap) item);
+                    } else {
+                        notifyListener((Event) item);
+                    }
+                } catch (RuntimeException e) {
+                    // Continue with the next event
+                }
+            }
+            CloseReason reason = closeReason;
+            if (reason != null && queue.isEmpty()) {
+                closeReason = null;
+                try {
+                    listener.eventStreamClosed(reason);
+                } catch (RuntimeException e) {
+                    // Nothing left to deliver
+                }
+            }
+            scheduled.set(false);
+        } while (hasWork() && scheduled.compareAndSet(false, true));
+    }
+
+    /**
+     * Notify the listener of the given event, measuring the time it takes if metrics
+     * are enabled.
+     *
+     * @param event the event
+     */
+    private void notifyListener(Event event) {
+        if (metrics == EventStreamMetrics.NOOP) {
+            listener.notify(event);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            listener.notify(event);
+        } finally {
+            metrics.eventDispatched(listener, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Submit a task delivering the queued events, unless there is one already. If the
+     * executor rejects the task the queued items are delivered once it accepts the task
+     * submitted for the next item.
+     */
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Check if there are events or a close reason to deliver.
+     *
+     * @return true if there is something to deliver
+     */
+    private boolean hasWork() {
+        return !queue.isEmpty() || closeReason != null;
+    }
+
+    /**
+     * Count a dropped event.
+     */
+    private void dropped() {
+        droppedEvents.incrementAndGet();
+        totalDroppedEvents.incrementAndGet();
+        metrics.eventDropped(listener);
+    }
+}
@@ -0,0 +1,137 @@
+package com.suse.saltstack.netapi.event;
+
+import com.suse.saltstack.netapi.datatypes.Event;
+import com.suse.saltstack.netapi.exception.MessageTooBigException;
+import com.suse.saltstack.netapi.parser.LazyEventParser;
+
+import java.util.Arrays;
+
+/**
+ * Assembles the partial messages received on the events WebSocket and parses the
+ * events from them.
+ * <p>
+ * All frames are copied into a single char buffer that is reused for subsequent
+ * messages, the event is then parsed directly from that buffer. No intermediate
+ * strings are created for the assembled message or for stripping the "data: " prefix.
+ * Only the tag is decoded, the data of the event is decoded when it is accessed, see
+ * {@link LazyEventParser}.
+ * The buffer grows as needed, it is only released after messages longer than
+ * {@link #MAX_RETAINED_CAPACITY} characters.
+ * <p>
+ * Instances are not thread-safe, the WebSocket container delivers the messages of a
+ * session one at a time.
+ */
+public class MessageAssembler {
+
+    /** Initial capacity of the message buffer in characters */
+    public static final int DEFAULT_CAPACITY = 0x400;
+
+    /** Maximum capacity of the message buffer in characters that is kept for reuse */
+    public static final int MAX_RETAINED_CAPACITY = 0x10000;
+
+    /** Message sent by the server to acknowledge "websocket client ready" */
+    private static final String SERVER_ACK = "server received message";
+
+    /** Salt API adds a "data: " prefix to each event that we need to ignore */
+    private static final int DATA_PREFIX_LENGTH = "data: ".length();
+
+    /** Maximum message length in characters */
+    private final int maxMessageLength;
+
+    /** Buffer holding the frames of the current message */
+    private char[] buffer = new char[DEFAULT_CAPACITY];
+
+    /** Number of characters of the current message in the buffer */
+    private int length;
+
+    /**
+     * Create an assembler for messages up to the given length.
+     *
+     * @param maxMessageLengthIn maximum message length in characters
+     */
+    public MessageAssembler(int maxMessageLengthIn) {
+        maxMessageLength = maxMessageLengthIn;
+    }
+
+    /**
+     * Append a partial message and parse the event once the last part was received.
+     *
+     * @param partialMessage partial message received on the websocket
+     * @param last indicate the last part of a message
+     * @return the event or null in case the message is not complete yet or it is not
+     * an event
+     * @throws MessageTooBigException in case the message is longer than maxMessageLength
+     */
+    public Event append(String partialMessage, boolean last)
+            throws MessageTooBigException {
+        int partLength = partialMessage.length();
+        if (partLength > maxMessageLength - length) {
+            reset();
+            throw new MessageTooBigException(maxMessageLength);
+        }
+
+        ensureCapacity(length + partLength);
+        partialMessage.getChars(0, partLength, buffer, length);
+        length += partLength;
+        if (!last) {
+            return null;
+        }
+
+        try {
+            if (isServerAck() || length < DATA_PREFIX_LENGTH) {
+                return null;
+            }
+            return LazyEventParser.parse(buffer, DATA_PREFIX_LENGTH,
+                    length - DATA_PREFIX_LENGTH);
+        } finally {
+            reset();
+        }
+    }
+
+    /**
+     * Return the current capacity of the message buffer.
+     *
+     * @return the capacity in characters
+     */
+    int getCapacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Grow the buffer to hold at least the given number of characters.
+     *
+     * @param capacity the required capacity
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length << 1));
+        }
+    }
+
+    /**
+     * Check if the buffer contains the acknowledgement of the server.
+     *
+     * @return true if the message is the server's acknowledgement
+     */
+    private boolean isServerAck() {
+        if (length != SERVER_ACK.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer[i] != SERVER_ACK.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Empty the buffer and release it if it has grown too much.
+     */
+    private void reset() {
+        length = 0;
+        if (buffer.length > MAX_RETAINED_CAPACITY) {
+            buffer = new char[DEFAULT_CAPACITY];
+        }
+    }
+}
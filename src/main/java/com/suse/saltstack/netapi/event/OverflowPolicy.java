@@ -0,0 +1,17 @@
+package com.suse.saltstack.netapi.event;
+
+/**
+ * What an {@link EventStream} does with a new event in case the queue of a listener is
+ * full, see {@link com.suse.saltstack.netapi.config.ClientConfig#EVENT_QUEUE_CAPACITY}.
+ */
+public enum OverflowPolicy {
+
+    /** Wait until the listener has taken an event, this stalls the websocket */
+    BLOCK,
+
+    /** Drop the oldest queued event to make room for the new one */
+    DROP_OLDEST,
+
+    /** Drop the new event */
+    DROP_NEWEST
+}
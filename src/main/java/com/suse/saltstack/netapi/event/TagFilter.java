@@ -0,0 +1,164 @@
+package com.suse.saltstack.netapi.event;
+
+/**
+ * Filter on the tags of events to subscribe to, see
+ * {@link EventStream#addEventListener(EventListener, TagFilter)}.
+ * <p>
+ * A filter either matches all tags starting with a given prefix, or all tags matching a
+ * glob pattern where {@code *} matches any sequence of characters (including
+ * {@code /}) and {@code ?} matches any single character.
+ */
+public final class TagFilter {
+
+    private static final char ANY_SEQUENCE = '*';
+    private static final char ANY_CHARACTER = '?';
+
+    /** The prefix or glob pattern */
+    private final String pattern;
+
+    /** The literal part of the pattern before the first wildcard */
+    private final String prefix;
+
+    /** True for a glob pattern containing wildcards */
+    private final boolean glob;
+
+    private TagFilter(String patternIn, String prefixIn, boolean globIn) {
+        pattern = patternIn;
+        prefix = prefixIn;
+        glob = globIn;
+    }
+
+    /**
+     * Create a filter matching all tags starting with the given prefix.
+     *
+     * @param prefix the prefix, e.g. {@code salt/job/}
+     * @return the filter
+     */
+    public static TagFilter prefix(String prefix) {
+        return new TagFilter(prefix, prefix, false);
+    }
+
+    /**
+     * Create a filter matching all tags matching the given glob pattern.
+     *
+     * @param pattern the glob pattern, e.g. {@code salt/job/*}{@code /ret/*}
+     * @return the filter
+     */
+    public static TagFilter glob(String pattern) {
+        int wildcard = 0;
+        while (wildcard < pattern.length() && !isWildcard(pattern.charAt(wildcard))) {
+            wildcard++;
+        }
+        if (wildcard == pattern.length()) {
+            // No wildcards, matches only the exact tag
+            return new TagFilter(pattern, pattern, true);
+        }
+        if (wildcard == pattern.length() - 1 &&
+                pattern.charAt(wildcard) == ANY_SEQUENCE) {
+            // A single trailing * is a prefix
+            return new TagFilter(pattern, pattern.substring(0, wildcard), false);
+        }
+        return new TagFilter(pattern, pattern.substring(0, wildcard), true);
+    }
+
+    /**
+     * Return the literal part of the pattern that all matching tags start with.
+     *
+     * @return the prefix
+     */
+    String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Check if all tags starting with the prefix are matched, i.e. no further
+     * matching is needed for those tags.
+     *
+     * @return true if this filter matches by prefix only
+     */
+    boolean isPrefix() {
+        return !glob;
+    }
+
+    /**
+     * Check if the given tag is matched by this filter.
+     *
+     * @param tag the event tag
+     * @return true if the tag is matched
+     */
+    public boolean matches(String tag) {
+        if (tag == null) {
+            return false;
+        }
+        return glob ? globMatches(tag) : tag.startsWith(prefix);
+    }
+
+    /**
+     * Match the tag against the glob pattern, backtracking to the last {@code *} on a
+     * mismatch.
+     *
+     * @param tag the event tag
+     * @return true if the tag is matched
+     */
+    private boolean globMatches(String tag) {
+        int p = 0;
+        int t = 0;
+        int star = -1;
+        int starMatch = 0;
+        while (t < tag.length()) {
+            if (p < pattern.length() && (pattern.charAt(p) == ANY_CHARACTER ||
+                    pattern.charAt(p) == tag.charAt(t))) {
+                p++;
+                t++;
+            } else if (p < pattern.length() && pattern.charAt(p) == ANY_SEQUENCE) {
+                star = p++;
+                starMatch = t;
+            } else if (star >= 0) {
+                p = star + 1;
+                t = ++starMatch;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == ANY_SEQUENCE) {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    private static boolean isWildcard(char c) {
+        return c == ANY_SEQUENCE || c == ANY_CHARACTER;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof TagFilter)) {
+            return false;
+        }
+        TagFilter filter = (TagFilter) other;
+        return glob == filter.glob && getKey().equals(filter.getKey());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return getKey().hashCode() * 31 + (glob ? 1 : 0);
+    }
+
+    private String getKey() {
+        return glob ? pattern : prefix;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return glob ? "glob:" + pattern : "prefix:" + prefix;
+    }
+}
@@ -0,0 +1,166 @@
+package com.suse.saltstack.netapi.event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index of values subscribed to event tags by {@link TagFilter}, stored in a trie keyed
+ * by the literal prefix of each filter. Looking up a tag walks the trie along the tag
+ * once and only evaluates the filters found on that path, so the cost is proportional
+ * to the length of the tag and the number of candidate filters rather than to the total
+ * number of filters.
+ * <p>
+ * Lookups can run concurrently, modifications are exclusive.
+ *
+ * @param <V> the type of the subscribed values
+ */
+class TagIndex<V> {
+
+    private final Node<V> root = new Node<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int size;
+
+    /**
+     * Subscribe the given value to the tags matched by the given filter.
+     *
+     * @param filter the filter
+     * @param value the value
+     * @return false if the value was subscribed with the same filter already
+     */
+    boolean add(TagFilter filter, V value) {
+        lock.writeLock().lock();
+        try {
+            Node<V> node = root;
+            String prefix = filter.getPrefix();
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Node<>());
+            }
+            for (Subscription<V> subscription : node.subscriptions) {
+                if (subscription.value == value && subscription.filter.equals(filter)) {
+                    return false;
+                }
+            }
+            node.subscriptions.add(new Subscription<>(filter, value));
+            size++;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove all subscriptions of the given value.
+     *
+     * @param value the value
+     * @return true if there was any subscription of the value
+     */
+    boolean remove(V value) {
+        lock.writeLock().lock();
+        try {
+            int before = size;
+            remove(root, value);
+            return size < before;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Return the distinct values subscribed to the given tag, in order of subscription
+     * per trie node from the shortest to the longest prefix.
+     *
+     * @param tag the event tag
+     * @return the matching values, possibly empty
+     */
+    List<V> match(String tag) {
+        if (tag == null) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return Collections.emptyList();
+            }
+            List<V> matches = new ArrayList<>();
+            Node<V> node = root;
+            int depth = 0;
+            while (node != null) {
+                for (Subscription<V> subscription : node.subscriptions) {
+                    if ((subscription.filter.isPrefix() ||
+                            subscription.filter.matches(tag)) &&
+                            !matches.contains(subscription.value)) {
+                        matches.add(subscription.value);
+                    }
+                }
+                node = depth < tag.length() ? node.children.get(tag.charAt(depth++)) : null;
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the number of subscriptions.
+     *
+     * @return the number of subscriptions
+     */
+    int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the subscriptions of the given value from the subtree of the given node and
+     * prune nodes that became empty.
+     *
+     * @param node the node
+     * @param value the value
+     * @return true if the node is empty
+     */
+    private boolean remove(Node<V> node, V value) {
+        for (Iterator<Subscription<V>> i = node.subscriptions.iterator(); i.hasNext();) {
+            if (i.next().value == value) {
+                i.remove();
+                size--;
+            }
+        }
+        node.children.values().removeIf(child -> remove(child, value));
+        return node.subscriptions.isEmpty() && node.children.isEmpty();
+    }
+
+    /**
+     * A node of the trie, holding the subscriptions whose prefix ends here.
+     *
+     * @param <V> the type of the subscribed values
+     */
+    private static class Node<V> {
+        private final Map<Character, Node<V>> children = new HashMap<>();
+        private final List<Subscription<V>> subscriptions = new ArrayList<>(1);
+    }
+
+    /**
+     * A value subscribed with a filter.
+     *
+     * @param <V> the type of the subscribed values
+     */
+    private static class Subscription<V> {
+        private final TagFilter filter;
+        private final V value;
+
+        Subscription(TagFilter filterIn, V valueIn) {
+            filter = filterIn;
+            value = valueIn;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.suse.saltstack.netapi.event;
+
+import com.suse.saltstack.netapi.datatypes.Token;
+import com.suse.saltstack.netapi.exception.SaltStackException;
+
+/**
+ * Provides a fresh token to a reconnecting {@link EventStream} in case the token it was
+ * created with has expired, e.g. by logging in again with
+ * {@link com.suse.saltstack.netapi.client.SaltStackClient#login(String, String,
+ * com.suse.saltstack.netapi.AuthModule)}.
+ */
+@FunctionalInterface
+public interface TokenProvider {
+
+    /**
+     * Authenticate and return the new token.
+     *
+     * @return the token
+     * @throws SaltStackException in case authentication fails
+     */
+    Token getToken() throws SaltStackException;
+}
@@ -0,0 +1,202 @@
+package com.suse.saltstack.netapi.event;
+
+import com.suse.saltstack.netapi.calls.LocalAsyncResult;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A job tracked by a {@link JobTracker}. Holds the results of the minions that have
+ * returned so far and the set of minions that are still pending.
+ *
+ * @param <R> the return type of the called function
+ */
+public class TrackedJob<R> {
+
+    /** The job as returned by the API when it was scheduled */
+    private final LocalAsyncResult<R> job;
+
+    /** Results of the minions that have returned so far, keyed by minion id */
+    private final Map<String, R> results = new LinkedHashMap<>();
+
+    /** Failures converting the returns of minions, keyed by minion id */
+    private final Map<String, RuntimeException> failures = new LinkedHashMap<>();
+
+    /** Minions targeted by the job that have not returned yet */
+    private final Set<String> pendingMinions = new HashSet<>();
+
+    /** Completed with all results once no minion is pending anymore */
+    private final CompletableFuture<Map<String, R>> result = new CompletableFuture<>();
+
+    /** The cause of the last failed lookup of missed returns */
+    private volatile Throwable lookupFailure;
+
+    /** Set once the results are looked up to complete the job */
+    private final AtomicBoolean lookedUp = new AtomicBoolean();
+
+    /**
+     * Start tracking the given job.
+     *
+     * @param jobIn the job as returned by the API when it was scheduled
+     */
+    TrackedJob(LocalAsyncResult<R> jobIn) {
+        job = jobIn;
+        if (jobIn.getMinions() != null) {
+            pendingMinions.addAll(jobIn.getMinions());
+        }
+    }
+
+    /**
+     * Return the job id.
+     *
+     * @return the job id
+     */
+    public String getJid() {
+        return job.getJid();
+    }
+
+    /**
+     * Return the job as returned by the API when it was scheduled.
+     *
+     * @return the job
+     */
+    public LocalAsyncResult<R> getJob() {
+        return job;
+    }
+
+    /**
+     * Return a snapshot of the results of the minions that have returned so far.
+     *
+     * @return map of results keyed by minion id
+     */
+    public synchronized Map<String, R> getResults() {
+        return new LinkedHashMap<>(results);
+    }
+
+    /**
+     * Return a snapshot of the minions whose return could not be converted into the
+     * return type of the called function, e.g. because the function failed on the
+     * minion and it returned an error message instead. These minions are neither
+     * pending nor contained in the results.
+     *
+     * @return map of failures keyed by minion id
+     */
+    public synchronized Map<String, RuntimeException> getFailures() {
+        return new LinkedHashMap<>(failures);
+    }
+
+    /**
+     * Return the cause in case looking up returns missed while the event stream was
+     * disconnected failed. The job keeps waiting for the returns until the timeout.
+     *
+     * @return the cause of the last failed lookup or null
+     */
+    public Throwable getLookupFailure() {
+        return lookupFailure;
+    }
+
+    /**
+     * Return a snapshot of the minions that have not returned yet.
+     *
+     * @return set of minion ids
+     */
+    public synchronized Set<String> getPendingMinions() {
+        return new HashSet<>(pendingMinions);
+    }
+
+    /**
+     * Return a future that is completed with the results of all minions once the last
+     * pending minion has returned. In case the tracker times out waiting for returns the
+     * future is completed with the results known to the master at that point; minions
+     * that still did not return are left in {@link #getPendingMinions()}.
+     * <p>
+     * Cancelling the future stops tracking the job.
+     *
+     * @return future containing map of results keyed by minion id
+     */
+    public CompletableFuture<Map<String, R>> getResult() {
+        return result;
+    }
+
+    /**
+     * Mark the job as being looked up to complete it.
+     *
+     * @return true if the job was not looked up before
+     */
+    boolean startLookup() {
+        return lookedUp.compareAndSet(false, true);
+    }
+
+    /**
+     * Add the result of a minion and complete the job if no minion is pending anymore.
+     *
+     * @param minionId the minion id
+     * @param value the result of the minion
+     */
+    synchronized void addResult(String minionId, R value) {
+        results.put(minionId, value);
+        pendingMinions.remove(minionId);
+        if (pendingMinions.isEmpty()) {
+            result.complete(Collections.unmodifiableMap(new LinkedHashMap<>(results)));
+        }
+    }
+
+    /**
+     * Record that the return of a minion could not be converted and complete the job if
+     * no minion is pending anymore.
+     *
+     * @param minionId the minion id
+     * @param failure the cause
+     */
+    synchronized void addFailure(String minionId, RuntimeException failure) {
+        failures.put(minionId, failure);
+        pendingMinions.remove(minionId);
+        if (pendingMinions.isEmpty()) {
+            result.complete(Collections.unmodifiableMap(new LinkedHashMap<>(results)));
+        }
+    }
+
+    /**
+     * Record that looking up missed returns failed.
+     *
+     * @param failure the cause
+     */
+    void addLookupFailure(Throwable failure) {
+        lookupFailure = failure;
+    }
+
+    /**
+     * Add the results that were looked up for this job and complete it only if no
+     * minion is pending anymore.
+     *
+     * @param lookup results of the job as known to the master, keyed by minion id
+     */
+    synchronized void addResults(Map<String, R> lookup) {
+        if (lookup != null) {
+            lookup.forEach(results::putIfAbsent);
+            pendingMinions.removeAll(lookup.keySet());
+        }
+        if (pendingMinions.isEmpty()) {
+            result.complete(Collections.unmodifiableMap(new LinkedHashMap<>(results)));
+        }
+    }
+
+    /**
+     * Add the results that were looked up for this job and complete it, regardless of
+     * any minion that is still pending.
+     *
+     * @param lookup results of the job as known to the master, keyed by minion id
+     */
+    synchronized void complete(Map<String, R> lookup) {
+        if (lookup != null) {
+            lookup.forEach(results::putIfAbsent);
+            pendingMinions.removeAll(lookup.keySet());
+        }
+        result.complete(Collections.unmodifiableMap(new LinkedHashMap<>(results)));
+    }
+}
@@ -0,0 +1,77 @@
+package com.suse.saltstack.netapi.metrics;
+
+import com.suse.saltstack.netapi.config.ClientConfig;
+import com.suse.saltstack.netapi.datatypes.Event;
+import com.suse.saltstack.netapi.event.EventListener;
+import com.suse.saltstack.netapi.exception.MessageTooBigException;
+
+/**
+ * Receives what an {@link com.suse.saltstack.netapi.event.EventStream} receives and
+ * how long its listeners take, see {@link ClientConfig#EVENT_STREAM_METRICS}. Frames
+ * are reported on the websocket thread, dispatches on the thread notifying the
+ * listener, so implementations must be thread-safe and must not block.
+ */
+public interface EventStreamMetrics {
+
+    /**
+     * Metrics recording nothing. Event streams skip all measurements if these are
+     * configured.
+     */
+    EventStreamMetrics NOOP = new EventStreamMetrics() { };
+
+    /**
+     * Called for every frame received on the websocket.
+     *
+     * @param length the length of the frame in characters
+     * @param last true if the frame completes a message, false for a partial message
+     */
+    default void frameReceived(int length, boolean last) {
+    }
+
+    /**
+     * Called for every event parsed from a complete message.
+     *
+     * @param event the event
+     * @param parseNanos the time it took to append the last frame and parse the message
+     */
+    default void eventParsed(Event event, long parseNanos) {
+    }
+
+    /**
+     * Called for every message that was rejected for being too long, see
+     * {@link ClientConfig#WEBSOCKET_MAX_MESSAGE_LENGTH}. The stream is closed afterwards.
+     *
+     * @param exception the exception the message was rejected with
+     */
+    default void messageRejected(MessageTooBigException exception) {
+    }
+
+    /**
+     * Called after an event was put into the queue of a listener, see
+     * {@link ClientConfig#EVENT_QUEUE_CAPACITY}.
+     *
+     * @param listener the listener
+     * @param queueSize the number of events in the queue of the listener
+     */
+    default void eventQueued(EventListener listener, int queueSize) {
+    }
+
+    /**
+     * Called for every event that was dropped because the queue of a listener was full,
+     * see {@link ClientConfig#EVENT_QUEUE_OVERFLOW_POLICY}.
+     *
+     * @param listener the listener
+     */
+    default void eventDropped(EventListener listener) {
+    }
+
+    /**
+     * Called after a listener was notified of an event, whether it threw an exception
+     * or not.
+     *
+     * @param listener the listener
+     * @param dispatchNanos the time the listener took
+     */
+    default void eventDispatched(EventListener listener, long dispatchNanos) {
+    }
+}
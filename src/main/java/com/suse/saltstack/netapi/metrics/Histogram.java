@@ -0,0 +1,156 @@
+package com.suse.saltstack.netapi.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of non-negative values with a fixed relative precision, laid
+ * out like an HdrHistogram: values below 128 are counted exactly, larger values in
+ * buckets covering a power of two each, split into 64 linear sub-buckets. Percentiles
+ * are therefore accurate to within 1/64 of the value, no matter its magnitude, and
+ * recording a value takes constant time without allocating.
+ * <p>
+ * Values are recorded without locking. Statistics read while values are recorded
+ * concurrently may not include all of them.
+ */
+public class Histogram {
+
+    /** Number of values counted exactly, twice the number of sub-buckets */
+    private static final int LINEAR_COUNT = 128;
+
+    /** Number of bits of a value that determine its sub-bucket */
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private final long highestTrackableValue;
+    private final AtomicLongArray counts;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Create a histogram for values up to the given one.
+     *
+     * @param highestTrackableValueIn the highest value to distinguish, larger values
+     * are counted as this value
+     */
+    public Histogram(long highestTrackableValueIn) {
+        if (highestTrackableValueIn < 1) {
+            throw new IllegalArgumentException("Highest trackable value must be positive");
+        }
+        highestTrackableValue = highestTrackableValueIn;
+        counts = new AtomicLongArray(index(highestTrackableValue) + 1);
+    }
+
+    /**
+     * Record a value.
+     *
+     * @param value the value, negative values are ignored
+     */
+    public void record(long value) {
+        if (value < 0) {
+            return;
+        }
+        long clamped = Math.min(value, highestTrackableValue);
+        counts.incrementAndGet(index(clamped));
+        count.increment();
+        total.add(clamped);
+        max.accumulateAndGet(clamped, Math::max);
+    }
+
+    /**
+     * Return the number of recorded values.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Return the largest recorded value.
+     *
+     * @return the maximum, or 0 if no value was recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Return the mean of the recorded values.
+     *
+     * @return the mean, or 0 if no value was recorded
+     */
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+
+    /**
+     * Return the value that the given percentage of the recorded values are less than
+     * or equal to, within the precision of the histogram.
+     *
+     * @param percentile the percentage, between 0 and 100
+     * @return the highest value equivalent to the percentile, or 0 if no value was
+     * recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        }
+        long n = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            n += counts.get(i);
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length() && n > 0; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), max.get());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Return the index of the bucket counting the given value.
+     *
+     * @param value the value
+     * @return the index
+     */
+    static int index(long value) {
+        if (value < LINEAR_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return LINEAR_COUNT + (shift - 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Return the highest value counted by the bucket of the given index.
+     *
+     * @param index the index
+     * @return the value
+     */
+    static long highestEquivalentValue(int index) {
+        if (index < LINEAR_COUNT) {
+            return index;
+        }
+        int shift = (index - LINEAR_COUNT) / SUB_BUCKET_COUNT + 1;
+        long subBucket = SUB_BUCKET_COUNT + (index - LINEAR_COUNT) % SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "Histogram[count=" + getCount() + ", mean=" + (long) getMean() +
+                ", p50=" + getValueAtPercentile(50) + ", p99=" +
+                getValueAtPercentile(99) + ", max=" + getMax() + "]";
+    }
+}
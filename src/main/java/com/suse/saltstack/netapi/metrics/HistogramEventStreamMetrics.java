@@ -0,0 +1,307 @@
+package com.suse.saltstack.netapi.metrics;
+
+import com.suse.saltstack.netapi.datatypes.Event;
+import com.suse.saltstack.netapi.event.EventListener;
+import com.suse.saltstack.netapi.exception.MessageTooBigException;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Event stream metrics counting the received frames, characters and events, the latter
+ * per tag prefix, and keeping a {@link Histogram} of the parse times, as well as of the
+ * dispatch times and queue sizes per listener. A growing queue size or dispatch time
+ * of a listener indicates that it does not keep up with the master's event bus.
+ * <p>
+ * Tags are grouped by their first segments, e.g. with two segments the events
+ * {@code salt/job/20150505113307407682/new} and
+ * {@code salt/job/20150505113307407682/ret/minion1} are counted as {@code salt/job}.
+ * Tags without any {@code /}, like the job ids used as tags by older masters, are
+ * counted as {@link #UNSEGMENTED}, events without a tag as {@link #UNTAGGED}. At most
+ * {@link #MAX_PREFIXES} prefixes are counted separately, events with any further
+ * prefix are counted as {@link #OTHER}.
+ * Listeners are referenced until the metrics are discarded.
+ */
+public class HistogramEventStreamMetrics implements EventStreamMetrics {
+
+    /** Number of tag segments events are grouped by by default */
+    public static final int DEFAULT_PREFIX_SEGMENTS = 2;
+
+    /** Maximum number of tag prefixes that are counted separately */
+    public static final int MAX_PREFIXES = 256;
+
+    /** The prefix events without a tag are counted as */
+    public static final String UNTAGGED = "<untagged>";
+
+    /** The prefix events with a tag that contains no {@code /} are counted as */
+    public static final String UNSEGMENTED = "<unsegmented>";
+
+    /** The prefix events are counted as once {@link #MAX_PREFIXES} are counted */
+    public static final String OTHER = "<other>";
+
+    private static final long HIGHEST_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final int HIGHEST_QUEUE_SIZE = Integer.MAX_VALUE;
+
+    private final int prefixSegments;
+
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder partialFrames = new LongAdder();
+    private final LongAdder characters = new LongAdder();
+    private final LongAdder rejectedMessages = new LongAdder();
+    private final Histogram parse = new Histogram(HIGHEST_NANOS);
+    private final ConcurrentMap<String, LongAdder> eventsByPrefix =
+            new ConcurrentHashMap<>();
+    private final ConcurrentMap<EventListener, ListenerStats> listeners =
+            new ConcurrentHashMap<>();
+
+    /**
+     * The histograms of a single listener.
+     */
+    public static class ListenerStats {
+
+        private final Histogram dispatch = new Histogram(HIGHEST_NANOS);
+        private final Histogram queueSize = new Histogram(HIGHEST_QUEUE_SIZE);
+        private final AtomicInteger lastQueueSize = new AtomicInteger();
+        private final LongAdder dropped = new LongAdder();
+
+        /**
+         * @return the times the listener took to handle the events in nanoseconds
+         */
+        public Histogram getDispatch() {
+            return dispatch;
+        }
+
+        /**
+         * @return the sizes of the queue of the listener after adding an event
+         */
+        public Histogram getQueueSize() {
+            return queueSize;
+        }
+
+        /**
+         * @return the size of the queue of the listener after adding the last event
+         */
+        public int getLastQueueSize() {
+            return lastQueueSize.get();
+        }
+
+        /**
+         * @return the number of events dropped because the queue was full
+         */
+        public long getDroppedCount() {
+            return dropped.sum();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "ListenerStats[dispatch=" + dispatch + ", queueSize=" + queueSize +
+                    ", dropped=" + getDroppedCount() + "]";
+        }
+    }
+
+    /**
+     * Create metrics grouping events by the first {@link #DEFAULT_PREFIX_SEGMENTS}
+     * segments of their tags.
+     */
+    public HistogramEventStreamMetrics() {
+        this(DEFAULT_PREFIX_SEGMENTS);
+    }
+
+    /**
+     * Create metrics grouping events by the given number of segments of their tags.
+     *
+     * @param prefixSegmentsIn the number of segments, at least 1
+     */
+    public HistogramEventStreamMetrics(int prefixSegmentsIn) {
+        if (prefixSegmentsIn < 1) {
+            throw new IllegalArgumentException("At least one tag segment is required");
+        }
+        prefixSegments = prefixSegmentsIn;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void frameReceived(int length, boolean last) {
+        frames.increment();
+        characters.add(length);
+        if (!last) {
+            partialFrames.increment();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void eventParsed(Event event, long parseNanos) {
+        parse.record(parseNanos);
+        String prefix = prefix(event.getTag());
+        LongAdder count = eventsByPrefix.get(prefix);
+        if (count == null) {
+            if (eventsByPrefix.size() >= MAX_PREFIXES) {
+                prefix = OTHER;
+            }
+            count = eventsByPrefix.computeIfAbsent(prefix, p -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void messageRejected(MessageTooBigException exception) {
+        rejectedMessages.increment();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void eventQueued(EventListener listener, int queueSize) {
+        ListenerStats stats = getOrCreate(listener);
+        stats.queueSize.record(queueSize);
+        stats.lastQueueSize.set(queueSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void eventDropped(EventListener listener) {
+        getOrCreate(listener).dropped.increment();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void eventDispatched(EventListener listener, long dispatchNanos) {
+        getOrCreate(listener).dispatch.record(dispatchNanos);
+    }
+
+    /**
+     * Return the number of frames received.
+     *
+     * @return the number of frames
+     */
+    public long getFrameCount() {
+        return frames.sum();
+    }
+
+    /**
+     * Return the number of frames that were only a part of a message and had to be
+     * assembled with the following ones.
+     *
+     * @return the number of partial frames
+     */
+    public long getPartialFrameCount() {
+        return partialFrames.sum();
+    }
+
+    /**
+     * Return the number of characters received.
+     *
+     * @return the number of characters
+     */
+    public long getCharacterCount() {
+        return characters.sum();
+    }
+
+    /**
+     * Return the number of messages rejected for being too long.
+     *
+     * @return the number of rejected messages
+     */
+    public long getRejectedMessageCount() {
+        return rejectedMessages.sum();
+    }
+
+    /**
+     * Return the times it took to append the last frames and parse the events.
+     *
+     * @return the histogram of the parse times in nanoseconds
+     */
+    public Histogram getParse() {
+        return parse;
+    }
+
+    /**
+     * Return the number of events received per tag prefix.
+     *
+     * @return the counts ordered by prefix
+     */
+    public Map<String, Long> getEventCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        eventsByPrefix.forEach((prefix, count) -> counts.put(prefix, count.sum()));
+        return counts;
+    }
+
+    /**
+     * Return the number of events received in total.
+     *
+     * @return the number of events
+     */
+    public long getEventCount() {
+        long count = 0;
+        for (LongAdder adder : eventsByPrefix.values()) {
+            count += adder.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Return the histograms of the given listener.
+     *
+     * @param listener the listener
+     * @return the histograms, or null if the listener was not notified of any event
+     */
+    public ListenerStats getListenerStats(EventListener listener) {
+        return listeners.get(listener);
+    }
+
+    /**
+     * Return the histograms of the given listener, creating them if needed.
+     *
+     * @param listener the listener
+     * @return the histograms
+     */
+    private ListenerStats getOrCreate(EventListener listener) {
+        ListenerStats stats = listeners.get(listener);
+        return stats != null ?
+                stats : listeners.computeIfAbsent(listener, l -> new ListenerStats());
+    }
+
+    /**
+     * Return the first segments of the given tag.
+     *
+     * @param tag the tag, may be null
+     * @return the prefix
+     */
+    private String prefix(String tag) {
+        if (tag == null) {
+            return UNTAGGED;
+        }
+        if (tag.indexOf('/') < 0) {
+            return UNSEGMENTED;
+        }
+        int end = -1;
+        for (int i = 0; i < prefixSegments; i++) {
+            end = tag.indexOf('/', end + 1);
+            if (end < 0) {
+                return tag;
+            }
+        }
+        return tag.substring(0, end);
+    }
+}
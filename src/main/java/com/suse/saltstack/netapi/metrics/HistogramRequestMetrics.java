@@ -0,0 +1,212 @@
+package com.suse.saltstack.netapi.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request metrics keeping a {@link Histogram} of each phase of the requests and of the
+ * request and response sizes, per endpoint and per called salt function, as well as
+ * the number of responses per HTTP status code and the number of requests in flight.
+ * Requests calling several functions, like batches, are recorded for each of them.
+ * <p>
+ * Durations are recorded in nanoseconds up to one hour, sizes in bytes up to 4 GB.
+ */
+public class HistogramRequestMetrics implements RequestMetrics {
+
+    private static final long HIGHEST_NANOS = TimeUnit.HOURS.toNanos(1);
+    private static final long HIGHEST_BYTES = 1L << 32;
+
+    private final ConcurrentMap<String, Stats> endpoints = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Stats> functions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, LongAdder> statusCounts =
+            new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * The histograms of the requests to one endpoint or calling one function.
+     */
+    public static class Stats {
+
+        private final Histogram connect = new Histogram(HIGHEST_NANOS);
+        private final Histogram send = new Histogram(HIGHEST_NANOS);
+        private final Histogram firstByte = new Histogram(HIGHEST_NANOS);
+        private final Histogram parse = new Histogram(HIGHEST_NANOS);
+        private final Histogram total = new Histogram(HIGHEST_NANOS);
+        private final Histogram requestBytes = new Histogram(HIGHEST_BYTES);
+        private final Histogram responseBytes = new Histogram(HIGHEST_BYTES);
+        private final LongAdder failures = new LongAdder();
+
+        /**
+         * Record the given request.
+         *
+         * @param timing the timing of the request
+         */
+        void record(RequestTiming timing) {
+            connect.record(timing.getConnectNanos());
+            send.record(timing.getSendNanos());
+            firstByte.record(timing.getFirstByteNanos());
+            parse.record(timing.getParseNanos());
+            total.record(timing.getTotalNanos());
+            requestBytes.record(timing.getRequestBytes());
+            responseBytes.record(timing.getResponseBytes());
+            if (!timing.isSuccessful()) {
+                failures.increment();
+            }
+        }
+
+        /**
+         * @return the times until the connection was established in nanoseconds
+         */
+        public Histogram getConnect() {
+            return connect;
+        }
+
+        /**
+         * @return the times it took to send the requests in nanoseconds
+         */
+        public Histogram getSend() {
+            return send;
+        }
+
+        /**
+         * @return the times to the first byte of the responses in nanoseconds
+         */
+        public Histogram getFirstByte() {
+            return firstByte;
+        }
+
+        /**
+         * @return the times it took to read and parse the responses in nanoseconds
+         */
+        public Histogram getParse() {
+            return parse;
+        }
+
+        /**
+         * @return the total times of the requests in nanoseconds
+         */
+        public Histogram getTotal() {
+            return total;
+        }
+
+        /**
+         * @return the sizes of the request bodies in bytes
+         */
+        public Histogram getRequestBytes() {
+            return requestBytes;
+        }
+
+        /**
+         * @return the sizes of the response bodies in bytes
+         */
+        public Histogram getResponseBytes() {
+            return responseBytes;
+        }
+
+        /**
+         * @return the number of requests that failed
+         */
+        public long getFailureCount() {
+            return failures.sum();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "Stats[total=" + total + ", firstByte=" + firstByte +
+                    ", responseBytes=" + responseBytes + ", failures=" +
+                    getFailureCount() + "]";
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void requestStarted(RequestTiming timing) {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void requestFinished(RequestTiming timing) {
+        inFlight.decrementAndGet();
+        endpoints.computeIfAbsent(timing.getEndpoint(), e -> new Stats()).record(timing);
+        for (String function : timing.getFunctions()) {
+            functions.computeIfAbsent(function, f -> new Stats()).record(timing);
+        }
+        if (timing.getStatus() >= 0) {
+            statusCounts.computeIfAbsent(timing.getStatus(), s -> new LongAdder())
+                    .increment();
+        }
+    }
+
+    /**
+     * Return the endpoints requests were sent to.
+     *
+     * @return the endpoints
+     */
+    public Set<String> getEndpoints() {
+        return Collections.unmodifiableSet(endpoints.keySet());
+    }
+
+    /**
+     * Return the histograms of the requests to the given endpoint.
+     *
+     * @param endpoint the endpoint
+     * @return the histograms, or null if no request was sent to the endpoint
+     */
+    public Stats getEndpointStats(String endpoint) {
+        return endpoints.get(endpoint);
+    }
+
+    /**
+     * Return the salt functions that were called.
+     *
+     * @return the functions
+     */
+    public Set<String> getFunctions() {
+        return Collections.unmodifiableSet(functions.keySet());
+    }
+
+    /**
+     * Return the histograms of the requests calling the given function.
+     *
+     * @param function the function
+     * @return the histograms, or null if the function was not called
+     */
+    public Stats getFunctionStats(String function) {
+        return functions.get(function);
+    }
+
+    /**
+     * Return the number of responses per HTTP status code.
+     *
+     * @return the counts ordered by status code
+     */
+    public Map<Integer, Long> getStatusCounts() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        statusCounts.forEach((status, count) -> counts.put(status, count.sum()));
+        return counts;
+    }
+
+    /**
+     * Return the number of requests that were started but are not finished yet.
+     *
+     * @return the number of requests in flight
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,39 @@
+package com.suse.saltstack.netapi.metrics;
+
+import com.suse.saltstack.netapi.config.ClientConfig;
+
+/**
+ * Receives the timing and sizes of every HTTP request a client sends to the API, see
+ * {@link ClientConfig#REQUEST_METRICS}. Connections report a request when it is
+ * started and again when it is finished, successfully or not, so implementations can
+ * maintain gauges of the requests in flight.
+ * <p>
+ * Methods are called on the threads executing the requests, including the I/O
+ * threads of non-blocking connections, so implementations must be thread-safe and
+ * must not block.
+ */
+public interface RequestMetrics {
+
+    /**
+     * Metrics recording nothing. Connections skip all measurements if these are
+     * configured.
+     */
+    RequestMetrics NOOP = new RequestMetrics() { };
+
+    /**
+     * Called before a request is sent.
+     *
+     * @param timing the timing of the request, only its endpoint and payload are known
+     */
+    default void requestStarted(RequestTiming timing) {
+    }
+
+    /**
+     * Called once after the response of a request has been parsed or the request has
+     * failed.
+     *
+     * @param timing the timing of the request
+     */
+    default void requestFinished(RequestTiming timing) {
+    }
+}
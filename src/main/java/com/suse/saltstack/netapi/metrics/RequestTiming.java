@@ -0,0 +1,352 @@
+package com.suse.saltstack.netapi.metrics;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.suse.saltstack.netapi.config.ClientConfig;
+import com.suse.saltstack.netapi.config.ConfigSnapshot;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The timing and sizes of a single HTTP request, recorded by the connection executing
+ * it and reported to the {@link RequestMetrics} of the client's configuration. The
+ * phases of a request are measured with {@link System#nanoTime()}: connecting,
+ * including waiting for a pooled connection, sending the request, waiting for the
+ * status line of the response and reading and parsing the response. Durations and
+ * sizes a connection implementation cannot observe are reported as -1.
+ * <p>
+ * If {@link RequestMetrics#NOOP} is configured, connections use {@link #DISABLED},
+ * whose methods do nothing. A timing is updated by one thread at a time only.
+ */
+public final class RequestTiming {
+
+    /** The timing used for all requests if no metrics are configured */
+    public static final RequestTiming DISABLED = new RequestTiming(null, null, null);
+
+    private static final String FUNCTION = "fun";
+
+    /** The metrics to report to, null if disabled */
+    private final RequestMetrics metrics;
+
+    private final String endpoint;
+
+    /** The payload, may be null */
+    private final String data;
+
+    /** The salt functions called, parsed from the payload on first access */
+    private List<String> functions;
+
+    private final long start;
+    private long connected = -1;
+    private long sent = -1;
+    private long responseReceived = -1;
+    private long finished = -1;
+
+    private long requestBytes = -1;
+    private long responseBytes = -1;
+    private int status = -1;
+    private boolean successful;
+
+    private RequestTiming(RequestMetrics metricsIn, String endpointIn, String dataIn) {
+        metrics = metricsIn;
+        endpoint = endpointIn;
+        data = dataIn;
+        start = metricsIn == null ? -1 : System.nanoTime();
+    }
+
+    /**
+     * Start timing a request with the metrics of the given configuration.
+     *
+     * @param config the snapshot of the config the request is sent with
+     * @param endpoint the endpoint
+     * @param data the payload, may be null
+     * @return the timing to record the request with, {@link #DISABLED} if no metrics
+     * are configured
+     */
+    public static RequestTiming start(ConfigSnapshot config, String endpoint,
+            String data) {
+        RequestMetrics metrics = config.get(ClientConfig.REQUEST_METRICS);
+        if (metrics == RequestMetrics.NOOP) {
+            return DISABLED;
+        }
+        RequestTiming timing = new RequestTiming(metrics, endpoint, data);
+        metrics.requestStarted(timing);
+        return timing;
+    }
+
+    /**
+     * Return whether the request is recorded.
+     *
+     * @return false for {@link #DISABLED}
+     */
+    public boolean isEnabled() {
+        return metrics != null;
+    }
+
+    /**
+     * Record that the connection to the server is established.
+     */
+    public void connected() {
+        if (metrics != null) {
+            connected = System.nanoTime();
+        }
+    }
+
+    /**
+     * Record the size of the request body.
+     *
+     * @param bytes the number of bytes
+     */
+    public void setRequestBytes(long bytes) {
+        requestBytes = metrics != null ? bytes : -1;
+    }
+
+    /**
+     * Record that the request has been sent completely.
+     */
+    public void sent() {
+        if (metrics != null) {
+            sent = System.nanoTime();
+        }
+    }
+
+    /**
+     * Record that the status line and headers of the response have been received.
+     *
+     * @param statusCode the HTTP status code
+     */
+    public void responseReceived(int statusCode) {
+        if (metrics != null) {
+            responseReceived = System.nanoTime();
+            status = statusCode;
+        }
+    }
+
+    /**
+     * Wrap the given response body to count the bytes read from it.
+     *
+     * @param in the response body
+     * @return the stream to read the response from
+     */
+    public InputStream countResponse(InputStream in) {
+        if (metrics == null) {
+            return in;
+        }
+        responseBytes = 0;
+        return new FilterInputStream(in) {
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    responseBytes++;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    responseBytes += n;
+                }
+                return n;
+            }
+        };
+    }
+
+    /**
+     * Record that the response has been parsed successfully.
+     */
+    public void parsed() {
+        successful = true;
+    }
+
+    /**
+     * Finish the timing and report it, only the first call has an effect. Call this
+     * whether the request succeeded or not.
+     */
+    public void finish() {
+        if (metrics != null && finished < 0) {
+            finished = System.nanoTime();
+            metrics.requestFinished(this);
+        }
+    }
+
+    /**
+     * Return the endpoint of the request.
+     *
+     * @return the endpoint
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Return the salt functions called with the request, i.e. the distinct values of
+     * the {@code fun} properties of the lowstate payload.
+     *
+     * @return the functions, empty if the payload does not call any
+     */
+    public List<String> getFunctions() {
+        if (functions == null) {
+            functions = functions(data);
+        }
+        return functions;
+    }
+
+    /**
+     * Return whether the response was received and parsed successfully.
+     *
+     * @return true if the request succeeded
+     */
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    /**
+     * Return the HTTP status code of the response.
+     *
+     * @return the status code, or -1 if no response was received
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Return the size of the request body.
+     *
+     * @return the number of bytes, or -1 if unknown
+     */
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    /**
+     * Return the number of bytes read from the response body.
+     *
+     * @return the number of bytes, or -1 if the body was not read
+     */
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    /**
+     * Return the time until the connection was established.
+     *
+     * @return the duration in nanoseconds, or -1 if unknown
+     */
+    public long getConnectNanos() {
+        return between(start, connected);
+    }
+
+    /**
+     * Return the time it took to send the request over the established connection.
+     *
+     * @return the duration in nanoseconds, or -1 if unknown
+     */
+    public long getSendNanos() {
+        return between(connected, sent);
+    }
+
+    /**
+     * Return the time from sending the request until the response was received, i.e.
+     * the time to first byte. Measured from the established connection if the end of
+     * sending is unknown.
+     *
+     * @return the duration in nanoseconds, or -1 if unknown
+     */
+    public long getFirstByteNanos() {
+        return between(sent >= 0 ? sent : connected, responseReceived);
+    }
+
+    /**
+     * Return the time it took to read and parse the response body.
+     *
+     * @return the duration in nanoseconds, or -1 if the request failed
+     */
+    public long getParseNanos() {
+        return successful ? between(responseReceived, finished) : -1;
+    }
+
+    /**
+     * Return the time from starting until finishing the request.
+     *
+     * @return the duration in nanoseconds, or -1 if not finished
+     */
+    public long getTotalNanos() {
+        return between(start, finished);
+    }
+
+    /**
+     * Return the time between two recorded instants.
+     *
+     * @param from the first instant, or -1 if not recorded
+     * @param to the second instant, or -1 if not recorded
+     * @return the duration in nanoseconds, or -1 if an instant was not recorded
+     */
+    private static long between(long from, long to) {
+        return from < 0 || to < 0 ? -1 : to - from;
+    }
+
+    /**
+     * Read the called functions from a lowstate payload, which is either a single
+     * chunk or a list of chunks. Other properties are skipped without being parsed.
+     *
+     * @param data the payload, may be null
+     * @return the distinct functions
+     */
+    private static List<String> functions(String data) {
+        if (data == null) {
+            return Collections.emptyList();
+        }
+        List<String> functions = new ArrayList<>(1);
+        try (JsonReader reader = new JsonReader(new StringReader(data))) {
+            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readFunction(reader, functions);
+                }
+            } else {
+                readFunction(reader, functions);
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Not a lowstate payload, keep the functions read so far
+        }
+        return functions;
+    }
+
+    /**
+     * Read the function of a single chunk.
+     *
+     * @param reader the reader positioned at the chunk
+     * @param functions the functions to add to
+     * @throws IOException if the payload is not valid JSON
+     */
+    private static void readFunction(JsonReader reader, List<String> functions)
+            throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (FUNCTION.equals(reader.nextName()) &&
+                    reader.peek() == JsonToken.STRING) {
+                String function = reader.nextString();
+                if (!functions.contains(function)) {
+                    functions.add(function);
+                }
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+}
@@ -0,0 +1,115 @@
+package com.suse.saltstack.netapi.parser;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parser for responses to requests containing several lowstate chunks, i.e.
+ * {@code {"return": [result1, result2, ...]}} where each result has a different type.
+ * Every result is read straight into its own type, without an intermediate tree.
+ * <p>
+ * The parsed value is the list of results in the order of the chunks.
+ */
+public class BatchResultParser extends JsonParser<List<Object>> {
+
+    private static final String RETURN = "return";
+
+    private final List<Type> resultTypes;
+
+    /**
+     * Create a new parser for results of the given types.
+     *
+     * @param resultTypesIn the types of the results in the order of the chunks
+     */
+    public BatchResultParser(List<Type> resultTypesIn) {
+        super(new TypeToken<List<Object>>() { });
+        resultTypes = resultTypesIn;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Object> parse(InputStream inputStream) {
+        return parse(new BufferedReader(new InputStreamReader(inputStream)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Object> parse(String jsonString) {
+        return parse(new StringReader(jsonString));
+    }
+
+    /**
+     * Read the results from the given reader, values other than the list of results
+     * are skipped.
+     *
+     * @param reader the reader
+     * @return the list of results
+     * @throws JsonSyntaxException in case the number of results does not match
+     */
+    @Override
+    public List<Object> parse(Reader reader) {
+        JsonReader jsonReader = new JsonReader(reader);
+        jsonReader.setLenient(true);
+        List<Object> results = null;
+        try {
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                if (RETURN.equals(jsonReader.nextName())) {
+                    results = readReturn(jsonReader);
+                } else {
+                    jsonReader.skipValue();
+                }
+            }
+            jsonReader.endObject();
+        } catch (IllegalStateException | MalformedJsonException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+        if (results == null || results.size() != resultTypes.size()) {
+            throw new JsonSyntaxException("Expected " + resultTypes.size() +
+                    " results, got " + (results == null ? 0 : results.size()));
+        }
+        return results;
+    }
+
+    /**
+     * Read the list of results, each with the adapter of its type.
+     *
+     * @param jsonReader the reader positioned at the list
+     * @return the list of results
+     * @throws IOException if reading fails or the input is malformed
+     */
+    private List<Object> readReturn(JsonReader jsonReader) throws IOException {
+        List<Object> results = new ArrayList<>(resultTypes.size());
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+            if (results.size() < resultTypes.size()) {
+                Type type = resultTypes.get(results.size());
+                results.add(GSON.getAdapter(TypeToken.get(type)).read(jsonReader));
+            } else {
+                jsonReader.skipValue();
+                results.add(null);
+            }
+        }
+        jsonReader.endArray();
+        return results;
+    }
+}
@@ -39,6 +39,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Parser for Saltstack responses.
@@ -47,6 +48,26 @@ import java.util.Optional;
  */
 public class JsonParser<T> {
 
+    /** Maximum number of parsers kept in the cache used by {@link #forType(TypeToken)} */
+    public static final int PARSER_CACHE_SIZE = 256;
+
+    /**
+     * The Gson instance shared by all parsers. Gson is thread-safe and caches the type
+     * adapters it creates, so the reflection on result types is done only once.
+     */
+    static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(Date.class, new DateAdapter().nullSafe())
+            .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeISOAdapter())
+            .registerTypeAdapter(ZonedDateTime.class, new ZonedDateTimeISOAdapter())
+            .registerTypeAdapter(StartTime.class, new StartTimeAdapter().nullSafe())
+            .registerTypeAdapter(Stats.class, new StatsDeserializer())
+            .registerTypeAdapter(Arguments.class, new ArgumentsDeserializer())
+            .registerTypeAdapterFactory(new OptionalTypeAdapterFactory())
+            .create();
+
+    /** Parsers for types built at runtime, cleared once it is full */
+    private static final Map<Type, JsonParser<?>> PARSER_CACHE = new ConcurrentHashMap<>();
+
     public static final JsonParser<Result<String>> STRING =
             new JsonParser<>(new TypeToken<Result<String>>(){});
     public static final JsonParser<Result<List<Token>>> TOKEN =
@@ -70,7 +91,6 @@ public class JsonParser<T> {
             new JsonParser<>(new TypeToken<Event>(){});
 
     private final TypeToken<T> type;
-    private final Gson gson;
 
     /**
      * Created a new JsonParser for the given type.
@@ -79,15 +99,32 @@ public class JsonParser<T> {
      */
     public JsonParser(TypeToken<T> type) {
         this.type = type;
-        this.gson = new GsonBuilder()
-                .registerTypeAdapter(Date.class, new DateAdapter().nullSafe())
-                .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeISOAdapter())
-                .registerTypeAdapter(ZonedDateTime.class, new ZonedDateTimeISOAdapter())
-                .registerTypeAdapter(StartTime.class, new StartTimeAdapter().nullSafe())
-                .registerTypeAdapter(Stats.class, new StatsDeserializer())
-                .registerTypeAdapter(Arguments.class, new ArgumentsDeserializer())
-                .registerTypeAdapterFactory(new OptionalTypeAdapterFactory())
-                .create();
+    }
+
+    /**
+     * Return a parser for the given type, reusing a cached instance if there is one.
+     * Intended for result types that are built at runtime, e.g. from the return type of a
+     * call. The cache is cleared once it holds {@link #PARSER_CACHE_SIZE} parsers.
+     *
+     * @param type A TypeToken describing the type the parser produces.
+     * @param <T> The result type the parser produces.
+     * @return The parser for the given type.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> JsonParser<T> forType(TypeToken<T> type) {
+        JsonParser<?> parser = PARSER_CACHE.get(type.getType());
+        if (parser == null) {
+            if (PARSER_CACHE.size() >= PARSER_CACHE_SIZE) {
+                // Cheaper than tracking the usage on every lookup, hot types come back
+                PARSER_CACHE.clear();
+            }
+            parser = new JsonParser<>(type);
+            JsonParser<?> cached = PARSER_CACHE.putIfAbsent(type.getType(), parser);
+            if (cached != null) {
+                parser = cached;
+            }
+        }
+        return (JsonParser<T>) parser;
     }
 
     /**
@@ -100,7 +137,16 @@ public class JsonParser<T> {
         Reader streamReader = new BufferedReader(inputStreamReader);
 
         // Parse result type from the returned JSON
-        return gson.fromJson(streamReader, type.getType());
+        return parse(streamReader);
+    }
+
+    /**
+     * Parse JSON read from the given reader, without copying the input into a string.
+     * @param reader the reader to read the JSON from
+     * @return The parsed object
+     */
+    public T parse(Reader reader) {
+        return GSON.fromJson(reader, type.getType());
     }
 
     /**
@@ -109,14 +155,24 @@ public class JsonParser<T> {
      * @return The parsed object
      */
     public T parse(String jsonString) {
-        return gson.fromJson(jsonString, type.getType());
+        return GSON.fromJson(jsonString, type.getType());
+    }
+
+    /**
+     * Convert a value that has been parsed generically, i.e. into maps, lists and
+     * primitives like the data of an {@link Event}, into the type of this parser.
+     * @param value the generically parsed value
+     * @return The converted object
+     */
+    public T convert(Object value) {
+        return GSON.fromJson(GSON.toJsonTree(value), type.getType());
     }
 
     /**
      * TypeAdapter for date representation received from the API
      * (which represents it as a (floating) number of seconds since the Epoch).
      */
-    private class DateAdapter extends TypeAdapter<Date> {
+    private static class DateAdapter extends TypeAdapter<Date> {
 
         @Override
         public void write(JsonWriter jsonWriter, Date date) throws IOException {
@@ -137,7 +193,7 @@ public class JsonParser<T> {
     /**
      * TypeAdaptorFactory creating TypeAdapters for Optional
      */
-    private class OptionalTypeAdapterFactory implements TypeAdapterFactory {
+    private static class OptionalTypeAdapterFactory implements TypeAdapterFactory {
 
         @Override
         @SuppressWarnings("unchecked")
@@ -178,7 +234,7 @@ public class JsonParser<T> {
     /**
      * Deserializer for the Stats object received from the API.
      */
-    private class StatsDeserializer implements JsonDeserializer<Stats> {
+    private static class StatsDeserializer implements JsonDeserializer<Stats> {
 
         private static final String CP_APPLICATIONS = "CherryPy Applications";
         private static final String CP_SERVER_PREFIX = "CherryPy HTTPServer ";
@@ -189,13 +245,14 @@ public class JsonParser<T> {
                 throws JsonParseException {
             try {
                 JsonObject stats = jsonElement.getAsJsonObject();
-                Applications app = gson.fromJson(stats.get(CP_APPLICATIONS),
-                        Applications.class);
+                Applications app = jsonDeserializationContext.deserialize(
+                        stats.get(CP_APPLICATIONS), Applications.class);
                 HttpServer server = null;
                 for (Map.Entry<String, JsonElement> entry : stats.entrySet()) {
                     String key = entry.getKey();
                     if (key.startsWith(CP_SERVER_PREFIX)) {
-                        server = gson.fromJson(entry.getValue(), HttpServer.class);
+                        server = jsonDeserializationContext.deserialize(
+                                entry.getValue(), HttpServer.class);
                         break;
                     }
                 }
@@ -211,7 +268,7 @@ public class JsonParser<T> {
      * Breaks the incoming arguments into args and kwargs parts
      * and fills a new Arguments instance.
      */
-    private class ArgumentsDeserializer implements JsonDeserializer<Arguments> {
+    private static class ArgumentsDeserializer implements JsonDeserializer<Arguments> {
 
         private static final String KWARG_KEY = "__kwarg__";
 
@@ -222,7 +279,7 @@ public class JsonParser<T> {
 
             if (json != null && json.isJsonArray()) {
                 for (JsonElement jsonElement : json.getAsJsonArray()) {
-                    fillArgs(result, jsonElement);
+                    fillArgs(result, jsonElement, context);
                 }
             }
 
@@ -235,13 +292,15 @@ public class JsonParser<T> {
          *
          * @param result Arguments to be filled
          * @param jsonElement input JSON data
+         * @param context context for deserializing the values
          */
-        private void fillArgs(Arguments result, JsonElement jsonElement) {
+        private void fillArgs(Arguments result, JsonElement jsonElement,
+                JsonDeserializationContext context) {
             if (isKwarg(jsonElement)) {
                 filterKwarg(jsonElement);
-                fillKwargsFromObject(result, jsonElement.getAsJsonObject());
+                fillKwargsFromObject(result, jsonElement.getAsJsonObject(), context);
             } else {
-                result.getArgs().add(gson.fromJson(jsonElement, Object.class));
+                result.getArgs().add(context.deserialize(jsonElement, Object.class));
             }
         }
 
@@ -250,12 +309,13 @@ public class JsonParser<T> {
          *
          * @param result Arguments to be filled
          * @param jsonObject input json data
+         * @param context context for deserializing the values
          */
-        private void fillKwargsFromObject(Arguments result, JsonObject jsonObject) {
+        private void fillKwargsFromObject(Arguments result, JsonObject jsonObject,
+                JsonDeserializationContext context) {
             for (Map.Entry<String, JsonElement> kwItem : jsonObject.entrySet()) {
                 result.getKwargs().put(kwItem.getKey(),
-                        gson.fromJson(kwItem.getValue(),
-                        Object.class));
+                        context.deserialize(kwItem.getValue(), Object.class));
             }
         }
 
@@ -294,7 +354,7 @@ public class JsonParser<T> {
     /**
      * Json adapter to handle the Job.StartTime date format given by netapi
      */
-    private class StartTimeAdapter extends TypeAdapter<StartTime> {
+    private static class StartTimeAdapter extends TypeAdapter<StartTime> {
 
         @Override
         public void write(JsonWriter jsonWriter, StartTime date) throws IOException {
@@ -323,7 +383,7 @@ public class JsonParser<T> {
     /**
      * Adapter to convert an ISO formatted string to LocalDateTime
      */
-    private class LocalDateTimeISOAdapter extends TypeAdapter<LocalDateTime> {
+    private static class LocalDateTimeISOAdapter extends TypeAdapter<LocalDateTime> {
 
         @Override
         public void write(JsonWriter jsonWriter, LocalDateTime date) throws IOException {
@@ -347,7 +407,7 @@ public class JsonParser<T> {
     /**
      * Adapter to convert an ISO formatted string to ZonedDateTime
      */
-    private class ZonedDateTimeISOAdapter extends TypeAdapter<ZonedDateTime> {
+    private static class ZonedDateTimeISOAdapter extends TypeAdapter<ZonedDateTime> {
 
         @Override
         public void write(JsonWriter jsonWriter, ZonedDateTime date) throws IOException {
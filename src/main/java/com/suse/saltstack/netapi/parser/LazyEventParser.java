@@ -0,0 +1,219 @@
+package com.suse.saltstack.netapi.parser;
+
+import com.google.gson.JsonSyntaxException;
+import com.suse.saltstack.netapi.datatypes.Event;
+
+/**
+ * Parser for events that only extracts the tag and keeps the JSON of the event data
+ * undecoded, see {@link Event#getData()}. The input is scanned once without building a
+ * tree, so events that no listener is interested in are cheap to parse.
+ * <p>
+ * Unlike {@link JsonParser#EVENTS} the parser does not validate the event data, syntax
+ * errors within it are only reported when it is decoded.
+ */
+public final class LazyEventParser {
+
+    private static final String TAG = "tag";
+    private static final String DATA = "data";
+
+    private final char[] chars;
+    private final int end;
+    private int pos;
+
+    private LazyEventParser(char[] charsIn, int offset, int length) {
+        chars = charsIn;
+        pos = offset;
+        end = offset + length;
+    }
+
+    /**
+     * Parse an event from the given characters.
+     *
+     * @param chars the buffer containing the JSON of the event
+     * @param offset the offset of the event in the buffer
+     * @param length the length of the event in characters
+     * @return the event
+     * @throws JsonSyntaxException in case the input is not a JSON object
+     */
+    public static Event parse(char[] chars, int offset, int length) {
+        return new LazyEventParser(chars, offset, length).parseEvent();
+    }
+
+    /**
+     * Parse an event from the given string.
+     *
+     * @param json the JSON of the event
+     * @return the event
+     * @throws JsonSyntaxException in case the input is not a JSON object
+     */
+    public static Event parse(String json) {
+        return parse(json.toCharArray(), 0, json.length());
+    }
+
+    /**
+     * Scan the top level object for the tag and the data.
+     *
+     * @return the event
+     */
+    private Event parseEvent() {
+        String tag = null;
+        String rawData = null;
+        skipWhitespace();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+        } else {
+            boolean more = true;
+            while (more) {
+                skipWhitespace();
+                int keyStart = pos;
+                int keyEnd = skipString();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                int valueStart = pos;
+                skipValue();
+                if (isKey(keyStart, keyEnd, TAG)) {
+                    tag = decodeString(valueStart, pos);
+                } else if (isKey(keyStart, keyEnd, DATA)) {
+                    rawData = new String(chars, valueStart, pos - valueStart);
+                }
+                skipWhitespace();
+                more = peek() == ',';
+                if (!more) {
+                    expect('}');
+                } else {
+                    pos++;
+                }
+            }
+        }
+        skipWhitespace();
+        if (pos < end) {
+            throw syntaxError("Unexpected content after the event");
+        }
+        return new Event(tag, rawData);
+    }
+
+    /**
+     * Check if the string between the given positions is the given key, assuming that
+     * keys we look for do not contain escape sequences.
+     */
+    private boolean isKey(int start, int stop, String key) {
+        if (stop - start != key.length() + 2) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (chars[start + 1 + i] != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decode a string value, null is returned for anything but a string.
+     */
+    private String decodeString(int start, int stop) {
+        if (chars[start] != '"') {
+            return null;
+        }
+        for (int i = start + 1; i < stop - 1; i++) {
+            if (chars[i] == '\\') {
+                return JsonParser.GSON.fromJson(new String(chars, start, stop - start),
+                        String.class);
+            }
+        }
+        return new String(chars, start + 1, stop - start - 2);
+    }
+
+    /**
+     * Skip any JSON value.
+     */
+    private void skipValue() {
+        char c = peek();
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            skipStructure();
+        } else {
+            int start = pos;
+            while (pos < end && !isDelimiter(chars[pos])) {
+                pos++;
+            }
+            if (pos == start) {
+                throw syntaxError("Expected a value");
+            }
+        }
+    }
+
+    /**
+     * Skip an object or array including nested values.
+     */
+    private void skipStructure() {
+        int depth = 0;
+        do {
+            char c = peek();
+            if (c == '"') {
+                skipString();
+                continue;
+            }
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+            pos++;
+        } while (depth > 0);
+    }
+
+    /**
+     * Skip a string starting at the current position.
+     *
+     * @return the position after the closing quote
+     */
+    private int skipString() {
+        expect('"');
+        while (pos < end) {
+            char c = chars[pos++];
+            if (c == '\\') {
+                pos++;
+            } else if (c == '"') {
+                return pos;
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && isWhitespace(chars[pos])) {
+            pos++;
+        }
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw syntaxError("Expected '" + c + "'");
+        }
+        pos++;
+    }
+
+    private char peek() {
+        if (pos >= end) {
+            throw syntaxError("Unexpected end of input");
+        }
+        return chars[pos];
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static boolean isDelimiter(char c) {
+        return c == ',' || c == '}' || c == ']' || isWhitespace(c);
+    }
+
+    private JsonSyntaxException syntaxError(String message) {
+        return new JsonSyntaxException(message + " at position " + pos);
+    }
+}
@@ -0,0 +1,124 @@
+package com.suse.saltstack.netapi.parser;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.function.BiConsumer;
+
+/**
+ * Parser for responses to calls targeting minions, i.e. {@code {"return": [{"minion-id":
+ * result, ...}]}}. Instead of building a map containing the results of all minions the
+ * response is read incrementally and each minion's result is handed to a consumer as
+ * soon as it has been parsed, so memory usage stays proportional to a single result.
+ * <p>
+ * The parsed value is the number of results passed to the consumer.
+ *
+ * @param <R> The type of the result of a single minion.
+ */
+public class StreamingResultParser<R> extends JsonParser<Integer> {
+
+    private static final String RETURN = "return";
+
+    private final TypeToken<R> resultType;
+    private final BiConsumer<String, R> consumer;
+
+    /**
+     * Create a new parser handing the results to the given consumer.
+     *
+     * @param resultType A TypeToken describing the type of a single minion's result.
+     * @param consumer Consumer called with the minion id and the result of each minion.
+     */
+    public StreamingResultParser(TypeToken<R> resultType, BiConsumer<String, R> consumer) {
+        super(TypeToken.get(Integer.class));
+        this.resultType = resultType;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Parse the given response stream, calling the consumer for each minion's result.
+     *
+     * @param inputStream result stream to parse.
+     * @return The number of results passed to the consumer.
+     */
+    @Override
+    public Integer parse(InputStream inputStream) {
+        return parse(new BufferedReader(new InputStreamReader(inputStream)));
+    }
+
+    /**
+     * Parse the given JSON string, calling the consumer for each minion's result.
+     *
+     * @param jsonString JSON input given as string
+     * @return The number of results passed to the consumer.
+     */
+    @Override
+    public Integer parse(String jsonString) {
+        return parse(new StringReader(jsonString));
+    }
+
+    /**
+     * Read the response from the given reader, calling the consumer for each minion's
+     * result. Values other than the list of results are skipped.
+     *
+     * @param reader the reader
+     * @return The number of results passed to the consumer.
+     */
+    @Override
+    public Integer parse(Reader reader) {
+        TypeAdapter<R> adapter = GSON.getAdapter(resultType);
+        JsonReader jsonReader = new JsonReader(reader);
+        jsonReader.setLenient(true);
+        int count = 0;
+        try {
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                if (RETURN.equals(jsonReader.nextName())) {
+                    count += readReturn(jsonReader, adapter);
+                } else {
+                    jsonReader.skipValue();
+                }
+            }
+            jsonReader.endObject();
+        } catch (IllegalStateException | MalformedJsonException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+        return count;
+    }
+
+    /**
+     * Read the list of result maps, calling the consumer for each entry.
+     *
+     * @param jsonReader the reader positioned at the list
+     * @param adapter the adapter for a single result
+     * @return The number of results passed to the consumer.
+     * @throws IOException if reading fails or the input is malformed
+     */
+    private int readReturn(JsonReader jsonReader, TypeAdapter<R> adapter)
+            throws IOException {
+        int count = 0;
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                String minionId = jsonReader.nextName();
+                consumer.accept(minionId, adapter.read(jsonReader));
+                count++;
+            }
+            jsonReader.endObject();
+        }
+        jsonReader.endArray();
+        return count;
+    }
+}
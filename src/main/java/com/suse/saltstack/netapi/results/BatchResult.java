@@ -0,0 +1,53 @@
+package com.suse.saltstack.netapi.results;
+
+import com.suse.saltstack.netapi.calls.LocalCallBatch;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The results of the calls of a {@link LocalCallBatch}, one map of results keyed by
+ * minion id per call.
+ */
+public class BatchResult {
+
+    private final LocalCallBatch batch;
+    private final List<Object> results;
+
+    /**
+     * Create the result of a batch.
+     *
+     * @param batchIn the batch
+     * @param resultsIn the results in the order of the calls, each a map keyed by
+     * minion id
+     */
+    public BatchResult(LocalCallBatch batchIn, List<Object> resultsIn) {
+        batch = batchIn;
+        results = resultsIn;
+    }
+
+    /**
+     * Return the results of the given call.
+     *
+     * @param entry the entry returned when the call was added to the batch
+     * @param <R> the result type of the function
+     * @return map containing the results with the minion name as key
+     * @throws IllegalArgumentException if the entry belongs to another batch
+     */
+    @SuppressWarnings("unchecked")
+    public <R> Map<String, R> get(LocalCallBatch.Entry<R> entry) {
+        if (entry.getBatch() != batch) {
+            throw new IllegalArgumentException("The entry belongs to another batch");
+        }
+        return (Map<String, R>) results.get(entry.getIndex());
+    }
+
+    /**
+     * Return the number of results, one per call in the batch.
+     *
+     * @return the number of results
+     */
+    public int size() {
+        return results.size();
+    }
+}
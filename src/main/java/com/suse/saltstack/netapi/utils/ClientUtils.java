@@ -1,5 +1,6 @@
 package com.suse.saltstack.netapi.utils;
 
+import com.suse.saltstack.netapi.client.AbortableConnection;
 import com.suse.saltstack.netapi.client.SaltStackClient;
 
 import java.io.ByteArrayInputStream;
@@ -8,6 +9,8 @@ import java.io.InputStream;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 
 import static com.google.gson.internal.$Gson$Types.newParameterizedTypeWithOwner;
 
@@ -54,6 +57,55 @@ public class ClientUtils {
         return ret;
     }
 
+    /**
+     * Cancel a given task (interrupting it if running) as soon as the given future gets
+     * cancelled.
+     *
+     * @param future the future
+     * @param task the task to cancel together with the future
+     */
+    public static void propagateCancellation(CompletableFuture<?> future, Future<?> task) {
+        future.whenComplete((value, throwable) -> cancelIfCancelled(future, task));
+    }
+
+    /**
+     * Abort the request of the given connection as soon as the given future is
+     * cancelled.
+     *
+     * @param future the future
+     * @param connection the connection to abort together with the future
+     */
+    public static void propagateCancellation(CompletableFuture<?> future,
+            AbortableConnection<?> connection) {
+        future.whenComplete((value, throwable) -> abortIfCancelled(future, connection));
+    }
+
+    /**
+     * Abort the request of a given connection in case the given future has been
+     * cancelled.
+     *
+     * @param future the future
+     * @param connection the connection to abort
+     */
+    private static void abortIfCancelled(Future<?> future,
+            AbortableConnection<?> connection) {
+        if (future.isCancelled()) {
+            connection.abort();
+        }
+    }
+
+    /**
+     * Cancel a given task in case the given future has been cancelled.
+     *
+     * @param future the future
+     * @param task the task to cancel
+     */
+    private static void cancelIfCancelled(Future<?> future, Future<?> task) {
+        if (future.isCancelled()) {
+            task.cancel(true);
+        }
+    }
+
     /**
      * Helper for constructing parameterized types.
      *
@@ -0,0 +1,33 @@
+package com.suse.saltstack.netapi.utils;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factory creating named daemon threads, so background threads of the client do
+ * not prevent the JVM from exiting.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+    private final String namePrefix;
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * Create a factory naming the threads with the given prefix followed by a number.
+     *
+     * @param namePrefixIn the prefix of the thread names
+     */
+    public DaemonThreadFactory(String namePrefixIn) {
+        namePrefix = namePrefixIn;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, namePrefix + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
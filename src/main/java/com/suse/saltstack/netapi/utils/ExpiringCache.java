@@ -0,0 +1,161 @@
+package com.suse.saltstack.netapi.utils;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import java.util.function.LongSupplier;
+
+/**
+ * A thread safe cache whose entries expire a fixed time after they were added. The
+ * number of entries is bounded, the least recently used entry is evicted when the cache
+ * is full.
+ * <p>
+ * Every invalidation increments a generation counter. A value loaded while the cache
+ * was invalidated is stale, {@link #put(Object, Object, long)} drops it if the
+ * generation read before loading it is outdated.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class ExpiringCache<K, V> {
+
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final Map<K, Entry<V>> entries;
+    private long generation;
+
+    /**
+     * Create a cache.
+     *
+     * @param ttlMillisIn the time in milliseconds until an entry expires, a value less
+     * than or equal to 0 disables caching
+     * @param maxEntriesIn the maximum number of entries
+     */
+    public ExpiringCache(long ttlMillisIn, int maxEntriesIn) {
+        this(ttlMillisIn, maxEntriesIn, System::nanoTime);
+    }
+
+    /**
+     * Create a cache using the given clock.
+     *
+     * @param ttlMillisIn the time in milliseconds until an entry expires
+     * @param maxEntriesIn the maximum number of entries
+     * @param clockIn the clock returning the current time in nanoseconds
+     */
+    ExpiringCache(long ttlMillisIn, int maxEntriesIn, LongSupplier clockIn) {
+        ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillisIn);
+        clock = clockIn;
+        entries = new LruMap<>(maxEntriesIn);
+    }
+
+    /**
+     * Return whether values are cached at all.
+     *
+     * @return false if the time to live is less than or equal to 0
+     */
+    public boolean isEnabled() {
+        return ttlNanos > 0;
+    }
+
+    /**
+     * Return the value for the given key unless it has expired.
+     *
+     * @param key the key
+     * @return the value or null if there is none or it has expired
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (clock.getAsLong() - entry.expires >= 0) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Return the current generation, to be passed to {@link #put(Object, Object, long)}
+     * after loading a value.
+     *
+     * @return the generation
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Add a value loaded in the given generation. The value is dropped if the cache has
+     * been invalidated since or if caching is disabled.
+     *
+     * @param key the key
+     * @param value the value
+     * @param generationIn the generation read before loading the value
+     */
+    public synchronized void put(K key, V value, long generationIn) {
+        if (isEnabled() && generationIn == generation) {
+            entries.put(key, new Entry<>(value, clock.getAsLong() + ttlNanos));
+        }
+    }
+
+    /**
+     * Remove the entry for the given key.
+     *
+     * @param key the key
+     */
+    public synchronized void invalidate(K key) {
+        generation++;
+        entries.remove(key);
+    }
+
+    /**
+     * Remove all entries matching the given predicate.
+     *
+     * @param predicate the predicate called with the key and the value of each entry
+     */
+    public synchronized void invalidateIf(BiPredicate<? super K, ? super V> predicate) {
+        generation++;
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, Entry<V>> entry = iterator.next();
+            if (predicate.test(entry.getKey(), entry.getValue().value)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    /**
+     * Return the number of entries, including expired ones not removed yet.
+     *
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * A value and the time it expires.
+     *
+     * @param <V> the type of the value
+     */
+    private static class Entry<V> {
+
+        private final V value;
+        private final long expires;
+
+        Entry(V valueIn, long expiresIn) {
+            value = valueIn;
+            expires = expiresIn;
+        }
+    }
+}
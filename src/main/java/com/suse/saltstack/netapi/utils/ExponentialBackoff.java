@@ -0,0 +1,51 @@
+package com.suse.saltstack.netapi.utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Computes jittered, exponentially growing delays between retries. The base delay
+ * doubles with every attempt up to a maximum; the actual delay is chosen randomly
+ * between half of the base delay and the full base delay, so that many clients retrying
+ * at the same time spread out.
+ */
+public class ExponentialBackoff {
+
+    private final long minDelay;
+    private final long maxDelay;
+
+    /**
+     * Create a backoff starting at the given delay.
+     *
+     * @param minDelayIn the base delay of the first attempt
+     * @param maxDelayIn the maximum base delay
+     */
+    public ExponentialBackoff(long minDelayIn, long maxDelayIn) {
+        minDelay = Math.max(1, minDelayIn);
+        maxDelay = Math.max(minDelay, maxDelayIn);
+    }
+
+    /**
+     * Return the delay before the given attempt.
+     *
+     * @param attempt the number of the attempt, starting with 1
+     * @return the delay in the unit of the minimum and maximum delay
+     */
+    public long getDelay(int attempt) {
+        return getDelay(attempt, ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * Return the delay before the given attempt for the given random value.
+     *
+     * @param attempt the number of the attempt, starting with 1
+     * @param random a random value between 0 (inclusive) and 1 (exclusive)
+     * @return the delay
+     */
+    long getDelay(int attempt, double random) {
+        int doublings = Math.max(0, attempt - 1);
+        long delay = doublings < Long.numberOfLeadingZeros(minDelay) - 1 ?
+                Math.min(maxDelay, minDelay << doublings) : maxDelay;
+        long half = delay / 2;
+        return half + (long) (random * (delay - half));
+    }
+}
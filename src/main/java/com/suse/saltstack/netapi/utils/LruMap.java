@@ -0,0 +1,36 @@
+package com.suse.saltstack.netapi.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A map holding a bounded number of entries, the least recently accessed entry is
+ * removed when a new entry exceeds the bound. Not thread safe.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class LruMap<K, V> extends LinkedHashMap<K, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int maxEntries;
+
+    /**
+     * Create an empty map.
+     *
+     * @param maxEntriesIn the maximum number of entries
+     */
+    public LruMap(int maxEntriesIn) {
+        super(16, 0.75f, true);
+        maxEntries = maxEntriesIn;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > maxEntries;
+    }
+}
@@ -0,0 +1,117 @@
+package com.suse.saltstack.netapi.client;
+
+import com.suse.saltstack.netapi.exception.SaltStackException;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Request coalescer unit tests.
+ */
+public class RequestCoalescerTest {
+
+    private final RequestCoalescer coalescer = new RequestCoalescer();
+    private final List<Object> key = RequestCoalescer.key("/minions", null, "token", "p");
+
+    @Test
+    public void testKey() {
+        assertEquals(key, RequestCoalescer.key("/minions", null, "token", "p"));
+        assertNotEquals(key, RequestCoalescer.key("/minions", null, "other", "p"));
+        assertNotEquals(key, RequestCoalescer.key("/minions", "{}", "token", "p"));
+    }
+
+    @Test
+    public void testAsyncCoalesced() throws Exception {
+        CompletableFuture<String> response = new CompletableFuture<>();
+        AtomicInteger requests = new AtomicInteger();
+
+        CompletableFuture<String> first = coalescer.executeAsync(key,
+                () -> count(requests, response));
+        CompletableFuture<String> second = coalescer.executeAsync(key,
+                () -> count(requests, new CompletableFuture<>()));
+
+        // Cancelling one caller does not affect the other
+        assertTrue(first.cancel(true));
+        response.complete("result");
+        assertEquals("result", second.get(1, TimeUnit.SECONDS));
+        assertEquals(1, requests.get());
+        assertEquals(1, coalescer.getCoalescedCount());
+
+        // The request is not in flight anymore
+        assertEquals("next", coalescer.executeAsync(key,
+                () -> CompletableFuture.completedFuture("next")).get());
+        assertEquals(1, coalescer.getCoalescedCount());
+    }
+
+    @Test
+    public void testSyncJoinsRequestInFlight() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Object result = new Object();
+
+        CompletableFuture<Object> first = CompletableFuture.supplyAsync(
+                () -> execute(() -> awaitRelease(started, release, result)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Object> second = coalescer.executeAsync(key,
+                () -> CompletableFuture.completedFuture(new Object()));
+        assertFalse(second.isDone());
+
+        release.countDown();
+        assertSame(result, first.get(5, TimeUnit.SECONDS));
+        assertSame(result, second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, coalescer.getCoalescedCount());
+    }
+
+    @Test
+    public void testFailureIsShared() throws Exception {
+        CompletableFuture<String> response = new CompletableFuture<>();
+        coalescer.executeAsync(key, () -> response);
+        CompletableFuture<String> second = coalescer.executeAsync(key, () -> response);
+
+        response.completeExceptionally(new SaltStackException("Response code: 500"));
+        try {
+            second.get(1, TimeUnit.SECONDS);
+            fail("Expected the failure of the coalesced request");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SaltStackException);
+        }
+    }
+
+    private Object execute(RequestCoalescer.Request<Object> request) {
+        try {
+            return coalescer.execute(key, request);
+        } catch (SaltStackException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static <T> CompletableFuture<T> count(AtomicInteger requests,
+            CompletableFuture<T> response) {
+        requests.incrementAndGet();
+        return response;
+    }
+
+    private static Object awaitRelease(CountDownLatch started, CountDownLatch release,
+            Object result) throws SaltStackException {
+        started.countDown();
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new SaltStackException(e);
+        }
+        return result;
+    }
+}
@@ -3,6 +3,9 @@ package com.suse.saltstack.netapi.client;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
+import com.suse.saltstack.netapi.calls.LocalCall;
+import com.suse.saltstack.netapi.calls.LocalCallBatch;
+import com.suse.saltstack.netapi.calls.modules.Cmd;
 import com.suse.saltstack.netapi.calls.wheel.Key;
 import com.suse.saltstack.netapi.datatypes.Job;
 import com.suse.saltstack.netapi.datatypes.cherrypy.Stats;
@@ -11,10 +14,14 @@ import com.suse.saltstack.netapi.exception.SaltStackException;
 import com.suse.saltstack.netapi.exception.SaltUserUnauthorizedException;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import com.google.gson.JsonSyntaxException;
+import com.suse.saltstack.netapi.client.impl.HttpAsyncClientConnectionFactory;
+import com.suse.saltstack.netapi.client.impl.HttpClientConnectionFactory;
 import com.suse.saltstack.netapi.client.impl.JDKConnectionFactory;
+import com.suse.saltstack.netapi.config.ClientConfig;
 import com.suse.saltstack.netapi.datatypes.ScheduledJob;
 import com.suse.saltstack.netapi.datatypes.Token;
 import com.suse.saltstack.netapi.utils.ClientUtils;
+import com.suse.saltstack.netapi.results.BatchResult;
 import com.suse.saltstack.netapi.results.ResultInfo;
 import com.suse.saltstack.netapi.results.ResultInfoSet;
 
@@ -30,6 +37,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -38,10 +46,13 @@ import org.junit.rules.ExpectedException;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.text.SimpleDateFormat;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
 import static com.github.tomakehurst.wiremock.client.WireMock.post;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.verify;
@@ -53,11 +64,15 @@ import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
 import static com.github.tomakehurst.wiremock.client.WireMock.any;
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.isA;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
 
 /**
  * SaltStack API unit tests.
@@ -116,6 +131,11 @@ public class SaltStackClientTest {
         client = new SaltStackClient(uri);
     }
 
+    @After
+    public void cleanup() {
+        client.close();
+    }
+
     @Test
     public void testLoginOk() throws Exception {
         stubFor(any(urlMatching(".*"))
@@ -180,6 +200,67 @@ public class SaltStackClientTest {
         assertNull(token);
     }
 
+    @Test
+    public void testLoginAsyncThroughAsyncConnection() throws Exception {
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(JSON_LOGIN_RESPONSE)));
+
+        URI uri = URI.create("http://localhost:" + Integer.toString(MOCK_HTTP_PORT));
+        try (HttpAsyncClientConnectionFactory factory =
+                new HttpAsyncClientConnectionFactory(1)) {
+            SaltStackClient asyncClient = new SaltStackClient(uri, factory);
+            Token token = asyncClient.loginAsync("user", "pass", AUTO).get();
+
+            verify(1, postRequestedFor(urlEqualTo("/login"))
+                    .withHeader("Accept", equalTo("application/json"))
+                    .withHeader("Content-Type", equalTo("application/json"))
+                    .withRequestBody(equalToJson(JSON_LOGIN_REQUEST)));
+
+            assertEquals("Token mismatch",
+                    "f248284b655724ca8a86bcab4b8df608ebf5b08b", token.getToken());
+            assertEquals("Token mismatch", token.getToken(),
+                    asyncClient.getConfig().get(ClientConfig.TOKEN));
+        }
+    }
+
+    @Test
+    public void testLoginAsyncFailureThroughAsyncConnection() throws Exception {
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_UNAUTHORIZED)));
+
+        URI uri = URI.create("http://localhost:" + Integer.toString(MOCK_HTTP_PORT));
+        try (HttpAsyncClientConnectionFactory factory =
+                new HttpAsyncClientConnectionFactory(1)) {
+            SaltStackClient asyncClient = new SaltStackClient(uri, factory);
+            exception.expect(ExecutionException.class);
+            exception.expectCause(isA(SaltUserUnauthorizedException.class));
+            asyncClient.loginAsync("user", "pass", AUTO).get();
+        }
+    }
+
+    @Test
+    public void testRunRequestWithSocketTimeoutThroughAsyncConnection()
+            throws Exception {
+        exception.expect(SaltStackException.class);
+
+        URI uri = URI.create("http://localhost:" + Integer.toString(MOCK_HTTP_PORT));
+        try (HttpAsyncClientConnectionFactory factory =
+                new HttpAsyncClientConnectionFactory(1)) {
+            SaltStackClient clientWithFastTimeout = new SaltStackClient(uri, factory);
+            clientWithFastTimeout.getConfig().put(SOCKET_TIMEOUT, 1000);
+
+            stubFor(any(urlMatching(".*"))
+                    .willReturn(aResponse()
+                    .withFixedDelay(2000)));
+
+            clientWithFastTimeout.login("user", "pass", AUTO);
+        }
+    }
+
     @Test
     public void testRunRequest() throws Exception {
         stubFor(any(urlMatching(".*"))
@@ -575,6 +656,83 @@ public class SaltStackClientTest {
                 .withRequestBody(equalTo("")));
     }
 
+    @Test
+    public void testStatsCoalesced() throws Exception {
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(JSON_STATS_RESPONSE)
+                .withFixedDelay(500)));
+        client.getConfig().put(ClientConfig.REQUEST_COALESCING, true);
+
+        List<CompletableFuture<Stats>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(client.statsAsync());
+        }
+        Stats stats = client.stats();
+
+        for (CompletableFuture<Stats> future : futures) {
+            assertSame(stats, future.get(5, TimeUnit.SECONDS));
+        }
+        verify(1, getRequestedFor(urlEqualTo("/stats")));
+        assertEquals(4, client.getCoalescedRequestCount());
+
+        // Requests are only coalesced while they are in flight
+        client.stats();
+        verify(2, getRequestedFor(urlEqualTo("/stats")));
+    }
+
+    @Test
+    public void testSideEffectsNotCoalesced() throws Exception {
+        stubFor(post(urlEqualTo("/hook/my/tag"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(JSON_HOOK_RESPONSE)
+                .withFixedDelay(500)));
+        stubFor(post(urlEqualTo("/minions"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(JSON_START_COMMAND_RESPONSE)
+                .withFixedDelay(500)));
+        client.getConfig().put(ClientConfig.REQUEST_COALESCING, true);
+
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            futures.add(client.sendEventAsync("my/tag", "{}"));
+            futures.add(client.startCommandAsync(new Glob("*"), "state.apply",
+                    null, null));
+        }
+        for (CompletableFuture<?> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        verify(2, postRequestedFor(urlEqualTo("/hook/my/tag")));
+        verify(2, postRequestedFor(urlEqualTo("/minions")));
+        assertEquals(0, client.getCoalescedRequestCount());
+    }
+
+    @Test
+    public void testReadOnlyCallCoalesced() throws Exception {
+        stubFor(post(urlEqualTo("/"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"return\": [{\"m1\": true}]}")
+                .withFixedDelay(500)));
+        client.getConfig().put(ClientConfig.REQUEST_COALESCING, true);
+
+        CompletableFuture<Map<String, Boolean>> first = client.callSyncAsync(
+                com.suse.saltstack.netapi.calls.modules.Test.ping(), new Glob("*"));
+        Map<String, Boolean> second = client.callSync(
+                com.suse.saltstack.netapi.calls.modules.Test.ping(), new Glob("*"));
+
+        assertSame(second, first.get(5, TimeUnit.SECONDS));
+        verify(1, postRequestedFor(urlEqualTo("/")));
+        assertEquals(1, client.getCoalescedRequestCount());
+    }
+
     @Test
     public void testKeys() throws Exception {
         stubFor(any(urlMatching(".*"))
@@ -726,6 +884,227 @@ public class SaltStackClientTest {
                 .withRequestBody(equalTo("")));
     }
 
+    @Test
+    public void testCallSyncAsyncChained() throws Exception {
+        stubFor(post(urlEqualTo("/login"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(JSON_LOGIN_RESPONSE)));
+        stubFor(post(urlEqualTo("/"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"return\": [{\"minion1\": true, \"minion2\": false}]}")));
+
+        LocalCall<Boolean> ping = com.suse.saltstack.netapi.calls.modules.Test.ping();
+        Map<String, Boolean> pings = client.loginAsync("user", "pass", AUTO)
+                .thenCompose(token -> client.callSyncAsync(ping, new Glob()))
+                .get();
+
+        String token = "f248284b655724ca8a86bcab4b8df608ebf5b08b";
+        String lowstate = "[{\"client\": \"local\", \"fun\": \"test.ping\", " +
+                "\"tgt\": \"*\", \"expr_form\": \"glob\"}]";
+        verify(1, postRequestedFor(urlEqualTo("/"))
+                .withHeader("X-Auth-Token", equalTo(token))
+                .withRequestBody(equalToJson(lowstate)));
+        assertEquals(2, pings.size());
+        assertTrue(pings.get("minion1"));
+        assertEquals(false, pings.get("minion2"));
+    }
+
+    @Test
+    public void testCallSyncBatch() throws Exception {
+        stubFor(post(urlEqualTo("/"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"return\": [{\"minion1\": true, \"minion2\": false}, " +
+                "{\"minion1\": \"hello\"}]}")));
+
+        LocalCallBatch batch = new LocalCallBatch();
+        LocalCallBatch.Entry<Boolean> ping = batch.add(
+                com.suse.saltstack.netapi.calls.modules.Test.ping(), new Glob());
+        LocalCallBatch.Entry<String> echo = batch.add(Cmd.run("echo hello"),
+                new Glob("minion1"));
+        BatchResult result = client.callSync(batch);
+
+        String lowstate = "[{\"client\": \"local\", \"fun\": \"test.ping\", " +
+                "\"tgt\": \"*\", \"expr_form\": \"glob\"}, " +
+                "{\"client\": \"local\", \"fun\": \"cmd.run\", " +
+                "\"kwarg\": {\"cmd\": \"echo hello\"}, \"tgt\": \"minion1\", " +
+                "\"expr_form\": \"glob\"}]";
+        verify(1, postRequestedFor(urlEqualTo("/"))
+                .withRequestBody(equalToJson(lowstate)));
+        assertEquals(2, result.size());
+        assertTrue(result.get(ping).get("minion1"));
+        assertEquals(false, result.get(ping).get("minion2"));
+        assertEquals("hello", result.get(echo).get("minion1"));
+
+        // The same request without blocking
+        assertEquals("hello", client.callSyncAsync(batch).get().get(echo).get("minion1"));
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void testCallSyncBatchMissingResults() throws Exception {
+        stubFor(post(urlEqualTo("/"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"return\": [{\"minion1\": true}]}")));
+
+        LocalCallBatch batch = new LocalCallBatch();
+        batch.add(com.suse.saltstack.netapi.calls.modules.Test.ping(), new Glob());
+        batch.add(com.suse.saltstack.netapi.calls.modules.Test.ping(), new Glob());
+        client.callSync(batch);
+    }
+
+    @Test
+    public void testCallSyncStreaming() throws Exception {
+        stubFor(post(urlEqualTo("/"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"return\": [{\"minion1\": true, \"minion2\": false}]}")));
+
+        Map<String, Boolean> pings = new LinkedHashMap<>();
+        LocalCall<Boolean> ping = com.suse.saltstack.netapi.calls.modules.Test.ping();
+        int count = client.callSync(ping, new Glob(), pings::put);
+
+        String lowstate = "[{\"client\": \"local\", \"fun\": \"test.ping\", " +
+                "\"tgt\": \"*\", \"expr_form\": \"glob\"}]";
+        verify(1, postRequestedFor(urlEqualTo("/"))
+                .withRequestBody(equalToJson(lowstate)));
+        assertEquals(2, count);
+        assertEquals(Arrays.asList("minion1", "minion2"),
+                new ArrayList<>(pings.keySet()));
+        assertTrue(pings.get("minion1"));
+        assertEquals(false, pings.get("minion2"));
+    }
+
+    @Test
+    public void testCancelAbortsRequest() throws Exception {
+        stubFor(get(urlEqualTo("/minions"))
+                .willReturn(aResponse()
+                .withFixedDelay(5000)));
+        stubFor(get(urlEqualTo("/stats"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(JSON_STATS_RESPONSE)));
+
+        URI uri = URI.create("http://localhost:" + Integer.toString(MOCK_HTTP_PORT));
+        try (HttpAsyncClientConnectionFactory factory =
+                new HttpAsyncClientConnectionFactory(1)) {
+            SaltStackClient asyncClient = new SaltStackClient(uri, factory);
+            // A single pooled connection is only available again after an abort
+            asyncClient.getConfig().put(ClientConfig.MAX_TOTAL_CONNECTIONS, 1);
+            asyncClient.getConfig().put(ClientConfig.MAX_CONNECTIONS_PER_ROUTE, 1);
+
+            CompletableFuture<Map<String, Map<String, Object>>> minions =
+                    asyncClient.getMinionsAsync();
+            assertTrue(minions.cancel(true));
+            assertTrue(minions.isCancelled());
+
+            assertNotNull(asyncClient.statsAsync().get(2, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testAsyncResponseLengthLimit() throws Exception {
+        stubFor(get(urlEqualTo("/minions"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(JSON_GET_MINIONS_RESPONSE)));
+
+        URI uri = URI.create("http://localhost:" + Integer.toString(MOCK_HTTP_PORT));
+        try (HttpAsyncClientConnectionFactory factory =
+                new HttpAsyncClientConnectionFactory(1)) {
+            SaltStackClient asyncClient = new SaltStackClient(uri, factory);
+            asyncClient.getConfig().put(ClientConfig.MAX_RESPONSE_LENGTH,
+                    JSON_GET_MINIONS_RESPONSE.length() / 2);
+            try {
+                asyncClient.getMinionsAsync().get(2, TimeUnit.SECONDS);
+                fail("Response longer than the limit was parsed");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof SaltStackException);
+            }
+
+            asyncClient.getConfig().put(ClientConfig.MAX_RESPONSE_LENGTH,
+                    JSON_GET_MINIONS_RESPONSE.length());
+            assertNotNull(asyncClient.getMinionsAsync().get(2, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testAsyncCompletesOffIoThread() throws Exception {
+        stubFor(get(urlEqualTo("/minions"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(JSON_GET_MINIONS_RESPONSE)
+                .withFixedDelay(200)));
+
+        URI uri = URI.create("http://localhost:" + Integer.toString(MOCK_HTTP_PORT));
+        try (HttpAsyncClientConnectionFactory factory =
+                new HttpAsyncClientConnectionFactory(1)) {
+            SaltStackClient asyncClient = new SaltStackClient(uri, factory);
+            String thread = asyncClient.getMinionsAsync()
+                    .thenApply(minions -> Thread.currentThread().getName())
+                    .get(2, TimeUnit.SECONDS);
+            assertFalse(thread, thread.startsWith("saltstack-async-io-"));
+        }
+    }
+
+    @Test
+    public void testCancelAbortsBlockingRequest() throws Exception {
+        stubFor(get(urlEqualTo("/minions"))
+                .willReturn(aResponse()
+                .withFixedDelay(5000)));
+        stubFor(get(urlEqualTo("/stats"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(JSON_STATS_RESPONSE)));
+
+        URI uri = URI.create("http://localhost:" + Integer.toString(MOCK_HTTP_PORT));
+        try (HttpClientConnectionFactory factory = new HttpClientConnectionFactory()) {
+            SaltStackClient blockingClient = new SaltStackClient(uri, factory);
+            // A single pooled connection is only available again after an abort
+            blockingClient.getConfig().put(ClientConfig.MAX_TOTAL_CONNECTIONS, 1);
+            blockingClient.getConfig().put(ClientConfig.MAX_CONNECTIONS_PER_ROUTE, 1);
+
+            CompletableFuture<Map<String, Map<String, Object>>> minions =
+                    blockingClient.getMinionsAsync();
+            // Let the request lease the connection before cancelling
+            Thread.sleep(500);
+            assertTrue(minions.cancel(true));
+
+            assertNotNull(blockingClient.statsAsync().get(2, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testCloseClosesOwnFactoryOnly() throws Exception {
+        stubFor(get(urlEqualTo("/stats"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(JSON_STATS_RESPONSE)));
+
+        URI uri = URI.create("http://localhost:" + Integer.toString(MOCK_HTTP_PORT));
+        try (HttpClientConnectionFactory factory = new HttpClientConnectionFactory()) {
+            SaltStackClient sharedFactoryClient = new SaltStackClient(uri, factory);
+            sharedFactoryClient.close();
+            assertNotNull(sharedFactoryClient.stats());
+        }
+
+        client.close();
+        exception.expect(IllegalStateException.class);
+        client.stats();
+    }
+
     @Test
     public void testJobsPending() throws Exception {
         final SimpleDateFormat DATE_FORMAT =
@@ -0,0 +1,104 @@
+package com.suse.saltstack.netapi.client.impl;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.suse.saltstack.netapi.config.ClientConfig;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.net.HttpURLConnection;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Pooled HttpClient connection factory unit tests.
+ */
+public class HttpClientConnectionFactoryTest {
+
+    private static final int MOCK_HTTP_PORT = 8889;
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(MOCK_HTTP_PORT);
+
+    private HttpClientConnectionFactory factory;
+    private ClientConfig config;
+
+    @Before
+    public void init() {
+        factory = new HttpClientConnectionFactory();
+        config = new ClientConfig();
+    }
+
+    @After
+    public void cleanup() {
+        factory.close();
+    }
+
+    @Test
+    public void testClientIsShared() {
+        CloseableHttpClient client = factory.getHttpClient(config.snapshot());
+        assertSame(client, factory.getHttpClient(config.snapshot()));
+
+        // The token does not affect the client
+        config.put(ClientConfig.TOKEN, "token");
+        assertSame(client, factory.getHttpClient(config.snapshot()));
+
+        // Neither do the pool limits
+        config.put(ClientConfig.MAX_TOTAL_CONNECTIONS, 100);
+        config.put(ClientConfig.MAX_CONNECTIONS_PER_ROUTE, 50);
+        assertSame(client, factory.getHttpClient(config.snapshot()));
+    }
+
+    @Test
+    public void testClientIsRebuiltOnChanges() {
+        CloseableHttpClient client = factory.getHttpClient(config.snapshot());
+
+        config.put(ClientConfig.SOCKET_TIMEOUT, 1000);
+        CloseableHttpClient timeoutClient = factory.getHttpClient(config.snapshot());
+        assertNotSame(client, timeoutClient);
+
+        config.put(ClientConfig.PROXY_HOSTNAME, "proxy.example.com");
+        CloseableHttpClient proxyClient = factory.getHttpClient(config.snapshot());
+        assertNotSame(timeoutClient, proxyClient);
+        assertSame(proxyClient, factory.getHttpClient(config.snapshot()));
+    }
+
+    @Test
+    public void testIdleConnectionsAreEvicted() throws Exception {
+        stubFor(get(urlEqualTo("/"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withBody("{}")));
+        config.put(ClientConfig.CONNECTION_IDLE_TIMEOUT, 100);
+
+        CloseableHttpClient client = factory.getHttpClient(config.snapshot());
+        try (CloseableHttpResponse response = client.execute(
+                new HttpGet("http://localhost:" + MOCK_HTTP_PORT + "/"))) {
+            EntityUtils.consume(response.getEntity());
+        }
+        assertEquals(1, factory.getConnectionManager().getTotalStats().getAvailable());
+
+        Thread.sleep(300);
+        factory.getHttpClient(config.snapshot());
+        assertEquals(0, factory.getConnectionManager().getTotalStats().getAvailable());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosedFactory() {
+        factory.getHttpClient(config.snapshot());
+        factory.close();
+        factory.getHttpClient(config.snapshot());
+    }
+}
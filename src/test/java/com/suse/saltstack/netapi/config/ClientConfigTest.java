@@ -3,8 +3,16 @@ package com.suse.saltstack.netapi.config;
 import com.suse.saltstack.netapi.config.ClientConfig.Key;
 import org.junit.Test;
 
+import java.net.URI;
+
+import static com.suse.saltstack.netapi.config.ClientConfig.PROXY_HOSTNAME;
 import static com.suse.saltstack.netapi.config.ClientConfig.PROXY_PORT;
+import static com.suse.saltstack.netapi.config.ClientConfig.TOKEN;
+import static com.suse.saltstack.netapi.config.ClientConfig.URL;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 /**
  * Configuration unit tests.
@@ -39,4 +47,60 @@ public class ClientConfigTest {
         assertEquals("Should return the default value after removing the key",
                 key.defaultValue, config.get(key));
     }
+
+    @Test
+    public void testSnapshot() {
+        ClientConfig config = new ClientConfig();
+        ConfigSnapshot empty = config.snapshot();
+        assertSame(empty, config.snapshot());
+
+        config.put(TOKEN, "token");
+        ConfigSnapshot snapshot = config.snapshot();
+        assertNotEquals(empty.getVersion(), snapshot.getVersion());
+        assertNull(empty.get(TOKEN));
+        assertEquals("token", snapshot.get(TOKEN));
+
+        // Later modifications are not reflected in the snapshot
+        config.put(TOKEN, "other");
+        config.put(PROXY_PORT, 123);
+        assertEquals("token", snapshot.get(TOKEN));
+        assertEquals(PROXY_PORT.defaultValue, snapshot.get(PROXY_PORT));
+        assertEquals(Integer.valueOf(123), config.snapshot().get(PROXY_PORT));
+
+        // Removing a key that is not set does not create a new version
+        ConfigSnapshot current = config.snapshot();
+        config.remove(PROXY_HOSTNAME);
+        assertSame(current, config.snapshot());
+
+        // Versions are unique across configurations
+        ClientConfig other = new ClientConfig();
+        other.put(TOKEN, "token");
+        assertNotEquals(snapshot.getVersion(), other.snapshot().getVersion());
+    }
+
+    @Test
+    public void testResolve() {
+        ClientConfig config = new ClientConfig();
+        String[] endpoints = {"/", "/login", "/minions", "/minions/minion1",
+                "/jobs/20150211105524392307", "/hook/salt/custom/tag", "/hook/../run",
+                "/minions/minion1?x=1", "/other/endpoint", "/minions/"};
+        for (URI url : new URI[] {URI.create("http://localhost:8000"),
+                URI.create("https://salt.example.com/api/")}) {
+            config.put(URL, url);
+            ConfigSnapshot snapshot = config.snapshot();
+            for (String endpoint : endpoints) {
+                assertEquals(url.resolve(endpoint), snapshot.resolve(endpoint));
+            }
+        }
+
+        // Fixed endpoints are resolved once per URL
+        ConfigSnapshot snapshot = config.snapshot();
+        config.put(TOKEN, "token");
+        assertSame(snapshot.resolve("/minions"), config.snapshot().resolve("/minions"));
+        assertSame(snapshot.resolve("/minions/minion1"),
+                config.snapshot().resolve("/minions/minion1"));
+        config.put(URL, URI.create("http://localhost:8001"));
+        assertEquals(URI.create("http://localhost:8001/minions"),
+                config.snapshot().resolve("/minions"));
+    }
 }
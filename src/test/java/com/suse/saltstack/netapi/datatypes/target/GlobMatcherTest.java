@@ -0,0 +1,83 @@
+package com.suse.saltstack.netapi.datatypes.target;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Glob matcher unit tests.
+ */
+public class GlobMatcherTest {
+
+    @Test
+    public void testWildcards() {
+        GlobMatcher matcher = GlobMatcher.compile("web*.example.?om");
+        assertEquals("web", matcher.getPrefix());
+        assertFalse(matcher.isLiteral());
+        assertTrue(matcher.matches("web1.example.com"));
+        assertTrue(matcher.matches("web.example.com"));
+        assertFalse(matcher.matches("web1.example.co"));
+        assertFalse(matcher.matches("db1.example.com"));
+
+        assertTrue(GlobMatcher.compile("*").matches(""));
+        assertTrue(GlobMatcher.compile("a**b").matches("axxb"));
+        assertTrue(GlobMatcher.compile("*a*a*a*b").matches("aaaaaaaaab"));
+        assertFalse(GlobMatcher.compile("*a*a*a*b").matches("aaaaaaaaaa"));
+    }
+
+    @Test
+    public void testSets() {
+        assertTrue(GlobMatcher.compile("web[0-9a-f]").matches("webc"));
+        assertFalse(GlobMatcher.compile("web[0-9a-f]").matches("webg"));
+        assertTrue(GlobMatcher.compile("web[!0-9]").matches("webg"));
+        assertFalse(GlobMatcher.compile("web[!0-9]").matches("web5"));
+        assertTrue(GlobMatcher.compile("[]]").matches("]"));
+        assertTrue(GlobMatcher.compile("[!]]").matches("a"));
+        assertTrue(GlobMatcher.compile("[a-]").matches("-"));
+        assertFalse(GlobMatcher.compile("[z-a]").matches("m"));
+        assertTrue(GlobMatcher.compile("[web").matches("[web"));
+        assertEquals("[web", GlobMatcher.compile("[web").getPrefix());
+    }
+
+    @Test
+    public void testFilter() {
+        String[] sorted = {"db1", "db2", "web1", "web10", "web2", "www"};
+        assertEquals(Arrays.asList("web1", "web10", "web2"),
+                GlobMatcher.compile("web*").filter(sorted));
+        assertEquals(Arrays.asList("db1", "web1"),
+                GlobMatcher.compile("*1").filter(sorted));
+        assertEquals(Collections.singletonList("www"),
+                GlobMatcher.compile("www").filter(sorted));
+        assertTrue(GlobMatcher.compile("mail*").filter(sorted).isEmpty());
+        assertTrue(GlobMatcher.compile("web").filter(sorted).isEmpty());
+    }
+
+    @Test
+    public void testSameAsRegex() {
+        String[] elements = {"a", "b", "*", "?", "[ab]", "[!a]", "[a-b]"};
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder glob = new StringBuilder();
+            StringBuilder regex = new StringBuilder();
+            for (int e = random.nextInt(6); e >= 0; e--) {
+                String element = elements[random.nextInt(elements.length)];
+                glob.append(element);
+                regex.append(element.equals("*") ? ".*" : element.equals("?") ? "." :
+                        element.replace('!', '^'));
+            }
+            StringBuilder id = new StringBuilder();
+            for (int c = random.nextInt(8); c > 0; c--) {
+                id.append("abc".charAt(random.nextInt(3)));
+            }
+            assertEquals(glob + " " + id, Pattern.matches(regex.toString(), id),
+                    GlobMatcher.compile(glob.toString()).matches(id.toString()));
+        }
+    }
+}
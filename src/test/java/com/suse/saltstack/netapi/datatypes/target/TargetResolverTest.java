@@ -0,0 +1,168 @@
+package com.suse.saltstack.netapi.datatypes.target;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Target resolver unit tests.
+ */
+public class TargetResolverTest {
+
+    private final TargetResolver resolver = new TargetResolver(Arrays.asList(
+            "web1.example.com", "web2.example.com", "db1.example.com", "[legacy]"));
+
+    @Test
+    public void testGlob() {
+        assertEquals(minions("web1.example.com", "web2.example.com"),
+                resolver.resolve(new Glob("web*")));
+        assertEquals(resolver.getMinions(), resolver.resolve(Glob.ALL));
+        assertEquals(minions("web2.example.com"),
+                resolver.resolve(new Glob("web[!1].example.c?m")));
+        assertEquals(minions("db1.example.com", "web1.example.com"),
+                resolver.resolve(new Glob("*[0-1].example.com")));
+        assertEquals(minions("[legacy]"), resolver.resolve(new Glob("[[]legacy]")));
+        assertEquals(minions(), resolver.resolve(new Glob("web*.example.org")));
+        assertEquals(minions(), resolver.resolve(new Glob("web1.example.co")));
+    }
+
+    @Test
+    public void testGlobSpecialCharacters() {
+        TargetResolver special = new TargetResolver(Arrays.asList("a.b", "axb", "[a",
+                "a+b"));
+        assertEquals(minions("a.b"), special.resolve(new Glob("a.b")));
+        assertEquals(minions("[a"), special.resolve(new Glob("[a")));
+        assertEquals(minions("a+b"), special.resolve(new Glob("a+b")));
+    }
+
+    @Test
+    public void testMinionList() {
+        assertEquals(minions("db1.example.com"), resolver.resolve(
+                new MinionList("db1.example.com", "db2.example.com")));
+    }
+
+    @Test
+    public void testUnresolvable() {
+        NodeGroup group = new NodeGroup("webservers");
+        assertFalse(resolver.isResolvable(group));
+        assertEquals(Optional.empty(), resolver.resolve(group));
+        assertTrue(resolver.isResolvable(Glob.ALL));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyGlob() {
+        resolver.resolve(new Glob(""));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyMinionList() {
+        resolver.resolve(new MinionList(Collections.emptyList()));
+    }
+
+    @Test
+    public void testPcre() {
+        assertEquals(minions("web1.example.com", "web2.example.com"),
+                resolver.resolve(new PCRE("web[0-9]")));
+        assertEquals(minions(), resolver.resolve(new PCRE("example")));
+    }
+
+    @Test
+    public void testGrain() {
+        TargetResolver withGrains = new TargetResolver(resolver.getMinions(), grains());
+        assertEquals(minions("db1.example.com", "web1.example.com"),
+                withGrains.resolve(new Grain("os", "suse")));
+        assertEquals(minions("web1.example.com"),
+                withGrains.resolve(new Grain("ip_interfaces:eth0", "10.0.*")));
+        assertEquals(minions(), withGrains.resolve(new Grain("os", "Fedora")));
+        assertFalse(resolver.isResolvable(new Grain("os", "SUSE")));
+        assertTrue(withGrains.isResolvable(new Grain("os", "SUSE")));
+    }
+
+    @Test
+    public void testCompound() {
+        TargetResolver withGrains = new TargetResolver(resolver.getMinions(), grains());
+        assertEquals(Optional.of(minions("web1.example.com")),
+                withGrains.resolve(new Compound("G@os:SUSE and web*")));
+        assertEquals(Optional.of(minions("db1.example.com", "web1.example.com",
+                "web2.example.com")), withGrains.resolve(
+                new Compound("G@os:SUSE or E@web")));
+        assertEquals(Optional.of(minions("web2.example.com", "[legacy]")),
+                withGrains.resolve(new Compound("not G@os:SUSE")));
+        assertEquals(Optional.of(minions("db1.example.com", "web2.example.com")),
+                withGrains.resolve(new Compound(
+                "(web* and not P@os:S.S) or L@db1.example.com,db9.example.com")));
+        assertEquals(Optional.of(minions("web1.example.com")),
+                withGrains.resolve(new Compound("E@web(1|3) *.com")));
+
+        assertEquals(Optional.empty(), resolver.resolve(new Compound("G@os:SUSE")));
+        assertEquals(Optional.empty(), withGrains.resolve(new Compound("I@role:web")));
+        assertFalse(withGrains.isResolvable(new Compound("web* and N@group")));
+        assertFalse(withGrains.isResolvable(new Range("%cluster")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompoundUnbalanced() {
+        resolver.resolve(new Compound("(web* or db*"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompoundMissingOperand() {
+        resolver.resolve(new Compound("web* and"));
+    }
+
+    @Test
+    public void testPartition() {
+        assertEquals(Arrays.asList(Arrays.asList("[legacy]", "db1.example.com"),
+                Arrays.asList("web1.example.com", "web2.example.com")),
+                resolver.partition(Glob.ALL, 2).get().stream()
+                .map(MinionList::getTarget).collect(Collectors.toList()));
+        assertEquals(Optional.empty(), resolver.partition(new NodeGroup("web"), 2));
+    }
+
+    private static GrainsLookup grains() {
+        Map<String, Map<String, Set<String>>> grains = new HashMap<>();
+        grains.put("os", new HashMap<>());
+        grains.get("os").put("SUSE", minions("web1.example.com", "db1.example.com"));
+        grains.get("os").put("Ubuntu", minions("web2.example.com", "web9.example.com"));
+        grains.put("ip_interfaces:eth0", new HashMap<>());
+        grains.get("ip_interfaces:eth0").put("10.0.0.1", minions("web1.example.com"));
+        return new MapGrainsLookup(grains);
+    }
+
+    private static Set<String> minions(String... minionIds) {
+        return new LinkedHashSet<>(Arrays.asList(minionIds));
+    }
+
+    /**
+     * Grains lookup backed by a map of minions keyed by grain and value.
+     */
+    private static class MapGrainsLookup implements GrainsLookup {
+
+        private final Map<String, Map<String, Set<String>>> grains;
+
+        MapGrainsLookup(Map<String, Map<String, Set<String>>> grainsIn) {
+            grains = grainsIn;
+        }
+
+        @Override
+        public Set<String> getValues(String grain) {
+            return grains.getOrDefault(grain, Collections.emptyMap()).keySet();
+        }
+
+        @Override
+        public Set<String> getMinions(String grain, String value) {
+            return grains.get(grain).get(value);
+        }
+    }
+}
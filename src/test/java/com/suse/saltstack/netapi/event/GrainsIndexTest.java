@@ -0,0 +1,199 @@
+package com.suse.saltstack.netapi.event;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.suse.saltstack.netapi.client.SaltStackClient;
+import com.suse.saltstack.netapi.config.ClientConfig;
+import com.suse.saltstack.netapi.datatypes.Event;
+
+import org.glassfish.tyrus.server.Server;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Grains index unit tests.
+ */
+public class GrainsIndexTest {
+
+    private static final int MOCK_WS_PORT = 8888;
+    private static final int MOCK_HTTP_PORT = 8889;
+
+    private static final String ALL_GRAINS = "{\"return\": [{" +
+            "\"m1\": {\"os\": \"SUSE\", \"osmajorrelease\": 12, \"roles\": [\"web\", " +
+            "\"db\"], \"ip_interfaces\": {\"eth0\": [\"10.0.0.1\"]}}, " +
+            "\"m2\": {\"os\": \"SUSE\", \"osmajorrelease\": 11, \"roles\": [\"web\"]}, " +
+            "\"m3\": {\"os\": \"Ubuntu\", \"osmajorrelease\": 14.04}}]}";
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(MOCK_HTTP_PORT);
+
+    private Server serverEndpoint;
+    private EventStream eventStream;
+    private GrainsIndex index;
+
+    @Before
+    public void init() throws Exception {
+        serverEndpoint = new Server("localhost", MOCK_WS_PORT, "/ws", null,
+                WebSocketServerSalt.class);
+        serverEndpoint.start();
+
+        ClientConfig config = new ClientConfig();
+        config.put(ClientConfig.TOKEN, "token");
+        config.put(ClientConfig.URL, URI.create("http://localhost:" + MOCK_WS_PORT));
+        eventStream = new EventStream(config);
+
+        SaltStackClient client = new SaltStackClient(
+                URI.create("http://localhost:" + MOCK_HTTP_PORT));
+        index = new GrainsIndex(client, eventStream);
+    }
+
+    @After
+    public void stop() throws Exception {
+        index.close();
+        eventStream.close();
+        serverEndpoint.stop();
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        stubGrains("\"*\"", ALL_GRAINS);
+        assertEquals(3, index.rebuild());
+
+        assertEquals(minions("m1", "m2"), index.getMinions("os", "SUSE"));
+        assertEquals(minions("m1"), index.getMinions("osmajorrelease", "12"));
+        assertEquals(minions("m3"), index.getMinions("osmajorrelease", "14.04"));
+        assertEquals(minions("m1", "m2"), index.getMinions("roles", "web"));
+        assertEquals(minions("m1"), index.getMinions("ip_interfaces:eth0", "10.0.0.1"));
+        assertEquals(minions(), index.getMinions("os", "Fedora"));
+        assertEquals(new HashSet<>(Arrays.asList("SUSE", "Ubuntu")),
+                index.getValues("os"));
+
+        Map<String, String> grains = new HashMap<>();
+        grains.put("os", "SUSE");
+        grains.put("roles", "db");
+        assertEquals(minions("m1"), index.getMinions(grains));
+        assertEquals(minions("m1", "m2", "m3"),
+                index.getMinions(Collections.emptyMap()));
+    }
+
+    @Test
+    public void testRebuildRemovesMissingMinions() throws Exception {
+        stubGrains("\"*\"", ALL_GRAINS);
+        index.rebuild();
+        stubGrains("\"*\"", "{\"return\": [{\"m3\": {\"os\": \"SUSE\"}}]}");
+        assertEquals(1, index.rebuild());
+
+        assertEquals(minions("m3"), index.getMinions("os", "SUSE"));
+        assertEquals(minions(), index.getMinions("roles", "web"));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testUpdatedByEvents() throws Exception {
+        stubGrains("\"*\"", ALL_GRAINS);
+        index.rebuild();
+
+        index.notify(new Event("salt/key", "{\"act\": \"delete\", \"id\": \"m2\"}"));
+        assertEquals(minions("m1", "m3"), index.getMinions());
+        assertEquals(minions("m1"), index.getMinions("roles", "web"));
+
+        stubGrains("[\"m3\"]", "{\"return\": [{\"m3\": {\"os\": \"SUSE\"}}]}");
+        index.notify(new Event("salt/job/20160101000000000001/ret/m3",
+                "{\"id\": \"m3\", \"fun\": \"saltutil.refresh_grains\"}"));
+        assertTrue(awaitMinions(index, "os", "SUSE", minions("m1", "m3")));
+        assertEquals(minions(), index.getMinions("os", "Ubuntu"));
+
+        stubGrains("[\"m2\"]", "{\"return\": [{\"m2\": {\"os\": \"Fedora\"}}]}");
+        index.notify(new Event("salt/minion/m2/start", "{\"id\": \"m2\"}"));
+        assertTrue(awaitMinions(index, "os", "Fedora", minions("m2")));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void testFailedLookupMarksMinionStale() throws Exception {
+        stubGrains("\"*\"", ALL_GRAINS);
+        index.rebuild();
+
+        stubFor(post(urlEqualTo("/"))
+                .withRequestBody(containing("\"tgt\":[\"m3\"]"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_INTERNAL_ERROR)));
+        index.notify(new Event("salt/minion/m3/start", "{\"id\": \"m3\"}"));
+        for (int i = 0; i < 100 && index.getStaleMinions().isEmpty(); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(minions("m3"), index.getStaleMinions());
+        assertEquals(minions("m3"), index.getMinions("os", "Ubuntu"));
+
+        index.rebuild();
+        assertEquals(minions(), index.getStaleMinions());
+    }
+
+    @Test
+    public void testRebuildKeepsNewerChanges() throws Exception {
+        stubFor(post(urlEqualTo("/"))
+                .withRequestBody(containing("\"tgt\":\"*\""))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withFixedDelay(1000)
+                .withBody(ALL_GRAINS)));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Integer> rebuild = executor.submit(index::rebuild);
+        Thread.sleep(300);
+
+        // Changed while the rebuild is waiting for the response
+        index.update("m1", Collections.singletonMap("os", "Fedora"));
+        index.update("m4", Collections.singletonMap("os", "Fedora"));
+        index.remove("m2");
+
+        assertEquals(Integer.valueOf(3), rebuild.get(5, TimeUnit.SECONDS));
+        assertEquals(minions("m1", "m3", "m4"), index.getMinions());
+        assertEquals(minions("m1", "m4"), index.getMinions("os", "Fedora"));
+        assertEquals(minions(), index.getMinions("os", "SUSE"));
+        executor.shutdown();
+    }
+
+    private static Set<String> minions(String... minionIds) {
+        return new HashSet<>(Arrays.asList(minionIds));
+    }
+
+    private static boolean awaitMinions(GrainsIndex index, String grain, String value,
+            Set<String> expected) throws InterruptedException {
+        for (int i = 0; i < 100 && !expected.equals(index.getMinions(grain, value)); i++) {
+            Thread.sleep(50);
+        }
+        return expected.equals(index.getMinions(grain, value));
+    }
+
+    private static void stubGrains(String target, String body) {
+        stubFor(post(urlEqualTo("/"))
+                .withRequestBody(containing("\"tgt\":" + target))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(body)));
+    }
+}
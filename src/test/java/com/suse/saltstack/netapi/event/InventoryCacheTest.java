@@ -0,0 +1,160 @@
+package com.suse.saltstack.netapi.event;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.suse.saltstack.netapi.calls.modules.Cmd;
+import com.suse.saltstack.netapi.calls.modules.Grains;
+import com.suse.saltstack.netapi.client.SaltStackClient;
+import com.suse.saltstack.netapi.datatypes.Event;
+import com.suse.saltstack.netapi.datatypes.target.Glob;
+import com.suse.saltstack.netapi.datatypes.target.MinionList;
+import com.suse.saltstack.netapi.datatypes.target.TargetResolver;
+import com.suse.saltstack.netapi.utils.ClientUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Inventory cache unit tests.
+ */
+public class InventoryCacheTest {
+
+    private static final int MOCK_HTTP_PORT = 8889;
+
+    static final String JSON_GET_MINIONS_RESPONSE = ClientUtils.streamToString(
+            InventoryCacheTest.class.getResourceAsStream("/get_minions_response.json"));
+    static final String JSON_GET_MINION_DETAILS_RESPONSE = ClientUtils.streamToString(
+            InventoryCacheTest.class.getResourceAsStream(
+            "/minion_details_response.json"));
+    static final String JSON_KEYS_RESPONSE = ClientUtils.streamToString(
+            InventoryCacheTest.class.getResourceAsStream("/keys_response.json"));
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(MOCK_HTTP_PORT);
+
+    private InventoryCache cache;
+
+    @Before
+    public void init() {
+        SaltStackClient client = new SaltStackClient(
+                URI.create("http://localhost:" + MOCK_HTTP_PORT));
+        cache = new InventoryCache(client);
+    }
+
+    @After
+    public void stop() {
+        cache.close();
+    }
+
+    @Test
+    public void testMinionsInvalidatedByKeyEvent() throws Exception {
+        stubGet("/minions", JSON_GET_MINIONS_RESPONSE);
+        stubGet("/minions/minion2", JSON_GET_MINION_DETAILS_RESPONSE);
+
+        Map<String, Map<String, Object>> minions = cache.getMinions();
+        assertSame(minions, cache.getMinions());
+        Map<String, Object> details = cache.getMinionDetails("minion2");
+        assertSame(details, cache.getMinionDetails("minion2"));
+        verify(1, getRequestedFor(urlEqualTo("/minions")));
+        verify(1, getRequestedFor(urlEqualTo("/minions/minion2")));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+
+        // Another minion's key does not affect the details of minion2
+        cache.notify(new Event("salt/key", "{\"act\": \"delete\", \"id\": \"minion1\"}"));
+        cache.getMinions();
+        cache.getMinionDetails("minion2");
+        verify(2, getRequestedFor(urlEqualTo("/minions")));
+        verify(1, getRequestedFor(urlEqualTo("/minions/minion2")));
+
+        cache.notify(new Event("salt/minion/minion2/start", "{}"));
+        cache.getMinionDetails("minion2");
+        verify(2, getRequestedFor(urlEqualTo("/minions/minion2")));
+    }
+
+    @Test
+    public void testKeysInvalidatedByPendingAuth() throws Exception {
+        stubGet("/keys", JSON_KEYS_RESPONSE);
+
+        cache.keys();
+        cache.notify(new Event("salt/auth", "{\"act\": \"accept\", \"id\": \"m1\"}"));
+        cache.keys();
+        verify(1, getRequestedFor(urlEqualTo("/keys")));
+
+        TargetResolver resolver = cache.getTargetResolver();
+        assertEquals(Collections.singleton("m1"), resolver.getMinions());
+        assertSame(resolver, cache.getTargetResolver());
+
+        cache.notify(new Event("salt/auth", "{\"act\": \"pend\", \"id\": \"m4\"}"));
+        cache.keys();
+        verify(2, getRequestedFor(urlEqualTo("/keys")));
+        assertNotSame(resolver, cache.getTargetResolver());
+    }
+
+    @Test
+    public void testGrainsInvalidatedByStartEvent() throws Exception {
+        stubFor(post(urlEqualTo("/"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"return\": [{\"m1\": {\"os\": \"SUSE\"}}]}")));
+
+        MinionList m1 = new MinionList("m1");
+        Map<String, Map<String, Object>> grains = cache.callSync(Grains.items(false), m1);
+        assertEquals("SUSE", grains.get("m1").get("os"));
+        assertSame(grains, cache.callSync(Grains.items(false), m1));
+        cache.callSync(Grains.items(false), new Glob("m*"));
+        verify(2, postRequestedFor(urlEqualTo("/")));
+
+        // Other functions are never cached
+        stubFor(post(urlEqualTo("/"))
+                .withRequestBody(containing("cmd.run"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"return\": [{\"m1\": \"output\"}]}")));
+        cache.callSync(Cmd.run("ls"), m1);
+        cache.callSync(Cmd.run("ls"), m1);
+        verify(2, postRequestedFor(urlEqualTo("/"))
+                .withRequestBody(containing("cmd.run")));
+
+        // A starting minion drops glob results but keeps lists without it
+        cache.notify(new Event("minion_start", "{\"id\": \"m2\"}"));
+        cache.callSync(Grains.items(false), m1);
+        cache.callSync(Grains.items(false), new Glob("m*"));
+        verify(3, postRequestedFor(urlEqualTo("/"))
+                .withRequestBody(containing("grains.items")));
+
+        cache.notify(new Event("minion_start", "{\"id\": \"m1\"}"));
+        cache.callSync(Grains.items(false), m1);
+        verify(4, postRequestedFor(urlEqualTo("/"))
+                .withRequestBody(containing("grains.items")));
+    }
+
+    private static void stubGet(String url, String body) {
+        stubFor(get(urlEqualTo(url))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(body)));
+    }
+}
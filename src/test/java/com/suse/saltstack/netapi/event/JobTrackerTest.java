@@ -0,0 +1,281 @@
+package com.suse.saltstack.netapi.event;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.google.gson.reflect.TypeToken;
+import com.suse.saltstack.netapi.calls.LocalAsyncResult;
+import com.suse.saltstack.netapi.client.SaltStackClient;
+import com.suse.saltstack.netapi.config.ClientConfig;
+import com.suse.saltstack.netapi.datatypes.Event;
+import com.suse.saltstack.netapi.parser.JsonParser;
+
+import org.glassfish.tyrus.server.Server;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.websocket.CloseReason;
+import javax.websocket.CloseReason.CloseCodes;
+
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Job tracker unit tests.
+ */
+public class JobTrackerTest {
+
+    private static final int MOCK_WS_PORT = 8888;
+    private static final int MOCK_HTTP_PORT = 8889;
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(MOCK_HTTP_PORT);
+
+    private Server serverEndpoint;
+    private EventStream eventStream;
+    private JobTracker tracker;
+
+    @Before
+    public void init() throws Exception {
+        serverEndpoint = new Server("localhost", MOCK_WS_PORT, "/ws", null,
+                WebSocketServerSalt.class);
+        serverEndpoint.start();
+
+        ClientConfig config = new ClientConfig();
+        config.put(ClientConfig.TOKEN, "token");
+        config.put(ClientConfig.URL, URI.create("http://localhost:" + MOCK_WS_PORT));
+        eventStream = new EventStream(config);
+
+        SaltStackClient client = new SaltStackClient(
+                URI.create("http://localhost:" + MOCK_HTTP_PORT));
+        tracker = new JobTracker(client, eventStream);
+    }
+
+    @After
+    public void stop() throws Exception {
+        tracker.close();
+        eventStream.close();
+        serverEndpoint.stop();
+    }
+
+    @Test
+    public void testCompletedByReturnEvents() throws Exception {
+        TrackedJob<Boolean> job = tracker.track(job("20160101000000000001", "m1", "m2"),
+                30, TimeUnit.SECONDS);
+
+        tracker.notify(returnEvent("20160101000000000001", "m1", "true"));
+        assertFalse(job.getResult().isDone());
+        assertEquals(Collections.singletonMap("m1", true), job.getResults());
+        assertEquals(Collections.singleton("m2"), job.getPendingMinions());
+
+        tracker.notify(returnEvent("20160101000000000002", "m2", "false"));
+        tracker.notify(returnEvent("20160101000000000001", "m2", "false"));
+        Map<String, Boolean> expected = new LinkedHashMap<>();
+        expected.put("m1", true);
+        expected.put("m2", false);
+        assertEquals(expected, job.getResult().get(1, TimeUnit.SECONDS));
+        assertTrue(job.getPendingMinions().isEmpty());
+        assertEquals(0, tracker.getTrackedJobCount());
+        verify(0, postRequestedFor(urlMatching(".*")));
+    }
+
+    @Test
+    public void testReturnsBeforeTracking() throws Exception {
+        tracker.notify(returnEvent("20160101000000000001", "m1", "true"));
+
+        TrackedJob<Boolean> job = tracker.track(job("20160101000000000001", "m1"),
+                30, TimeUnit.SECONDS);
+
+        assertEquals(Collections.singletonMap("m1", true),
+                job.getResult().get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLookupOnTimeout() throws Exception {
+        stubFor(post(urlEqualTo("/"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"return\": [{\"m1\": true, \"m2\": false}]}")));
+
+        TrackedJob<Boolean> job = tracker.track(job("20160101000000000001", "m1", "m2",
+                "m3"), 100, TimeUnit.MILLISECONDS);
+        tracker.notify(returnEvent("20160101000000000001", "m1", "true"));
+
+        Map<String, Boolean> expected = new LinkedHashMap<>();
+        expected.put("m1", true);
+        expected.put("m2", false);
+        assertEquals(expected, job.getResult().get(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singleton("m3"), job.getPendingMinions());
+        verify(1, postRequestedFor(urlEqualTo("/"))
+                .withRequestBody(containing("jobs.lookup_jid"))
+                .withRequestBody(containing("20160101000000000001")));
+    }
+
+    @Test
+    public void testLookupOnceOnTimeoutAndClose() throws Exception {
+        stubFor(post(urlEqualTo("/"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"return\": [{\"m1\": true}]}")
+                .withFixedDelay(500)));
+
+        TrackedJob<Boolean> job = tracker.track(job("20160101000000000001", "m1", "m2"),
+                50, TimeUnit.MILLISECONDS);
+        Thread.sleep(200);
+        tracker.eventStreamClosed(new CloseReason(CloseCodes.GOING_AWAY, "shutdown"));
+
+        assertEquals(Collections.singletonMap("m1", true),
+                job.getResult().get(5, TimeUnit.SECONDS));
+        verify(1, postRequestedFor(urlEqualTo("/")));
+    }
+
+    @Test
+    public void testBufferedReturnsLimit() throws Exception {
+        int minions = JobTracker.MAX_BUFFERED_RETURNS + 1;
+        String last = "m" + (minions - 1);
+        stubFor(post(urlEqualTo("/"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"return\": [{\"" + last + "\": true}]}")));
+
+        String[] ids = new String[minions];
+        for (int i = 0; i < minions; i++) {
+            ids[i] = "m" + i;
+            tracker.notify(returnEvent("20160101000000000001", ids[i], "true"));
+        }
+        TrackedJob<Boolean> job = tracker.track(job("20160101000000000001", ids),
+                30, TimeUnit.SECONDS);
+
+        // The dropped return is looked up right away instead of waiting for the timeout
+        assertEquals(minions, job.getResult().get(5, TimeUnit.SECONDS).size());
+        assertTrue(job.getResults().get(last));
+        verify(1, postRequestedFor(urlEqualTo("/")));
+    }
+
+    @Test
+    public void testReconcileAfterGap() throws Exception {
+        stubFor(post(urlEqualTo("/"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"return\": [{\"m1\": true}]}")));
+
+        TrackedJob<Boolean> job = tracker.track(job("20160101000000000001", "m1", "m2"),
+                30, TimeUnit.SECONDS);
+        tracker.eventStreamReconnected(new EventStreamGap(Instant.now(), Instant.now(),
+                new CloseReason(CloseCodes.GOING_AWAY, "restart"), 1));
+
+        // The missed return of m1 is added, the job keeps waiting for m2
+        for (int i = 0; i < 50 && !job.getPendingMinions().equals(
+                Collections.singleton("m2")); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(Collections.singleton("m2"), job.getPendingMinions());
+        assertFalse(job.getResult().isDone());
+
+        tracker.notify(returnEvent("20160101000000000001", "m2", "false"));
+        Map<String, Boolean> expected = new LinkedHashMap<>();
+        expected.put("m1", true);
+        expected.put("m2", false);
+        assertEquals(expected, job.getResult().get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testUnconvertibleReturn() throws Exception {
+        TrackedJob<Boolean> job = tracker.track(job("20160101000000000001", "m1", "m2"),
+                30, TimeUnit.SECONDS);
+
+        // A failed function returns an error instead of the expected type
+        tracker.notify(returnEvent("20160101000000000001", "m1", "{\"error\": 1}"));
+        assertFalse(job.getResult().isDone());
+        assertEquals(Collections.singleton("m1"), job.getFailures().keySet());
+
+        tracker.notify(returnEvent("20160101000000000001", "m2", "true"));
+        assertEquals(Collections.singletonMap("m2", true),
+                job.getResult().get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLookupOnTimeoutAfterFailedReconcile() throws Exception {
+        stubFor(post(urlEqualTo("/"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_INTERNAL_ERROR)));
+
+        TrackedJob<Boolean> job = tracker.track(job("20160101000000000001", "m1", "m2"),
+                1, TimeUnit.SECONDS);
+        tracker.eventStreamReconnected(new EventStreamGap(Instant.now(), Instant.now(),
+                new CloseReason(CloseCodes.GOING_AWAY, "restart"), 1));
+        for (int i = 0; i < 50 && job.getLookupFailure() == null; i++) {
+            Thread.sleep(10);
+        }
+        assertNotNull(job.getLookupFailure());
+        assertFalse(job.getResult().isDone());
+
+        stubFor(post(urlEqualTo("/"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"return\": [{\"m1\": true}]}")));
+        assertEquals(Collections.singletonMap("m1", true),
+                job.getResult().get(5, TimeUnit.SECONDS));
+        verify(2, postRequestedFor(urlEqualTo("/")));
+    }
+
+    @Test
+    public void testNoMinionsTargeted() throws Exception {
+        TrackedJob<Boolean> job = tracker.track(job("20160101000000000001"),
+                30, TimeUnit.SECONDS);
+        assertTrue(job.getResult().get(1, TimeUnit.SECONDS).isEmpty());
+    }
+
+    @Test
+    public void testReturnJid() {
+        assertEquals("20160101000000000001",
+                JobTracker.returnJid("salt/job/20160101000000000001/ret/m1"));
+        assertNull(JobTracker.returnJid("salt/job/20160101000000000001/new"));
+        assertNull(JobTracker.returnJid("salt/auth"));
+        assertNull(JobTracker.returnJid("20160101000000000001"));
+        assertNull(JobTracker.returnJid(null));
+    }
+
+    private static LocalAsyncResult<Boolean> job(String jid, String... minions) {
+        String minionList = Arrays.stream(minions)
+                .map(minion -> "\"" + minion + "\"")
+                .collect(Collectors.joining(", ", "[", "]"));
+        LocalAsyncResult<Boolean> job = new JsonParser<>(
+                new TypeToken<LocalAsyncResult<Boolean>>(){})
+                .parse("{\"jid\": \"" + jid + "\", \"minions\": " + minionList + "}");
+        job.setType(TypeToken.get(Boolean.class));
+        return job;
+    }
+
+    private static Event returnEvent(String jid, String minion, String value) {
+        return JsonParser.EVENTS.parse("{\"tag\": \"salt/job/" + jid + "/ret/" + minion +
+                "\", \"data\": {\"jid\": \"" + jid + "\", \"id\": \"" + minion +
+                "\", \"return\": " + value + ", \"retcode\": 0, \"success\": true}}");
+    }
+}
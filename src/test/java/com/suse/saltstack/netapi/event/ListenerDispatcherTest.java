@@ -0,0 +1,307 @@
+package com.suse.saltstack.netapi.event;
+
+import com.suse.saltstack.netapi.datatypes.Event;
+import com.suse.saltstack.netapi.parser.JsonParser;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.websocket.CloseReason;
+import javax.websocket.CloseReason.CloseCodes;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Listener dispatcher unit tests.
+ */
+public class ListenerDispatcherTest {
+
+    private static final CloseReason CLOSE_REASON =
+            new CloseReason(CloseCodes.GOING_AWAY, "test");
+    private static final EventStreamGap GAP = new EventStreamGap(Instant.EPOCH,
+            Instant.EPOCH.plusSeconds(1), CLOSE_REASON, 1);
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AtomicLong totalDropped = new AtomicLong();
+    private final AtomicBoolean rejected = new AtomicBoolean();
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSynchronousDelivery() {
+        RecordingListener listener = new RecordingListener(null);
+        ListenerDispatcher dispatcher = new ListenerDispatcher(listener, 0,
+                OverflowPolicy.BLOCK, null, totalDropped);
+
+        dispatcher.dispatch(event("a"));
+        dispatcher.close(CLOSE_REASON);
+
+        assertEquals(Arrays.asList("a"), listener.getTags());
+        assertEquals(Thread.currentThread(), listener.thread);
+        assertEquals(CLOSE_REASON, listener.closeReason);
+    }
+
+    @Test
+    public void testQueuedDeliveryInOrder() throws Exception {
+        RecordingListener listener = new RecordingListener(null);
+        ListenerDispatcher dispatcher = new ListenerDispatcher(listener, 16,
+                OverflowPolicy.BLOCK, executor, totalDropped);
+
+        for (int i = 0; i < 10; i++) {
+            dispatcher.dispatch(event(String.valueOf(i)));
+        }
+        dispatcher.close(CLOSE_REASON);
+
+        assertTrue(listener.closed.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("0", "1", "2", "3", "4", "5", "6", "7", "8", "9"),
+                listener.getTags());
+        assertNotEquals(Thread.currentThread(), listener.thread);
+        assertEquals(0, dispatcher.getDroppedEventCount());
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingListener listener = new RecordingListener(release);
+        ListenerDispatcher dispatcher = new ListenerDispatcher(listener, 2,
+                OverflowPolicy.DROP_NEWEST, executor, totalDropped);
+
+        dispatchWhileBlocked(dispatcher, listener, release);
+
+        assertEquals(Arrays.asList("first", "a", "b"), listener.getTags());
+        assertEquals(3, dispatcher.getDroppedEventCount());
+        assertEquals(3, totalDropped.get());
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingListener listener = new RecordingListener(release);
+        ListenerDispatcher dispatcher = new ListenerDispatcher(listener, 2,
+                OverflowPolicy.DROP_OLDEST, executor, totalDropped);
+
+        dispatchWhileBlocked(dispatcher, listener, release);
+
+        assertEquals(Arrays.asList("first", "d", "e"), listener.getTags());
+        assertEquals(3, dispatcher.getDroppedEventCount());
+        assertEquals(3, totalDropped.get());
+    }
+
+    @Test
+    public void testDropOldestKeepsGaps() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        GapRecordingListener listener = new GapRecordingListener(release);
+        ListenerDispatcher dispatcher = new ListenerDispatcher(listener, 2,
+                OverflowPolicy.DROP_OLDEST, executor, totalDropped);
+
+        dispatcher.dispatch(event("first"));
+        assertTrue(listener.started.await(5, TimeUnit.SECONDS));
+        dispatcher.reconnected(GAP);
+        for (String tag : Arrays.asList("a", "b", "c")) {
+            dispatcher.dispatch(event(tag));
+        }
+        release.countDown();
+        dispatcher.close(CLOSE_REASON);
+        assertTrue(listener.closed.await(5, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList("first", "c"), listener.getTags());
+        assertSame(GAP, listener.gap);
+        assertEquals(1, listener.eventsBeforeGap);
+        assertEquals(2, dispatcher.getDroppedEventCount());
+    }
+
+    @Test
+    public void testDropOldestWaitsBehindGaps() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        GapRecordingListener listener = new GapRecordingListener(release);
+        ListenerDispatcher dispatcher = new ListenerDispatcher(listener, 1,
+                OverflowPolicy.DROP_OLDEST, executor, totalDropped);
+
+        dispatcher.dispatch(event("first"));
+        assertTrue(listener.started.await(5, TimeUnit.SECONDS));
+        dispatcher.reconnected(GAP);
+
+        Thread producer = new Thread(() -> dispatcher.dispatch(event("a")));
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        release.countDown();
+        producer.join(5000);
+        dispatcher.close(CLOSE_REASON);
+        assertTrue(listener.closed.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("first", "a"), listener.getTags());
+        assertSame(GAP, listener.gap);
+        assertEquals(0, dispatcher.getDroppedEventCount());
+    }
+
+    @Test
+    public void testRejectedDeliveryIsRescheduled() throws Exception {
+        RecordingListener listener = new RecordingListener(null);
+        ListenerDispatcher dispatcher = new ListenerDispatcher(listener, 4,
+                OverflowPolicy.BLOCK, this::rejectOnce, totalDropped);
+
+        dispatcher.dispatch(event("a"));
+        dispatcher.dispatch(event("b"));
+        dispatcher.close(CLOSE_REASON);
+
+        assertTrue(listener.closed.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("a", "b"), listener.getTags());
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingListener listener = new RecordingListener(release);
+        ListenerDispatcher dispatcher = new ListenerDispatcher(listener, 1,
+                OverflowPolicy.BLOCK, executor, totalDropped);
+
+        dispatcher.dispatch(event("first"));
+        assertTrue(listener.started.await(5, TimeUnit.SECONDS));
+        dispatcher.dispatch(event("a"));
+
+        Thread producer = new Thread(() -> dispatcher.dispatch(event("b")));
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        release.countDown();
+        producer.join(5000);
+        dispatcher.close(CLOSE_REASON);
+        assertTrue(listener.closed.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("first", "a", "b"), listener.getTags());
+        assertEquals(0, dispatcher.getDroppedEventCount());
+    }
+
+    @Test
+    public void testListenerExceptionDoesNotStopDelivery() throws Exception {
+        RecordingListener listener = new RecordingListener(null) {
+            @Override
+            public void notify(Event event) {
+                super.notify(event);
+                throw new IllegalStateException("failing listener");
+            }
+        };
+        ListenerDispatcher dispatcher = new ListenerDispatcher(listener, 4,
+                OverflowPolicy.BLOCK, executor, totalDropped);
+
+        dispatcher.dispatch(event("a"));
+        dispatcher.dispatch(event("b"));
+        dispatcher.close(CLOSE_REASON);
+
+        assertTrue(listener.closed.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("a", "b"), listener.getTags());
+    }
+
+    /**
+     * Dispatch events a to e while the listener is blocked handling the first event.
+     */
+    private void dispatchWhileBlocked(ListenerDispatcher dispatcher,
+            RecordingListener listener, CountDownLatch release) throws Exception {
+        dispatcher.dispatch(event("first"));
+        assertTrue(listener.started.await(5, TimeUnit.SECONDS));
+        for (String tag : Arrays.asList("a", "b", "c", "d", "e")) {
+            dispatcher.dispatch(event(tag));
+        }
+        release.countDown();
+        dispatcher.close(CLOSE_REASON);
+        assertTrue(listener.closed.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Executor rejecting the first task and running the following ones on the executor.
+     */
+    private void rejectOnce(Runnable task) {
+        if (rejected.compareAndSet(false, true)) {
+            throw new RejectedExecutionException("first task");
+        }
+        executor.execute(task);
+    }
+
+    private static Event event(String tag) {
+        return JsonParser.EVENTS.parse("{\"tag\": \"" + tag + "\", \"data\": {}}");
+    }
+
+    /**
+     * Listener recording the events, optionally blocking on the first one.
+     */
+    private static class RecordingListener implements EventListener {
+
+        private final List<Event> events = new ArrayList<>();
+        private final CountDownLatch release;
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        private volatile Thread thread;
+        private volatile CloseReason closeReason;
+
+        RecordingListener(CountDownLatch releaseIn) {
+            release = releaseIn;
+        }
+
+        @Override
+        public void notify(Event event) {
+            thread = Thread.currentThread();
+            synchronized (events) {
+                events.add(event);
+            }
+            started.countDown();
+            if (release != null) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void eventStreamClosed(CloseReason closeReasonIn) {
+            closeReason = closeReasonIn;
+            closed.countDown();
+        }
+
+        List<String> getTags() {
+            synchronized (events) {
+                return events.stream().map(Event::getTag).collect(Collectors.toList());
+            }
+        }
+    }
+
+    /**
+     * Listener also recording the gap and the number of events delivered before it.
+     */
+    private static class GapRecordingListener extends RecordingListener {
+
+        private volatile EventStreamGap gap;
+        private volatile int eventsBeforeGap;
+
+        GapRecordingListener(CountDownLatch releaseIn) {
+            super(releaseIn);
+        }
+
+        @Override
+        public void eventStreamReconnected(EventStreamGap gapIn) {
+            eventsBeforeGap = getTags().size();
+            gap = gapIn;
+        }
+    }
+}
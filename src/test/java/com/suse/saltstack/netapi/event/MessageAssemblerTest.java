@@ -0,0 +1,90 @@
+package com.suse.saltstack.netapi.event;
+
+import com.suse.saltstack.netapi.datatypes.Event;
+import com.suse.saltstack.netapi.exception.MessageTooBigException;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Message assembler unit tests.
+ */
+public class MessageAssemblerTest {
+
+    private static final String EVENT = "data: {\"tag\": \"salt/auth\", " +
+            "\"data\": {\"act\": \"accept\", \"id\": \"minion1\"}}";
+
+    @Test
+    public void testSingleFrame() throws Exception {
+        MessageAssembler assembler = new MessageAssembler(Integer.MAX_VALUE);
+        Event event = assembler.append(EVENT, true);
+        assertEquals("salt/auth", event.getTag());
+        assertEquals("minion1", event.getData().get("id"));
+    }
+
+    @Test
+    public void testMultipleFrames() throws Exception {
+        MessageAssembler assembler = new MessageAssembler(Integer.MAX_VALUE);
+        assertNull(assembler.append(EVENT.substring(0, 3), false));
+        assertNull(assembler.append(EVENT.substring(3, 20), false));
+        Event event = assembler.append(EVENT.substring(20), true);
+        assertEquals("salt/auth", event.getTag());
+
+        // The buffer is empty again for the next message
+        assertEquals("salt/auth", assembler.append(EVENT, true).getTag());
+    }
+
+    @Test
+    public void testServerAckIsIgnored() throws Exception {
+        MessageAssembler assembler = new MessageAssembler(Integer.MAX_VALUE);
+        assertNull(assembler.append("server received message", true));
+        assertNull(assembler.append("server ", false));
+        assertNull(assembler.append("received message", true));
+    }
+
+    @Test
+    public void testBufferIsReused() throws Exception {
+        MessageAssembler assembler = new MessageAssembler(Integer.MAX_VALUE);
+        String data = padding(MessageAssembler.DEFAULT_CAPACITY * 2);
+        String message = "data: {\"tag\": \"big\", \"data\": {\"x\": \"" + data + "\"}}";
+
+        assertEquals(data, assembler.append(message, true).getData().get("x"));
+        int capacity = assembler.getCapacity();
+        assembler.append(EVENT, true);
+        assertEquals(data, assembler.append(message, true).getData().get("x"));
+        assertEquals(capacity, assembler.getCapacity());
+    }
+
+    @Test
+    public void testLargeBufferIsReleased() throws Exception {
+        MessageAssembler assembler = new MessageAssembler(Integer.MAX_VALUE);
+        String data = padding(MessageAssembler.MAX_RETAINED_CAPACITY);
+        assembler.append("data: {\"tag\": \"big\", \"data\": {\"x\": \"" + data + "\"}}",
+                true);
+        assertEquals(MessageAssembler.DEFAULT_CAPACITY, assembler.getCapacity());
+    }
+
+    @Test
+    public void testMessageTooBig() throws Exception {
+        MessageAssembler assembler = new MessageAssembler(10);
+        assembler.append("data: ", false);
+        try {
+            assembler.append("{\"tag\": \"x\"}", true);
+            fail("Expected MessageTooBigException");
+        } catch (MessageTooBigException e) {
+            assertEquals("Message length exceeded the configured maximum " +
+                    "(10 characters)", e.getMessage());
+        }
+    }
+
+    private static String padding(int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, 'a');
+        return new String(chars);
+    }
+}
@@ -0,0 +1,93 @@
+package com.suse.saltstack.netapi.event;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tag filter and tag index unit tests.
+ */
+public class TagIndexTest {
+
+    private static final String RETURN_TAG = "salt/job/20150505113307407682/ret/minion1";
+
+    @Test
+    public void testPrefixFilter() {
+        TagFilter filter = TagFilter.prefix("salt/job/");
+        assertTrue(filter.matches(RETURN_TAG));
+        assertTrue(filter.matches("salt/job/"));
+        assertFalse(filter.matches("salt/jo"));
+        assertFalse(filter.matches("salt/auth"));
+        assertFalse(filter.matches(null));
+    }
+
+    @Test
+    public void testGlobFilter() {
+        TagFilter filter = TagFilter.glob("salt/job/*/ret/*");
+        assertTrue(filter.matches(RETURN_TAG));
+        assertTrue(filter.matches("salt/job/1/ret/"));
+        assertFalse(filter.matches("salt/job/20150505113307407682/new"));
+        assertFalse(filter.matches("salt/auth"));
+
+        assertTrue(TagFilter.glob("salt/beacon/?/*").matches("salt/beacon/m/inotify"));
+        assertFalse(TagFilter.glob("salt/beacon/?/*").matches("salt/beacon/m1/inotify"));
+        assertTrue(TagFilter.glob("*/ret/*").matches(RETURN_TAG));
+        assertTrue(TagFilter.glob("salt/auth").matches("salt/auth"));
+        assertFalse(TagFilter.glob("salt/auth").matches("salt/auth/x"));
+    }
+
+    @Test
+    public void testTrailingStarIsPrefix() {
+        assertEquals(TagFilter.prefix("salt/job/"), TagFilter.glob("salt/job/*"));
+        assertEquals("salt/job/", TagFilter.glob("salt/job/*").getPrefix());
+        assertTrue(TagFilter.glob("salt/job/*").isPrefix());
+        assertFalse(TagFilter.glob("salt/job/*/new").isPrefix());
+        assertEquals("salt/job/", TagFilter.glob("salt/job/*/new").getPrefix());
+    }
+
+    @Test
+    public void testMatch() {
+        TagIndex<String> index = new TagIndex<>();
+        index.add(TagFilter.prefix("salt/job/"), "jobs");
+        index.add(TagFilter.glob("salt/job/*/ret/*"), "returns");
+        index.add(TagFilter.prefix("salt/beacon/"), "beacons");
+        index.add(TagFilter.prefix(""), "all");
+
+        assertEquals(Arrays.asList("all", "jobs", "returns"), index.match(RETURN_TAG));
+        assertEquals(Arrays.asList("all", "jobs"),
+                index.match("salt/job/20150505113307407682/new"));
+        assertEquals(Arrays.asList("all"), index.match("salt/auth"));
+        assertEquals(Collections.emptyList(), index.match(null));
+    }
+
+    @Test
+    public void testMatchIsDistinct() {
+        TagIndex<String> index = new TagIndex<>();
+        assertTrue(index.add(TagFilter.prefix("salt/"), "listener"));
+        assertTrue(index.add(TagFilter.glob("salt/job/*"), "listener"));
+        assertFalse(index.add(TagFilter.prefix("salt/"), "listener"));
+
+        assertEquals(2, index.size());
+        assertEquals(Arrays.asList("listener"), index.match(RETURN_TAG));
+    }
+
+    @Test
+    public void testRemove() {
+        TagIndex<String> index = new TagIndex<>();
+        index.add(TagFilter.prefix("salt/job/"), "jobs");
+        index.add(TagFilter.glob("salt/job/*/ret/*"), "jobs");
+        index.add(TagFilter.prefix("salt/"), "salt");
+
+        assertTrue(index.remove("jobs"));
+        assertFalse(index.remove("jobs"));
+        assertEquals(1, index.size());
+        assertEquals(Arrays.asList("salt"), index.match(RETURN_TAG));
+        assertTrue(index.remove("salt"));
+        assertEquals(Collections.emptyList(), index.match(RETURN_TAG));
+    }
+}
@@ -1,7 +1,13 @@
 package com.suse.saltstack.netapi.event;
 
+import com.google.gson.reflect.TypeToken;
 import com.suse.saltstack.netapi.config.ClientConfig;
 import com.suse.saltstack.netapi.datatypes.Event;
+import com.suse.saltstack.netapi.datatypes.Token;
+import com.suse.saltstack.netapi.exception.MessageTooBigException;
+import com.suse.saltstack.netapi.metrics.HistogramEventStreamMetrics;
+import com.suse.saltstack.netapi.metrics.HistogramEventStreamMetrics.ListenerStats;
+import com.suse.saltstack.netapi.parser.JsonParser;
 
 import org.glassfish.tyrus.server.Server;
 import org.junit.After;
@@ -16,9 +22,13 @@ import javax.websocket.DeploymentException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * SaltStack events API WebSocket implementation test cases.
@@ -77,28 +87,184 @@ public class TyrusWebSocketEventsTest {
         CountDownLatch latch = new CountDownLatch(1);
         int target = 6;
 
-        try (EventStream streamEvents = new EventStream(clientConfig)) {
-            EventCountClient eventCountClient = new EventCountClient(target, latch);
-            streamEvents.addEventListener(eventCountClient);
-
+        EventCountClient eventCountClient = new EventCountClient(target, latch);
+        try (EventStream streamEvents = new EventStream(clientConfig, eventCountClient)) {
             latch.await(30, TimeUnit.SECONDS);
             Assert.assertTrue(eventCountClient.counter == target);
         }
     }
 
     /**
-     * Tests: stream event content
+     * Tests: events are delivered on the dispatch executor if a queue capacity is set.
      *
      * @throws Exception in case of an error
      */
     @Test
-    public void testEventMessageContent() throws Exception {
+    public void testQueuedDispatch() throws Exception {
+        clientConfig.put(ClientConfig.EVENT_QUEUE_CAPACITY, 2);
+        clientConfig.put(ClientConfig.EVENT_QUEUE_OVERFLOW_POLICY, OverflowPolicy.BLOCK);
         CountDownLatch latch = new CountDownLatch(1);
+        int target = 6;
+
+        EventCountClient eventCountClient = new EventCountClient(target, latch);
+        try (EventStream streamEvents = new EventStream(clientConfig, eventCountClient)) {
+            latch.await(30, TimeUnit.SECONDS);
+            Assert.assertEquals(target, eventCountClient.counter);
+            Assert.assertTrue(eventCountClient.thread.getName()
+                    .startsWith("saltstack-events-"));
+            Assert.assertEquals(0, streamEvents.getDroppedEventCount());
+            Assert.assertEquals(0, streamEvents.getDroppedEventCount(eventCountClient));
+        }
+    }
+
+    /**
+     * Tests: received frames, events and dispatches are reported to the metrics.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void testMetrics() throws Exception {
+        HistogramEventStreamMetrics metrics = new HistogramEventStreamMetrics();
+        clientConfig.put(ClientConfig.EVENT_STREAM_METRICS, metrics);
+        clientConfig.put(ClientConfig.EVENT_QUEUE_CAPACITY, 8);
+        clientConfig.put(ClientConfig.WEBSOCKET_MAX_MESSAGE_LENGTH, 0x1000);
+        CountDownLatch latch = new CountDownLatch(1);
+        int target = 6;
+
+        EventCountClient eventCountClient = new EventCountClient(target, latch);
+        try (EventStream streamEvents = new EventStream(clientConfig, eventCountClient)) {
+            latch.await(30, TimeUnit.SECONDS);
+            ListenerStats stats = metrics.getListenerStats(eventCountClient);
+            long deadline = System.currentTimeMillis() + 30000;
+            while (stats.getDispatch().getCount() < target &&
+                    System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            Map<String, Long> counts = new HashMap<>();
+            counts.put(HistogramEventStreamMetrics.UNSEGMENTED, 3L);
+            counts.put("salt/auth", 1L);
+            counts.put("salt/job", 2L);
+            Assert.assertEquals(counts, metrics.getEventCounts());
+            Assert.assertEquals(target, metrics.getParse().getCount());
+            Assert.assertEquals(target, stats.getDispatch().getCount());
+            Assert.assertEquals(target, stats.getQueueSize().getCount());
+            Assert.assertEquals(0, stats.getDroppedCount());
+            Assert.assertEquals(0, metrics.getPartialFrameCount());
+            Assert.assertEquals(0, streamEvents.getQueuedEventCount());
+            Assert.assertEquals(0, streamEvents.getQueuedEventCount(eventCountClient));
+
+            long characters = metrics.getCharacterCount();
+            String first = "data: {\"tag\": \"salt/beacon/m1/load/\", ";
+            String last = "\"data\": {}}";
+            streamEvents.onMessage(first, false);
+            streamEvents.onMessage(last, true);
+            Assert.assertEquals(1, metrics.getPartialFrameCount());
+            Assert.assertEquals(characters + first.length() + last.length(),
+                    metrics.getCharacterCount());
+            Assert.assertEquals(Long.valueOf(1),
+                    metrics.getEventCounts().get("salt/beacon"));
+
+            try {
+                streamEvents.onMessage(new String(new char[0x1001]), true);
+                Assert.fail("Expected MessageTooBigException");
+            } catch (MessageTooBigException e) {
+                Assert.assertEquals(1, metrics.getRejectedMessageCount());
+            }
+        }
+    }
+
+    /**
+     * Tests: listeners subscribed with a tag filter are notified of matching events only.
+     * The events are passed to the stream directly, with tags that the server does not
+     * send.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void testTagFilteredListeners() throws Exception {
+        EventContentClient beaconEvents = new EventContentClient(new CountDownLatch(1));
+        EventContentClient presenceEvents = new EventContentClient(new CountDownLatch(1));
 
         try (EventStream streamEvents = new EventStream(clientConfig)) {
-            EventContentClient eventContentClient = new EventContentClient(latch);
-            streamEvents.addEventListener(eventContentClient);
+            streamEvents.addEventListener(beaconEvents,
+                    TagFilter.glob("salt/beacon/*/inotify/*"));
+            streamEvents.addEventListener(beaconEvents, TagFilter.prefix("salt/beacon/"));
+            streamEvents.addEventListener(presenceEvents,
+                    TagFilter.prefix("salt/presence/"));
+            Assert.assertEquals(2, streamEvents.getListenerCount());
+
+            streamEvents.onMessage("data: {\"tag\": \"salt/beacon/m1/inotify/etc\", " +
+                    "\"data\": {}}", true);
+            streamEvents.onMessage("data: {\"tag\": \"salt/beacon/m1/load/\", " +
+                    "\"data\": {}}", true);
+            streamEvents.onMessage("data: {\"tag\": \"salt/presence/change\", " +
+                    "\"data\": {}}", true);
+
+            synchronized (beaconEvents.events) {
+                Assert.assertEquals(2, beaconEvents.events.size());
+                Assert.assertEquals("salt/beacon/m1/inotify/etc",
+                        beaconEvents.events.get(0).getTag());
+            }
+            synchronized (presenceEvents.events) {
+                Assert.assertEquals(1, presenceEvents.events.size());
+            }
 
+            streamEvents.removeEventListener(beaconEvents);
+            streamEvents.onMessage("data: {\"tag\": \"salt/beacon/m1/load/\", " +
+                    "\"data\": {}}", true);
+            synchronized (beaconEvents.events) {
+                Assert.assertEquals(2, beaconEvents.events.size());
+            }
+        }
+    }
+
+    /**
+     * Tests: a listener registered with and without a tag filter is notified once per
+     * event and removed completely.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void testListenerRegisteredTwice() throws Exception {
+        EventContentClient listener = new EventContentClient(new CountDownLatch(1));
+
+        try (EventStream streamEvents = new EventStream(clientConfig)) {
+            streamEvents.addEventListener(listener, TagFilter.prefix("salt/beacon/"));
+            streamEvents.addEventListener(listener);
+            streamEvents.addEventListener(listener);
+            streamEvents.addEventListener(listener, TagFilter.prefix("salt/beacon/"));
+            Assert.assertEquals(1, streamEvents.getListenerCount());
+
+            streamEvents.onMessage("data: {\"tag\": \"salt/beacon/m1/load/\", " +
+                    "\"data\": {}}", true);
+            streamEvents.onMessage("data: {\"tag\": \"salt/presence/change\", " +
+                    "\"data\": {}}", true);
+            synchronized (listener.events) {
+                Assert.assertEquals(2, listener.events.size());
+            }
+
+            streamEvents.removeEventListener(listener);
+            Assert.assertEquals(0, streamEvents.getListenerCount());
+            streamEvents.onMessage("data: {\"tag\": \"salt/beacon/m1/load/\", " +
+                    "\"data\": {}}", true);
+            synchronized (listener.events) {
+                Assert.assertEquals(2, listener.events.size());
+            }
+        }
+    }
+
+    /**
+     * Tests: stream event content
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void testEventMessageContent() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+
+        EventContentClient eventContentClient = new EventContentClient(latch);
+        try (EventStream streamEvents = new EventStream(clientConfig, eventContentClient)) {
             latch.await(30, TimeUnit.SECONDS);
             synchronized (eventContentClient.events) {
                 Event event = eventContentClient.events.get(1);
@@ -180,10 +346,8 @@ public class TyrusWebSocketEventsTest {
         clientConfig.put(ClientConfig.WEBSOCKET_MAX_MESSAGE_LENGTH, maxMessageLength);
         CountDownLatch latch = new CountDownLatch(1);
 
-        try (EventStream streamEvents = new EventStream(clientConfig)) {
-            EventStreamClosedClient eventListener = new EventStreamClosedClient(latch);
-            streamEvents.addEventListener(eventListener);
-
+        EventStreamClosedClient eventListener = new EventStreamClosedClient(latch);
+        try (EventStream streamEvents = new EventStream(clientConfig, eventListener)) {
             latch.await(30, TimeUnit.SECONDS);
             Assert.assertTrue(streamEvents.isEventStreamClosed());
             Assert.assertEquals(CloseCodes.TOO_BIG,
@@ -194,6 +358,87 @@ public class TyrusWebSocketEventsTest {
         }
     }
 
+    /**
+     * Tests: a reconnecting stream keeps its listeners when the server restarts, reports
+     * the gap before any new event and asks the token provider for a new token after a
+     * failed handshake.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void testReconnect() throws Exception {
+        clientConfig.put(ClientConfig.EVENT_STREAM_RECONNECT, true);
+        clientConfig.put(ClientConfig.EVENT_STREAM_RECONNECT_MIN_DELAY, 50);
+        clientConfig.put(ClientConfig.EVENT_STREAM_RECONNECT_MAX_DELAY, 200);
+        AtomicInteger tokenRequests = new AtomicInteger();
+        TokenProvider tokenProvider = () -> newToken(tokenRequests);
+
+        ReconnectClient listener = new ReconnectClient(12);
+        try (EventStream streamEvents = new EventStream(clientConfig, tokenProvider,
+                listener)) {
+            for (int i = 0; i < 300 && listener.events.size() < 6; i++) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(6, listener.events.size());
+
+            serverEndpoint.stop();
+            for (int i = 0; i < 300 && !streamEvents.isReconnecting(); i++) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(streamEvents.isReconnecting());
+            Thread.sleep(500);
+            serverEndpoint.start();
+
+            Assert.assertTrue(listener.latch.await(30, TimeUnit.SECONDS));
+            Assert.assertFalse(streamEvents.isReconnecting());
+            Assert.assertNull(listener.closeReason);
+            Assert.assertEquals(1, listener.gaps.size());
+            Assert.assertTrue(listener.gaps.get(0).getAttempts() > 1);
+            Assert.assertTrue(tokenRequests.get() > 0);
+
+            // The gap is reported between the events of both connections
+            Assert.assertEquals(6, listener.eventsBeforeGap);
+            Assert.assertEquals(12, listener.events.size());
+        }
+        Assert.assertTrue(listener.closed.await(30, TimeUnit.SECONDS));
+        Assert.assertEquals(CloseCodes.GOING_AWAY, listener.closeReason.getCloseCode());
+    }
+
+    /**
+     * Tests: a reconnecting stream closes for good after the maximum number of attempts.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void testReconnectGivesUp() throws Exception {
+        clientConfig.put(ClientConfig.EVENT_STREAM_RECONNECT, true);
+        clientConfig.put(ClientConfig.EVENT_STREAM_RECONNECT_MIN_DELAY, 10);
+        clientConfig.put(ClientConfig.EVENT_STREAM_RECONNECT_MAX_DELAY, 20);
+        clientConfig.put(ClientConfig.EVENT_STREAM_RECONNECT_MAX_ATTEMPTS, 3);
+
+        ReconnectClient listener = new ReconnectClient(1);
+        try (EventStream streamEvents = new EventStream(clientConfig, listener)) {
+            serverEndpoint.stop();
+            Assert.assertTrue(listener.closed.await(30, TimeUnit.SECONDS));
+            Assert.assertFalse(streamEvents.isReconnecting());
+            Assert.assertEquals(0, streamEvents.getListenerCount());
+            Assert.assertEquals("Reconnecting failed 3 times",
+                    listener.closeReason.getReasonPhrase());
+            Assert.assertTrue(listener.gaps.isEmpty());
+        }
+    }
+
+    /**
+     * Create a token as returned on login and count the requests.
+     *
+     * @param requests the counter to increment
+     * @return the token
+     */
+    private static Token newToken(AtomicInteger requests) {
+        requests.incrementAndGet();
+        return new JsonParser<>(TypeToken.get(Token.class)).parse("{\"token\": \"token\"}");
+    }
+
     /**
      * At the end of the test {@link Server} stops
      * and release its address for other test execution.
@@ -208,7 +453,8 @@ public class TyrusWebSocketEventsTest {
      */
     private class EventCountClient implements EventListener {
         private final int targetCount;
-        private int counter = 0;
+        private volatile int counter = 0;
+        private volatile Thread thread;
         private final CountDownLatch latch;
 
         public EventCountClient(int targetCount, CountDownLatch latchIn) {
@@ -218,6 +464,7 @@ public class TyrusWebSocketEventsTest {
 
         @Override
         public void notify(Event event) {
+            thread = Thread.currentThread();
             counter++;
             if (counter == targetCount) {
                 latch.countDown();
@@ -255,6 +502,40 @@ public class TyrusWebSocketEventsTest {
         }
     }
 
+    /**
+     * Event listener client recording events and gaps.
+     */
+    private class ReconnectClient implements EventListener {
+        final List<Event> events = new CopyOnWriteArrayList<>();
+        final List<EventStreamGap> gaps = new CopyOnWriteArrayList<>();
+        final CountDownLatch latch;
+        final CountDownLatch closed = new CountDownLatch(1);
+        volatile int eventsBeforeGap;
+        volatile CloseReason closeReason;
+
+        public ReconnectClient(int targetCount) {
+            this.latch = new CountDownLatch(targetCount);
+        }
+
+        @Override
+        public void notify(Event event) {
+            events.add(event);
+            latch.countDown();
+        }
+
+        @Override
+        public void eventStreamReconnected(EventStreamGap gap) {
+            eventsBeforeGap = events.size();
+            gaps.add(gap);
+        }
+
+        @Override
+        public void eventStreamClosed(CloseReason closeReasonIn) {
+            this.closeReason = closeReasonIn;
+            closed.countDown();
+        }
+    }
+
     /**
      * Simple Event ListenerClient
      */
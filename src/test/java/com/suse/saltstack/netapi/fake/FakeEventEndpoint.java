@@ -0,0 +1,152 @@
+package com.suse.saltstack.netapi.fake;
+
+import com.suse.saltstack.netapi.utils.DaemonThreadFactory;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+
+import javax.websocket.CloseReason;
+import javax.websocket.CloseReason.CloseCodes;
+import javax.websocket.Endpoint;
+import javax.websocket.EndpointConfig;
+import javax.websocket.MessageHandler;
+import javax.websocket.Session;
+import javax.websocket.server.ServerEndpointConfig;
+
+/**
+ * The {@code /ws/{token}} endpoint of a {@link FakeSaltApi}, streaming events to all
+ * sessions opened with a valid token. Events are sent one per frame in the order they
+ * were published, by a single thread, so a slow client delays all others like on the
+ * real event bus.
+ */
+public class FakeEventEndpoint extends Endpoint {
+
+    private final Predicate<String> tokenValidator;
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private final ExecutorService sender =
+            Executors.newSingleThreadExecutor(new DaemonThreadFactory("fake-salt-events-"));
+
+    /**
+     * Create an endpoint accepting the tokens the given validator accepts.
+     *
+     * @param tokenValidatorIn returns true for valid tokens
+     */
+    public FakeEventEndpoint(Predicate<String> tokenValidatorIn) {
+        tokenValidator = tokenValidatorIn;
+    }
+
+    /**
+     * Return the configuration deploying this endpoint instance at {@code /{token}}.
+     *
+     * @return the configuration
+     */
+    public ServerEndpointConfig getConfig() {
+        return ServerEndpointConfig.Builder.create(FakeEventEndpoint.class, "/{token}")
+                .configurator(new InstanceConfigurator(this)).build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onOpen(Session session, EndpointConfig config) {
+        if (!tokenValidator.test(session.getPathParameters().get("token"))) {
+            try {
+                session.close(new CloseReason(CloseCodes.VIOLATED_POLICY,
+                        "Invalid token"));
+            } catch (IOException e) {
+                // the session is gone anyway
+            }
+            return;
+        }
+        // Clients announce themselves with "websocket client ready"
+        session.addMessageHandler(new MessageHandler.Whole<String>() {
+            @Override
+            public void onMessage(String message) {
+            }
+        });
+        sessions.add(session);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onClose(Session session, CloseReason closeReason) {
+        sessions.remove(session);
+    }
+
+    /**
+     * Return the number of connected sessions.
+     *
+     * @return the number of sessions
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Send a message to all connected sessions.
+     *
+     * @param message the message
+     */
+    public void send(String message) {
+        if (!sessions.isEmpty()) {
+            sender.execute(() -> sessions.forEach(session -> send(session, message)));
+        }
+    }
+
+    /**
+     * Send a message to a session, dropping the session if sending fails.
+     *
+     * @param session the session
+     * @param message the message
+     */
+    private void send(Session session, String message) {
+        try {
+            if (session.isOpen()) {
+                session.getBasicRemote().sendText(message);
+            } else {
+                sessions.remove(session);
+            }
+        } catch (IOException | IllegalStateException e) {
+            sessions.remove(session);
+        }
+    }
+
+    /**
+     * Close all sessions and stop sending events.
+     */
+    public void close() {
+        sender.shutdownNow();
+        for (Session session : sessions) {
+            try {
+                session.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+        sessions.clear();
+    }
+
+    /**
+     * Configurator returning the given endpoint instance for all sessions.
+     */
+    private static class InstanceConfigurator extends ServerEndpointConfig.Configurator {
+
+        private final Endpoint endpoint;
+
+        InstanceConfigurator(Endpoint endpointIn) {
+            endpoint = endpointIn;
+        }
+
+        @Override
+        public <T> T getEndpointInstance(Class<T> endpointClass) {
+            return endpointClass.cast(endpoint);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.suse.saltstack.netapi.fake;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A job published by a {@link FakeSaltApi}, collecting the returns of its minions.
+ */
+public class FakeJob {
+
+    private final String jid;
+    private final String fun;
+    private final List<?> arg;
+    private final Object target;
+    private final String targetType;
+    private final String user;
+    private final Date startTime;
+    private final List<String> minions;
+    private final Map<String, Object> returns = new LinkedHashMap<>();
+    private final CompletableFuture<Map<String, Object>> completion =
+            new CompletableFuture<>();
+
+    /**
+     * Create a job.
+     *
+     * @param jidIn the job id
+     * @param funIn the function
+     * @param argIn the positional arguments of the function
+     * @param targetIn the target expression
+     * @param targetTypeIn the target type
+     * @param userIn the user publishing the job
+     * @param minionsIn the targeted minions
+     */
+    public FakeJob(String jidIn, String funIn, List<?> argIn, Object targetIn,
+            String targetTypeIn, String userIn, List<String> minionsIn) {
+        jid = jidIn;
+        fun = funIn;
+        arg = argIn == null ? new ArrayList<>() : argIn;
+        target = targetIn;
+        targetType = targetTypeIn == null ? "glob" : targetTypeIn;
+        user = userIn;
+        startTime = new Date();
+        minions = minionsIn;
+        if (minions.isEmpty()) {
+            completion.complete(new HashMap<>());
+        }
+    }
+
+    /**
+     * @return the job id
+     */
+    public String getJid() {
+        return jid;
+    }
+
+    /**
+     * @return the function
+     */
+    public String getFunction() {
+        return fun;
+    }
+
+    /**
+     * @return the positional arguments of the function
+     */
+    public List<?> getArguments() {
+        return arg;
+    }
+
+    /**
+     * @return the targeted minions
+     */
+    public List<String> getMinions() {
+        return minions;
+    }
+
+    /**
+     * Add the return of a minion, completing the job once all minions returned.
+     *
+     * @param minion the minion id
+     * @param result the result of the function
+     */
+    public synchronized void addReturn(String minion, Object result) {
+        returns.put(minion, result);
+        if (returns.size() == minions.size()) {
+            completion.complete(new LinkedHashMap<>(returns));
+        }
+    }
+
+    /**
+     * Return the results of the minions that returned so far.
+     *
+     * @return the results by minion id
+     */
+    public synchronized Map<String, Object> getReturns() {
+        return new LinkedHashMap<>(returns);
+    }
+
+    /**
+     * Return a future completed with the results once all minions returned.
+     *
+     * @return the future
+     */
+    public CompletableFuture<Map<String, Object>> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * Return the job as listed by the jobs endpoint and runner.
+     *
+     * @return the job information
+     */
+    public Map<String, Object> getInfo() {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("Function", fun);
+        info.put("Arguments", arg);
+        info.put("Target", target instanceof List ?
+                String.join(",", toStrings((List<?>) target)) : target);
+        info.put("Target-type", targetType);
+        info.put("User", user);
+        info.put("StartTime", formatStartTime(startTime));
+        return info;
+    }
+
+    /**
+     * Return the event data describing the published job.
+     *
+     * @return the data of the new job event
+     */
+    public Map<String, Object> getNewJobData() {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("jid", jid);
+        data.put("tgt", target);
+        data.put("tgt_type", targetType);
+        data.put("user", user);
+        data.put("fun", fun);
+        data.put("arg", arg);
+        data.put("minions", minions);
+        return data;
+    }
+
+    /**
+     * Return the event data of the return of a minion.
+     *
+     * @param minion the minion id
+     * @param result the result of the function
+     * @return the data of the return event
+     */
+    public Map<String, Object> getReturnData(String minion, Object result) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("jid", jid);
+        data.put("id", minion);
+        data.put("cmd", "_return");
+        data.put("fun", fun);
+        data.put("fun_args", arg);
+        data.put("return", result);
+        data.put("retcode", 0);
+        data.put("success", true);
+        return data;
+    }
+
+    /**
+     * Convert the elements of a list target to strings.
+     *
+     * @param list the target
+     * @return the minion ids
+     */
+    private static List<String> toStrings(List<?> list) {
+        List<String> strings = new ArrayList<>(list.size());
+        list.forEach(e -> strings.add(String.valueOf(e)));
+        return strings;
+    }
+
+    /**
+     * Format a start time the way the master lists jobs, e.g.
+     * {@code 2015, Mar 04 19:29:51.636000}.
+     *
+     * @param date the start time
+     * @return the formatted time
+     */
+    private static String formatStartTime(Date date) {
+        return new SimpleDateFormat("yyyy, MMM dd HH:mm:ss.SSS'000'", Locale.US)
+                .format(date);
+    }
+}
@@ -0,0 +1,244 @@
+package com.suse.saltstack.netapi.fake;
+
+import com.suse.saltstack.netapi.datatypes.target.Compound;
+import com.suse.saltstack.netapi.datatypes.target.Glob;
+import com.suse.saltstack.netapi.datatypes.target.Grain;
+import com.suse.saltstack.netapi.datatypes.target.GrainsLookup;
+import com.suse.saltstack.netapi.datatypes.target.MinionList;
+import com.suse.saltstack.netapi.datatypes.target.PCRE;
+import com.suse.saltstack.netapi.datatypes.target.Target;
+import com.suse.saltstack.netapi.datatypes.target.TargetResolver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A fixed set of synthetic minions named {@code minion-0001}, {@code minion-0002}, ...
+ * with generated grains, resolving targets and returning results of execution module
+ * functions the way real minions would.
+ * <p>
+ * {@code test.ping}, {@code test.echo}, {@code test.arg}, {@code test.version},
+ * {@code grains.items} and {@code grains.item} return what the function returns on a
+ * real minion, any other function returns a string of the configured return size.
+ */
+public class FakeMinions implements GrainsLookup {
+
+    private static final List<String> OS = Arrays.asList("SLES", "openSUSE", "Ubuntu");
+    private static final String VERSION = "2015.5.2";
+
+    private final List<String> ids;
+    private final Map<String, Map<String, Object>> grains;
+    private final TargetResolver resolver;
+    private final String payload;
+
+    /**
+     * Create the given number of minions.
+     *
+     * @param countIn the number of minions
+     * @param returnSizeIn the length of the results of functions that are not simulated
+     */
+    public FakeMinions(int countIn, int returnSizeIn) {
+        if (countIn < 0 || returnSizeIn < 0) {
+            throw new IllegalArgumentException("Negative minion count or return size");
+        }
+        List<String> idList = new ArrayList<>(countIn);
+        Map<String, Map<String, Object>> grainsMap = new LinkedHashMap<>();
+        for (int i = 1; i <= countIn; i++) {
+            String id = String.format("minion-%04d", i);
+            idList.add(id);
+            grainsMap.put(id, generateGrains(id, i));
+        }
+        ids = Collections.unmodifiableList(idList);
+        grains = Collections.unmodifiableMap(grainsMap);
+        resolver = new TargetResolver(ids, this);
+        char[] chars = new char[returnSizeIn];
+        Arrays.fill(chars, 'x');
+        payload = new String(chars);
+    }
+
+    /**
+     * Generate the grains of a minion.
+     *
+     * @param id the minion id
+     * @param index the index of the minion starting with 1
+     * @return the grains
+     */
+    private static Map<String, Object> generateGrains(String id, int index) {
+        Map<String, Object> grains = new LinkedHashMap<>();
+        grains.put("id", id);
+        grains.put("host", id);
+        grains.put("fqdn", id + ".example.com");
+        grains.put("kernel", "Linux");
+        grains.put("os", OS.get(index % OS.size()));
+        grains.put("osarch", "x86_64");
+        grains.put("num_cpus", 1 << index % 4);
+        grains.put("mem_total", 1024 << index % 3);
+        grains.put("saltversion", VERSION);
+        List<String> roles = new ArrayList<>();
+        roles.add("web");
+        if (index % 10 == 0) {
+            roles.add("db");
+        }
+        grains.put("roles", roles);
+        return grains;
+    }
+
+    /**
+     * Return the ids of all minions.
+     *
+     * @return the minion ids in order
+     */
+    public List<String> getIds() {
+        return ids;
+    }
+
+    /**
+     * Return the grains of the given minion.
+     *
+     * @param id the minion id
+     * @return the grains, or null if there is no such minion
+     */
+    public Map<String, Object> getGrains(String id) {
+        return grains.get(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getValues(String grain) {
+        Set<String> values = new HashSet<>();
+        grains.values().forEach(g -> values.addAll(values(g, grain)));
+        return values;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getMinions(String grain, String value) {
+        Set<String> minions = new HashSet<>();
+        for (Map.Entry<String, Map<String, Object>> entry : grains.entrySet()) {
+            if (values(entry.getValue(), grain).contains(value)) {
+                minions.add(entry.getKey());
+            }
+        }
+        return minions;
+    }
+
+    /**
+     * Return the values of a grain of a minion as strings, one per element in case of
+     * a list.
+     *
+     * @param minionGrains the grains of the minion
+     * @param grain the grain
+     * @return the values
+     */
+    private static List<String> values(Map<String, Object> minionGrains, String grain) {
+        Object value = minionGrains.get(grain);
+        if (value == null) {
+            return Collections.emptyList();
+        } else if (value instanceof List) {
+            List<String> values = new ArrayList<>();
+            ((List<?>) value).forEach(v -> values.add(String.valueOf(v)));
+            return values;
+        }
+        return Collections.singletonList(String.valueOf(value));
+    }
+
+    /**
+     * Return the minions matched by the given target as sent in a lowstate chunk.
+     *
+     * @param tgt the target expression, a string or a list in case of list targets
+     * @param exprForm the target type, glob if null
+     * @return the matched minion ids, empty if the target type is not supported
+     */
+    public List<String> match(Object tgt, String exprForm) {
+        if (tgt == null) {
+            return new ArrayList<>();
+        }
+        Target<?> target;
+        String type = exprForm == null ? "glob" : exprForm;
+        switch (type) {
+            case "glob":
+                target = new Glob(tgt.toString());
+                break;
+            case "pcre":
+                target = new PCRE(tgt.toString());
+                break;
+            case "list":
+                target = tgt instanceof List ? new MinionList(toStrings((List<?>) tgt)) :
+                        new MinionList(tgt.toString().split(","));
+                break;
+            case "grain":
+                String[] grain = tgt.toString().split(Grain.DELIMITER, 2);
+                target = new Grain(grain[0], grain.length > 1 ? grain[1] : "");
+                break;
+            case "compound":
+                target = new Compound(tgt.toString());
+                break;
+            default:
+                return new ArrayList<>();
+        }
+        try {
+            List<String> matched = new ArrayList<>(
+                    resolver.resolve(target).orElse(Collections.emptySet()));
+            Collections.sort(matched);
+            return matched;
+        } catch (IllegalArgumentException e) {
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Return the result of the given function on the given minion.
+     *
+     * @param id the minion id
+     * @param fun the function
+     * @param arg the positional arguments, or null
+     * @return the result
+     */
+    public Object execute(String id, String fun, List<?> arg) {
+        List<?> args = arg == null ? new ArrayList<>() : arg;
+        switch (fun) {
+            case "test.ping":
+                return true;
+            case "test.echo":
+                return args.isEmpty() ? "" : args.get(0);
+            case "test.arg":
+                Map<String, Object> result = new HashMap<>();
+                result.put("args", args);
+                result.put("kwargs", new HashMap<>());
+                return result;
+            case "test.version":
+                return VERSION;
+            case "grains.items":
+                return grains.get(id);
+            case "grains.item":
+                Map<String, Object> items = new LinkedHashMap<>();
+                args.forEach(a -> items.put(a.toString(), grains.get(id).get(a)));
+                return items;
+            default:
+                return payload;
+        }
+    }
+
+    /**
+     * Convert the elements of the given list to strings.
+     *
+     * @param list the list
+     * @return the strings
+     */
+    private static List<String> toStrings(List<?> list) {
+        List<String> strings = new ArrayList<>(list.size());
+        list.forEach(e -> strings.add(String.valueOf(e)));
+        return strings;
+    }
+}
@@ -0,0 +1,1002 @@
+package com.suse.saltstack.netapi.fake;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.suse.saltstack.netapi.utils.DaemonThreadFactory;
+
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
+import org.glassfish.tyrus.container.grizzly.server.WebSocketAddOns;
+import org.glassfish.tyrus.core.TyrusWebSocketEngine;
+import org.glassfish.tyrus.server.TyrusServerContainer;
+import org.glassfish.tyrus.spi.WebSocketEngine;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.websocket.DeploymentException;
+import javax.websocket.server.ServerEndpointConfig;
+
+/**
+ * An in-process stand-in for the rest_cherrypy netapi of a salt master with a number of
+ * synthetic {@link FakeMinions}, for throughput and soak tests of the client without a
+ * real master. It serves {@code /login}, {@code /logout}, {@code /minions},
+ * {@code /jobs}, {@code /run}, {@code /keys}, {@code /stats}, {@code /hook} and the
+ * lowstate endpoint {@code /} with the local, runner and wheel clients, and streams the
+ * events of the jobs it runs on {@code /ws/{token}}, all on the same port.
+ * <p>
+ * Every response is delayed by the configured latency. The minions of a job return
+ * after a random time within the configured job duration, each one publishing a
+ * {@code salt/job/<jid>/ret/<minion-id>} event, and synchronous local calls are answered
+ * once all targeted minions returned. Any credentials are accepted on login.
+ * <pre>
+ * try (FakeSaltApi api = new FakeSaltApi(0, 100)) {
+ *     api.setLatency(5);
+ *     api.setJobDuration(10, 200);
+ *     api.start();
+ *     SaltStackClient client = new SaltStackClient(api.getUrl());
+ *     ...
+ * }
+ * </pre>
+ */
+public class FakeSaltApi implements AutoCloseable {
+
+    /** Header carrying the session token */
+    public static final String AUTH_HEADER = "X-Auth-Token";
+
+    /** Maximum number of jobs kept for lookups, older ones are forgotten */
+    public static final int MAX_JOBS = 10000;
+
+    private static final Gson GSON = new Gson();
+    private static final long TOKEN_LIFETIME = TimeUnit.HOURS.toMillis(12);
+    private static final DateTimeFormatter JID_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSS");
+    private static final DateTimeFormatter STAMP_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSSSS");
+    private static final String CONTEXT_PATH = "/ws";
+    private static final String LISTENER = "fake-salt-api";
+    private static final String CONTENT_TYPE = "application/json";
+
+    private final int port;
+    private final int minionCount;
+    private long latency;
+    private long minJobDuration;
+    private long maxJobDuration;
+    private int returnSize = 64;
+    private int workerThreads;
+    private Random random = new Random();
+
+    private FakeMinions minions;
+    private FakeEventEndpoint events;
+    private TyrusServerContainer container;
+    private HttpServer httpServer;
+    private ScheduledExecutorService scheduler;
+    private long startTime;
+
+    private final Map<String, Long> tokens = new ConcurrentHashMap<>();
+    private final Map<String, FakeJob> jobs = new ConcurrentHashMap<>();
+    private final Queue<String> jobOrder = new ConcurrentLinkedQueue<>();
+    private String lastJidPrefix = "";
+    private int jidSequence;
+
+    private final LongAdder totalRequests = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final AtomicInteger currentRequests = new AtomicInteger();
+
+    /**
+     * Container of the event endpoint, which is served on the port of the HTTP server
+     * by the Tyrus add-on of its listener.
+     */
+    private static final class EventContainer extends TyrusServerContainer {
+
+        private final WebSocketEngine engine = TyrusWebSocketEngine.builder(this).build();
+
+        EventContainer() {
+            super(Collections.<Class<?>>emptySet());
+        }
+
+        @Override
+        public void register(Class<?> endpointClass) throws DeploymentException {
+            engine.register(endpointClass, CONTEXT_PATH);
+        }
+
+        @Override
+        public void register(ServerEndpointConfig config) throws DeploymentException {
+            engine.register(config, CONTEXT_PATH);
+        }
+
+        @Override
+        public WebSocketEngine getWebSocketEngine() {
+            return engine;
+        }
+    }
+
+    /**
+     * A status code and body to send as response.
+     */
+    private static final class Reply {
+
+        private final int status;
+        private final Object body;
+
+        Reply(int statusIn, Object bodyIn) {
+            status = statusIn;
+            body = bodyIn;
+        }
+    }
+
+    /**
+     * Create a server with the given number of minions. The settings need to be changed
+     * before the server is started.
+     *
+     * @param portIn the port to listen on, 0 for any free port
+     * @param minionCountIn the number of minions
+     */
+    public FakeSaltApi(int portIn, int minionCountIn) {
+        port = portIn;
+        minionCount = minionCountIn;
+    }
+
+    /**
+     * Set the time every response is delayed by.
+     *
+     * @param latencyIn the latency in milliseconds
+     */
+    public void setLatency(long latencyIn) {
+        latency = latencyIn;
+    }
+
+    /**
+     * Set the range of the time it takes a minion to return the result of a job.
+     *
+     * @param minIn the minimum duration in milliseconds
+     * @param maxIn the maximum duration in milliseconds
+     */
+    public void setJobDuration(long minIn, long maxIn) {
+        if (minIn < 0 || maxIn < minIn) {
+            throw new IllegalArgumentException("Invalid job duration: " + minIn + "-" +
+                    maxIn);
+        }
+        minJobDuration = minIn;
+        maxJobDuration = maxIn;
+    }
+
+    /**
+     * Set the length of the results of functions that are not simulated, e.g.
+     * {@code cmd.run}.
+     *
+     * @param returnSizeIn the length in characters
+     */
+    public void setReturnSize(int returnSizeIn) {
+        returnSize = returnSizeIn;
+    }
+
+    /**
+     * Set the number of threads handling requests, by default the number of the
+     * underlying Grizzly server.
+     *
+     * @param workerThreadsIn the number of threads
+     */
+    public void setWorkerThreads(int workerThreadsIn) {
+        workerThreads = workerThreadsIn;
+    }
+
+    /**
+     * Set the seed of the random job durations for reproducible runs.
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Start the server.
+     *
+     * @throws IOException if the server cannot listen on the port
+     * @throws DeploymentException if the event endpoint cannot be deployed
+     */
+    public synchronized void start() throws IOException, DeploymentException {
+        minions = new FakeMinions(minionCount, returnSize);
+        scheduler = Executors.newScheduledThreadPool(2,
+                new DaemonThreadFactory("fake-salt-api-"));
+        events = new FakeEventEndpoint(this::isValidToken);
+
+        NetworkListener listener = new NetworkListener(LISTENER, "0.0.0.0", port);
+        // Keep idle event streams open
+        listener.getKeepAlive().setIdleTimeoutInSeconds(-1);
+        if (workerThreads > 0) {
+            listener.getTransport().setWorkerThreadPoolConfig(ThreadPoolConfig
+                    .defaultConfig().setCorePoolSize(workerThreads)
+                    .setMaxPoolSize(workerThreads));
+        }
+        container = new EventContainer();
+        container.addEndpoint(events.getConfig());
+        listener.registerAddOn(WebSocketAddOns.create(container, CONTEXT_PATH));
+
+        httpServer = new HttpServer();
+        httpServer.addListener(listener);
+        httpServer.getServerConfiguration().addHttpHandler(new ApiHandler(), "/");
+        httpServer.start();
+        container.start(CONTEXT_PATH, port);
+        startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Stop the server, closing all event streams.
+     */
+    @Override
+    public synchronized void close() {
+        if (container != null) {
+            events.close();
+            container.stop();
+            httpServer.shutdownNow();
+            scheduler.shutdownNow();
+            container = null;
+        }
+    }
+
+    /**
+     * Return the port the server listens on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return httpServer.getListener(LISTENER).getPort();
+    }
+
+    /**
+     * Return the URL clients connect to.
+     *
+     * @return the URL
+     */
+    public URI getUrl() {
+        return URI.create("http://localhost:" + getPort());
+    }
+
+    /**
+     * @return the synthetic minions
+     */
+    public FakeMinions getMinions() {
+        return minions;
+    }
+
+    /**
+     * Return a job that was started recently.
+     *
+     * @param jid the job id
+     * @return the job, or null if there is no such job or it was forgotten
+     */
+    public FakeJob getJob(String jid) {
+        return jobs.get(jid);
+    }
+
+    /**
+     * Return the number of requests received so far.
+     *
+     * @return the number of requests
+     */
+    public long getRequestCount() {
+        return totalRequests.sum();
+    }
+
+    /**
+     * Return the number of connected event streams.
+     *
+     * @return the number of websocket sessions
+     */
+    public int getEventStreamCount() {
+        return events.getSessionCount();
+    }
+
+    /**
+     * Publish an event to all connected event streams.
+     *
+     * @param tag the tag
+     * @param data the data, a {@code _stamp} is added
+     */
+    public void publish(String tag, Map<String, Object> data) {
+        Map<String, Object> stamped = new LinkedHashMap<>(data);
+        stamped.put("_stamp", STAMP_FORMAT.format(LocalDateTime.now()));
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("tag", tag);
+        event.put("data", stamped);
+        events.send("data: " + GSON.toJson(event));
+    }
+
+    /**
+     * Return whether the given token was issued and did not expire.
+     *
+     * @param token the token
+     * @return true if the token is valid
+     */
+    public boolean isValidToken(String token) {
+        Long expire = token == null ? null : tokens.get(token);
+        return expire != null && expire > System.currentTimeMillis();
+    }
+
+    /**
+     * Start a job on the minions matched by the target of the given lowstate chunk.
+     *
+     * @param chunk the lowstate chunk
+     * @param user the user publishing the job
+     * @return the job
+     */
+    private FakeJob startJob(Map<String, Object> chunk, String user) {
+        Object target = chunk.get("tgt");
+        String targetType = (String) chunk.get("expr_form");
+        FakeJob job = new FakeJob(nextJid(), function(chunk),
+                (List<?>) chunk.get("arg"), target, targetType, user,
+                minions.match(target, targetType));
+        jobs.put(job.getJid(), job);
+        jobOrder.add(job.getJid());
+        while (jobOrder.size() > MAX_JOBS) {
+            jobs.remove(jobOrder.poll());
+        }
+
+        publish(job.getJid(), map("minions", job.getMinions()));
+        publish("new_job", job.getNewJobData());
+        publish("salt/job/" + job.getJid() + "/new", job.getNewJobData());
+        for (String minion : job.getMinions()) {
+            scheduler.schedule(() -> returnFrom(job, minion), jobDuration(),
+                    TimeUnit.MILLISECONDS);
+        }
+        return job;
+    }
+
+    /**
+     * Let a minion return the result of a job.
+     *
+     * @param job the job
+     * @param minion the minion id
+     */
+    private void returnFrom(FakeJob job, String minion) {
+        Object result = minions.execute(minion, job.getFunction(), job.getArguments());
+        publish("salt/job/" + job.getJid() + "/ret/" + minion,
+                job.getReturnData(minion, result));
+        job.addReturn(minion, result);
+    }
+
+    /**
+     * Return a random job duration within the configured range.
+     *
+     * @return the duration in milliseconds
+     */
+    private long jobDuration() {
+        long range = maxJobDuration - minJobDuration;
+        return minJobDuration + (range > 0 ? (long) (random.nextDouble() * range) : 0);
+    }
+
+    /**
+     * Return a new job id in the format of the master, e.g.
+     * {@code 20150505113307407682}.
+     *
+     * @return the job id
+     */
+    private synchronized String nextJid() {
+        String prefix = JID_FORMAT.format(LocalDateTime.now());
+        if (prefix.equals(lastJidPrefix)) {
+            jidSequence++;
+        } else {
+            lastJidPrefix = prefix;
+            jidSequence = 0;
+        }
+        return prefix + String.format("%03d", jidSequence % 1000);
+    }
+
+    /**
+     * Answer a request.
+     *
+     * @param method the request method
+     * @param path the request path
+     * @param token the session token sent, or null
+     * @param body the request body, or the empty string
+     * @return the future reply
+     */
+    private CompletableFuture<Reply> handle(String method, String path, String token,
+            String body) {
+        boolean post = "POST".equals(method);
+        if ("/login".equals(path) && post) {
+            return reply(HttpURLConnection.HTTP_OK, login(parseMap(body)));
+        } else if ("/run".equals(path) && post) {
+            return run(parseLowstate(body));
+        } else if (!isValidToken(token)) {
+            return reply(HttpURLConnection.HTTP_UNAUTHORIZED, null);
+        }
+
+        String user = "saltdev";
+        if ("/".equals(path) && post) {
+            return lowstate(parseLowstate(body), user, false);
+        } else if ("/logout".equals(path) && post) {
+            tokens.remove(token);
+            return reply(HttpURLConnection.HTTP_OK,
+                    map("return", "Your token has been cleared"));
+        } else if ("/minions".equals(path) && post) {
+            return reply(HttpURLConnection.HTTP_ACCEPTED,
+                    startCommands(parseLowstate(body), user));
+        } else if ("/minions".equals(path)) {
+            return ok(list(grains(minions.getIds())));
+        } else if (path.startsWith("/minions/")) {
+            String id = path.substring("/minions/".length());
+            return ok(list(minions.getGrains(id) == null ?
+                    new HashMap<>() : grains(Collections.singletonList(id))));
+        } else if ("/jobs".equals(path)) {
+            return ok(list(listJobs()));
+        } else if (path.startsWith("/jobs/")) {
+            return reply(HttpURLConnection.HTTP_OK,
+                    jobResult(jobs.get(path.substring("/jobs/".length()))));
+        } else if ("/keys".equals(path)) {
+            return ok(keys());
+        } else if ("/stats".equals(path)) {
+            return reply(HttpURLConnection.HTTP_OK, stats());
+        } else if (path.startsWith("/hook/") && post) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("body", body.isEmpty() ? new HashMap<>() : parseMap(body));
+            data.put("headers", map("Content-Type", CONTENT_TYPE));
+            publish("salt/netapi" + path, data);
+            return reply(HttpURLConnection.HTTP_OK,
+                    map("success", true));
+        }
+        return reply(HttpURLConnection.HTTP_NOT_FOUND, null);
+    }
+
+    /**
+     * Issue a session token.
+     *
+     * @param credentials the username, password and eauth
+     * @return the response
+     */
+    private Map<String, Object> login(Map<String, Object> credentials) {
+        String token = UUID.randomUUID().toString().replace("-", "");
+        long now = System.currentTimeMillis();
+        tokens.put(token, now + TOKEN_LIFETIME);
+
+        Map<String, Object> session = new LinkedHashMap<>();
+        session.put("perms", list(".*", "@wheel", "@runner", "@jobs"));
+        session.put("start", now / 1000.0);
+        session.put("token", token);
+        session.put("expire", (now + TOKEN_LIFETIME) / 1000.0);
+        session.put("user", credentials.get("username"));
+        session.put("eauth", credentials.get("eauth"));
+        return map("return", list(session));
+    }
+
+    /**
+     * Run lowstate chunks authenticated by their own credentials, adding information
+     * about the local jobs as the legacy {@code run} methods expect.
+     *
+     * @param chunks the lowstate chunks
+     * @return the future reply
+     */
+    private CompletableFuture<Reply> run(List<Map<String, Object>> chunks) {
+        for (Map<String, Object> chunk : chunks) {
+            if (chunk.get("username") == null || chunk.get("password") == null) {
+                return reply(HttpURLConnection.HTTP_UNAUTHORIZED, null);
+            }
+        }
+        return lowstate(chunks, (String) chunks.get(0).get("username"), true);
+    }
+
+    /**
+     * Run lowstate chunks, answering once all of them are done.
+     *
+     * @param chunks the lowstate chunks
+     * @param user the user
+     * @param info true to add information about the local jobs to the response
+     * @return the future reply
+     */
+    private CompletableFuture<Reply> lowstate(List<Map<String, Object>> chunks,
+            String user, boolean info) {
+        List<CompletableFuture<Object>> returns = new ArrayList<>(chunks.size());
+        List<FakeJob> localJobs = new ArrayList<>();
+        for (Map<String, Object> chunk : chunks) {
+            String client = String.valueOf(chunk.get("client"));
+            if ("local".equals(client)) {
+                FakeJob job = startJob(chunk, user);
+                localJobs.add(job);
+                returns.add(job.getCompletion().thenApply(Object.class::cast));
+            } else if ("local_async".equals(client)) {
+                returns.add(CompletableFuture.completedFuture(
+                        scheduledJob(startJob(chunk, user))));
+            } else if (client.startsWith("runner") || client.startsWith("wheel")) {
+                returns.add(CompletableFuture.completedFuture(
+                        master(client, chunk, user)));
+            } else {
+                return reply(HttpURLConnection.HTTP_BAD_REQUEST, null);
+            }
+        }
+        return CompletableFuture.allOf(returns.toArray(new CompletableFuture<?>[0]))
+                .thenApply(done -> lowstateReply(returns, info ? localJobs : null));
+    }
+
+    /**
+     * Build the response to lowstate chunks that are done.
+     *
+     * @param returns the completed returns of the chunks
+     * @param localJobs the local jobs to add information about, or null
+     * @return the reply
+     */
+    private Reply lowstateReply(List<CompletableFuture<Object>> returns,
+            List<FakeJob> localJobs) {
+        List<Object> results = new ArrayList<>(returns.size());
+        returns.forEach(r -> results.add(r.join()));
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("return", results);
+        if (localJobs != null) {
+            List<Object> info = new ArrayList<>(localJobs.size());
+            localJobs.forEach(job -> info.add(jobInfo(job)));
+            response.put("info", info);
+        }
+        return new Reply(HttpURLConnection.HTTP_OK, response);
+    }
+
+    /**
+     * Run a runner or wheel function on the master, asynchronously if the client asks
+     * for it, in which case the result is only published as an event.
+     *
+     * @param client the client, e.g. runner or wheel_async
+     * @param chunk the lowstate chunk
+     * @param user the user
+     * @return the return of the chunk
+     */
+    private Object master(String client, Map<String, Object> chunk, String user) {
+        String kind = client.startsWith("runner") ? "run" : "wheel";
+        String fun = function(chunk);
+        Object result = "run".equals(kind) ? runner(fun, arguments(chunk)) : wheel(fun);
+        String jid = nextJid();
+        String tag = "salt/" + kind + "/" + jid;
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("fun", ("run".equals(kind) ? "runner." : "wheel.") + fun);
+        data.put("jid", jid);
+        data.put("user", user);
+        data.put("tag", tag);
+        if (client.endsWith("_async")) {
+            publish(tag + "/new", data);
+            Map<String, Object> ret = new LinkedHashMap<>(data);
+            ret.put("return", result);
+            ret.put("success", true);
+            scheduler.schedule(() -> publish(tag + "/ret", ret), jobDuration(),
+                    TimeUnit.MILLISECONDS);
+            Map<String, Object> async = new LinkedHashMap<>();
+            async.put("tag", tag);
+            async.put("jid", jid);
+            return async;
+        } else if ("wheel".equals(kind)) {
+            data.put("return", result);
+            data.put("success", true);
+            Map<String, Object> wheel = new LinkedHashMap<>();
+            wheel.put("tag", tag);
+            wheel.put("data", data);
+            return wheel;
+        }
+        return result;
+    }
+
+    /**
+     * Return the function of a lowstate chunk.
+     *
+     * @param chunk the lowstate chunk
+     * @return the function
+     */
+    private static String function(Map<String, Object> chunk) {
+        Object fun = chunk.get("fun");
+        if (!(fun instanceof String)) {
+            throw new JsonParseException("Missing function: " + chunk);
+        }
+        return (String) fun;
+    }
+
+    /**
+     * Return the keyword arguments of a runner chunk, passed as kwargs or as part of the
+     * chunk itself.
+     *
+     * @param chunk the lowstate chunk
+     * @return the arguments
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> arguments(Map<String, Object> chunk) {
+        Object kwargs = chunk.get("kwargs");
+        return kwargs instanceof Map ? (Map<String, Object>) kwargs : chunk;
+    }
+
+    /**
+     * Run a runner function.
+     *
+     * @param fun the function
+     * @param kwargs the keyword arguments
+     * @return the result
+     */
+    private Object runner(String fun, Map<String, Object> kwargs) {
+        switch (fun) {
+            case "jobs.lookup_jid":
+                FakeJob job = jobs.get(String.valueOf(kwargs.get("jid")));
+                return job == null ? new HashMap<>() : job.getReturns();
+            case "jobs.list_jobs":
+                return listJobs();
+            case "manage.up":
+                return new ArrayList<>(minions.getIds());
+            default:
+                return "'" + fun + "' is not available.";
+        }
+    }
+
+    /**
+     * Run a wheel function.
+     *
+     * @param fun the function
+     * @return the result
+     */
+    private Object wheel(String fun) {
+        return "key.list_all".equals(fun) ? keys() : "'" + fun + "' is not available.";
+    }
+
+    /**
+     * Start jobs as {@code POST /minions} does.
+     *
+     * @param chunks the lowstate chunks
+     * @param user the user
+     * @return the response
+     */
+    private Map<String, Object> startCommands(List<Map<String, Object>> chunks,
+            String user) {
+        List<Object> scheduled = new ArrayList<>(chunks.size());
+        List<Object> links = new ArrayList<>(chunks.size());
+        for (Map<String, Object> chunk : chunks) {
+            FakeJob job = startJob(chunk, user);
+            scheduled.add(scheduledJob(job));
+            links.add(map("href", "/jobs/" + job.getJid()));
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("_links", map("jobs", links));
+        response.put("return", scheduled);
+        return response;
+    }
+
+    /**
+     * Return the job id and minions of a started job.
+     *
+     * @param job the job
+     * @return the scheduled job
+     */
+    private static Map<String, Object> scheduledJob(FakeJob job) {
+        Map<String, Object> scheduled = new LinkedHashMap<>();
+        scheduled.put("jid", job.getJid());
+        scheduled.put("minions", job.getMinions());
+        return scheduled;
+    }
+
+    /**
+     * Return the results of a job as {@code GET /jobs/<jid>} does.
+     *
+     * @param job the job, or null
+     * @return the response
+     */
+    private static Map<String, Object> jobResult(FakeJob job) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("return", list(job == null ?
+                new HashMap<>() : job.getReturns()));
+        response.put("info", job == null ?
+                new ArrayList<>() : list(jobInfo(job)));
+        return response;
+    }
+
+    /**
+     * Return the information about a job including its results so far.
+     *
+     * @param job the job
+     * @return the information
+     */
+    private static Map<String, Object> jobInfo(FakeJob job) {
+        Map<String, Object> info = job.getInfo();
+        Map<String, Object> results = new LinkedHashMap<>();
+        job.getReturns().forEach((minion, result) ->
+                results.put(minion, map("return", result)));
+        info.put("jid", job.getJid());
+        info.put("Minions", job.getMinions());
+        info.put("Result", results);
+        return info;
+    }
+
+    /**
+     * Return the recent jobs by job id.
+     *
+     * @return the jobs
+     */
+    private Map<String, Object> listJobs() {
+        Map<String, Object> list = new LinkedHashMap<>();
+        for (String jid : jobOrder) {
+            FakeJob job = jobs.get(jid);
+            if (job != null) {
+                list.put(jid, job.getInfo());
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Return the grains of the given minions by minion id.
+     *
+     * @param ids the minion ids
+     * @return the grains
+     */
+    private Map<String, Object> grains(List<String> ids) {
+        Map<String, Object> grains = new LinkedHashMap<>();
+        ids.forEach(id -> grains.put(id, minions.getGrains(id)));
+        return grains;
+    }
+
+    /**
+     * Return the keys of the master and the minions, all of them accepted.
+     *
+     * @return the keys
+     */
+    private Map<String, Object> keys() {
+        Map<String, Object> keys = new LinkedHashMap<>();
+        keys.put("local", list("master.pem", "master.pub"));
+        keys.put("minions", new ArrayList<>(minions.getIds()));
+        keys.put("minions_pre", new ArrayList<>());
+        keys.put("minions_rejected", new ArrayList<>());
+        keys.put("minions_denied", new ArrayList<>());
+        return keys;
+    }
+
+    /**
+     * Return server statistics in the format of CherryPy.
+     *
+     * @return the statistics
+     */
+    private Map<String, Object> stats() {
+        long now = System.currentTimeMillis();
+        double uptime = Math.max(now - startTime, 1) / 1000.0;
+        long requests = totalRequests.sum();
+        long read = bytesRead.sum();
+        long written = bytesWritten.sum();
+
+        Map<String, Object> applications = new LinkedHashMap<>();
+        applications.put("Enabled", true);
+        applications.put("Server Version", "3.6.0");
+        applications.put("Start Time", startTime / 1000.0);
+        applications.put("Current Time", now / 1000.0);
+        applications.put("Uptime", uptime);
+        applications.put("Current Requests", currentRequests.get());
+        applications.put("Total Requests", clamp(requests));
+        applications.put("Requests/Second", requests / uptime);
+        applications.put("Total Bytes Read", clamp(read));
+        applications.put("Bytes Read/Second", read / uptime);
+        applications.put("Bytes Read/Request", read / (double) Math.max(requests, 1));
+        applications.put("Total Bytes Written", clamp(written));
+        applications.put("Bytes Written/Second", written / uptime);
+        applications.put("Bytes Written/Request",
+                written / (double) Math.max(requests, 1));
+        applications.put("Total Time", 0.0);
+        applications.put("Requests", new HashMap<>());
+
+        Map<String, Object> server = new LinkedHashMap<>();
+        server.put("Enabled", true);
+        server.put("Bind Address", "('0.0.0.0', " + getPort() + ")");
+        server.put("Accepts", clamp(requests));
+        server.put("Accepts/sec", requests / uptime);
+        server.put("Requests", clamp(requests));
+        server.put("Bytes Read", clamp(read));
+        server.put("Bytes Written", clamp(written));
+        server.put("Read Throughput", clamp((long) (read / uptime)));
+        server.put("Write Throughput", written / uptime);
+        server.put("Run time", clamp((long) uptime));
+        server.put("Work Time", 0);
+        server.put("Queue", 0);
+        server.put("Socket Errors", 0);
+        server.put("Threads", workerThreads);
+        server.put("Threads Idle", 0);
+        server.put("Worker Threads", new HashMap<>());
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("CherryPy Applications", applications);
+        stats.put("CherryPy HTTPServer " + System.identityHashCode(this), server);
+        return stats;
+    }
+
+    /**
+     * Clamp a counter to the integer range of the CherryPy statistics.
+     *
+     * @param value the value
+     * @return the clamped value
+     */
+    private static int clamp(long value) {
+        return (int) Math.min(value, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Parse a JSON object.
+     *
+     * @param body the JSON
+     * @return the object
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> parseMap(String body) {
+        Object parsed = GSON.fromJson(body, Object.class);
+        if (!(parsed instanceof Map)) {
+            throw new JsonParseException("Expected an object: " + body);
+        }
+        return (Map<String, Object>) parsed;
+    }
+
+    /**
+     * Parse lowstate data, a list of chunks or a single chunk.
+     *
+     * @param body the JSON
+     * @return the chunks
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> parseLowstate(String body) {
+        Object parsed = GSON.fromJson(body, Object.class);
+        if (parsed instanceof Map) {
+            return Collections.singletonList((Map<String, Object>) parsed);
+        } else if (parsed instanceof List && !((List<?>) parsed).isEmpty()) {
+            List<Map<String, Object>> chunks = new ArrayList<>();
+            for (Object chunk : (List<?>) parsed) {
+                if (!(chunk instanceof Map)) {
+                    throw new JsonParseException("Expected a lowstate chunk: " + chunk);
+                }
+                chunks.add((Map<String, Object>) chunk);
+            }
+            return chunks;
+        }
+        throw new JsonParseException("Expected lowstate data: " + body);
+    }
+
+    /**
+     * Return a completed reply.
+     *
+     * @param status the status code
+     * @param body the body, or null
+     * @return the future reply
+     */
+    private static CompletableFuture<Reply> reply(int status, Object body) {
+        return CompletableFuture.completedFuture(new Reply(status, body));
+    }
+
+    /**
+     * Return a completed reply wrapping the given value in a {@code return} object.
+     *
+     * @param value the value
+     * @return the future reply
+     */
+    private static CompletableFuture<Reply> ok(Object value) {
+        return reply(HttpURLConnection.HTTP_OK, map("return", value));
+    }
+
+    /**
+     * Return a mutable map with a single entry. Gson cannot serialize the immutable
+     * collections of {@link Collections} on Java 9 and later.
+     *
+     * @param key the key
+     * @param value the value
+     * @return the map
+     */
+    private static Map<String, Object> map(String key, Object value) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put(key, value);
+        return map;
+    }
+
+    /**
+     * Return a mutable list of the given elements.
+     *
+     * @param elements the elements
+     * @return the list
+     */
+    private static List<Object> list(Object... elements) {
+        List<Object> list = new ArrayList<>(elements.length);
+        Collections.addAll(list, elements);
+        return list;
+    }
+
+    /**
+     * Handler of all HTTP requests, suspending the responses until the reply is ready
+     * and the latency passed.
+     */
+    private class ApiHandler extends HttpHandler {
+
+        @Override
+        public void service(Request request, Response response) throws Exception {
+            totalRequests.increment();
+            currentRequests.incrementAndGet();
+            String body = readBody(request);
+            bytesRead.add(body.length());
+
+            CompletableFuture<Reply> reply;
+            try {
+                reply = handle(request.getMethod().getMethodString(),
+                        request.getRequestURI(), request.getHeader(AUTH_HEADER), body);
+            } catch (JsonParseException | ClassCastException e) {
+                reply = reply(HttpURLConnection.HTTP_BAD_REQUEST, null);
+            }
+            response.suspend();
+            reply.whenComplete((r, e) -> deliver(response, r));
+        }
+
+        /**
+         * Send the given reply after the configured latency.
+         *
+         * @param response the suspended response
+         * @param reply the reply, or null in case of an error
+         */
+        private void deliver(Response response, Reply reply) {
+            Reply actual = reply != null ?
+                    reply : new Reply(HttpURLConnection.HTTP_INTERNAL_ERROR, null);
+            if (latency > 0) {
+                scheduler.schedule(() -> send(response, actual), latency,
+                        TimeUnit.MILLISECONDS);
+            } else {
+                send(response, actual);
+            }
+        }
+
+        /**
+         * Write a reply and resume the response.
+         *
+         * @param response the suspended response
+         * @param reply the reply
+         */
+        private void send(Response response, Reply reply) {
+            try {
+                response.setStatus(reply.status);
+                if (reply.body != null) {
+                    String json = GSON.toJson(reply.body);
+                    response.setContentType(CONTENT_TYPE);
+                    response.setCharacterEncoding("UTF-8");
+                    response.getWriter().write(json);
+                    bytesWritten.add(json.length());
+                }
+            } catch (IOException e) {
+                // the client is gone
+            } finally {
+                currentRequests.decrementAndGet();
+                response.resume();
+            }
+        }
+
+        /**
+         * Read the body of a request.
+         *
+         * @param request the request
+         * @return the body, or the empty string
+         * @throws IOException if reading fails
+         */
+        private String readBody(Request request) throws IOException {
+            StringBuilder body = new StringBuilder();
+            char[] buffer = new char[4096];
+            Reader reader = request.getReader();
+            for (int read = reader.read(buffer); read > 0; read = reader.read(buffer)) {
+                body.append(buffer, 0, read);
+            }
+            return body.toString();
+        }
+    }
+}
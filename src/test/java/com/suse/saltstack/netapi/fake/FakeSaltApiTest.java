@@ -0,0 +1,146 @@
+package com.suse.saltstack.netapi.fake;
+
+import com.suse.saltstack.netapi.AuthModule;
+import com.suse.saltstack.netapi.calls.LocalAsyncResult;
+import com.suse.saltstack.netapi.calls.modules.Cmd;
+import com.suse.saltstack.netapi.calls.wheel.Key;
+import com.suse.saltstack.netapi.client.SaltStackClient;
+import com.suse.saltstack.netapi.datatypes.Job;
+import com.suse.saltstack.netapi.datatypes.target.Glob;
+import com.suse.saltstack.netapi.datatypes.target.Grain;
+import com.suse.saltstack.netapi.datatypes.target.MinionList;
+import com.suse.saltstack.netapi.event.EventStream;
+import com.suse.saltstack.netapi.event.JobTracker;
+import com.suse.saltstack.netapi.event.TrackedJob;
+import com.suse.saltstack.netapi.exception.SaltStackException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Fake salt-api tests, calling it with the client.
+ */
+public class FakeSaltApiTest {
+
+    private static final int MINIONS = 20;
+    private static final int RETURN_SIZE = 100;
+
+    private FakeSaltApi api;
+    private SaltStackClient client;
+
+    @Before
+    public void init() throws Exception {
+        api = new FakeSaltApi(0, MINIONS);
+        api.setLatency(1);
+        api.setJobDuration(0, 20);
+        api.setReturnSize(RETURN_SIZE);
+        api.start();
+        client = new SaltStackClient(api.getUrl());
+        client.login("user", "pass", AuthModule.AUTO);
+    }
+
+    @After
+    public void stop() {
+        api.close();
+    }
+
+    @Test
+    public void testUnauthorized() throws Exception {
+        try {
+            new SaltStackClient(api.getUrl()).getMinions();
+            fail("Request without token succeeded");
+        } catch (SaltStackException e) {
+            // expected
+        }
+        assertTrue(client.logout());
+        try {
+            client.getMinions();
+            fail("Request with cleared token succeeded");
+        } catch (SaltStackException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCalls() throws Exception {
+        Map<String, Boolean> pings = client.callSync(
+                com.suse.saltstack.netapi.calls.modules.Test.ping(),
+                new Glob("minion-000*"));
+        assertEquals(9, pings.size());
+        assertTrue(pings.values().stream().allMatch(Boolean::booleanValue));
+
+        Map<String, String> output = client.callSync(Cmd.run("uptime"),
+                new MinionList("minion-0001", "minion-0002"));
+        assertEquals(2, output.size());
+        assertEquals(RETURN_SIZE, output.get("minion-0001").length());
+
+        // Every third minion runs SLES
+        assertEquals(MINIONS / 3, client.callSync(
+                com.suse.saltstack.netapi.calls.modules.Test.ping(),
+                new Grain("os", "SLES")).size());
+        assertEquals(Collections.emptyMap(), client.callSync(
+                com.suse.saltstack.netapi.calls.modules.Test.ping(), new Glob("none")));
+
+        assertEquals(MINIONS, client.getMinions().size());
+        assertEquals("SLES", client.getMinionDetails("minion-0003").get("os"));
+        assertEquals(MINIONS, client.keys().getMinions().size());
+        assertEquals(MINIONS, client.callSync(Key.listAll()).getData().getResult()
+                .getMinions().size());
+
+        Map<String, Job> jobs = client.getJobs();
+        assertEquals(4, jobs.size());
+        assertTrue(jobs.values().stream().anyMatch(j -> "cmd.run".equals(j.getFunction())));
+
+        assertTrue(client.sendEvent("my/tag", "{\"key\": \"value\"}"));
+        assertTrue(client.stats().getApplications().getTotalRequests() > 0);
+        assertTrue(api.getRequestCount() > 0);
+    }
+
+    @Test
+    public void testEvents() throws Exception {
+        CountDownLatch returns = new CountDownLatch(MINIONS);
+        try (EventStream events = client.events(); JobTracker tracker =
+                new JobTracker(client, events)) {
+            events.addEventListener(new com.suse.saltstack.netapi.event.EventListener() {
+                @Override
+                public void notify(com.suse.saltstack.netapi.datatypes.Event event) {
+                    if (event.getTag().matches("salt/job/\\d{20}/ret/minion-\\d{4}")) {
+                        returns.countDown();
+                    }
+                }
+
+                @Override
+                public void eventStreamClosed(javax.websocket.CloseReason closeReason) {
+                }
+            });
+            long deadline = System.currentTimeMillis() + 10000;
+            while (api.getEventStreamCount() == 0 &&
+                    System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            LocalAsyncResult<Boolean> job = client.callAsync(
+                    com.suse.saltstack.netapi.calls.modules.Test.ping(), new Glob());
+            assertEquals(MINIONS, job.getMinions().size());
+            TrackedJob<Boolean> tracked = tracker.track(job, 30, TimeUnit.SECONDS);
+
+            Map<String, Boolean> results = tracked.getResult().get(30, TimeUnit.SECONDS);
+            assertEquals(MINIONS, results.size());
+            assertTrue(returns.await(30, TimeUnit.SECONDS));
+            assertEquals(results, api.getJob(job.getJid()).getReturns());
+            assertFalse(api.getJob(job.getJid()).getCompletion()
+                    .isCompletedExceptionally());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.suse.saltstack.netapi.metrics;
+
+import com.suse.saltstack.netapi.datatypes.Event;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Event stream metrics unit tests.
+ */
+public class HistogramEventStreamMetricsTest {
+
+    @Test
+    public void testEventCountsByPrefix() {
+        HistogramEventStreamMetrics metrics = new HistogramEventStreamMetrics();
+        metrics.eventParsed(new Event("salt/job/20150505113307407682/new", "{}"), 1);
+        metrics.eventParsed(new Event("salt/job/20150505113307407682/ret/m1", "{}"), 1);
+        metrics.eventParsed(new Event("salt/auth", "{}"), 1);
+
+        // Job ids used as tags by older masters and events without a tag
+        metrics.eventParsed(new Event("20150505113307407682", "{}"), 1);
+        metrics.eventParsed(new Event("20150505113307407683", "{}"), 1);
+        metrics.eventParsed(new Event(null, "{}"), 1);
+
+        Map<String, Long> counts = metrics.getEventCounts();
+        assertEquals(4, counts.size());
+        assertEquals(Long.valueOf(2), counts.get("salt/job"));
+        assertEquals(Long.valueOf(1), counts.get("salt/auth"));
+        assertEquals(Long.valueOf(2), counts.get(HistogramEventStreamMetrics.UNSEGMENTED));
+        assertEquals(Long.valueOf(1), counts.get(HistogramEventStreamMetrics.UNTAGGED));
+    }
+
+    @Test
+    public void testPrefixesAreBounded() {
+        HistogramEventStreamMetrics metrics = new HistogramEventStreamMetrics(1);
+        for (int i = 0; i < HistogramEventStreamMetrics.MAX_PREFIXES + 10; i++) {
+            metrics.eventParsed(new Event("prefix" + i + "/tag", "{}"), 1);
+        }
+        metrics.eventParsed(new Event("prefix0/tag", "{}"), 1);
+
+        Map<String, Long> counts = metrics.getEventCounts();
+        assertEquals(HistogramEventStreamMetrics.MAX_PREFIXES + 1, counts.size());
+        assertEquals(Long.valueOf(2), counts.get("prefix0"));
+        assertEquals(Long.valueOf(10), counts.get(HistogramEventStreamMetrics.OTHER));
+    }
+}
@@ -0,0 +1,186 @@
+package com.suse.saltstack.netapi.metrics;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.suse.saltstack.netapi.client.ConnectionFactory;
+import com.suse.saltstack.netapi.client.SaltStackClient;
+import com.suse.saltstack.netapi.client.impl.HttpAsyncClientConnectionFactory;
+import com.suse.saltstack.netapi.client.impl.HttpClientConnectionFactory;
+import com.suse.saltstack.netapi.client.impl.JDKConnectionFactory;
+import com.suse.saltstack.netapi.config.ClientConfig;
+import com.suse.saltstack.netapi.datatypes.target.Glob;
+import com.suse.saltstack.netapi.exception.SaltStackException;
+import com.suse.saltstack.netapi.metrics.HistogramRequestMetrics.Stats;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Request metrics tests, recording requests of all connection implementations.
+ */
+public class HistogramRequestMetricsTest {
+
+    private static final int MOCK_HTTP_PORT = 8889;
+    private static final String PING_RESPONSE =
+            "{\"return\": [{\"minion1\": true, \"minion2\": false}]}";
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(MOCK_HTTP_PORT);
+
+    @Before
+    public void init() {
+        stubFor(post(urlEqualTo("/"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(PING_RESPONSE)));
+        stubFor(get(urlEqualTo("/minions"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_UNAUTHORIZED)));
+    }
+
+    @Test
+    public void testHttpClientConnection() throws Exception {
+        try (HttpClientConnectionFactory factory = new HttpClientConnectionFactory()) {
+            HistogramRequestMetrics metrics = callPingAndMinions(factory);
+            assertEquals(1, metrics.getFunctionStats("test.ping").getSend().getCount());
+        }
+    }
+
+    @Test
+    public void testAsyncConnection() throws Exception {
+        try (HttpAsyncClientConnectionFactory factory =
+                new HttpAsyncClientConnectionFactory(1)) {
+            HistogramRequestMetrics metrics = callPingAndMinions(factory);
+            // Sending is not observable with the non-blocking client
+            assertEquals(0, metrics.getFunctionStats("test.ping").getSend().getCount());
+        }
+    }
+
+    @Test
+    public void testJDKConnection() throws Exception {
+        HistogramRequestMetrics metrics = callPingAndMinions(new JDKConnectionFactory());
+        assertEquals(1, metrics.getFunctionStats("test.ping").getSend().getCount());
+    }
+
+    @Test
+    public void testFunctionsOfBatch() throws Exception {
+        Map<String, Object> ping = new HashMap<>();
+        ping.put("fun", "test.ping");
+        ping.put("tgt", Arrays.asList("minion1", "minion2"));
+        Map<String, Object> echo = new HashMap<>();
+        echo.put("fun", "cmd.run");
+        echo.put("kwarg", Collections.singletonMap("fun", "ignored"));
+
+        RecordingMetrics metrics = new RecordingMetrics();
+        ClientConfig config = new ClientConfig();
+        config.put(ClientConfig.REQUEST_METRICS, metrics);
+        RequestTiming timing = RequestTiming.start(config.snapshot(), "/",
+                new com.google.gson.Gson().toJson(Arrays.asList(ping, echo, ping)));
+        assertEquals(Arrays.asList("test.ping", "cmd.run"), timing.getFunctions());
+        assertEquals(1, metrics.started);
+
+        timing.finish();
+        timing.finish();
+        assertEquals(1, metrics.finished);
+        assertTrue(timing.getTotalNanos() >= 0);
+        assertEquals(-1, timing.getConnectNanos());
+        assertEquals(-1, timing.getParseNanos());
+
+        RequestTiming login = RequestTiming.start(config.snapshot(), "/login",
+                "{\"username\": \"user\"}");
+        assertEquals(Collections.emptyList(), login.getFunctions());
+        assertEquals(Collections.emptyList(), RequestTiming.start(config.snapshot(),
+                "/minions", null).getFunctions());
+
+        // Nothing is recorded without metrics
+        assertEquals(RequestTiming.DISABLED, RequestTiming.start(
+                new ClientConfig().snapshot(), "/", "[]"));
+    }
+
+    /**
+     * Call test.ping and get the minions, which is not authorized, with the given
+     * connection factory and check the recorded metrics.
+     *
+     * @param factory the connection factory
+     * @return the metrics
+     * @throws Exception if the call fails
+     */
+    private HistogramRequestMetrics callPingAndMinions(ConnectionFactory factory)
+            throws Exception {
+        SaltStackClient client = new SaltStackClient(
+                URI.create("http://localhost:" + MOCK_HTTP_PORT), factory);
+        HistogramRequestMetrics metrics = new HistogramRequestMetrics();
+        client.getConfig().put(ClientConfig.REQUEST_METRICS, metrics);
+
+        assertEquals(2, client.callSync(
+                com.suse.saltstack.netapi.calls.modules.Test.ping(), new Glob()).size());
+        try {
+            client.getMinions();
+            fail("Unauthorized request succeeded");
+        } catch (SaltStackException e) {
+            // expected
+        }
+
+        assertEquals(0, metrics.getInFlight());
+        Map<Integer, Long> statusCounts = new HashMap<>();
+        statusCounts.put(HttpURLConnection.HTTP_OK, 1L);
+        statusCounts.put(HttpURLConnection.HTTP_UNAUTHORIZED, 1L);
+        assertEquals(statusCounts, metrics.getStatusCounts());
+        assertEquals(Collections.singleton("test.ping"), metrics.getFunctions());
+
+        Stats ping = metrics.getFunctionStats("test.ping");
+        assertEquals(1, metrics.getEndpointStats("/").getTotal().getCount());
+        assertEquals(1, ping.getTotal().getCount());
+        assertEquals(1, ping.getConnect().getCount());
+        assertEquals(1, ping.getFirstByte().getCount());
+        assertEquals(1, ping.getParse().getCount());
+        assertEquals(0, ping.getFailureCount());
+        assertEquals(PING_RESPONSE.length(), ping.getResponseBytes().getMax());
+        assertTrue(ping.getRequestBytes().getMax() > 0);
+
+        Stats minions = metrics.getEndpointStats("/minions");
+        assertEquals(1, minions.getTotal().getCount());
+        assertEquals(1, minions.getFailureCount());
+        assertEquals(0, minions.getParse().getCount());
+        assertEquals(0, minions.getRequestBytes().getCount());
+        assertNull(metrics.getEndpointStats("/keys"));
+        return metrics;
+    }
+
+    /**
+     * Metrics counting the reported requests.
+     */
+    private static class RecordingMetrics implements RequestMetrics {
+
+        private int started;
+        private int finished;
+
+        @Override
+        public void requestStarted(RequestTiming timing) {
+            started++;
+        }
+
+        @Override
+        public void requestFinished(RequestTiming timing) {
+            finished++;
+        }
+    }
+}
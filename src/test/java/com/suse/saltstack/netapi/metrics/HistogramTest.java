@@ -0,0 +1,56 @@
+package com.suse.saltstack.netapi.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Histogram unit tests.
+ */
+public class HistogramTest {
+
+    @Test
+    public void testBucketBoundaries() {
+        for (long value : new long[] {0, 1, 127, 128, 129, 255, 256, 1000, 123456789L,
+                Long.MAX_VALUE}) {
+            long highest = Histogram.highestEquivalentValue(Histogram.index(value));
+            assertTrue(value + " > " + highest, value <= highest);
+            assertTrue(value + " imprecise", highest - value <= value / 64);
+        }
+        for (int index = 0; index < 1000; index++) {
+            long highest = Histogram.highestEquivalentValue(index);
+            assertEquals(index, Histogram.index(highest));
+            assertEquals(index + 1, Histogram.index(highest + 1));
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram(1000000);
+        for (int value = 1; value <= 10000; value++) {
+            histogram.record(value);
+        }
+        histogram.record(-1);
+
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000, histogram.getMax());
+        assertEquals(5000.5, histogram.getMean(), 0.0);
+        assertEquals(1, histogram.getValueAtPercentile(0));
+        assertEquals(10000, histogram.getValueAtPercentile(100));
+        long median = histogram.getValueAtPercentile(50);
+        assertTrue(String.valueOf(median), median >= 5000 && median <= 5000 + 5000 / 64);
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue(String.valueOf(p99), p99 >= 9900 && p99 <= 9900 + 9900 / 64);
+    }
+
+    @Test
+    public void testClamped() {
+        Histogram histogram = new Histogram(1000);
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        histogram.record(5000);
+        assertEquals(1, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(1000, histogram.getValueAtPercentile(50));
+    }
+}
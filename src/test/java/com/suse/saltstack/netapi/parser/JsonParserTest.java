@@ -19,15 +19,20 @@ import java.util.Optional;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.Map;
+import com.suse.saltstack.netapi.utils.ClientUtils;
 import org.junit.Test;
 
 import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 
 /**
  * Json parser unit tests.
@@ -302,4 +307,37 @@ public class JsonParserTest {
         assertEquals(0, job.getArguments().getArgs().size());
         assertEquals(1, job.getArguments().getKwargs().size());
     }
+
+    @Test
+    public void testForTypeIsCached() throws Exception {
+        Type mapType = ClientUtils.parameterizedType(null, Map.class, String.class,
+                Boolean.class);
+        Type resultType = ClientUtils.parameterizedType(null, Result.class,
+                ClientUtils.parameterizedType(null, List.class, mapType));
+        JsonParser<?> parser = JsonParser.forType(TypeToken.get(resultType));
+
+        // Types built separately but equal share the parser
+        Type otherResultType = ClientUtils.parameterizedType(null, Result.class,
+                ClientUtils.parameterizedType(null, List.class, mapType));
+        assertSame(parser, JsonParser.forType(TypeToken.get(otherResultType)));
+
+        Result<?> result = (Result<?>) parser.parse("{\"return\": [{\"minion\": true}]}");
+        assertEquals(Arrays.asList(Collections.singletonMap("minion", true)),
+                result.getResult());
+    }
+
+    @Test
+    public void testForTypeCacheIsBounded() throws Exception {
+        TypeToken<Map<String, Integer>> type = new TypeToken<Map<String, Integer>>(){};
+        JsonParser<Map<String, Integer>> parser = JsonParser.forType(type);
+        assertSame(parser, JsonParser.forType(type));
+
+        // Fill the cache with other types: List<Integer>, List<List<Integer>>, ...
+        Type otherType = Integer.class;
+        for (int i = 0; i < JsonParser.PARSER_CACHE_SIZE; i++) {
+            otherType = ClientUtils.parameterizedType(null, List.class, otherType);
+            JsonParser.forType(TypeToken.get(otherType));
+        }
+        assertNotSame(parser, JsonParser.forType(type));
+    }
 }
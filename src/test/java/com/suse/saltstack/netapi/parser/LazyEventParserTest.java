@@ -0,0 +1,95 @@
+package com.suse.saltstack.netapi.parser;
+
+import com.google.gson.JsonSyntaxException;
+import com.suse.saltstack.netapi.datatypes.Event;
+import com.suse.saltstack.netapi.utils.ClientUtils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Lazy event parser unit tests.
+ */
+public class LazyEventParserTest {
+
+    @Test
+    public void testSameResultAsEagerParser() throws Exception {
+        String stream = ClientUtils.streamToString(
+                getClass().getResourceAsStream("/events_stream.txt"));
+        for (String message : stream.split("\n\n")) {
+            String json = message.substring("data: ".length());
+            Event expected = JsonParser.EVENTS.parse(json);
+            Event event = LazyEventParser.parse(json);
+            assertEquals(expected.getTag(), event.getTag());
+            assertEquals(expected.getData(), event.getData());
+        }
+    }
+
+    @Test
+    public void testTagAndData() {
+        Event event = LazyEventParser.parse(" {\"data\" : {\"s\": \"}{][\\\"\", " +
+                "\"list\": [1, [2, {\"x\": null}]]}, \"other\": true,\n" +
+                "\"tag\": \"salt/job/1/ret/m1\"} ");
+        assertEquals("salt/job/1/ret/m1", event.getTag());
+        assertEquals("}{][\"", event.getData().get("s"));
+        assertEquals(2, event.getData().size());
+    }
+
+    @Test
+    public void testEscapedTag() {
+        Event event = LazyEventParser.parse("{\"tag\": \"salt\\/auth\\u0021\"}");
+        assertEquals("salt/auth!", event.getTag());
+        assertNull(event.getData());
+    }
+
+    @Test
+    public void testDataIsDecodedOnce() {
+        Event event = LazyEventParser.parse("{\"tag\": \"t\", \"data\": {\"a\": 1}}");
+        Map<String, Object> data = event.getData();
+        assertEquals(1.0, data.get("a"));
+        assertSame(data, event.getData());
+    }
+
+    @Test
+    public void testTypedData() {
+        Event event = LazyEventParser.parse("{\"tag\": \"salt/job/1/new\", " +
+                "\"data\": {\"jid\": \"1\", \"minions\": [\"m1\", \"m2\"]}}");
+        JobData data = event.getData(JobData.class);
+        assertEquals("1", data.jid);
+        assertEquals(Arrays.asList("m1", "m2"), data.minions);
+
+        Event eager = JsonParser.EVENTS.parse("{\"tag\": \"salt/job/1/new\", " +
+                "\"data\": {\"jid\": \"1\", \"minions\": [\"m1\", \"m2\"]}}");
+        assertEquals(Arrays.asList("m1", "m2"), eager.getData(JobData.class).minions);
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void testUnterminatedObject() {
+        LazyEventParser.parse("{\"tag\": \"t\", \"data\": {}");
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void testNotAnObject() {
+        LazyEventParser.parse("[\"tag\"]");
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void testTrailingContent() {
+        LazyEventParser.parse("{\"tag\": \"t\"} x");
+    }
+
+    /**
+     * Typed representation of job events used for testing.
+     */
+    private static class JobData {
+        private String jid;
+        private List<String> minions;
+    }
+}
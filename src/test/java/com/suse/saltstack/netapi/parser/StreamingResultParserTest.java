@@ -0,0 +1,66 @@
+package com.suse.saltstack.netapi.parser;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import com.suse.saltstack.netapi.calls.modules.Pkg;
+import com.suse.saltstack.netapi.utils.ClientUtils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Streaming result parser unit tests.
+ */
+public class StreamingResultParserTest {
+
+    @Test
+    public void testResultsArePassedInOrder() throws Exception {
+        Map<String, List<String>> results = new LinkedHashMap<>();
+        StreamingResultParser<List<String>> parser = new StreamingResultParser<>(
+                new TypeToken<List<String>>(){}, results::put);
+
+        int count = parser.parse("{\"return\": [{\"minion1\": [\"a\", \"b\"], " +
+                "\"minion2\": []}, {\"minion3\": [\"c\"]}], \"other\": {\"x\": 1}}");
+
+        assertEquals(3, count);
+        assertEquals(Arrays.asList("minion1", "minion2", "minion3"),
+                Arrays.asList(results.keySet().toArray()));
+        assertEquals(Arrays.asList("a", "b"), results.get("minion1"));
+        assertEquals(Arrays.asList(), results.get("minion2"));
+        assertEquals(Arrays.asList("c"), results.get("minion3"));
+    }
+
+    @Test
+    public void testCustomAdapters() throws Exception {
+        Map<String, Map<String, Pkg.Info>> results = new LinkedHashMap<>();
+        StreamingResultParser<Map<String, Pkg.Info>> parser = new StreamingResultParser<>(
+                Pkg.infoInstalled("vim").getReturnType(), results::put);
+
+        String info = ClientUtils.streamToString(
+                getClass().getResourceAsStream("/modules/pkg/info_installed.json"));
+        int count = parser.parse("{\"return\": [{\"minion1\": " + info + "}]}");
+
+        assertEquals(1, count);
+        assertEquals("7.4.326", results.get("minion1").get("vim").getVersion());
+    }
+
+    @Test
+    public void testEmptyReturn() throws Exception {
+        StreamingResultParser<Boolean> parser = new StreamingResultParser<>(
+                TypeToken.get(Boolean.class), (minion, result) -> { });
+        assertEquals(0, (int) parser.parse("{\"return\": [{}]}"));
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void testMalformedResponse() throws Exception {
+        StreamingResultParser<Boolean> parser = new StreamingResultParser<>(
+                TypeToken.get(Boolean.class), (minion, result) -> { });
+        parser.parse("{\"return\": {\"minion1\": true}}");
+    }
+}
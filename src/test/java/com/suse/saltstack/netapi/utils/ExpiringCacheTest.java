@@ -0,0 +1,67 @@
+package com.suse.saltstack.netapi.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Expiring cache unit tests.
+ */
+public class ExpiringCacheTest {
+
+    @Test
+    public void testExpiry() {
+        AtomicLong now = new AtomicLong();
+        ExpiringCache<String, String> cache = new ExpiringCache<>(1000, 10, now::get);
+        cache.put("a", "1", cache.getGeneration());
+        assertEquals("1", cache.get("a"));
+
+        now.set(TimeUnit.MILLISECONDS.toNanos(999));
+        assertEquals("1", cache.get("a"));
+        now.set(TimeUnit.MILLISECONDS.toNanos(1000));
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(1000, 2);
+        cache.put("a", "1", cache.getGeneration());
+        cache.put("b", "2", cache.getGeneration());
+        cache.get("a");
+        cache.put("c", "3", cache.getGeneration());
+
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("3", cache.get("c"));
+    }
+
+    @Test
+    public void testInvalidation() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(1000, 10);
+        cache.put("a", "1", cache.getGeneration());
+        cache.put("b", "2", cache.getGeneration());
+        cache.invalidateIf((key, value) -> value.equals("1"));
+        assertNull(cache.get("a"));
+        assertEquals("2", cache.get("b"));
+
+        // A value loaded before an invalidation is stale
+        long generation = cache.getGeneration();
+        cache.invalidate("b");
+        cache.put("b", "stale", generation);
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void testDisabled() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(0, 10);
+        assertFalse(cache.isEnabled());
+        cache.put("a", "1", cache.getGeneration());
+        assertNull(cache.get("a"));
+    }
+}
@@ -0,0 +1,45 @@
+package com.suse.saltstack.netapi.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Exponential backoff unit tests.
+ */
+public class ExponentialBackoffTest {
+
+    @Test
+    public void testDelayDoubles() {
+        ExponentialBackoff backoff = new ExponentialBackoff(100, 1000);
+        assertEquals(50, backoff.getDelay(1, 0));
+        assertEquals(100, backoff.getDelay(2, 0));
+        assertEquals(200, backoff.getDelay(3, 0));
+        assertEquals(400, backoff.getDelay(4, 0));
+        assertEquals(500, backoff.getDelay(5, 0));
+        assertEquals(500, backoff.getDelay(100, 0));
+    }
+
+    @Test
+    public void testJitter() {
+        ExponentialBackoff backoff = new ExponentialBackoff(100, 1000);
+        assertEquals(75, backoff.getDelay(1, 0.5));
+        assertEquals(999, backoff.getDelay(10, 0.999));
+        for (int i = 0; i < 100; i++) {
+            long delay = backoff.getDelay(3);
+            assertTrue(delay >= 200 && delay <= 400);
+        }
+    }
+
+    @Test
+    public void testNoOverflow() {
+        ExponentialBackoff backoff = new ExponentialBackoff(1000, Long.MAX_VALUE);
+        long previous = 0;
+        for (int attempt = 1; attempt < 100; attempt++) {
+            long delay = backoff.getDelay(attempt, 0);
+            assertTrue(delay >= previous);
+            previous = delay;
+        }
+    }
+}
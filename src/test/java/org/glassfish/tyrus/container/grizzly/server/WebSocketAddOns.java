@@ -0,0 +1,28 @@
+package org.glassfish.tyrus.container.grizzly.server;
+
+import org.glassfish.grizzly.http.server.AddOn;
+import org.glassfish.tyrus.spi.ServerContainer;
+
+/**
+ * Creates the Tyrus add-on serving websocket endpoints on a Grizzly listener, so a
+ * Grizzly {@link org.glassfish.grizzly.http.server.HttpServer} can serve plain HTTP
+ * requests and websockets on the same port. The constructor of {@link WebSocketAddOn}
+ * is package-private in Tyrus 1.x.
+ */
+public final class WebSocketAddOns {
+
+    private WebSocketAddOns() {
+    }
+
+    /**
+     * Create an add-on passing websocket upgrade requests below the given context path
+     * to the endpoints of the given container.
+     *
+     * @param container the container of the endpoints
+     * @param contextPath the context path of the endpoints
+     * @return the add-on
+     */
+    public static AddOn create(ServerContainer container, String contextPath) {
+        return new WebSocketAddOn(container, contextPath);
+    }
+}